@@ -0,0 +1,147 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Discovers adaptors using a {@link ServiceLoader}. 
+ * 
+ * Adaptors are registered by listing their class in a <code>META-INF/services/</code> file named after the adaptor type 
+ * (for example <code>nl.esciencecenter.xenon.adaptors.filesystems.FileAdaptor</code>), so third party adaptors can be added 
+ * by putting them on the class path. Adaptors are only instantiated when needed: a lookup by name stops at the first adaptor
+ * with that name, so the adaptors listed after it (and the libraries they use) are not loaded. Listing all adaptors loads 
+ * all of them. 
+ * 
+ * If two adaptors use the same name, the first one found is used. Adaptors that fail to load are skipped.  
+ *
+ * @param <T> the type of adaptor
+ */
+public class AdaptorLoader<T extends Adaptor> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptorLoader.class);
+
+    private final String component;
+
+    /** Adaptors not instantiated yet. Guarded by this. */
+    private final Iterator<T> providers;
+
+    /** Adaptors instantiated so far, in the order in which they were found. Guarded by this. */
+    private final Map<String, T> adaptors = new LinkedHashMap<>();
+
+    /**
+     * Create an AdaptorLoader that finds adaptors using the class loader of <code>type</code>.
+     * 
+     * @param component
+     *          the name of the component that uses the adaptors (used in log messages).
+     * @param type
+     *          the type of adaptor to load.
+     */
+    public AdaptorLoader(String component, Class<T> type) {
+        this(component, type, type.getClassLoader());
+    }
+
+    /**
+     * Create an AdaptorLoader.
+     * 
+     * @param component
+     *          the name of the component that uses the adaptors (used in log messages).
+     * @param type
+     *          the type of adaptor to load.
+     * @param loader
+     *          the class loader used to find the adaptors.
+     */
+    public AdaptorLoader(String component, Class<T> type, ClassLoader loader) {
+        this.component = component;
+        this.providers = ServiceLoader.load(type, loader).iterator();
+    }
+
+    /**
+     * Instantiate the next adaptor.
+     * 
+     * @return if an adaptor was added.
+     */
+    private boolean loadNext() {
+        while (true) {
+            T adaptor;
+
+            try {
+                if (!providers.hasNext()) {
+                    return false;
+                }
+
+                adaptor = providers.next();
+            } catch (ServiceConfigurationError e) {
+                LOGGER.warn("Failed to load {} adaptor", component, e);
+                continue;
+            }
+
+            String name = adaptor.getName();
+
+            if (adaptors.containsKey(name)) {
+                LOGGER.warn("Ignoring {} adaptor {}, as the name \"{}\" is already used by {}", component, 
+                        adaptor.getClass().getName(), name, adaptors.get(name).getClass().getName());
+                continue;
+            }
+
+            LOGGER.debug("Loaded {} adaptor \"{}\" ({})", component, name, adaptor.getClass().getName());
+
+            adaptors.put(name, adaptor);
+            return true;
+        }
+    }
+
+    /**
+     * Get an adaptor by name. Only the adaptors up to the requested one are instantiated.
+     * 
+     * @param name
+     *          the name of the adaptor.
+     * @return 
+     *          the adaptor, or <code>null</code> if no adaptor with this name exists.
+     */
+    public synchronized T get(String name) {
+        T adaptor = adaptors.get(name);
+
+        while (adaptor == null && loadNext()) {
+            adaptor = adaptors.get(name);
+        }
+
+        return adaptor;
+    }
+
+    /**
+     * Get all adaptors, in the order in which they were found. This instantiates all adaptors.
+     * 
+     * @return 
+     *          all adaptors.
+     */
+    public synchronized List<T> getAll() {
+        while (loadNext()) {
+            // keep loading
+        }
+
+        return new ArrayList<>(adaptors.values());
+    }
+}
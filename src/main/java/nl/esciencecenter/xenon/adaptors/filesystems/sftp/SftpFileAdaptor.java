@@ -30,6 +30,7 @@ import nl.esciencecenter.xenon.XenonPropertyDescription;
 import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.FileAdaptor;
+import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnector;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHUtil;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
@@ -81,6 +82,9 @@ public class SftpFileAdaptor extends FileAdaptor {
 	/** Property for maximum history length for finished jobs */
 	public static final String CONNECTION_TIMEOUT = PREFIX + "connection.timeout";
 
+	/** Property for the time between keepalive checks of the connection. */
+	public static final String KEEPALIVE_INTERVAL = PREFIX + "keepalive.interval";
+
 	/** List of properties supported by this SSH adaptor */
 	public static final XenonPropertyDescription [] VALID_PROPERTIES = new XenonPropertyDescription [] {
 			new XenonPropertyDescription(AUTOMATICALLY_ADD_HOST_KEY, Type.BOOLEAN, 
@@ -98,7 +102,9 @@ public class SftpFileAdaptor extends FileAdaptor {
 			new XenonPropertyDescription(AGENT_FORWARDING, Type.BOOLEAN, 
 					"false", "Use ssh-agent forwarding"),
 			new XenonPropertyDescription(CONNECTION_TIMEOUT, Type.NATURAL, 
-					"10000", "The timeout for creating and authenticating connections (in milliseconds).")
+					"10000", "The timeout for creating and authenticating connections (in milliseconds)."),
+			new XenonPropertyDescription(KEEPALIVE_INTERVAL, Type.LONG, 
+					"60000", "The time between keepalive checks of the connection, which is re-established if it was lost (in milliseconds, 0 disables the checks).")
 	};
 
 	public SftpFileAdaptor() { 
@@ -129,8 +135,11 @@ public class SftpFileAdaptor extends FileAdaptor {
 		SshClient client = SSHUtil.createSSHClient(loadKnownHosts, loadSSHConfig, useSSHAgent, useAgentForwarding);
 
 		long timeout = xp.getNaturalProperty(CONNECTION_TIMEOUT);
+		long keepAliveInterval = xp.getLongProperty(KEEPALIVE_INTERVAL);
 
-		ClientSession session = SSHUtil.connect(ADAPTOR_NAME, client, location, credential, timeout);
+		SSHConnector connector = new SSHConnector(ADAPTOR_NAME, client, location, credential, timeout, keepAliveInterval);
+		
+		ClientSession session = connector.connect();
 
 		SftpClient sftpClient = null;
 
@@ -150,6 +159,6 @@ public class SftpFileAdaptor extends FileAdaptor {
 			throw new XenonException(ADAPTOR_NAME, "Failed to create retrieve working directory", e);
 		}
 
-		return new SftpFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, new Path(wd), sftpClient, xp);
+		return new SftpFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, new Path(wd), sftpClient, connector, xp);
 	}
 }
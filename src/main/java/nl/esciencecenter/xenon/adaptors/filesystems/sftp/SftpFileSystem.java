@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.sshd.client.session.ClientSession;
 import org.apache.sshd.client.subsystem.sftp.SftpClient;
 import org.apache.sshd.common.subsystem.sftp.SftpConstants;
 import org.apache.sshd.common.subsystem.sftp.SftpException;
@@ -40,6 +41,7 @@ import nl.esciencecenter.xenon.adaptors.filesystems.NoSpaceException;
 import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
 import nl.esciencecenter.xenon.adaptors.filesystems.PermissionDeniedException;
 import nl.esciencecenter.xenon.adaptors.filesystems.PosixFileUtils;
+import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnector;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.InvalidPathException;
 import nl.esciencecenter.xenon.filesystems.NoSuchPathException;
@@ -48,37 +50,129 @@ import nl.esciencecenter.xenon.filesystems.PathAlreadyExistsException;
 import nl.esciencecenter.xenon.filesystems.PathAttributes;
 import nl.esciencecenter.xenon.filesystems.PosixFilePermission;
 
+/**
+ * A {@link FileSystem} on a remote machine accessed using SFTP. 
+ * 
+ * If a {@link SSHConnector} is provided, an SFTP session that was lost is re-established before the next operation. 
+ * Operations that can safely be repeated (retrieving attributes, listing directories, reading links, opening files for 
+ * reading and setting permissions) are also retried once on a new session if the session was lost while they were running. 
+ * Other operations are never retried, as they may already have been performed by the server. 
+ */
 public class SftpFileSystem extends FileSystem {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(SftpFileSystem.class);
 	
-	private final SftpClient client;
+	/** An operation on the SFTP client that can safely be repeated. */
+	private interface IdempotentOperation<T> { 
+		T run(SftpClient client) throws IOException;
+	}
+
+	/** Used to re-establish the session, or <code>null</code> if the session is not re-established. */
+	private final SSHConnector connector;
+	
+	/** The current client. Only changed while holding the lock on this. */
+	private volatile SftpClient client;
+	
+	/** If this file system was closed explicitly. Only changed while holding the lock on this. */
+	private volatile boolean closed = false;
 	
 	protected SftpFileSystem(String uniqueID, String name, String location, Path entryPath, SftpClient client, 
 			XenonProperties properties) {
+		this(uniqueID, name, location, entryPath, client, null, properties);
+	}
+
+	protected SftpFileSystem(String uniqueID, String name, String location, Path entryPath, SftpClient client, 
+			SSHConnector connector, XenonProperties properties) {
 		super(uniqueID, name, location, entryPath, properties);
 		this.client = client;
+		this.connector = connector;
 	}
 
+	/**
+	 * Get the current SFTP client, first re-establishing the SFTP session if it was lost and a connector is available. 
+	 * Nothing has been sent to the server at this point, so this is safe for all operations.
+	 */
+	private synchronized SftpClient getClient() throws XenonException { 
+		
+		if (closed || connector == null || client.isOpen()) { 
+			return client;
+		}
+		
+		LOGGER.info("SFTP session to {} was lost, reconnecting", getLocation());
+		
+		ClientSession session = client.getClientSession();
+		boolean newSession = false;
+		
+		try { 
+			if (!session.isOpen()) {
+				session = connector.connect();
+				newSession = true;
+			}
+			
+			client = session.createSftpClient();
+		} catch (IOException e) {
+			if (newSession) { 
+				session.close(true);
+			}
+			throw new NotConnectedException(ADAPTOR_NAME, "Failed to re-establish SFTP session", e);
+		}
+		
+		return client;
+	}
+	
+	/**
+	 * Run an operation that can safely be repeated. If the operation fails because the session was lost, it is run once more 
+	 * on a new session.
+	 */
+	private <T> T runIdempotent(IdempotentOperation<T> operation) throws IOException, XenonException { 
+		
+		SftpClient current = getClient();
+		
+		try { 
+			return operation.run(current);
+		} catch (IOException e) {
+			if (connector == null || current.isOpen()) { 
+				throw e;
+			}
+			
+			LOGGER.debug("SFTP session lost during operation, retrying on new session", e);
+		}
+		
+		return operation.run(getClient());
+	}
+	
 	@Override
 	public void close() throws XenonException {
 		
 		LOGGER.debug("close fileSystem = {}", this);
 
+		SftpClient current;
+		
+		synchronized (this) {
+			closed = true;
+			current = client;
+		}
+		
 		try {
-			client.close();
+			current.close();
 		} catch (IOException e) {
 			throw new XenonException(ADAPTOR_NAME, "Failed to close sftp client", e);
+		} finally { 
+			// The session belongs to this file system, and is kept alive until it is closed.
+			if (connector != null) { 
+				current.getClientSession().close(true);
+			}
 		}
 
-		//info.getSession().disconnect();
-
 		LOGGER.debug("close OK");        
 	}
 	
+	/**
+	 * Check if this file system is open. This does not block: a lost session is only re-established by the next operation.
+	 */
 	@Override
 	public boolean isOpen() throws XenonException {
-		return client.isOpen();
+		return !closed && (client.isOpen() || connector != null);
 	}
 
 	@Override
@@ -96,7 +190,7 @@ public class SftpFileSystem extends FileSystem {
 		assertParentDirectoryExists(target);
 
 		try {
-			client.rename(source.getAbsolutePath(), target.getAbsolutePath());
+			getClient().rename(source.getAbsolutePath(), target.getAbsolutePath());
 		} catch (IOException e) {
 			throw new XenonException(ADAPTOR_NAME, "Failed to rename path", e);
 		}
@@ -113,7 +207,7 @@ public class SftpFileSystem extends FileSystem {
 		assertParentDirectoryExists(dir);
 		
 		try {
-			client.mkdir(dir.getAbsolutePath());
+			getClient().mkdir(dir.getAbsolutePath());
 		} catch (IOException e) {
 			throw new XenonException(ADAPTOR_NAME, "Failed to mkdir", e);
 		}
@@ -148,7 +242,7 @@ public class SftpFileSystem extends FileSystem {
 	@Override
 	public void createSymbolicLink(Path link, Path path) throws XenonException {
 		try {
-			client.symLink(link.getAbsolutePath(), path.getAbsolutePath());
+			getClient().symLink(link.getAbsolutePath(), path.getAbsolutePath());
 		} catch (IOException e) {
 			sftpExceptionToXenonException(e, "Cannot create link: " + link + " -> "+ path);
 		}
@@ -156,7 +250,7 @@ public class SftpFileSystem extends FileSystem {
 	@Override
 	protected void deleteFile(Path file) throws XenonException { 
 		try { 
-			client.remove(file.getAbsolutePath());
+			getClient().remove(file.getAbsolutePath());
 		} catch (IOException e) {
 			sftpExceptionToXenonException(e, "Cannot delete file: " + file);
 		}
@@ -165,20 +259,25 @@ public class SftpFileSystem extends FileSystem {
 	@Override
 	protected void deleteDirectory(Path dir) throws XenonException { 
 		try { 
-			client.rmdir(dir.getAbsolutePath());
+			getClient().rmdir(dir.getAbsolutePath());
 		} catch (IOException e) {
 			sftpExceptionToXenonException(e, "Cannot delete directory: " + dir);
 		}
 	}
 
-	private SftpClient.Attributes stat(Path path) throws XenonException {
+	private SftpClient.Attributes stat(final Path path) throws XenonException {
 
 		LOGGER.debug("* stat path = {}", path);
 
 		SftpClient.Attributes result;
 
 		try {
-			result = client.lstat(path.getAbsolutePath());
+			result = runIdempotent(new IdempotentOperation<SftpClient.Attributes>() {
+				@Override
+				public SftpClient.Attributes run(SftpClient c) throws IOException {
+					return c.lstat(path.getAbsolutePath());
+				}
+			});
 		} catch (IOException e) {
 			throw sftpExceptionToXenonException(e, "Failed to retrieve attributes from: " + path);
 		}
@@ -225,18 +324,25 @@ public class SftpFileSystem extends FileSystem {
 //	}
 		
 	@Override
-	protected List<PathAttributes> listDirectory(Path path) throws XenonException {
+	protected List<PathAttributes> listDirectory(final Path path) throws XenonException {
 
 		try {
 			assertDirectoryExists(path);
 		
-			ArrayList<PathAttributes> result = new ArrayList<>();
+			return runIdempotent(new IdempotentOperation<List<PathAttributes>>() {
+				@Override
+				public List<PathAttributes> run(SftpClient c) throws IOException {
+					
+					// The entries are retrieved while iterating, so the complete listing is repeated if the session is lost.
+					ArrayList<PathAttributes> result = new ArrayList<>();
 			
-			for (SftpClient.DirEntry f : client.readDir(path.getAbsolutePath())) { 
-				result.add(convertAttributes(path.resolve(f.getFilename()), f.getAttributes()));
-			}
-	
-			return result;
+					for (SftpClient.DirEntry f : c.readDir(path.getAbsolutePath())) { 
+						result.add(convertAttributes(path.resolve(f.getFilename()), f.getAttributes()));
+					}
+					
+					return result;
+				}
+			});
 		} catch (IOException e) {
 			throw sftpExceptionToXenonException(e, "Failed to list directory " + path);
 		}
@@ -256,7 +362,7 @@ public class SftpFileSystem extends FileSystem {
 //	}
 
 	@Override
-	public InputStream readFromFile(Path path) throws XenonException {
+	public InputStream readFromFile(final Path path) throws XenonException {
 		LOGGER.debug("newInputStream path = {}", path);
 
 		assertFileExists(path);
@@ -264,7 +370,12 @@ public class SftpFileSystem extends FileSystem {
 		InputStream in;
 
 		try {
-			in = client.read(path.getAbsolutePath());        	
+			in = runIdempotent(new IdempotentOperation<InputStream>() {
+				@Override
+				public InputStream run(SftpClient c) throws IOException {
+					return c.read(path.getAbsolutePath());
+				}
+			});
 		} catch (IOException e) {
 			throw new XenonException(ADAPTOR_NAME, "Failed to open stream to read from " + path, e);
 		}
@@ -281,7 +392,7 @@ public class SftpFileSystem extends FileSystem {
 		assertParentDirectoryExists(path);
 		
 		try {
-			return client.write(path.getAbsolutePath(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Create, SftpClient.OpenMode.Truncate);      	
+			return getClient().write(path.getAbsolutePath(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Create, SftpClient.OpenMode.Truncate);      	
 		} catch (IOException e) {
 			throw new XenonException(ADAPTOR_NAME, "Failed open stream to write to: " + path, e);
 		}
@@ -299,7 +410,7 @@ public class SftpFileSystem extends FileSystem {
 		assertFileExists(path);
 		
 		try {
-			return client.write(path.getAbsolutePath(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Append);      	
+			return getClient().write(path.getAbsolutePath(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Append);      	
 		} catch (IOException e) {
 			throw new XenonException(ADAPTOR_NAME, "Failed open stream to write to: " + path, e);
 		}
@@ -311,13 +422,18 @@ public class SftpFileSystem extends FileSystem {
 	}
 
 	@Override
-	public Path readSymbolicLink(Path link) throws XenonException {
+	public Path readSymbolicLink(final Path link) throws XenonException {
 		LOGGER.debug("readSymbolicLink path = {}", link);
 
 		Path result;
 
 		try {
-			String target = client.readLink(link.getAbsolutePath());
+			String target = runIdempotent(new IdempotentOperation<String>() {
+				@Override
+				public String run(SftpClient c) throws IOException {
+					return c.readLink(link.getAbsolutePath());
+				}
+			});
 
 			if (!target.startsWith(File.separator)) {                
 				Path parent = link.getParent();
@@ -335,16 +451,23 @@ public class SftpFileSystem extends FileSystem {
 	}
 
 	@Override
-	public void setPosixFilePermissions(Path path, Set<PosixFilePermission> permissions) throws XenonException {
+	public void setPosixFilePermissions(final Path path, Set<PosixFilePermission> permissions) throws XenonException {
 		LOGGER.debug("setPosixFilePermissions path = {} permissions = {}", path, permissions);
 
 		try {
 			// We need to create a new Attributes object here. SFTP will only forward the fields that are actually set 
 			// when we call setStat. If we retrieve the existing attributes, change permissions and send the lot back 
 			// we'll receive an error since some of the other attributes cannot be changed (learned this the hard way).
-			SftpClient.Attributes a = new SftpClient.Attributes();
+			final SftpClient.Attributes a = new SftpClient.Attributes();
 			a.setPermissions(PosixFileUtils.permissionsToBits(permissions));
-			client.setStat(path.getAbsolutePath(), a);
+			
+			runIdempotent(new IdempotentOperation<Void>() {
+				@Override
+				public Void run(SftpClient c) throws IOException {
+					c.setStat(path.getAbsolutePath(), a);
+					return null;
+				}
+			});
 		} catch (IOException e) {
 			throw new XenonException(ADAPTOR_NAME, "Failed to set permissions on: " + path, e);
 		}
@@ -17,6 +17,8 @@ package nl.esciencecenter.xenon.adaptors.schedulers;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.shared.local.LocalUtil;
@@ -25,7 +27,8 @@ import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.filesystems.PathAlreadyExistsException;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
 import nl.esciencecenter.xenon.schedulers.Streams;
-import nl.esciencecenter.xenon.utils.StreamForwarder;
+import nl.esciencecenter.xenon.utils.StreamPump;
+import nl.esciencecenter.xenon.utils.StreamPump.Transfer;
 
 /**
  * BatchProcess wraps an {@link InteractiveProcess} to emulate a batch process.
@@ -35,14 +38,19 @@ import nl.esciencecenter.xenon.utils.StreamForwarder;
  */
 class BatchProcess implements Process {
 
-    /** Time to wait for a StreamForwarder to terminate (in ms.) */ 
+    /** Time to wait for a stream transfer to terminate (in ms.) */ 
     private static final long TERMINATION_DELAY = 1000L;
     
     private final InteractiveProcess process;
 
-    private StreamForwarder stdinForwarder;
-    private StreamForwarder stdoutForwarder;
-    private StreamForwarder stderrForwarder;
+    private final List<Runnable> listeners = new ArrayList<>();
+
+    private Transfer stdinTransfer;
+    private Transfer stdoutTransfer;
+    private Transfer stderrTransfer;
+
+    /** Time at which the process was first seen to be done, or 0 if it is still running. */
+    private long processDoneTime = 0;
    
     public BatchProcess(FileSystem filesystem, Path workingDirectory, JobDescription description, String jobIdentifier, InteractiveProcessFactory factory)
             throws XenonException, IOException {
@@ -71,14 +79,23 @@ class BatchProcess implements Process {
         process = factory.createInteractiveProcess(description, jobIdentifier);
         Streams streams = process.getStreams();
 
-        stdoutForwarder = new StreamForwarder(streams.getStdout(), out);
-        stderrForwarder = new StreamForwarder(streams.getStderr(), err);
+        StreamPump pump = StreamPump.getShared();
+
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                transferDone();
+            }
+        };
+
+        stdoutTransfer = pump.transfer(streams.getStdout(), out, listener);
+        stderrTransfer = pump.transfer(streams.getStderr(), err, listener);
 
         if (stdin == null) {
-            stdinForwarder = null;
+            stdinTransfer = null;
             streams.getStdin().close();
         } else {
-            stdinForwarder = new StreamForwarder(filesystem.readFromFile(stdin), streams.getStdin());
+            stdinTransfer = pump.transfer(filesystem.readFromFile(stdin), streams.getStdin(), null);
         }
     }
 
@@ -113,32 +130,61 @@ class BatchProcess implements Process {
         return filesystem.writeToFile(file);
     }
 
-    private synchronized void closeStreams() {
+    private Transfer[] transfers() {
+        return new Transfer[] { stdinTransfer, stdoutTransfer, stderrTransfer };
+    }
+
+    private void transferDone() {
+
+        Runnable[] tmp;
 
-        if (stdinForwarder != null) {
-            stdinForwarder.terminate(TERMINATION_DELAY);
-            stdinForwarder = null;
+        synchronized (this) {
+            tmp = listeners.toArray(new Runnable[listeners.size()]);
         }
 
-        if (stdoutForwarder != null) {
-            stdoutForwarder.terminate(TERMINATION_DELAY);
-            stdoutForwarder = null;
+        for (Runnable r : tmp) {
+            r.run();
         }
+    }
 
-        if (stderrForwarder != null) {
-            stderrForwarder.terminate(TERMINATION_DELAY);
-            stderrForwarder = null;
+    private synchronized void closeStreams(long timeout) {
+
+        for (Transfer t : transfers()) {
+            if (t != null) {
+                t.terminate(timeout);
+            }
         }
+
+        stdinTransfer = null;
+        stdoutTransfer = null;
+        stderrTransfer = null;
     }
 
-    public boolean isDone()  {
+    /**
+     * Returns if the process is done. Once the process has terminated, it is only reported as done once the transfers of its 
+     * streams have ended, or {@link #TERMINATION_DELAY} has expired. This method never blocks.
+     */
+    public synchronized boolean isDone()  {
 
-        if (process.isDone()) {
-            closeStreams();
-            return true;
+        if (!process.isDone()) {
+            return false;
         }
 
-        return false;
+        long now = System.currentTimeMillis();
+
+        if (processDoneTime == 0) {
+            processDoneTime = now;
+        }
+
+        for (Transfer t : transfers()) {
+            if (t != null && !t.isDone() && now - processDoneTime < TERMINATION_DELAY) {
+                return false;
+            }
+        }
+
+        // All transfers have ended or the termination delay has expired.
+        closeStreams(0);
+        return true;
     }
 
     public int getExitStatus() {
@@ -147,6 +193,15 @@ class BatchProcess implements Process {
 
     public void destroy() {
         process.destroy();
-        closeStreams();
+        closeStreams(TERMINATION_DELAY);
+    }
+
+    public void addTerminationListener(Runnable listener) {
+
+        synchronized (this) {
+            listeners.add(listener);
+        }
+
+        process.addTerminationListener(listener);
     }
 }
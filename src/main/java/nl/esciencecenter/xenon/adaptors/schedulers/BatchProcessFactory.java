@@ -0,0 +1,52 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import java.io.IOException;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.filesystems.FileSystem;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.schedulers.JobDescription;
+
+/**
+ * A factory for batch processes. An {@link InteractiveProcessFactory} that also implements this interface is used by the 
+ * {@link JobQueueScheduler} to create batch processes, instead of emulating them with a {@link BatchProcess}.
+ */
+public interface BatchProcessFactory {
+
+    /**
+     * Create a new batch process for the given job. The stdin, stdout and stderr of the job are redirected as specified in the 
+     * description, relative to the working directory.
+     *
+     * @param filesystem
+     *          the filesystem the job runs on.
+     * @param workingDirectory
+     *          the directory relative to which the working directory of the job is resolved.
+     * @param description
+     *          the description of the job.
+     * @param jobIdentifier
+     *          the identifier of the job.
+     * @return
+     *          the new batch process.
+     * @throws XenonException
+     *          if the process could not be created.
+     * @throws IOException
+     *          if the process could not be created.
+     */
+    Process createBatchProcess(FileSystem filesystem, Path workingDirectory, JobDescription description, String jobIdentifier)
+            throws XenonException, IOException;
+}
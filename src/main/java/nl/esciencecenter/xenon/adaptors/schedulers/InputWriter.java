@@ -15,24 +15,17 @@
  */
 package nl.esciencecenter.xenon.adaptors.schedulers;
 
-import java.io.IOException;
+import java.io.ByteArrayInputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import nl.esciencecenter.xenon.utils.StreamPump;
 
 /**
- * A simple input writer that uses a daemon thread to write from an {@link java.lang.String} to an {@link java.io.OutputStream}. 
- * Once the end of the string is reached, the destination stream will be closed.
+ * A simple input writer that uses the shared {@link StreamPump} to write from an {@link java.lang.String} to an 
+ * {@link java.io.OutputStream}. Once the end of the string is reached, the destination stream will be closed.
  */
-public final class InputWriter extends Thread {
-
-    private static final Logger LOGGER = LoggerFactory.getLogger(InputWriter.class);
-
-    private final String content;
-
-    private final OutputStream destination;
+public final class InputWriter {
 
     // written all content or got exception.
     private boolean finished = false;
@@ -49,12 +42,14 @@ public final class InputWriter extends Thread {
     		throw new IllegalArgumentException("Destination may not be null");
     	}
 
-    	this.content = content;
-    	this.destination = destination;
+        byte[] bytes = content == null ? new byte[0] : content.getBytes(Charset.defaultCharset());
 
-        setDaemon(true);
-        setName("Input Writer");
-        start();
+        StreamPump.getShared().transfer(new ByteArrayInputStream(bytes), destination, new Runnable() {
+            @Override
+            public void run() {
+                setFinished();
+            }
+        });
     }
 
     private synchronized void setFinished() {
@@ -85,24 +80,4 @@ public final class InputWriter extends Thread {
             }
         }
     }
-
-    /**
-     * Entry point for the Daemon thread.
-     */    
-    public void run() {
-        try {
-            if (content != null) {
-                destination.write(content.getBytes(Charset.defaultCharset()));
-            }
-        } catch (IOException e) {
-            LOGGER.error("Cannot write content to stream", e);
-        } finally {
-            try {
-                destination.close();
-            } catch (IOException e) {
-                LOGGER.error("Cannot close input stream", e);
-            }
-            setFinished();
-        }
-    }
 }
@@ -0,0 +1,309 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.schedulers.JobStatus;
+import nl.esciencecenter.xenon.schedulers.Scheduler;
+
+/**
+ * Tracks the completion of jobs for a {@link Scheduler} without blocking a thread per job.
+ * 
+ * All tracked jobs are periodically checked using a single {@link Scheduler#getJobStatuses(String...)} call, which is run on 
+ * the given executor. The future of a job is completed as soon as the job is done. When no jobs are tracked, no polling takes 
+ * place. 
+ * 
+ * A failing status query is retried with backoff, as the jobs keep running regardless. Only after 
+ * {@link #MAX_CONSECUTIVE_FAILURES} consecutive failures are the futures of all tracked jobs completed exceptionally.
+ */
+public class JobCompletionTracker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobCompletionTracker.class);
+
+    /** Number of consecutive failed status queries after which all tracked jobs are failed. */
+    public static final int MAX_CONSECUTIVE_FAILURES = 5;
+
+    private final Scheduler scheduler;
+
+    private final Executor executor;
+
+    private final ScheduledExecutorService timer;
+
+    /** The delay between status queries, which backs off while no tracked job completes. Guarded by this. */
+    private final PollingPolicy.Backoff backoff;
+
+    /** The futures of the jobs being tracked. Guarded by this. */
+    private final Map<String, CompletableFuture<JobStatus>> tracked = new LinkedHashMap<>();
+
+    /** Is a poll scheduled or running ? Guarded by this. */
+    private boolean polling = false;
+
+    /** The next scheduled poll, if any. Guarded by this. */
+    private ScheduledFuture<?> pending;
+
+    /** Number of consecutive failed status queries. Guarded by this. */
+    private int failures = 0;
+
+    /** The reason the tracker was closed, or <code>null</code> if it is still open. Guarded by this. */
+    private Throwable closed;
+
+    /**
+     * Create a JobCompletionTracker.
+     * 
+     * @param scheduler
+     *          the scheduler to retrieve the job statuses from.
+     * @param executor
+     *          the executor to run the status queries on.
+     * @param timer
+     *          the timer used to schedule the status queries.
+     * @param pollDelay
+     *          the base delay in ms. between status queries. The delay backs off while no tracked job completes.
+     */
+    public JobCompletionTracker(Scheduler scheduler, Executor executor, ScheduledExecutorService timer, long pollDelay) {
+
+        if (pollDelay <= 0) {
+            throw new IllegalArgumentException("Poll delay must be positive: " + pollDelay);
+        }
+
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.timer = timer;
+        this.backoff = PollingPolicy.forPollDelay(pollDelay).start();
+    }
+
+    /**
+     * Start tracking a job. 
+     * 
+     * The returned future is completed with the final status of the job once it is done, or completed exceptionally if the 
+     * status of the job could not be retrieved or the tracker is closed. Tracking the same job twice returns the same future. 
+     * 
+     * @param jobIdentifier
+     *          the job to track.
+     * @return
+     *          a future that completes when the job is done.
+     */
+    public synchronized CompletableFuture<JobStatus> track(String jobIdentifier) {
+
+        if (closed != null) {
+            CompletableFuture<JobStatus> future = new CompletableFuture<>();
+            future.completeExceptionally(closed);
+            return future;
+        }
+
+        CompletableFuture<JobStatus> future = tracked.get(jobIdentifier);
+
+        if (future == null || future.isDone()) {
+            future = new CompletableFuture<>();
+            tracked.put(jobIdentifier, future);
+            backoff.reset();
+        }
+
+        if (!polling) {
+            polling = true;
+            schedulePoll(0);
+        }
+
+        return future;
+    }
+
+    /**
+     * Get the number of jobs currently being tracked.
+     * 
+     * @return the number of jobs being tracked.
+     */
+    public synchronized int size() {
+        return tracked.size();
+    }
+
+    /**
+     * Stop tracking jobs. The futures of all tracked jobs, and of jobs tracked later on, are completed exceptionally with 
+     * <code>cause</code>.
+     * 
+     * @param cause
+     *          the reason the tracker is closed.
+     */
+    public void close(Throwable cause) {
+
+        synchronized (this) {
+            if (closed != null) {
+                return;
+            }
+
+            closed = cause;
+
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+        }
+
+        failAll(cause);
+    }
+
+    private synchronized void schedulePoll(long delay) {
+
+        if (closed != null) {
+            return;
+        }
+
+        try {
+            pending = timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    executePoll();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            failAll(e);
+        }
+    }
+
+    private void executePoll() {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    poll();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            failAll(e);
+        }
+    }
+
+    private void poll() {
+
+        String[] jobs;
+
+        synchronized (this) {
+            // Forget jobs for which the client cancelled the future. 
+            Iterator<CompletableFuture<JobStatus>> it = tracked.values().iterator();
+
+            while (it.hasNext()) {
+                if (it.next().isDone()) {
+                    it.remove();
+                }
+            }
+
+            if (tracked.isEmpty()) {
+                polling = false;
+                return;
+            }
+
+            jobs = tracked.keySet().toArray(new String[tracked.size()]);
+        }
+
+        JobStatus[] statuses;
+
+        try {
+            statuses = scheduler.getJobStatuses(jobs);
+        } catch (XenonException | RuntimeException e) {
+            pollFailed(jobs.length, e);
+            return;
+        }
+
+        ArrayList<CompletableFuture<JobStatus>> done = new ArrayList<>();
+        ArrayList<JobStatus> doneStatus = new ArrayList<>();
+
+        synchronized (this) {
+            failures = 0;
+
+            for (int i = 0; i < jobs.length; i++) {
+                JobStatus status = statuses[i];
+
+                if (status != null && status.isDone()) {
+                    CompletableFuture<JobStatus> future = tracked.remove(jobs[i]);
+
+                    if (future != null) {
+                        done.add(future);
+                        doneStatus.add(status);
+                    }
+                }
+            }
+
+            if (!done.isEmpty()) {
+                backoff.reset();
+            }
+
+            if (tracked.isEmpty()) {
+                polling = false;
+            } else {
+                schedulePoll(backoff.nextDelay());
+            }
+        }
+
+        // Complete outside the lock, as dependent stages may run in this thread.
+        for (int i = 0; i < done.size(); i++) {
+            JobStatus status = doneStatus.get(i);
+
+            if (status.getState() == null && status.getException() != null) {
+                // Status only contains the exception produced when retrieving it.
+                done.get(i).completeExceptionally(status.getException());
+            } else {
+                done.get(i).complete(status);
+            }
+        }
+    }
+
+    /**
+     * Retry a failed status query after a backoff delay, or fail all tracked jobs if the query failed too often in a row.
+     */
+    private void pollFailed(int jobs, Exception cause) {
+
+        synchronized (this) {
+            failures++;
+
+            if (failures < MAX_CONSECUTIVE_FAILURES && closed == null) {
+                LOGGER.debug("Failed to retrieve status of {} jobs ({} consecutive failures), retrying", jobs, failures, cause);
+                schedulePoll(backoff.nextDelay());
+                return;
+            }
+        }
+
+        LOGGER.warn("Failed to retrieve status of {} jobs {} times in a row, giving up", jobs, MAX_CONSECUTIVE_FAILURES, cause);
+        failAll(cause);
+    }
+
+    private void failAll(Throwable cause) {
+
+        ArrayList<CompletableFuture<JobStatus>> failed;
+
+        synchronized (this) {
+            failed = new ArrayList<>(tracked.values());
+            tracked.clear();
+            polling = false;
+            failures = 0;
+        }
+
+        for (CompletableFuture<JobStatus> future : failed) {
+            future.completeExceptionally(cause);
+        }
+    }
+}
@@ -25,9 +25,13 @@ import nl.esciencecenter.xenon.schedulers.JobStatus;
 import nl.esciencecenter.xenon.schedulers.Streams;
 
 /**
+ * JobExecutor manages the life cycle of a single job of a {@link JobQueueScheduler}.
  * 
+ * A JobExecutor does not occupy a thread while its job is running. The job is started by {@link #start()}, after which it is 
+ * registered with a {@link ProcessReactor} that periodically calls {@link #poll()} to detect completion. Threads waiting 
+ * for the job are woken up on each state change.  
  */
-public class JobExecutor implements Runnable {
+public class JobExecutor {
 
     private static final String PENDING_STATE = "PENDING"; 
     private static final String RUNNING_STATE = "RUNNING"; 
@@ -35,32 +39,48 @@ public class JobExecutor implements Runnable {
     private static final String ERROR_STATE = "ERROR"; 
     private static final String KILLED_STATE = "KILLED";
     
-    /** Polling delay in ms. */
-    private static final long POLLING_DELAY = 1000L;
-    
     /** Number of ms. per min. */
     private static final long MILLISECONDS_IN_MINUTE = 60L * 1000L;
 
+    /**
+     * Listener that is informed when a job is done.
+     */
+    public interface CompletionListener {
+
+        /**
+         * Invoked exactly once, when the job is done. Invoked without holding the lock of the JobExecutor. 
+         * 
+         * @param job
+         *          the job that is done.
+         */
+        void jobDone(JobExecutor job);
+    }
+
     private final JobDescription description;
     private final String jobIdentifier; 
     private final boolean interactive;
     
     private final InteractiveProcessFactory factory;
 
-    private final long pollingDelay;
+    private final PollingPolicy pollingPolicy;
 
     private final String adaptorName;
 
     private final FileSystem filesystem;
     private final Path workingDirectory;
 
+    private final ProcessReactor reactor;
+
+    private final CompletionListener listener;
+
     private Streams streams;
 
+    private Process process;
+
     private Integer exitStatus;
 
-    private boolean updateSignal = false;
-    private boolean isRunning = false;
-    private boolean killed = false;
+    private long endTime = 0;
+
     private boolean done = false;
     private boolean hasRun = false;
 
@@ -69,7 +89,8 @@ public class JobExecutor implements Runnable {
     private Exception error;
 
     public JobExecutor(String adaptorName, FileSystem filesystem, Path workingDirectory, InteractiveProcessFactory factory,
-            JobDescription description, String jobIdentifier, boolean interactive, long pollingDelay) {
+            JobDescription description, String jobIdentifier, boolean interactive, long pollingDelay, ProcessReactor reactor, 
+            CompletionListener listener) {
 
         this.adaptorName = adaptorName;
         this.filesystem = filesystem;
@@ -78,26 +99,39 @@ public class JobExecutor implements Runnable {
         this.jobIdentifier = jobIdentifier;
         this.interactive = interactive;
         this.factory = factory;
-        this.pollingDelay = pollingDelay;
+        this.pollingPolicy = PollingPolicy.forPollDelay(Math.max(1, pollingDelay));
+        this.reactor = reactor;
+        this.listener = listener;
     }
 
     public synchronized boolean hasRun() {
         return hasRun;
     }
 
-    public synchronized boolean kill() {
-        if (done) {
-            return true;
-        }
+    /**
+     * Kill the job. A job that has not started yet will never be started. A running job is destroyed. 
+     * 
+     * @return if the job is done after the kill.
+     */
+    public boolean kill() {
 
-        killed = true;
+        boolean completed;
 
-        if (!isRunning) {
-            updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process cancelled by user."));
-            return true;
+        synchronized (this) {
+            if (done) {
+                return true;
+            }
+
+            if (process != null) {
+                // Destroy first, update state last, otherwise we have a race condition!
+                process.destroy();
+            }
+
+            completed = updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process cancelled by user."));
         }
 
-        return false;
+        completed(completed);
+        return true;
     }
 
     public synchronized boolean isDone() {
@@ -112,13 +146,12 @@ public class JobExecutor implements Runnable {
         return description;
     }
     
-    public synchronized JobStatus getStatus() {
-        if (!done && RUNNING_STATE.equals(state)) {
-            triggerStatusUpdate();
-            waitForStatusUpdate(pollingDelay);
+    public JobStatus getStatus() {
+        poll();
+        
+        synchronized (this) {
+            return new JobStatusImplementation(jobIdentifier, state, exitStatus, error, RUNNING_STATE.equals(state), done, null);
         }
-
-        return new JobStatusImplementation(jobIdentifier, state, exitStatus, error, RUNNING_STATE.equals(state), done, null);
     }
 
     public synchronized String getState() {
@@ -129,7 +162,17 @@ public class JobExecutor implements Runnable {
         return error;
     }
 
-    private synchronized void updateState(String state, int exitStatus, Exception e) {
+    /**
+     * Update the state. Must be called while holding the lock. 
+     * 
+     * @return if the job became done by this update, in which case {@link #completed(boolean)} must be called after 
+     *          releasing the lock.
+     */
+    private boolean updateState(String state, int exitStatus, Exception e) {
+
+        if (done) {
+            return false;
+        }
 
         if (ERROR_STATE.equals(state) || KILLED_STATE.equals(state)) {
             error = e;
@@ -144,16 +187,14 @@ public class JobExecutor implements Runnable {
         }
 
         this.state = state;
-        clearUpdateRequest();
-    }
-
-    private synchronized boolean getKilled() {
-        isRunning = true;
-        return killed;
+        notifyAll();
+        return done;
     }
 
-    private synchronized void setStreams(Streams streams) {
-        this.streams = streams;
+    private void completed(boolean completed) {
+        if (completed && listener != null) {
+            listener.jobDone(this);
+        }
     }
 
     public synchronized Streams getStreams() throws XenonException {
@@ -165,190 +206,162 @@ public class JobExecutor implements Runnable {
     	return streams;
     }
         
-    public synchronized JobStatus waitUntilRunning(long timeout) {
+    public JobStatus waitUntilRunning(long timeout) {
 
         long deadline = Deadline.getDeadline(timeout);
-                
-        triggerStatusUpdate();
 
-        long leftover = deadline - System.currentTimeMillis();
-        
-        while (leftover > 0 && PENDING_STATE.equals(state)) {
-            try {
-                wait(leftover);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
+        synchronized (this) {
+            long leftover = deadline - System.currentTimeMillis();
+
+            while (leftover > 0 && PENDING_STATE.equals(state)) {
+                try {
+                    wait(leftover);
+                } catch (InterruptedException e) {
+                    // We were interrupted
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                leftover = deadline - System.currentTimeMillis();
             }
-            
-            leftover = deadline - System.currentTimeMillis();
         }
 
         return getStatus();
     }
 
-    public synchronized JobStatus waitUntilDone(long timeout) {
+    public JobStatus waitUntilDone(long timeout) {
 
         long deadline = Deadline.getDeadline(timeout);
         
-        triggerStatusUpdate();
+        PollingPolicy.Backoff backoff = startBackoff();
 
         long leftover = deadline - System.currentTimeMillis();
         
-        while (leftover > 0 && !done) {
-            
-            try {
-                wait(leftover);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
+        while (leftover > 0 && !poll()) {
+
+            synchronized (this) {
+                if (!done) {
+                    try {
+                        // The reactor wakes us up on completion, but we poll ourselves as well, backing off over time.
+                        wait(Math.min(leftover, backoff.nextDelay()));
+                    } catch (InterruptedException e) {
+                        // We were interrupted
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
             }
-            
-            leftover = deadline - System.currentTimeMillis();
 
+            leftover = deadline - System.currentTimeMillis();
         }
 
         return getStatus();
     }
 
-    /**
-     * Signal the polling thread to produce a status update.
-     */
-    private synchronized void triggerStatusUpdate() {
-        if (done) {
-            return;
-        }
+    private synchronized PollingPolicy.Backoff startBackoff() {
 
-        updateSignal = true;
-        notifyAll();
-    }
-
-    /**
-     * Wait for a certain amount of time for an update.
-     * 
-     * @param maxDelay
-     *            the maximum time to wait
-     */
-    private synchronized void waitForStatusUpdate(long maxDelay) {
-
-        if (done || !updateSignal) {
-            return;
+        if (endTime > 0) {
+            long maxRuntime = description.getMaxTime() * MILLISECONDS_IN_MINUTE;
+            return pollingPolicy.start(endTime - maxRuntime, maxRuntime);
         }
-        
-        long deadline = Deadline.getDeadline(maxDelay);
-        
-        long left = maxDelay > 0 ? maxDelay : POLLING_DELAY; 
-        
-        while (!done && updateSignal && left > 0) { 
-            try {
-                wait(left);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
-            }
 
-            if (maxDelay > 0) { 
-                left = deadline - System.currentTimeMillis();
-            } 
-        }
-    }
-    
-    /**
-     * Clear the update signal and wake up any waiting threads
-     */
-    private synchronized void clearUpdateRequest() {
-        updateSignal = false;
-        notifyAll();
+        return pollingPolicy.start();
     }
 
     /**
-     * Sleep for a certain amount of time, provide the job is not done, and no one requested an update.
-     * 
-     * @param maxDelay
-     *            the maximum amount of time to wait
+     * Start the job. The process is created in the calling thread, after which the job is handed over to the reactor. 
      */
-    private synchronized void sleep(long maxDelay) {
+    public void start() {
 
-        if (done || updateSignal || maxDelay <= 0) {
-            return;
-        }
-        
-        long deadline = Deadline.getDeadline(maxDelay);
-        
-        long left = deadline - System.currentTimeMillis();
-        
-        while (!done && !updateSignal && left > 0) { 
-            try {
-                wait(left);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
+        synchronized (this) {
+            if (done) {
+                // killed before it was started
+                return;
             }
-
-            left = deadline - System.currentTimeMillis();
         }
-    }
-
-    @Override
-    public void run() {
-        Process process;
 
-        if (getKilled()) {
-            updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process cancelled by user."));
-            return;
-        }
-
-        long endTime = 0;
         int maxTime = description.getMaxTime();
 
-        if (maxTime > 0) {
-            endTime = System.currentTimeMillis() + maxTime * MILLISECONDS_IN_MINUTE;
-        }
+        Process p;
+        Streams s = null;
 
         try {
             if (interactive) {
-                InteractiveProcess p = factory.createInteractiveProcess(description, jobIdentifier);
-                setStreams(p.getStreams());
-                process = p; 
+                InteractiveProcess tmp = factory.createInteractiveProcess(description, jobIdentifier);
+                s = tmp.getStreams();
+                p = tmp; 
+            } else if (factory instanceof BatchProcessFactory) {
+                p = ((BatchProcessFactory) factory).createBatchProcess(filesystem, workingDirectory, description, jobIdentifier);
             } else {
-                process = new BatchProcess(filesystem, workingDirectory, description, jobIdentifier, factory);
+                p = new BatchProcess(filesystem, workingDirectory, description, jobIdentifier, factory);
             }
         } catch (IOException | XenonException e) {
-            updateState(ERROR_STATE, -1, e);
+            boolean completed;
+
+            synchronized (this) {
+                completed = updateState(ERROR_STATE, -1, e);
+            }
+
+            completed(completed);
             return;
         }
 
-        updateState(RUNNING_STATE, -1, null);
+        synchronized (this) {
+            if (done) {
+                // killed while the process was being created
+                p.destroy();
+                return;
+            }
 
-        while (true) {
+            if (maxTime > 0) {
+                endTime = System.currentTimeMillis() + maxTime * MILLISECONDS_IN_MINUTE;
+            }
 
-            if (process.isDone()) {
-                updateState(DONE_STATE, process.getExitStatus(), null);
-                return;
+            process = p;
+            streams = s;
+            updateState(RUNNING_STATE, -1, null);
+        }
+
+        p.addTerminationListener(new Runnable() {
+            @Override
+            public void run() {
+                reactor.wakeup();
             }
+        });
 
-            if (getKilled()) {
-                // Destroy first, update state last, otherwise we have a race condition!
-                process.destroy();
-                updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process cancelled by user."));                
-                return;
+        reactor.register(this);
+    }
+
+    /**
+     * Check if the process of the job has terminated or exceeded its maximum run time. Does not block.
+     * 
+     * @return if the job is done.
+     */
+    public boolean poll() {
+
+        boolean completed;
+
+        synchronized (this) {
+            if (done) {
+                return true;
             }
 
-            if (maxTime > 0 && System.currentTimeMillis() > endTime) {
+            if (process == null) {
+                return false;
+            }
+
+            if (process.isDone()) {
+                completed = updateState(DONE_STATE, process.getExitStatus(), null);
+            } else if (endTime > 0 && System.currentTimeMillis() > endTime) {
                 // Destroy first, update state last, otherwise we have a race condition!
                 process.destroy();
-                updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process timed out."));
-                return;
+                completed = updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process timed out."));
+            } else {
+                return false;
             }
-
-            clearUpdateRequest();
-
-            sleep(pollingDelay);
         }
-    }
 
+        completed(completed);
+        return true;
+    }
 }
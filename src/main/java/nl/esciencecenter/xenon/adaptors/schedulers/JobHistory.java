@@ -0,0 +1,136 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import nl.esciencecenter.xenon.schedulers.JobStatus;
+
+/**
+ * A bounded history of finished jobs. For each job only its final {@link JobStatus} is kept. Entries are evicted in the order 
+ * in which the jobs finished, once the history exceeds its maximum size, or once an entry exceeds its maximum age.
+ */
+class JobHistory {
+
+    private static final class Entry {
+
+        private final JobStatus status;
+
+        private final long time;
+
+        Entry(JobStatus status, long time) {
+            this.status = status;
+            this.time = time;
+        }
+    }
+
+    private final int maxSize;
+
+    private final long maxAge;
+
+    /** Finished jobs, in the order in which they finished. Guarded by this. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Create a new JobHistory.
+     * 
+     * @param maxSize
+     *          the maximum number of finished jobs to keep, or 0 to keep none.
+     * @param maxAge
+     *          the maximum time (in ms.) to keep a finished job, or 0 to keep them until evicted by size.
+     */
+    JobHistory(int maxSize, long maxAge) {
+
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("History size cannot be negative: " + maxSize);
+        }
+
+        if (maxAge < 0) {
+            throw new IllegalArgumentException("History age cannot be negative: " + maxAge);
+        }
+
+        this.maxSize = maxSize;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Add the final status of a job, evicting older entries if needed.
+     * 
+     * @param status
+     *          the final status of the job.
+     */
+    synchronized void add(JobStatus status) {
+
+        if (maxSize == 0) {
+            return;
+        }
+
+        entries.put(status.getJobIdentifier(), new Entry(status, System.currentTimeMillis()));
+        evict();
+    }
+
+    /**
+     * Get the final status of a job.
+     * 
+     * @param jobIdentifier
+     *          the identifier of the job.
+     * @return 
+     *          the final status of the job, or <code>null</code> if the job is not in the history.
+     */
+    synchronized JobStatus get(String jobIdentifier) {
+        evict();
+
+        Entry e = entries.get(jobIdentifier);
+        return e == null ? null : e.status;
+    }
+
+    /**
+     * Remove a job from the history.
+     * 
+     * @param jobIdentifier
+     *          the identifier of the job.
+     * @return 
+     *          the final status of the job, or <code>null</code> if the job is not in the history.
+     */
+    synchronized JobStatus remove(String jobIdentifier) {
+        Entry e = entries.remove(jobIdentifier);
+        return e == null ? null : e.status;
+    }
+
+    synchronized int size() {
+        evict();
+        return entries.size();
+    }
+
+    private void evict() {
+
+        long deadline = maxAge > 0 ? System.currentTimeMillis() - maxAge : Long.MIN_VALUE;
+
+        Iterator<Entry> itt = entries.values().iterator();
+
+        while (itt.hasNext()) {
+            Entry e = itt.next();
+
+            if (entries.size() <= maxSize && e.time >= deadline) {
+                // Remaining entries are younger.
+                return;
+            }
+
+            itt.remove();
+        }
+    }
+}
@@ -15,13 +15,19 @@
  */
 package nl.esciencecenter.xenon.adaptors.schedulers;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import nl.esciencecenter.xenon.XenonException;
@@ -37,6 +43,7 @@ import nl.esciencecenter.xenon.schedulers.NoSuchQueueException;
 import nl.esciencecenter.xenon.schedulers.QueueStatus;
 import nl.esciencecenter.xenon.schedulers.Scheduler;
 import nl.esciencecenter.xenon.schedulers.Streams;
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,18 +53,6 @@ import org.slf4j.LoggerFactory;
  */
 public class JobQueueScheduler extends Scheduler {
 
-	/**
-	 * Simple thread factory which returns daemon threads instead of normal threads
-	 *
-	 */
-	private class DaemonThreadFactory implements ThreadFactory {
-		public Thread newThread(Runnable runnable) {
-			Thread thread = Executors.defaultThreadFactory().newThread(runnable);
-			thread.setDaemon(true);
-			return thread;
-		}
-	}
-
 	private static final Logger LOGGER = LoggerFactory.getLogger(JobQueueScheduler.class);
 
 	private static final String SINGLE_QUEUE_NAME = "single";
@@ -66,29 +61,55 @@ public class JobQueueScheduler extends Scheduler {
 
 	private static final String UNLIMITED_QUEUE_NAME = "unlimited";
 
+	private static final String RESOURCE_QUEUE_NAME = "resources";
+
+	/** Job option for the number of cores needed by a job in the resources queue. */
+	public static final String JOB_OPTION_CORES = "cores";
+
+	/** Job option for the amount of memory (in MB) needed by a job in the resources queue. */
+	public static final String JOB_OPTION_MEMORY = "memory";
+
 	/** The minimal allowed value for the polling delay */
 	public static final int MIN_POLLING_DELAY = 100;
 
 	/** The maximum allowed value for the polling delay */
 	public static final int MAX_POLLING_DELAY = 60000;
 
+	/** The maximum number of jobs being started concurrently */
+	private static final int LAUNCHER_THREADS = 8;
+
+	/** The default maximum number of finished jobs to remember. */
+	public static final int DEFAULT_MAX_HISTORY = 1000;
+
+	/** The default maximum time to remember a finished job (in ms.) */
+	public static final long DEFAULT_MAX_HISTORY_AGE = 24L * 60L * 60L * 1000L;
+
 	private final String adaptorName;
 
 	private final FileSystem filesystem;
 
 	private final Path workingDirectory;
 
-	private final List<JobExecutor> singleQ = new LinkedList<>();
+	private final JobQueue singleQ;
+
+	private final JobQueue multiQ;
+
+	private final JobQueue unlimitedQ;
 
-	private final List<JobExecutor> multiQ = new LinkedList<>();
+	/** Queue that schedules jobs by the cores and memory they need, or <code>null</code> if not available. */
+	private final ResourceQueue resourceQ;
 
-	private final List<JobExecutor> unlimitedQ = new LinkedList<>();
+	/** Index of all unfinished jobs known to this scheduler. */
+	private final ConcurrentHashMap<String, Registration> jobs = new ConcurrentHashMap<>();
 
-	private final ExecutorService singleExecutor;
+	/** Final status of finished jobs that have not been retrieved yet. */
+	private final JobHistory history;
 
-	private final ExecutorService multiExecutor;
+	/** Pool used to create the processes of jobs. Only occupied while a job is being started. */
+	private final ThreadPoolExecutor launcher;
 
-	private final ExecutorService unlimitedExecutor;
+	/** Tracks all running jobs using a single thread. */
+	private final ProcessReactor reactor;
 
 	private final long pollingDelay;
 
@@ -96,10 +117,28 @@ public class JobQueueScheduler extends Scheduler {
 
 	private final AtomicLong jobID = new AtomicLong(0L);
 
-	private final ArrayList<List<JobExecutor>> queues = new ArrayList<List<JobExecutor>>(); 
 
 	public JobQueueScheduler(String uniqueID, String adaptorName, String location, InteractiveProcessFactory factory, 
 			FileSystem filesystem, Path workingDirectory, int multiQThreads, long pollingDelay, XenonProperties properties) throws BadParameterException {
+		this(uniqueID, adaptorName, location, factory, filesystem, workingDirectory, multiQThreads, pollingDelay, DEFAULT_MAX_HISTORY, 
+				DEFAULT_MAX_HISTORY_AGE, properties);
+	}
+
+	public JobQueueScheduler(String uniqueID, String adaptorName, String location, InteractiveProcessFactory factory, 
+			FileSystem filesystem, Path workingDirectory, int multiQThreads, long pollingDelay, int maxHistory, long maxHistoryAge, 
+			XenonProperties properties) throws BadParameterException {
+		this(uniqueID, adaptorName, location, factory, filesystem, workingDirectory, multiQThreads, pollingDelay, maxHistory, 
+				maxHistoryAge, 0, 0, false, properties);
+	}
+
+	/**
+	 * Create a JobQueueScheduler. If <code>resourceCores</code> is positive, an additional <code>resources</code> queue is 
+	 * available, which runs jobs concurrently as long as the cores and memory they request (using the 
+	 * {@link #JOB_OPTION_CORES} and {@link #JOB_OPTION_MEMORY} job options) are available.
+	 */
+	public JobQueueScheduler(String uniqueID, String adaptorName, String location, InteractiveProcessFactory factory, 
+			FileSystem filesystem, Path workingDirectory, int multiQThreads, long pollingDelay, int maxHistory, long maxHistoryAge, 
+			int resourceCores, long resourceMemory, boolean pinning, XenonProperties properties) throws BadParameterException {
 
 		super(uniqueID, adaptorName, location, properties);
 
@@ -112,10 +151,6 @@ public class JobQueueScheduler extends Scheduler {
 		this.factory = factory;
 		this.pollingDelay = pollingDelay;
 
-		queues.add(singleQ);
-		queues.add(multiQ);
-		queues.add(unlimitedQ);
-
 		if (multiQThreads < 1) {
 			throw new BadParameterException(adaptorName, "Number of slots for the multi queue cannot be smaller than one!");
 		}
@@ -125,23 +160,289 @@ public class JobQueueScheduler extends Scheduler {
 					+ MAX_POLLING_DELAY + "!");
 		}
 
-		ThreadFactory threadFactory = new DaemonThreadFactory();
+		if (maxHistory < 0) {
+			throw new BadParameterException(adaptorName, "History size cannot be negative!");
+		}
+
+		if (maxHistoryAge < 0) {
+			throw new BadParameterException(adaptorName, "History age cannot be negative!");
+		}
+
+		if (resourceCores < 0 || resourceMemory < 0) {
+			throw new BadParameterException(adaptorName, "Resources of the resources queue cannot be negative!");
+		}
+
+		history = new JobHistory(maxHistory, maxHistoryAge);
+
+		launcher = new ThreadPoolExecutor(LAUNCHER_THREADS, LAUNCHER_THREADS, 60L, TimeUnit.SECONDS, 
+				new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory(adaptorName + "-launcher"));
+		launcher.allowCoreThreadTimeOut(true);
+
+		reactor = new ProcessReactor(adaptorName, pollingDelay);
+
+		unlimitedQ = new JobQueue(UNLIMITED_QUEUE_NAME, Integer.MAX_VALUE);
+		singleQ = new JobQueue(SINGLE_QUEUE_NAME, 1);
+		multiQ = new JobQueue(MULTI_QUEUE_NAME, multiQThreads);
+
+		if (resourceCores > 0) {
+			resourceQ = new ResourceQueue(new ResourcePool<JobExecutor>(resourceCores, resourceMemory, pinning));
+		} else {
+			resourceQ = null;
+		}
+	}
+
+	/**
+	 * Entry in the job index, linking a job to the queue it was submitted to.
+	 */
+	private static final class Registration {
+
+		private final JobExecutor job;
 
-		unlimitedExecutor = Executors.newCachedThreadPool(threadFactory);
-		singleExecutor = Executors.newSingleThreadExecutor(threadFactory);
-		multiExecutor = Executors.newFixedThreadPool(multiQThreads, threadFactory);
+		private final JobQueue queue;
+
+		private final long sequence;
+
+		Registration(JobExecutor job, JobQueue queue, long sequence) {
+			this.job = job;
+			this.queue = queue;
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * A queue of jobs. Keeps all jobs submitted to the queue in submission order, and enforces the number of jobs of the queue 
+	 * that may run concurrently. Jobs wait until a slot is free, and are then started on the launcher pool. 
+	 */
+	private class JobQueue implements JobExecutor.CompletionListener {
+
+		final String name;
+
+		final int slots;
+
+		/** All jobs in this queue, ordered by submission. */
+		private final ConcurrentSkipListMap<Long, JobExecutor> jobs = new ConcurrentSkipListMap<>();
+
+		/** Number of jobs in this queue. */
+		private final AtomicInteger size = new AtomicInteger(0);
+
+		/** Jobs waiting for a slot. Guarded by this. */
+		final LinkedHashSet<JobExecutor> waiting = new LinkedHashSet<>();
+
+		/** Number of slots in use. Guarded by this. */
+		int running = 0;
+
+		JobQueue(String name, int slots) {
+			this.name = name;
+			this.slots = slots;
+		}
+
+		void add(long sequence, JobExecutor job) {
+			jobs.put(sequence, job);
+			size.incrementAndGet();
+		}
+
+		void remove(long sequence) {
+			if (jobs.remove(sequence) != null) {
+				size.decrementAndGet();
+			}
+		}
+
+		void getJobs(List<String> out) {
+			for (JobExecutor e : jobs.values()) {
+				out.add(e.getJobIdentifier());
+			}
+		}
+
+		synchronized void execute(JobExecutor job) {
+			waiting.add(job);
+			dispatch();
+		}
+
+		@Override
+		public void jobDone(JobExecutor job) {
+			synchronized (this) {
+				// Jobs killed before they got a slot did not use one.
+				if (!waiting.remove(job)) {
+					release(job);
+				}
+
+				dispatch();
+			}
+
+			retire(job);
+		}
+
+		/** Release the slot of a job that has finished. Called while holding the lock. */
+		void release(JobExecutor job) {
+			running--;
+		}
+
+		/** Start waiting jobs while slots are available. Called while holding the lock. */
+		void dispatch() {
+			Iterator<JobExecutor> itt = waiting.iterator();
+
+			while (running < slots && itt.hasNext()) {
+				final JobExecutor job = itt.next();
+				itt.remove();
+				running++;
+				launch(job);
+			}
+		}
+
+		void launch(final JobExecutor job) {
+			launcher.execute(new Runnable() {
+				@Override
+				public void run() {
+					job.start();
+				}
+			});
+		}
+
+		/** Add queue specific information to the queue status. Called while holding the lock. */
+		void addInfo(Map<String, String> info) {
+			info.put("slots", slots == Integer.MAX_VALUE ? "unlimited" : Integer.toString(slots));
+		}
+
+		QueueStatus getStatus() {
+			Map<String, String> info = new HashMap<>(8);
+			info.put("jobs", Integer.toString(size.get()));
+
+			synchronized (this) {
+				info.put("waiting", Integer.toString(waiting.size()));
+				info.put("running", Integer.toString(running));
+				addInfo(info);
+			}
+
+			return new QueueStatusImplementation(JobQueueScheduler.this, name, null, info);
+		}
 	}
 	
-	public long getCurrentJobID() {
-		return jobID.get();
+	/**
+	 * A queue that starts jobs when the cores and memory they request are available, with backfilling of smaller jobs. 
+	 * Optionally, each job is pinned to the CPUs assigned to it using <code>taskset</code>.
+	 */
+	private class ResourceQueue extends JobQueue {
+
+		private final ResourcePool<JobExecutor> pool;
+
+		/** Resources requested by waiting jobs. Guarded by this. */
+		private final Map<JobExecutor, ResourcePool.Request> requests = new HashMap<>();
+
+		ResourceQueue(ResourcePool<JobExecutor> pool) {
+			super(RESOURCE_QUEUE_NAME, pool.getCores());
+			this.pool = pool;
+		}
+
+		@Override
+		synchronized void execute(JobExecutor job) {
+			try {
+				requests.put(job, getResourceRequest(job.getJobDescription()));
+			} catch (InvalidJobDescriptionException e) {
+				// Cannot happen, as the description was verified on submission.
+				throw new IllegalStateException(e);
+			}
+
+			super.execute(job);
+		}
+
+		@Override
+		void release(JobExecutor job) {
+			pool.release(job);
+			running--;
+		}
+
+		@Override
+		void dispatch() {
+
+			if (waiting.isEmpty()) {
+				return;
+			}
+
+			// Jobs killed while waiting no longer need their request.
+			requests.keySet().retainAll(waiting);
+
+			List<Map.Entry<JobExecutor, ResourcePool.Request>> candidates = new ArrayList<>(waiting.size());
+
+			for (JobExecutor job : waiting) {
+				candidates.add(new AbstractMap.SimpleImmutableEntry<>(job, requests.get(job)));
+			}
+
+			for (JobExecutor job : pool.schedule(candidates, System.currentTimeMillis())) {
+				waiting.remove(job);
+				requests.remove(job);
+				running++;
+
+				String cpus = pool.getAllocation(job).getCpuList();
+
+				if (cpus != null) {
+					pin(job.getJobDescription(), cpus);
+				}
+
+				launch(job);
+			}
+		}
+
+		@Override
+		void addInfo(Map<String, String> info) {
+			info.put("cores", Integer.toString(pool.getCores()));
+			info.put("freeCores", Integer.toString(pool.getFreeCores()));
+
+			if (pool.getMemory() > 0) {
+				info.put("memory", Long.toString(pool.getMemory()));
+				info.put("freeMemory", Long.toString(pool.getFreeMemory()));
+			}
+		}
 	}
 
-	private void getJobs(List<JobExecutor> list, List<String> out) {
-		for (JobExecutor e : list) {
-			out.add(e.getJobIdentifier());
+	/**
+	 * Prefix the command of a job with <code>taskset</code> to run it on the given CPUs only.
+	 */
+	private static void pin(JobDescription description, String cpus) {
+
+		List<String> arguments = new ArrayList<>();
+		arguments.add("-c");
+		arguments.add(cpus);
+		arguments.add(description.getExecutable());
+		arguments.addAll(description.getArguments());
+
+		description.setExecutable("taskset");
+		description.setArguments(arguments.toArray(new String[arguments.size()]));
+	}
+
+	private static int getIntOption(JobDescription description, String option, int defaultValue) throws InvalidJobDescriptionException {
+		String value = description.getJobOptions().get(option);
+
+		if (value == null) {
+			return defaultValue;
+		}
+
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new InvalidJobDescriptionException(null, "Illegal value for job option " + option + ": " + value, e);
 		}
 	}
 
+	/**
+	 * Get the resources requested by a job in the resources queue. The number of cores defaults to the number of processes 
+	 * per node, the memory defaults to 0.
+	 */
+	private static ResourcePool.Request getResourceRequest(JobDescription description) throws InvalidJobDescriptionException {
+
+		int cores = getIntOption(description, JOB_OPTION_CORES, description.getProcessesPerNode());
+		long memory = getIntOption(description, JOB_OPTION_MEMORY, 0);
+
+		if (cores < 1 || memory < 0) {
+			throw new InvalidJobDescriptionException(null, "Illegal resource request: cores=" + cores + " memory=" + memory);
+		}
+
+		return new ResourcePool.Request(cores, memory, description.getMaxTime() * 60L * 1000L);
+	}
+
+	public long getCurrentJobID() {
+		return jobID.get();
+	}
+
 	public String getDefaultQueueName() throws XenonException {
 		return SINGLE_QUEUE_NAME;
 	}
@@ -150,23 +451,19 @@ public class JobQueueScheduler extends Scheduler {
 
 		LOGGER.debug("{}: getJobs for queues {}", adaptorName, queueNames);
 
-		LinkedList<String> out = new LinkedList<>();
+		ArrayList<String> out = new ArrayList<>();
 
 		if (queueNames == null || queueNames.length == 0) {
-			getJobs(singleQ, out);
-			getJobs(multiQ, out);
-			getJobs(unlimitedQ, out);
+			singleQ.getJobs(out);
+			multiQ.getJobs(out);
+			unlimitedQ.getJobs(out);
+
+			if (resourceQ != null) {
+				resourceQ.getJobs(out);
+			}
 		} else {
 			for (String name : queueNames) {
-				if (SINGLE_QUEUE_NAME.equals(name)) {
-					getJobs(singleQ, out);
-				} else if (MULTI_QUEUE_NAME.equals(name)) {
-					getJobs(multiQ, out);
-				} else if (UNLIMITED_QUEUE_NAME.equals(name)) {
-					getJobs(unlimitedQ, out);
-				} else {
-					throw new NoSuchQueueException(adaptorName, "Queue \"" + name + "\" does not exist");
-				}
+				findQueue(name).getJobs(out);
 			}
 		}
 
@@ -175,83 +472,96 @@ public class JobQueueScheduler extends Scheduler {
 		return out.toArray(new String[out.size()]);
 	}
 
-	//    private List<JobExecutor> findQueue(String queueName) throws XenonException {
-	//
-	//        if (queueName == null || SINGLE_QUEUE_NAME.equals(queueName)) {
-	//            return singleQ;
-	//        } else if (MULTI_QUEUE_NAME.equals(queueName)) {
-	//            return multiQ;
-	//        } else if (UNLIMITED_QUEUE_NAME.equals(queueName)) {
-	//            return unlimitedQ;
-	//        } else {
-	//            throw new XenonException(adaptorName, "Queue \"" + queueName + "\" does not exist!");
-	//        }
-	//    }
-
-	private JobExecutor findJob(List<JobExecutor> queue, String jobIdentifier) throws XenonException {
-
-		LOGGER.debug("{}: findJob for job {}", adaptorName, jobIdentifier);
+	private JobQueue findQueue(String queueName) throws NoSuchQueueException {
 
-		for (JobExecutor e : queue) {
-			if (jobIdentifier.equals(e.getJobIdentifier())) {
-				return e;
-			}
+		if (SINGLE_QUEUE_NAME.equals(queueName)) {
+			return singleQ;
+		} else if (MULTI_QUEUE_NAME.equals(queueName)) {
+			return multiQ;
+		} else if (UNLIMITED_QUEUE_NAME.equals(queueName)) {
+			return unlimitedQ;
+		} else if (resourceQ != null && RESOURCE_QUEUE_NAME.equals(queueName)) {
+			return resourceQ;
+		} else {
+			throw new NoSuchQueueException(adaptorName, "Queue \"" + queueName + "\" does not exist");
 		}
-
-		return null;
 	}
 
+	/**
+	 * Find an unfinished job. 
+	 * 
+	 * @return the job, or <code>null</code> if the job has finished and is only present in the history. 
+	 * @throws NoSuchJobException if the job is not known. 
+	 */
 	private JobExecutor findJob(String jobIdentifier) throws XenonException {
 
 		LOGGER.debug("{}: findJob for job {}", adaptorName, jobIdentifier);
 
 		assertNonNullOrEmpty(jobIdentifier, "Job identifier cannot be null or empty");
 		
-		JobExecutor e = null;
+		Registration r = jobs.get(jobIdentifier);
 
-		for (List<JobExecutor> queue : queues) { 
-			e = findJob(queue, jobIdentifier);
+		if (r != null) {
+			return r.job;
+		}
 
-			if (e != null) { 
-				return e;
-			}
+		// NOTE: finished jobs are added to the history before they are removed from the index.
+		findFinishedJob(jobIdentifier);
+		return null;
+	}
+
+	private JobStatus findFinishedJob(String jobIdentifier) throws XenonException {
+
+		JobStatus status = history.get(jobIdentifier);
+
+		if (status == null) {
+			throw new NoSuchJobException(adaptorName, "Job " + jobIdentifier + " does not exist!");
 		}
 
-		throw new NoSuchJobException(adaptorName, "Job " + jobIdentifier + " does not exist!");
+		return status;
 	}
 
-	private boolean cleanupJob(List<JobExecutor> queue, String jobIdentifier) {
+	private JobStatus getStatus(JobExecutor ex, String jobIdentifier) throws XenonException {
+		return ex == null ? findFinishedJob(jobIdentifier) : ex.getStatus();
+	}
 
-		LOGGER.debug("{}: cleanupJob for job {}", adaptorName, jobIdentifier);
+	/**
+	 * Move a finished job from the index to the history, replacing the executor by its final status.
+	 */
+	private void retire(JobExecutor job) {
 
-		Iterator<JobExecutor> itt = queue.iterator();
+		String jobIdentifier = job.getJobIdentifier();
 
-		while (itt.hasNext()) {
-			JobExecutor e = itt.next();
+		history.add(job.getStatus());
 
-			if (e.getJobIdentifier().equals(jobIdentifier)) {
-				itt.remove();
-				return true;
-			}
-		}
+		Registration r = jobs.remove(jobIdentifier);
 
-		return false;
+		if (r == null) {
+			// The final status was already retrieved by a client. 
+			history.remove(jobIdentifier);
+		} else {
+			r.queue.remove(r.sequence);
+		}
 	}
 
 	private void cleanupJob(String jobIdentifier) {
 
-		for (List<JobExecutor> queue : queues) { 
-			if (cleanupJob(queue, jobIdentifier)) { 
-				return;
-			}
+		LOGGER.debug("{}: cleanupJob for job {}", adaptorName, jobIdentifier);
+
+		// Only the thread that removes the job from the index also removes it from its queue.
+		Registration r = jobs.remove(jobIdentifier);
+
+		if (r != null) {
+			r.queue.remove(r.sequence);
 		}
-	}
 
+		history.remove(jobIdentifier);
+	}
 
 	public JobStatus getJobStatus(String jobIdentifier) throws XenonException {
 		LOGGER.debug("{}: getJobStatus for job {}", adaptorName, jobIdentifier);
 		
-		JobStatus status = findJob(jobIdentifier).getStatus();
+		JobStatus status = getStatus(findJob(jobIdentifier), jobIdentifier);
 
 		if (status.isDone()) {
 			cleanupJob(jobIdentifier);
@@ -288,7 +598,7 @@ public class JobQueueScheduler extends Scheduler {
 		
 		assertPositive(timeout, "Illegal timeout ");
 		
-		JobStatus status = ex.waitUntilDone(timeout);
+		JobStatus status = ex == null ? findFinishedJob(jobIdentifier) : ex.waitUntilDone(timeout);
 
 		if (status.isDone()) {
 			LOGGER.debug("{}: Job {} is done after {} ms.", adaptorName, jobIdentifier, timeout);
@@ -308,7 +618,7 @@ public class JobQueueScheduler extends Scheduler {
 		
 		assertPositive(timeout, "Illegal timeout ");
 		
-		JobStatus status = ex.waitUntilRunning(timeout);
+		JobStatus status = ex == null ? findFinishedJob(jobIdentifier) : ex.waitUntilRunning(timeout);
 
 		if (status.isDone()) {
 			LOGGER.debug("{}: Job {} is done within {} ms.", adaptorName, jobIdentifier, timeout);
@@ -330,7 +640,9 @@ public class JobQueueScheduler extends Scheduler {
 			description.setQueueName(SINGLE_QUEUE_NAME);
 		}
 
-		if (!(SINGLE_QUEUE_NAME.equals(queue) || MULTI_QUEUE_NAME.equals(queue) || UNLIMITED_QUEUE_NAME.equals(queue))) {
+		boolean resources = resourceQ != null && RESOURCE_QUEUE_NAME.equals(queue);
+
+		if (!(SINGLE_QUEUE_NAME.equals(queue) || MULTI_QUEUE_NAME.equals(queue) || UNLIMITED_QUEUE_NAME.equals(queue) || resources)) {
 			throw new InvalidJobDescriptionException(adaptorName, "Queue " + queue + " not available locally!");
 		}
 
@@ -348,7 +660,20 @@ public class JobQueueScheduler extends Scheduler {
 
 		int processesPerNode = description.getProcessesPerNode();
 
-		if (processesPerNode != 1) {
+		if (resources) {
+			ResourcePool.Request request;
+
+			try {
+				request = getResourceRequest(description);
+			} catch (InvalidJobDescriptionException e) {
+				throw new InvalidJobDescriptionException(adaptorName, e.getMessage(), e);
+			}
+
+			if (!resourceQ.pool.canFit(request)) {
+				throw new InvalidJobDescriptionException(adaptorName, "Job requests more resources than available: cores=" 
+						+ request.getCores() + " memory=" + request.getMemory());
+			}
+		} else if (processesPerNode != 1) {
 			throw new InvalidJobDescriptionException(adaptorName, "Illegal processes per node count: " + processesPerNode);
 		}
 
@@ -380,28 +705,24 @@ public class JobQueueScheduler extends Scheduler {
 
 		verifyJobDescription(description, interactive);
 
-		String jobIdentifier = adaptorName + "-" + jobID.getAndIncrement();
+		long sequence = jobID.getAndIncrement();
+		String jobIdentifier = adaptorName + "-" + sequence;
 
 		LOGGER.debug("{}: Created Job {}", adaptorName, jobIdentifier);
 
-		JobExecutor executor = new JobExecutor(adaptorName, filesystem, workingDirectory, factory, 
-				new JobDescription(description), jobIdentifier, interactive, pollingDelay);
-
 		String queueName = description.getQueueName();
 
 		LOGGER.debug("{}: Submitting job to queue {}", adaptorName, queueName);
 
 		// NOTE: the verifyJobDescription ensures that the queueName has a valid value!
-		if (UNLIMITED_QUEUE_NAME.equals(queueName)) {
-			unlimitedQ.add(executor);
-			unlimitedExecutor.execute(executor);
-		} else if (MULTI_QUEUE_NAME.equals(queueName)) {
-			multiQ.add(executor);
-			multiExecutor.execute(executor);
-		} else { // queueName must be SINGLE_QUEUE_NAME
-			singleQ.add(executor);
-			singleExecutor.execute(executor);
-		}
+		JobQueue queue = findQueue(queueName);
+
+		JobExecutor executor = new JobExecutor(adaptorName, filesystem, workingDirectory, factory, 
+				new JobDescription(description), jobIdentifier, interactive, pollingDelay, reactor, queue);
+
+		jobs.put(jobIdentifier, new Registration(executor, queue, sequence));
+		queue.add(sequence, executor);
+		queue.execute(executor);
 
 		return executor;
 	}    
@@ -431,12 +752,12 @@ public class JobQueueScheduler extends Scheduler {
 		LOGGER.debug("{}: Cancel job {}", adaptorName, jobIdentifier);
 
 		JobExecutor e = findJob(jobIdentifier);
-		
-		boolean killed = e.kill();
 
 		JobStatus status;
 
-		if (killed) {
+		if (e == null) {
+			status = findFinishedJob(jobIdentifier);
+		} else if (e.kill()) {
 			status = e.getStatus();
 		} else {
 			status = e.waitUntilDone(pollingDelay);
@@ -457,18 +778,15 @@ public class JobQueueScheduler extends Scheduler {
 			throw new IllegalArgumentException("Adaptor " + adaptorName + ": Queue name is null!");
 		}
 
-		if (SINGLE_QUEUE_NAME.equals(queueName)) {
-			return new QueueStatusImplementation(this, SINGLE_QUEUE_NAME, null, null);
-		} else if (MULTI_QUEUE_NAME.equals(queueName)) {
-			return new QueueStatusImplementation(this, MULTI_QUEUE_NAME, null, null);
-		} else if (UNLIMITED_QUEUE_NAME.equals(queueName)) {
-			return new QueueStatusImplementation(this, UNLIMITED_QUEUE_NAME, null, null);
-		} else {
-			throw new NoSuchQueueException(adaptorName, "No such queue: " + queueName);
-		}
+		return findQueue(queueName).getStatus();
 	}
 
 	public String [] getQueueNames() { 
+
+		if (resourceQ != null) {
+			return new String[] { SINGLE_QUEUE_NAME, MULTI_QUEUE_NAME, UNLIMITED_QUEUE_NAME, RESOURCE_QUEUE_NAME };
+		}
+
 		return new String[] { SINGLE_QUEUE_NAME, MULTI_QUEUE_NAME, UNLIMITED_QUEUE_NAME };
 	}
 
@@ -481,7 +799,7 @@ public class JobQueueScheduler extends Scheduler {
 		}
 
 		if (names.length == 0) {
-			names = new String[] { SINGLE_QUEUE_NAME, MULTI_QUEUE_NAME, UNLIMITED_QUEUE_NAME };
+			names = getQueueNames();
 		}
 
 		QueueStatus[] result = new QueueStatus[names.length];
@@ -507,13 +825,18 @@ public class JobQueueScheduler extends Scheduler {
 	//    }
 
 	public void end() {
-		singleExecutor.shutdownNow();
-		multiExecutor.shutdownNow();
-		unlimitedExecutor.shutdownNow();
+		launcher.shutdownNow();
+		reactor.stop();
+	}
+
+	@Override
+	protected long getAsyncPollDelay() {
+		return pollingDelay;
 	}
 
 	@Override
 	public void close() throws XenonException {
+		stopWaitingAsync();
 		factory.close();
 	}
 
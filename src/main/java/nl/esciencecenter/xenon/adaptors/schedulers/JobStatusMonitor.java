@@ -0,0 +1,435 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.schedulers.JobStatus;
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
+
+/**
+ * Keeps a snapshot of the status of all jobs tracked by a {@link ScriptingScheduler}. 
+ * 
+ * A background thread refreshes the status of all tracked jobs using a single bulk query (see 
+ * {@link ScriptingScheduler#queryJobStatuses(String...)}) every <code>pollDelay</code> milliseconds. Status requests are 
+ * served from this snapshot, unless it is older than <code>maxStaleness</code> milliseconds, in which case the snapshot 
+ * is refreshed first. Concurrent requests for a stale snapshot share a single refresh.
+ * 
+ * Jobs are tracked as soon as they are submitted or their status is requested. A job is no longer polled once it is done. 
+ * Its final status is kept until it has been returned once, or until {@link #FINISHED_JOB_RETENTION} has expired.   
+ */
+public class JobStatusMonitor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobStatusMonitor.class);
+
+    /** Time in ms. for which the final status of a job is kept when no one asks for it. */
+    public static final long FINISHED_JOB_RETENTION = 10L * 60L * 1000L;
+
+    private static class Snapshot {
+        private final JobStatus status;
+        private final long time;
+
+        Snapshot(JobStatus status, long time) {
+            this.status = status;
+            this.time = time;
+        }
+    }
+
+    private final ScriptingScheduler scheduler;
+
+    private final long pollDelay;
+
+    private final long maxStaleness;
+
+    private final ScheduledExecutorService executor;
+
+    /** Ensures only a single bulk query is running at any time. */
+    private final Object refreshLock = new Object();
+
+    /** The latest status of all tracked jobs. Guarded by this. */
+    private final Map<String, Snapshot> snapshots = new HashMap<>();
+
+    /** The time at which the last successful refresh started. Guarded by this. */
+    private long lastRefresh = -1;
+
+    /** The number of successful refreshes so far. Guarded by this. */
+    private long refreshCount = 0;
+
+    /**
+     * Create a JobStatusMonitor and start its background thread.
+     * 
+     * @param scheduler
+     *          the scheduler to query
+     * @param pollDelay
+     *          the delay in ms. between two bulk queries 
+     * @param maxStaleness
+     *          the maximum age in ms. of a status returned by this monitor
+     */
+    public JobStatusMonitor(ScriptingScheduler scheduler, long pollDelay, long maxStaleness) {
+
+        if (pollDelay <= 0) {
+            throw new IllegalArgumentException("Poll delay must be positive: " + pollDelay);
+        }
+
+        if (maxStaleness < 0) {
+            throw new IllegalArgumentException("Maximum staleness may not be negative: " + maxStaleness);
+        }
+
+        this.scheduler = scheduler;
+        this.pollDelay = pollDelay;
+        this.maxStaleness = maxStaleness;
+
+        executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(scheduler.getAdaptorName() + "-status-monitor"));
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, pollDelay, pollDelay, TimeUnit.MILLISECONDS);
+    }
+
+    public long getPollDelay() {
+        return pollDelay;
+    }
+
+    /**
+     * Start tracking a job. The job will be included in the next bulk query.
+     * 
+     * @param jobIdentifier
+     *          the job to track.
+     */
+    public synchronized void addJob(String jobIdentifier) {
+        if (!snapshots.containsKey(jobIdentifier)) {
+            // A snapshot without status is a job we have not queried yet. Its time is the time it was added.
+            snapshots.put(jobIdentifier, new Snapshot(null, System.currentTimeMillis()));
+        }
+    }
+
+    private synchronized Snapshot getSnapshot(String jobIdentifier) {
+        return snapshots.get(jobIdentifier);
+    }
+
+    private synchronized void update(JobStatus[] statuses, long time) {
+
+        boolean changed = false;
+
+        for (JobStatus status : statuses) {
+            if (status != null) {
+                Snapshot old = snapshots.put(status.getJobIdentifier(), new Snapshot(status, time));
+                changed |= old == null || old.status == null || !sameState(old.status, status);
+            }
+        }
+
+        if (changed) {
+            // Wake up any thread waiting for a change, without waiting for the refresh to complete.
+            notifyAll();
+        }
+    }
+
+    private static boolean sameState(JobStatus a, JobStatus b) {
+        return a.isDone() == b.isDone() && (a.getState() == null ? b.getState() == null : a.getState().equals(b.getState()));
+    }
+
+    private synchronized String[] getPolledJobs() {
+        ArrayList<String> result = new ArrayList<>(snapshots.size());
+
+        long now = System.currentTimeMillis();
+
+        Iterator<Map.Entry<String, Snapshot>> itt = snapshots.entrySet().iterator();
+
+        while (itt.hasNext()) {
+            Map.Entry<String, Snapshot> entry = itt.next();
+            JobStatus status = entry.getValue().status;
+
+            if (status == null || !status.isDone()) {
+                result.add(entry.getKey());
+            } else if (now - entry.getValue().time > FINISHED_JOB_RETENTION) {
+                itt.remove();
+            }
+        }
+
+        return result.toArray(new String[result.size()]);
+    }
+
+    private synchronized long getLastRefresh() {
+        return lastRefresh;
+    }
+
+    private synchronized void refreshDone(long time) {
+        lastRefresh = time;
+        refreshCount++;
+        notifyAll();
+    }
+
+    /**
+     * Returns the time a refresh must have started to satisfy a request for this snapshot, or 0 if the snapshot is fresh 
+     * enough as it is. The final status of a job never becomes stale.   
+     */
+    private long requiredRefresh(Snapshot snapshot) {
+        if (snapshot.status == null) {
+            return snapshot.time;
+        }
+
+        if (snapshot.status.isDone()) {
+            return 0;
+        }
+
+        long notBefore = System.currentTimeMillis() - maxStaleness;
+
+        return snapshot.time < notBefore ? notBefore : 0;
+    }
+
+    /**
+     * Refresh the status of all tracked jobs using a single bulk query, unless a refresh that started at or after 
+     * <code>notBefore</code> has already completed. Concurrent callers will therefore share a single bulk query.
+     */
+    private void refresh(long notBefore) throws XenonException {
+        synchronized (refreshLock) {
+            if (getLastRefresh() >= notBefore) {
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+
+            String[] jobs = getPolledJobs();
+
+            if (jobs.length > 0) {
+                LOGGER.debug("Refreshing the status of {} jobs", jobs.length);
+                update(scheduler.queryJobStatuses(jobs), start);
+            }
+
+            refreshDone(start);
+        }
+    }
+
+    private void poll() {
+        try {
+            refresh(System.currentTimeMillis());
+        } catch (Exception e) {
+            // Keep the old snapshot. It will become stale, forcing the next status request to query the scheduler itself.
+            LOGGER.warn("Failed to refresh job statuses", e);
+        }
+    }
+
+    /**
+     * Wait until the next refresh has completed, or the timeout expires.
+     * 
+     * @param timeout
+     *          the maximum time to wait in ms. 
+     */
+    public synchronized void awaitRefresh(long timeout) {
+
+        long current = refreshCount;
+        long deadline = Deadline.getDeadline(timeout);
+        long left = deadline - System.currentTimeMillis();
+
+        while (current == refreshCount && left > 0) {
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            left = deadline - System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Wait until the monitor sees the state of a job change from <code>state</code>, or the timeout expires. If the job 
+     * is not tracked, this waits until the job is tracked with a different state or the timeout expires.
+     * 
+     * @param jobIdentifier
+     *          the job to wait for.
+     * @param state
+     *          the last state of the job known to the caller.
+     * @param timeout
+     *          the maximum time to wait in ms. 
+     */
+    public synchronized void awaitChange(String jobIdentifier, String state, long timeout) {
+
+        long deadline = Deadline.getDeadline(timeout);
+        long left = deadline - System.currentTimeMillis();
+
+        while (left > 0 && !hasChanged(jobIdentifier, state)) {
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            left = deadline - System.currentTimeMillis();
+        }
+    }
+
+    private boolean hasChanged(String jobIdentifier, String state) {
+
+        Snapshot snapshot = snapshots.get(jobIdentifier);
+
+        if (snapshot == null || snapshot.status == null) {
+            return false;
+        }
+
+        String current = snapshot.status.getState();
+
+        return snapshot.status.isDone() || (current == null ? state != null : !current.equals(state));
+    }
+
+    /**
+     * Return the status of a job and forget it if it is done. Statuses that only carry the exception produced while 
+     * retrieving them are also forgotten.
+     */
+    private synchronized JobStatus serve(String jobIdentifier, JobStatus status) {
+        if (status.isDone() || status.getState() == null) {
+            snapshots.remove(jobIdentifier);
+        }
+        return status;
+    }
+
+    /**
+     * Get the status of a job. If the job is not tracked yet, it is queried directly and tracked from now on.
+     * 
+     * @param jobIdentifier
+     *          the job to get the status for.
+     * @return
+     *          the status of the job, at most <code>maxStaleness</code> ms. old.
+     * @throws XenonException
+     *          if the job is unknown or the status could not be retrieved. 
+     */
+    public JobStatus getJobStatus(String jobIdentifier) throws XenonException {
+
+        Snapshot snapshot = getSnapshot(jobIdentifier);
+
+        if (snapshot != null) {
+            long notBefore = requiredRefresh(snapshot);
+
+            if (notBefore > 0) {
+                refresh(notBefore);
+                snapshot = getSnapshot(jobIdentifier);
+            }
+        }
+
+        JobStatus status;
+
+        if (snapshot == null || snapshot.status == null) {
+            // Not tracked (anymore), so ask the scheduler directly
+            long start = System.currentTimeMillis();
+            status = scheduler.coalescedJobStatuses(jobIdentifier)[0];
+            update(new JobStatus[] { status }, start);
+        } else {
+            status = snapshot.status;
+        }
+
+        serve(jobIdentifier, status);
+
+        return ScriptingScheduler.checkRetrievalException(status);
+    }
+
+    /**
+     * Get the status of many jobs. Jobs that are not tracked yet are queried directly (in bulk) and tracked from now on.
+     * 
+     * @param jobIdentifiers
+     *          the jobs to get the status for.
+     * @return
+     *          the statuses of the jobs, in the same order as the job identifiers. 
+     * @throws XenonException
+     *          if the statuses could not be retrieved. 
+     */
+    public JobStatus[] getJobStatuses(String... jobIdentifiers) throws XenonException {
+
+        Set<String> unknown = new LinkedHashSet<>();
+
+        long notBefore = 0;
+
+        for (String jobIdentifier : jobIdentifiers) {
+            if (jobIdentifier != null) {
+                Snapshot snapshot = getSnapshot(jobIdentifier);
+
+                if (snapshot == null) {
+                    unknown.add(jobIdentifier);
+                } else {
+                    notBefore = Math.max(notBefore, requiredRefresh(snapshot));
+                }
+            }
+        }
+
+        if (notBefore > 0) {
+            refresh(notBefore);
+        }
+
+        JobStatus[] result = new JobStatus[jobIdentifiers.length];
+
+        for (int i = 0; i < jobIdentifiers.length; i++) {
+            if (jobIdentifiers[i] != null) {
+                Snapshot snapshot = getSnapshot(jobIdentifiers[i]);
+
+                if (snapshot == null || snapshot.status == null) {
+                    unknown.add(jobIdentifiers[i]);
+                } else {
+                    result[i] = serve(jobIdentifiers[i], snapshot.status);
+                }
+            }
+        }
+
+        if (!unknown.isEmpty()) {
+            // Not tracked (anymore), so ask the scheduler directly
+            long start = System.currentTimeMillis();
+            JobStatus[] tmp = scheduler.coalescedJobStatuses(unknown.toArray(new String[unknown.size()]));
+            update(tmp, start);
+
+            Map<String, JobStatus> map = new HashMap<>();
+
+            for (JobStatus status : tmp) {
+                if (status != null) {
+                    map.put(status.getJobIdentifier(), status);
+                }
+            }
+
+            for (int i = 0; i < jobIdentifiers.length; i++) {
+                if (jobIdentifiers[i] != null && result[i] == null) {
+                    result[i] = map.get(jobIdentifiers[i]);
+
+                    if (result[i] != null) {
+                        serve(jobIdentifiers[i], result[i]);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Stop the background thread of this monitor.
+     */
+    public void stop() {
+        executor.shutdownNow();
+    }
+}
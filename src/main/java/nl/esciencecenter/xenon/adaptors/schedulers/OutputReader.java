@@ -15,23 +15,26 @@
  */
 package nl.esciencecenter.xenon.adaptors.schedulers;
 
-import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
+import nl.esciencecenter.xenon.utils.StreamPump;
+import nl.esciencecenter.xenon.utils.StreamPump.Transfer;
+
 /**
- * A simple output reader that uses a daemon thread to read from an {@link java.io.InputStream} and buffer this data. Once 
- * end-of-stream is reached, this data will be made available as a {@link java.lang.String}. 
+ * A simple output reader that uses the shared {@link StreamPump} to read from an {@link java.io.InputStream} and buffer this 
+ * data. Once end-of-stream is reached, this data will be made available as a {@link java.lang.String}. 
  * 
  * Note that since the data is buffered in memory, so it is not advisable to use this OutputReader to read large amounts of data. 
  */
-public final class OutputReader extends Thread {
+public final class OutputReader {
 
     private static final int BUFFER_SIZE = 1024;
 
-    private final InputStream source;
+    private final Transfer transfer;
 
     private ByteBuffer buffer;
 
@@ -39,25 +42,39 @@ public final class OutputReader extends Thread {
     private boolean finished = false;
 
     /**
-     * Create an OutputReader that reads from <code>source</code>.
+     * Create an OutputReader that reads from <code>source</code> until end-of-stream.
      * 
      * @param source
      *          the {#link InputStream} to read from.
      */
-    
     public OutputReader(InputStream source) {
        
-    	if (source == null) { 
-    		throw new IllegalArgumentException("Source stream may not be null");
-    	}
-    	
-    	this.source = source;
+        if (source == null) { 
+            throw new IllegalArgumentException("Source stream may not be null");
+        }
 
         buffer = ByteBuffer.allocate(BUFFER_SIZE);
 
-        setDaemon(true);
-        setName("Output reader");
-        start();
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+                addToBuffer(new byte[] { (byte) b }, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                addToBuffer(b, off, len);
+            }
+        };
+
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                setFinished();
+            }
+        };
+
+        transfer = StreamPump.getShared().transfer(source, sink, listener);
     }
 
     private synchronized void setFinished() {
@@ -91,7 +108,11 @@ public final class OutputReader extends Thread {
         }
     }
 
-    private synchronized void addToBuffer(byte[] bytes, int length) {
+    private void addToBuffer(byte[] bytes, int length) {
+        addToBuffer(bytes, 0, length);
+    }
+
+    private synchronized void addToBuffer(byte[] bytes, int offset, int length) {
         while (buffer.remaining() < length) {
             // create new buffer with double the capacity of the old buffer
             ByteBuffer newBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
@@ -103,37 +124,7 @@ public final class OutputReader extends Thread {
             // replace old buffer
             buffer = newBuffer;
         }
-        buffer.put(bytes, 0, length);
-    }
-
-    /** 
-     * Entry method for daemon thread.
-     */
-    public void run() {
-        byte[] bytes = new byte[BUFFER_SIZE];
-
-        try {
-            while (true) {
-                int readCount = source.read(bytes);
-
-                if (readCount < 0) {
-                    // end-of-stream, we're done
-                    return;
-                }
-
-                addToBuffer(bytes, readCount);
-            }
-        } catch (Exception e) {
-            //setFinished();
-        } finally {
-            try {
-                source.close();
-            } catch (IOException e) {
-                // ignore
-            }
-            
-            setFinished();
-        }
+        buffer.put(bytes, offset, length);
     }
 
     /**
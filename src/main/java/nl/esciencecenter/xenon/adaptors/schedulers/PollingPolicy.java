@@ -0,0 +1,178 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+/**
+ * Determines how long to wait between two status checks of a job that is waited for. 
+ * 
+ * Polling starts fast, so short jobs are noticed promptly, and then backs off exponentially towards a ceiling, so long 
+ * jobs do not cause a steady stream of status queries. If the maximum runtime of the job is known, the ceiling is 
+ * lowered to a fraction of this runtime and polling speeds up again once the job reaches its maximum runtime, as it 
+ * is then expected to finish (or be killed) at any moment.
+ * 
+ * A policy is immutable and may be shared. Each wait uses its own {@link Backoff}.
+ */
+public class PollingPolicy {
+
+    /** The default delay in ms. before the first status check. */
+    public static final long DEFAULT_INITIAL_DELAY = 100L;
+
+    /** The default ceiling of the delay, as a multiple of the configured poll delay. */
+    public static final int DEFAULT_CEILING_FACTOR = 10;
+
+    /** The delay is never longer than this fraction of the maximum runtime of a job. */
+    public static final int RUNTIME_FRACTION = 10;
+
+    private final long initialDelay;
+
+    private final long maxDelay;
+
+    /**
+     * Create a PollingPolicy.
+     * 
+     * @param initialDelay
+     *          the delay in ms. before the first status check.
+     * @param maxDelay
+     *          the maximum delay in ms. between two status checks.
+     */
+    public PollingPolicy(long initialDelay, long maxDelay) {
+
+        if (initialDelay <= 0) {
+            throw new IllegalArgumentException("Initial delay must be positive: " + initialDelay);
+        }
+
+        if (maxDelay < initialDelay) {
+            throw new IllegalArgumentException("Maximum delay must be at least the initial delay: " + maxDelay);
+        }
+
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Create a PollingPolicy for a configured poll delay. Polling starts at {@link #DEFAULT_INITIAL_DELAY} (or the poll 
+     * delay if it is smaller) and backs off to {@link #DEFAULT_CEILING_FACTOR} times the poll delay.
+     * 
+     * @param pollDelay
+     *          the configured poll delay in ms.
+     * @return
+     *          the policy
+     */
+    public static PollingPolicy forPollDelay(long pollDelay) {
+
+        if (pollDelay <= 0) {
+            throw new IllegalArgumentException("Poll delay must be positive: " + pollDelay);
+        }
+
+        long ceiling = pollDelay * DEFAULT_CEILING_FACTOR;
+
+        if (ceiling / DEFAULT_CEILING_FACTOR != pollDelay) {
+            ceiling = Long.MAX_VALUE;
+        }
+
+        return new PollingPolicy(Math.min(pollDelay, DEFAULT_INITIAL_DELAY), ceiling);
+    }
+
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Start a new wait for a job of which the maximum runtime is unknown.
+     * 
+     * @return the backoff for this wait
+     */
+    public Backoff start() {
+        return new Backoff(0, 0);
+    }
+
+    /**
+     * Start a new wait for a job with a known maximum runtime.
+     * 
+     * @param startTime
+     *          the time at which the job was submitted or started.
+     * @param maxRuntime
+     *          the maximum runtime of the job in ms., or 0 if unknown.
+     * @return the backoff for this wait
+     */
+    public Backoff start(long startTime, long maxRuntime) {
+        return new Backoff(startTime, maxRuntime);
+    }
+
+    /**
+     * The delays of a single wait. Not thread safe.
+     */
+    public class Backoff {
+
+        private final long ceiling;
+
+        /** The time at which the job is expected to end, or 0 if unknown or already passed. */
+        private long expectedEnd;
+
+        private long delay;
+
+        private Backoff(long startTime, long maxRuntime) {
+            if (maxRuntime > 0) {
+                ceiling = Math.max(initialDelay, Math.min(maxDelay, maxRuntime / RUNTIME_FRACTION));
+                expectedEnd = startTime + maxRuntime;
+            } else {
+                ceiling = maxDelay;
+                expectedEnd = 0;
+            }
+
+            delay = initialDelay;
+        }
+
+        /**
+         * Restart the backoff from the initial delay, for example because the state of the job changed.
+         */
+        public void reset() {
+            delay = initialDelay;
+        }
+
+        /**
+         * Returns the delay before the next status check, and backs off the delay after that.
+         * 
+         * @return the delay in ms.
+         */
+        public long nextDelay() {
+            return nextDelay(System.currentTimeMillis());
+        }
+
+        long nextDelay(long now) {
+
+            if (expectedEnd > 0 && now >= expectedEnd) {
+                // The job reached its maximum runtime, so it should be done soon.
+                expectedEnd = 0;
+                delay = initialDelay;
+            }
+
+            long result = delay;
+
+            if (expectedEnd > 0) {
+                result = Math.max(1, Math.min(result, expectedEnd - now));
+            }
+
+            delay = delay > ceiling / 2 ? ceiling : delay * 2;
+
+            return result;
+        }
+    }
+}
@@ -27,4 +27,15 @@ public interface Process {
     int getExitStatus();
 
     void destroy();
+
+    /**
+     * Register a listener that is invoked when the process terminates. 
+     * 
+     * Implementations that cannot detect termination without polling may ignore the listener, in which case termination is 
+     * only detected through {@link #isDone()}. The listener may be invoked from an arbitrary thread, and must not block. 
+     * 
+     * @param listener
+     *          the listener to invoke when the process terminates.
+     */
+    void addTerminationListener(Runnable listener);
 }
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
+
+/**
+ * ProcessReactor tracks all running jobs of a {@link JobQueueScheduler} using a single monitor thread.
+ * 
+ * The monitor thread checks all registered jobs every polling delay, or immediately when woken up (for example by a process
+ * termination listener). Jobs are unregistered once they are done. The monitor thread is only alive while jobs are 
+ * registered, so an idle scheduler does not hold any threads.
+ */
+class ProcessReactor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessReactor.class);
+
+    private final DaemonThreadFactory threadFactory;
+
+    private final long pollingDelay;
+
+    /** The jobs being tracked. Guarded by this. */
+    private final Set<JobExecutor> jobs = new LinkedHashSet<>();
+
+    /** The monitor thread, or null if not running. Guarded by this. */
+    private Thread thread;
+
+    /** Set when a check of all jobs is requested. Guarded by this. */
+    private boolean wakeup = false;
+
+    /** Set when the reactor is stopped. Guarded by this. */
+    private boolean stopped = false;
+
+    ProcessReactor(String name, long pollingDelay) {
+        this.threadFactory = new DaemonThreadFactory(name + "-reactor");
+        this.pollingDelay = pollingDelay;
+    }
+
+    /**
+     * Start tracking a running job.
+     * 
+     * @param job
+     *          the job to track.
+     */
+    synchronized void register(JobExecutor job) {
+
+        if (stopped) {
+            return;
+        }
+
+        jobs.add(job);
+
+        if (thread == null) {
+            thread = threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    monitor();
+                }
+            });
+            thread.start();
+        } else {
+            wakeup = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Request an immediate check of all tracked jobs.
+     */
+    synchronized void wakeup() {
+        wakeup = true;
+        notifyAll();
+    }
+
+    /**
+     * Stop tracking jobs. The monitor thread will terminate. 
+     */
+    synchronized void stop() {
+        stopped = true;
+        jobs.clear();
+        notifyAll();
+    }
+
+    /**
+     * Get the number of jobs tracked.
+     * 
+     * @return the number of jobs tracked.
+     */
+    synchronized int size() {
+        return jobs.size();
+    }
+
+    private void monitor() {
+
+        while (true) {
+
+            ArrayList<JobExecutor> tmp;
+
+            synchronized (this) {
+                if (stopped || jobs.isEmpty()) {
+                    thread = null;
+                    return;
+                }
+
+                tmp = new ArrayList<>(jobs);
+                wakeup = false;
+            }
+
+            ArrayList<JobExecutor> finished = new ArrayList<>();
+
+            for (JobExecutor job : tmp) {
+                try {
+                    if (job.poll()) {
+                        finished.add(job);
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Failed to check status of job {}", job.getJobIdentifier(), e);
+                }
+            }
+
+            synchronized (this) {
+                jobs.removeAll(finished);
+
+                if (!wakeup && !stopped && !jobs.isEmpty()) {
+                    try {
+                        wait(pollingDelay);
+                    } catch (InterruptedException e) {
+                        // Exit, but let a new thread take over if jobs are registered later. 
+                        thread = null;
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import nl.esciencecenter.xenon.XenonException;
+
+/**
+ * Coalesces concurrent queries into a single remote invocation. 
+ * 
+ * Each caller asks for the values of one or more keys (for example job identifiers or queue names). The first caller 
+ * waits for any query still in flight, and for a small window if other callers are active, while the keys of all callers 
+ * arriving in the meantime are merged into the same batch. A caller running alone does not wait. A single 
+ * {@link #query(Set)} is then run for the whole batch, and its result is fanned out to all callers. At most one query is 
+ * in flight at any time.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public abstract class QueryCoalescer<K, V> {
+
+    private class Batch {
+        private final Set<K> keys = new LinkedHashSet<>();
+        private Map<K, V> result;
+        private XenonException exception;
+        private boolean done = false;
+    }
+
+    private final String adaptorName;
+
+    private final long window;
+
+    /** The batch currently accepting keys. Guarded by this. */
+    private Batch pending;
+
+    /** Is a query currently running ? Guarded by this. */
+    private boolean inFlight = false;
+
+    /** Number of callers currently in {@link #get(Collection)}. Guarded by this. */
+    private int active = 0;
+
+    /**
+     * Create a QueryCoalescer.
+     * 
+     * @param adaptorName
+     *          the name of the adaptor (used in exceptions).
+     * @param window
+     *          the time in ms. to wait for other callers before running a query.
+     */
+    protected QueryCoalescer(String adaptorName, long window) {
+        this.adaptorName = adaptorName;
+        this.window = window;
+    }
+
+    /**
+     * Run the actual query for all keys in a batch.
+     * 
+     * @param keys
+     *          the keys to query.
+     * @return
+     *          the values found. Keys for which no value was found may be left out.
+     * @throws XenonException
+     *          if the query failed. The exception is passed on to all callers waiting for this batch. 
+     */
+    protected abstract Map<K, V> query(Set<K> keys) throws XenonException;
+
+    /**
+     * Get the values of the given keys, sharing the query with any concurrent callers.
+     * 
+     * @param keys
+     *          the keys to get the values for.
+     * @return
+     *          the values found for the given keys. Keys for which no value was found are left out.
+     * @throws XenonException
+     *          if the query failed, or the caller was interrupted while waiting for the result.
+     */
+    public Map<K, V> get(Collection<K> keys) throws XenonException {
+
+        Batch batch;
+        boolean leader = false;
+
+        synchronized (this) {
+            if (pending == null) {
+                pending = new Batch();
+                leader = true;
+            }
+
+            batch = pending;
+            batch.keys.addAll(keys);
+            active++;
+        }
+
+        try {
+            if (leader) {
+                runBatch(batch);
+            } else {
+                awaitBatch(batch);
+            }
+        } finally {
+            synchronized (this) {
+                active--;
+            }
+        }
+
+        if (batch.exception != null) {
+            throw batch.exception;
+        }
+
+        Map<K, V> result = new HashMap<>();
+
+        for (K key : keys) {
+            V value = batch.result.get(key);
+
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+
+        return result;
+    }
+
+    private void runBatch(Batch batch) {
+
+        boolean contended;
+
+        synchronized (this) {
+            contended = active > 1;
+        }
+
+        // Only wait for other callers to join the batch when there are any.
+        if (window > 0 && contended) {
+            try {
+                Thread.sleep(window);
+            } catch (InterruptedException e) {
+                // Run the query anyway, as other callers may be waiting for it.
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Set<K> keys;
+
+        synchronized (this) {
+            // Wait for the previous query to finish. Meanwhile our batch keeps accepting keys.
+            boolean interrupted = false;
+
+            while (inFlight) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            pending = null;
+            inFlight = true;
+            keys = batch.keys;
+        }
+
+        Map<K, V> result = null;
+        XenonException exception = null;
+
+        try {
+            result = query(keys);
+
+            if (result == null) {
+                result = new HashMap<>();
+            }
+        } catch (XenonException e) {
+            exception = e;
+        } catch (RuntimeException e) {
+            exception = new XenonException(adaptorName, "Query failed", e);
+        } finally {
+            // Also release the batch if the query threw an Error, so no caller waits forever.
+            if (result == null && exception == null) {
+                exception = new XenonException(adaptorName, "Query failed");
+            }
+
+            synchronized (this) {
+                batch.result = result;
+                batch.exception = exception;
+                batch.done = true;
+                inFlight = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void awaitBatch(Batch batch) throws XenonException {
+        while (!batch.done) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XenonException(adaptorName, "Interrupted while waiting for query result", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the cores and memory of a node that are in use by jobs, and decides which waiting jobs may start. 
+ * 
+ * Waiting jobs are started in order as long as they fit. Once a job does not fit, it gets a reservation for the earliest time 
+ * at which enough resources are expected to be free, based on the maximum run time of the running jobs. Later jobs that fit 
+ * are only started (backfilled) if they will end before this time, or if they only use resources that are not needed for the 
+ * reservation. This packs small jobs around large ones without starving the large jobs.
+ * 
+ * This class is not thread safe.
+ * 
+ * @param <K> 
+ *          the type used to identify jobs.
+ */
+class ResourcePool<K> {
+
+    /**
+     * The resources requested by a job.
+     */
+    static final class Request {
+
+        private final int cores;
+
+        private final long memory;
+
+        private final long runtime;
+
+        /**
+         * @param cores 
+         *          the number of cores needed.
+         * @param memory 
+         *          the amount of memory needed (in MB).
+         * @param runtime 
+         *          the maximum run time (in ms.), or 0 if unknown.
+         */
+        Request(int cores, long memory, long runtime) {
+            this.cores = cores;
+            this.memory = memory;
+            this.runtime = runtime;
+        }
+
+        int getCores() {
+            return cores;
+        }
+
+        long getMemory() {
+            return memory;
+        }
+    }
+
+    /**
+     * The resources allocated to a running job.
+     */
+    static final class Allocation {
+
+        private final Request request;
+
+        private final long endTime;
+
+        private final BitSet cpus;
+
+        private Allocation(Request request, long endTime, BitSet cpus) {
+            this.request = request;
+            this.endTime = endTime;
+            this.cpus = cpus;
+        }
+
+        /**
+         * Returns the CPUs assigned to the job as a comma separated list (as accepted by <code>taskset -c</code>), or 
+         * <code>null</code> if no CPUs are assigned.
+         * 
+         * @return the assigned CPUs, or <code>null</code>.
+         */
+        String getCpuList() {
+
+            if (cpus == null) {
+                return null;
+            }
+
+            StringBuilder b = new StringBuilder();
+
+            for (int i = cpus.nextSetBit(0); i >= 0; i = cpus.nextSetBit(i + 1)) {
+                if (b.length() > 0) {
+                    b.append(',');
+                }
+                b.append(i);
+            }
+
+            return b.toString();
+        }
+    }
+
+    private static final Comparator<Allocation> BY_END_TIME = new Comparator<Allocation>() {
+        @Override
+        public int compare(Allocation a, Allocation b) {
+            return Long.compare(a.endTime, b.endTime);
+        }
+    };
+
+    private final int cores;
+
+    private final long memory;
+
+    private final BitSet freeCpus;
+
+    private final Map<K, Allocation> allocations = new HashMap<>();
+
+    private int freeCores;
+
+    private long freeMemory;
+
+    /**
+     * Create a new ResourcePool.
+     * 
+     * @param cores 
+     *          the number of cores of the node.
+     * @param memory 
+     *          the amount of memory of the node (in MB), or 0 if memory should not be taken into account.
+     * @param pinning 
+     *          if jobs should be assigned specific CPUs.
+     */
+    ResourcePool(int cores, long memory, boolean pinning) {
+
+        if (cores <= 0) {
+            throw new IllegalArgumentException("Number of cores must be positive: " + cores);
+        }
+
+        if (memory < 0) {
+            throw new IllegalArgumentException("Amount of memory cannot be negative: " + memory);
+        }
+
+        this.cores = cores;
+        this.memory = memory;
+        this.freeCores = cores;
+        this.freeMemory = memory;
+
+        if (pinning) {
+            freeCpus = new BitSet(cores);
+            freeCpus.set(0, cores);
+        } else {
+            freeCpus = null;
+        }
+    }
+
+    int getCores() {
+        return cores;
+    }
+
+    long getMemory() {
+        return memory;
+    }
+
+    int getFreeCores() {
+        return freeCores;
+    }
+
+    long getFreeMemory() {
+        return freeMemory;
+    }
+
+    /**
+     * Returns if a request can ever be satisfied by this pool.
+     * 
+     * @param r
+     *          the request. 
+     * @return if the request fits in an empty pool.
+     */
+    boolean canFit(Request r) {
+        return r.cores <= cores && (memory == 0 || r.memory <= memory);
+    }
+
+    private boolean fits(Request r, int availableCores, long availableMemory) {
+        return r.cores <= availableCores && (memory == 0 || r.memory <= availableMemory);
+    }
+
+    Allocation getAllocation(K job) {
+        return allocations.get(job);
+    }
+
+    private void allocate(K job, Request r, long now) {
+
+        BitSet cpus = null;
+
+        if (freeCpus != null) {
+            cpus = new BitSet(cores);
+
+            int cpu = freeCpus.nextSetBit(0);
+
+            for (int i = 0; i < r.cores; i++) {
+                cpus.set(cpu);
+                freeCpus.clear(cpu);
+                cpu = freeCpus.nextSetBit(cpu + 1);
+            }
+        }
+
+        freeCores -= r.cores;
+        freeMemory -= r.memory;
+
+        long endTime = r.runtime > 0 ? now + r.runtime : Long.MAX_VALUE;
+
+        allocations.put(job, new Allocation(r, endTime, cpus));
+    }
+
+    /**
+     * Release the resources of a job.
+     * 
+     * @param job
+     *          the job.
+     * @return if the job had resources allocated.
+     */
+    boolean release(K job) {
+
+        Allocation a = allocations.remove(job);
+
+        if (a == null) {
+            return false;
+        }
+
+        freeCores += a.request.cores;
+        freeMemory += a.request.memory;
+
+        if (a.cpus != null) {
+            freeCpus.or(a.cpus);
+        }
+
+        return true;
+    }
+
+    /**
+     * Select the waiting jobs that may start now, and allocate their resources.
+     * 
+     * @param waiting
+     *          the waiting jobs in order of priority, with their requests.
+     * @param now
+     *          the current time.
+     * @return the jobs to start.
+     */
+    List<K> schedule(List<Map.Entry<K, Request>> waiting, long now) {
+
+        List<K> result = new ArrayList<>();
+
+        boolean reserved = false;
+        long shadowTime = 0;
+        int extraCores = 0;
+        long extraMemory = 0;
+
+        for (Map.Entry<K, Request> e : waiting) {
+
+            Request r = e.getValue();
+
+            if (freeCores == 0) {
+                break;
+            }
+
+            if (!fits(r, freeCores, freeMemory)) {
+                if (!reserved) {
+                    reserved = true;
+
+                    // Find the earliest time at which the first blocked job fits, and what remains free for others.
+                    List<Allocation> running = new ArrayList<>(allocations.values());
+                    Collections.sort(running, BY_END_TIME);
+
+                    int availableCores = freeCores;
+                    long availableMemory = freeMemory;
+                    shadowTime = Long.MAX_VALUE;
+
+                    for (Allocation a : running) {
+                        availableCores += a.request.cores;
+                        availableMemory += a.request.memory;
+
+                        if (fits(r, availableCores, availableMemory)) {
+                            shadowTime = a.endTime;
+                            break;
+                        }
+                    }
+
+                    extraCores = availableCores - r.cores;
+                    extraMemory = availableMemory - r.memory;
+                }
+
+                continue;
+            }
+
+            if (reserved) {
+                boolean endsInTime = r.runtime > 0 && shadowTime != Long.MAX_VALUE && now + r.runtime <= shadowTime;
+
+                if (!endsInTime) {
+                    if (!fits(r, extraCores, extraMemory)) {
+                        continue;
+                    }
+
+                    extraCores -= r.cores;
+                    extraMemory -= r.memory;
+                }
+            }
+
+            allocate(e.getKey(), r, now);
+            result.add(e.getKey());
+        }
+
+        return result;
+    }
+}
@@ -15,10 +15,13 @@
  */
 package nl.esciencecenter.xenon.adaptors.schedulers;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import nl.esciencecenter.xenon.XenonException;
@@ -43,6 +46,39 @@ public final class ScriptingParser {
         //DO NOT USE
     }
 
+    /**
+     * Split the input into lines. Gives the same result as splitting with {@link #NEWLINE_REGEX}, including the removal of
+     * trailing empty lines, without the overhead of a regular expression.
+     */
+    private static List<String> splitLines(String input) {
+        ArrayList<String> result = new ArrayList<>();
+
+        int start = 0;
+        int newline = input.indexOf('\n');
+
+        if (newline < 0) {
+            result.add(input);
+            return result;
+        }
+
+        while (newline >= 0) {
+            int end = newline > start && input.charAt(newline - 1) == '\r' ? newline - 1 : newline;
+            result.add(input.substring(start, end));
+            start = newline + 1;
+            newline = input.indexOf('\n', start);
+        }
+
+        result.add(input.substring(start));
+
+        int size = result.size();
+
+        while (size > 0 && result.get(size - 1).isEmpty()) {
+            result.remove(--size);
+        }
+
+        return result;
+    }
+
     /**
      * Parses a output with key=value pairs separated by whitespace, on one or more lines. This function fails if there is any
      * whitespace between the key and value, or whitespace inside the values.
@@ -59,8 +95,8 @@ public final class ScriptingParser {
      */
     public static Map<String, String> parseKeyValuePairs(String input, String adaptorName, String... ignoredLines)
             throws XenonException {
-        String[] lines = NEWLINE_REGEX.split(input);
-        Map<String, String> result = new HashMap<>(lines.length * 4 / 3);
+        List<String> lines = splitLines(input);
+        Map<String, String> result = new HashMap<>(lines.size() * 4 / 3);
 
         for (String line : lines) {
             if (!line.isEmpty() && !containsAny(line, ignoredLines)) {
@@ -116,8 +152,8 @@ public final class ScriptingParser {
      */
     public static Map<String, String> parseKeyValueLines(String input, Pattern separatorRegEx, String adaptorName,
             String... ignoredLines) throws XenonException {
-        String[] lines = NEWLINE_REGEX.split(input);
-        Map<String, String> result = new HashMap<>(lines.length * 4 / 3);
+        List<String> lines = splitLines(input);
+        Map<String, String> result = new HashMap<>(lines.size() * 4 / 3);
 
         for (String line : lines) {
             if (!line.isEmpty() && !containsAny(line, ignoredLines)) {
@@ -196,6 +232,9 @@ public final class ScriptingParser {
     /**
      * Parses lines containing multiple values. The first line of the output must contain a header with the field names.
      * 
+     * Tables separated by {@link #WHITESPACE_REGEX} or {@link #BAR_REGEX} are split by scanning the characters directly. 
+     * The rows returned share the header, and their values are only extracted from the line when first used. 
+     * 
      * @param input
      *            the input to parse
      * 
@@ -222,59 +261,474 @@ public final class ScriptingParser {
             throw new XenonException(adaptorName, "Cannot parse table, Got no input, expected at least a header");
         }
 
-        String[] lines = NEWLINE_REGEX.split(input);
+        List<String> lines = splitLines(input);
 
         int headerLine = 0;
-        String[] fields;
         //the first line will contain the fields (unless it is a separator)
-        while (headerLine < lines.length && HORIZONTAL_LINE_REGEX.matcher(lines[headerLine]).find()) {
+        while (headerLine < lines.size() && isHorizontalLine(lines.get(headerLine))) {
             headerLine++;
         }
-        if (headerLine == lines.length) {
+        if (headerLine == lines.size()) {
             throw new XenonException(adaptorName, "No table header encountered");
         }
 
-        fields = fieldSeparatorRegEx.split(lines[headerLine]);
+        Tokenizer tokenizer = new Tokenizer(fieldSeparatorRegEx);
+
+        String[] fields = tokenizer.split(lines.get(headerLine));
 
         for (int i = 0; i < fields.length; i++) {
             fields[i] = fields[i].trim();
 
             if (fields[i].isEmpty()) {
-                throw new XenonException(adaptorName, "Output contains empty field name in line \"" + lines[0] + "\"");
+                throw new XenonException(adaptorName, "Output contains empty field name in line \"" + lines.get(0) + "\"");
             }
         }
 
-        Map<String, Map<String, String>> result = new HashMap<>(lines.length * 4 / 3);
-        int rowSize = (int)Math.ceil(fields.length / 0.75);
+        TableHeader header = new TableHeader(fields, valueSuffixes);
+        Integer keyIndex = header.columns.get(keyField);
 
-        for (int i = headerLine + 1; i < lines.length; i++) {
-            if (HORIZONTAL_LINE_REGEX.matcher(lines[i]).find()) {
+        Map<String, Map<String, String>> result = new HashMap<>(lines.size() * 4 / 3);
+
+        for (int i = headerLine + 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+
+            if (isHorizontalLine(line)) {
                 // do not parse separators
                 continue;
             }
- 
-            String[] values = mergeTuples(fieldSeparatorRegEx.split(lines[i]));
-            
-            if (fields.length != values.length) {
+
+            TableRow row = tokenizer.row(header, line);
+
+            if (fields.length != row.width()) {
+                String[] values = row.rawValues();
                 throw new XenonException(adaptorName, "Expected " + fields.length + " fields in output " + Arrays.toString(fields) 
-                    + ", got line with " + values.length + " values: " + lines[i] + "parsed to: " + Arrays.toString(values) + " original input\n\n" + input + "\n\n");
+                    + ", got line with " + values.length + " values: " + line + "parsed to: " + Arrays.toString(values) + " original input\n\n" + input + "\n\n");
             }
 
-            Map<String, String> map = new HashMap<>(rowSize);
-            for (int j = 0; j < fields.length; j++) {
-                map.put(fields[j], cleanValue(values[j], valueSuffixes));
+            if (keyIndex == null) {
+                throw new XenonException(adaptorName, "Output does not contain required field \"" + keyField + "\"");
             }
 
-            if (!map.containsKey(keyField)) {
-                throw new XenonException(adaptorName, "Output does not contain required field \"" + keyField + "\"");
+            result.put(row.value(keyIndex), row);
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses lines containing a fixed number of values separated by a single delimiter character, such as the output of 
+     * <code>squeue --noheader --format=%i|%T</code> or <code>sacct --noheader --parsable2</code>. The output has no header, 
+     * the field names are given instead. Values are found by their position, and the last field receives the remainder of the 
+     * line, so it may contain the delimiter. Empty lines are ignored.
+     * 
+     * This is the same as {@link #parseDelimitedTable(String, String[], String, char, boolean, String, String...)} with a 
+     * free-form last field.
+     * 
+     * @param input
+     *            the input to parse
+     * 
+     * @param fields
+     *            the names of the fields in each line, in order.
+     * 
+     * @param keyField
+     *            the field to use as the key in the result map. Must be one of the fields.
+     * 
+     * @param delimiter
+     *            the character separating the fields.
+     * 
+     * @param adaptorName
+     *            the adaptor name to report in case parsing failed
+     * 
+     * @param valueSuffixes
+     *            suffixes to be removed from values in the table. Useful if the output contains special markers for defaults,
+     *            disabled queues, broken nodes, etc
+     * 
+     * @return a map containing key/value maps of all records.
+     * @throws XenonException when parsing fails
+     */
+    public static Map<String, Map<String, String>> parseDelimitedTable(String input, String[] fields, String keyField,
+            char delimiter, String adaptorName, String... valueSuffixes) throws XenonException {
+        return parseDelimitedTable(input, fields, keyField, delimiter, true, adaptorName, valueSuffixes);
+    }
+
+    /**
+     * Parses lines containing a fixed number of values separated by a single delimiter character. The output has no header, 
+     * the field names are given instead. Values are found by their position. Only a free-form last field may contain the 
+     * delimiter, so none of the other fields may contain free-form text. Empty lines are ignored.
+     * 
+     * @param input
+     *            the input to parse
+     * 
+     * @param fields
+     *            the names of the fields in each line, in order.
+     * 
+     * @param keyField
+     *            the field to use as the key in the result map. Must be one of the fields.
+     * 
+     * @param delimiter
+     *            the character separating the fields.
+     * 
+     * @param freeFormLast
+     *            if the last field receives the remainder of the line. Otherwise, lines with more values than fields are 
+     *            rejected. 
+     * 
+     * @param adaptorName
+     *            the adaptor name to report in case parsing failed
+     * 
+     * @param valueSuffixes
+     *            suffixes to be removed from values in the table. Useful if the output contains special markers for defaults,
+     *            disabled queues, broken nodes, etc
+     * 
+     * @return a map containing key/value maps of all records.
+     * @throws XenonException when parsing fails
+     */
+    public static Map<String, Map<String, String>> parseDelimitedTable(String input, String[] fields, String keyField,
+            char delimiter, boolean freeFormLast, String adaptorName, String... valueSuffixes) throws XenonException {
+
+        TableHeader header = new TableHeader(fields, valueSuffixes);
+        Integer keyIndex = header.columns.get(keyField);
+
+        if (keyIndex == null) {
+            throw new XenonException(adaptorName, "Output does not contain required field \"" + keyField + "\"");
+        }
+
+        Map<String, Map<String, String>> result = new HashMap<>();
+
+        int start = 0;
+
+        while (start < input.length()) {
+            int end = input.indexOf('\n', start);
+
+            if (end < 0) {
+                end = input.length();
             }
 
-            result.put(map.get(keyField), map);
+            int next = end + 1;
+
+            if (end > start && input.charAt(end - 1) == '\r') {
+                end--;
+            }
+
+            if (end > start) {
+                String line = input.substring(start, end);
+                int[] bounds = new int[2 * fields.length];
+                int position = 0;
+
+                for (int i = 0; i < fields.length - 1; i++) {
+                    int separator = line.indexOf(delimiter, position);
+
+                    if (separator < 0) {
+                        throw new XenonException(adaptorName, "Expected " + fields.length + " fields in output " 
+                                + Arrays.toString(fields) + ", got line with " + (i + 1) + " values: " + line);
+                    }
+
+                    bounds[2 * i] = position;
+                    bounds[2 * i + 1] = separator;
+                    position = separator + 1;
+                }
+
+                if (!freeFormLast && line.indexOf(delimiter, position) >= 0) {
+                    throw new XenonException(adaptorName, "Expected " + fields.length + " fields in output " 
+                            + Arrays.toString(fields) + ", got line with more values: " + line);
+                }
+
+                bounds[2 * fields.length - 2] = position;
+                bounds[2 * fields.length - 1] = line.length();
+
+                TableRow row = new TableRow(header, line, bounds, null);
+                result.put(row.value(keyIndex), row);
+            }
+
+            start = next;
         }
 
         return result;
     }
 
+    private static boolean isWhitespace(char c) {
+        // the characters matched by \\s in a regular expression
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isLineChar(char c) {
+        return c == '=' || c == '_' || c == '-';
+    }
+
+    /**
+     * Check if a line is a horizontal separator. Gives the same result as {@link #HORIZONTAL_LINE_REGEX}: the line only contains
+     * whitespace and runs of at least three '=', '_' or '-' characters.
+     */
+    private static boolean isHorizontalLine(String line) {
+        int run = 0;
+        boolean found = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (isLineChar(c)) {
+                run++;
+            } else if (isWhitespace(c)) {
+                if (run > 0 && run < 3) {
+                    return false;
+                }
+                found |= run > 0;
+                run = 0;
+            } else {
+                return false;
+            }
+        }
+
+        return run >= 3 || (run == 0 && found);
+    }
+
+    /**
+     * The field names of a table, shared by all its rows.
+     */
+    private static final class TableHeader {
+        private final String[] fields;
+        private final Map<String, Integer> columns;
+        private final String[] valueSuffixes;
+
+        private TableHeader(String[] fields, String[] valueSuffixes) {
+            this.fields = fields;
+            this.valueSuffixes = valueSuffixes;
+
+            columns = new HashMap<>((int) Math.ceil(fields.length / 0.75));
+
+            for (int i = 0; i < fields.length; i++) {
+                columns.put(fields[i], i);
+            }
+        }
+    }
+
+    /**
+     * A row of a table. The values are kept as offsets into the line, and are only cleaned up and copied when used. The row is
+     * converted into a regular map when it is iterated or modified.
+     */
+    private static final class TableRow extends AbstractMap<String, String> {
+        private final TableHeader header;
+        private final String line;
+        private final int[] bounds;
+        private final String[] raw;
+        private final String[] values;
+        private Map<String, String> map;
+
+        private TableRow(TableHeader header, String line, int[] bounds, String[] raw) {
+            this.header = header;
+            this.line = line;
+            this.bounds = bounds;
+            this.raw = raw;
+            this.values = new String[width()];
+        }
+
+        private int width() {
+            return raw != null ? raw.length : bounds.length / 2;
+        }
+
+        private String rawValue(int index) {
+            return raw != null ? raw[index] : line.substring(bounds[2 * index], bounds[2 * index + 1]);
+        }
+
+        private String[] rawValues() {
+            String[] result = new String[width()];
+
+            for (int i = 0; i < result.length; i++) {
+                result[i] = rawValue(i);
+            }
+            return result;
+        }
+
+        private String value(int index) {
+            String result = values[index];
+
+            if (result == null) {
+                result = cleanValue(rawValue(index), header.valueSuffixes);
+                values[index] = result;
+            }
+            return result;
+        }
+
+        private Map<String, String> materialize() {
+            if (map == null) {
+                map = new HashMap<>((int) Math.ceil(header.fields.length / 0.75));
+
+                for (int i = 0; i < header.fields.length; i++) {
+                    map.put(header.fields[i], value(i));
+                }
+            }
+            return map;
+        }
+
+        @Override
+        public synchronized String get(Object key) {
+            if (map != null) {
+                return map.get(key);
+            }
+
+            Integer index = header.columns.get(key);
+            return index == null ? null : value(index);
+        }
+
+        @Override
+        public synchronized boolean containsKey(Object key) {
+            return map != null ? map.containsKey(key) : header.columns.containsKey(key);
+        }
+
+        @Override
+        public synchronized int size() {
+            return map != null ? map.size() : header.columns.size();
+        }
+
+        @Override
+        public synchronized String put(String key, String value) {
+            return materialize().put(key, value);
+        }
+
+        @Override
+        public synchronized String remove(Object key) {
+            return materialize().remove(key);
+        }
+
+        @Override
+        public synchronized Set<Entry<String, String>> entrySet() {
+            return materialize().entrySet();
+        }
+    }
+
+    /**
+     * Splits lines into fields. Whitespace and bar separated lines are split by scanning the characters, giving the same 
+     * result as splitting with {@link #WHITESPACE_REGEX} or {@link #BAR_REGEX}. Other separators use the regular expression.
+     */
+    private static final class Tokenizer {
+        private final Pattern separator;
+        private final boolean whitespace;
+        private final boolean bar;
+
+        private int[] bounds = new int[32];
+        private int count;
+
+        private Tokenizer(Pattern separator) {
+            this.separator = separator;
+            this.whitespace = separator == WHITESPACE_REGEX;
+            this.bar = separator == BAR_REGEX;
+        }
+
+        private void add(int start, int end) {
+            if (2 * count + 2 > bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[2 * count] = start;
+            bounds[2 * count + 1] = end;
+            count++;
+        }
+
+        /**
+         * Find the bounds of the fields in the line.
+         * 
+         * @return if the line could be scanned without using the regular expression.
+         */
+        private boolean scan(String line) {
+            count = 0;
+
+            if (!whitespace && !bar) {
+                return false;
+            }
+
+            int length = line.length();
+            int start = 0;
+            boolean matched = false;
+
+            while (start <= length) {
+                int matchStart;
+                int matchEnd;
+
+                if (whitespace) {
+                    matchStart = start;
+
+                    while (matchStart < length && !isWhitespace(line.charAt(matchStart))) {
+                        matchStart++;
+                    }
+
+                    if (matchStart == length) {
+                        break;
+                    }
+
+                    matchEnd = matchStart + 1;
+                } else {
+                    int position = line.indexOf('|', start);
+
+                    if (position < 0) {
+                        break;
+                    }
+
+                    matchStart = position;
+
+                    while (matchStart > start && isWhitespace(line.charAt(matchStart - 1))) {
+                        matchStart--;
+                    }
+
+                    matchEnd = position + 1;
+                }
+
+                while (matchEnd < length && isWhitespace(line.charAt(matchEnd))) {
+                    matchEnd++;
+                }
+
+                add(start, matchStart);
+                start = matchEnd;
+                matched = true;
+            }
+
+            if (!matched) {
+                add(0, length);
+                return true;
+            }
+
+            add(start, length);
+
+            //trailing empty fields are dropped
+            while (count > 0 && bounds[2 * count - 2] == bounds[2 * count - 1]) {
+                count--;
+            }
+
+            return true;
+        }
+
+        private String[] split(String line) {
+            if (!scan(line)) {
+                return separator.split(line);
+            }
+
+            String[] result = new String[count];
+
+            for (int i = 0; i < count; i++) {
+                result[i] = line.substring(bounds[2 * i], bounds[2 * i + 1]);
+            }
+            return result;
+        }
+
+        private boolean startsTuple(String line, int index) {
+            int start = bounds[2 * index];
+            int end = bounds[2 * index + 1];
+            return end > start && line.charAt(start) == '(' && line.charAt(end - 1) != ')';
+        }
+
+        private TableRow row(TableHeader header, String line) {
+            if (!scan(line)) {
+                return new TableRow(header, line, null, mergeTuples(separator.split(line)));
+            }
+
+            for (int i = 0; i < count; i++) {
+                if (startsTuple(line, i)) {
+                    //rare case, fall back to merging the split values
+                    return new TableRow(header, line, null, mergeTuples(split(line)));
+                }
+            }
+
+            return new TableRow(header, line, Arrays.copyOf(bounds, 2 * count), null);
+        }
+    }
+
     /*
      * Attempt to support simple tuples in the output. The splitter will typically split these into two elements. For example:
      * 
@@ -381,7 +835,7 @@ public final class ScriptingParser {
      */
     public static Map<String, Map<String, String>> parseKeyValueRecords(String input, String keyField, Pattern separatorRegEx,
             String adaptorName, String... ignoredLines) throws XenonException {
-        String[] lines = NEWLINE_REGEX.split(input);
+        List<String> lines = splitLines(input);
         Map<String, Map<String, String>> result = new HashMap<>();
 
         Map<String, String> currentMap = null;
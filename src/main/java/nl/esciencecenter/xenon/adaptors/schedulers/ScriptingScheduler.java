@@ -15,13 +15,19 @@
  */
 package nl.esciencecenter.xenon.adaptors.schedulers;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.esciencecenter.xenon.UnsupportedOperationException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonPropertyDescription;
 import nl.esciencecenter.xenon.adaptors.schedulers.local.LocalSchedulerAdaptor;
@@ -32,6 +38,7 @@ import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.schedulers.InvalidJobDescriptionException;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
 import nl.esciencecenter.xenon.schedulers.JobStatus;
+import nl.esciencecenter.xenon.schedulers.NoSuchJobException;
 import nl.esciencecenter.xenon.schedulers.NoSuchQueueException;
 import nl.esciencecenter.xenon.schedulers.Scheduler;
 import nl.esciencecenter.xenon.schedulers.Streams;
@@ -44,44 +51,104 @@ public abstract class ScriptingScheduler extends Scheduler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ScriptingScheduler.class);
 
+    /** Time in ms. to wait for concurrent callers before running a coalesced query. */
+    protected static final long COALESCE_WINDOW = 10L;
+
     protected final Scheduler subScheduler;
     protected final FileSystem subFileSystem;
     
     protected final long pollDelay;
+
+    /** Maximum number of jobs for which the expected runtime is remembered. */
+    protected static final int MAX_RUNTIME_HINTS = 10000;
+
+    /** Determines the delay between the status checks of waitUntilDone and waitUntilRunning. */
+    protected final PollingPolicy pollingPolicy;
+
+    /** 
+     * Submission time and maximum runtime in ms. (or 0 if unknown) of recently submitted jobs, used to tune polling and to limit 
+     * accounting queries. Guarded by itself. 
+     */
+    private final Map<String, long[]> runtimeHints = new LinkedHashMap<String, long[]>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > MAX_RUNTIME_HINTS;
+        }
+    };
+
+    /** Optional background monitor serving job statuses from a periodically refreshed snapshot (null if disabled). */
+    protected final JobStatusMonitor monitor;
+
+    /** Merges concurrent job status requests into a single bulk query. */
+    private final QueryCoalescer<String, JobStatus> statusCoalescer;
     
     protected ScriptingScheduler(String uniqueID, String adaptor, String location, Credential credential,
-           Map<String,String> prop, XenonPropertyDescription[] validProperties, String pollDelayProperty) throws XenonException {
+           Map<String,String> prop, XenonPropertyDescription[] validProperties, String pollDelayProperty, 
+           String monitorDelayProperty, String monitorStalenessProperty) throws XenonException {
 
     	super(uniqueID, adaptor, location, ScriptingUtils.getProperties(validProperties, location, prop));
     	
     	this.pollDelay = properties.getLongProperty(pollDelayProperty);
+    	this.pollingPolicy = PollingPolicy.forPollDelay(Math.max(1, pollDelay));
 
         String subSchedulerAdaptor;
         String subFileSystemAdaptor;
         String subLocation;
+        String subSchedulerLocation;
         Map<String, String> subSchedulerProperties;
         
         if (ScriptingUtils.isLocal(location)) {
             subSchedulerAdaptor = "local";
             subFileSystemAdaptor = "file";
             subLocation = "/";
+            // the local scheduler does not accept a file system root as location
+            subSchedulerLocation = "local://";
             subSchedulerProperties = properties.filter(LocalSchedulerAdaptor.PREFIX).toMap();
         } else {
             subSchedulerAdaptor = "ssh";
             subFileSystemAdaptor = "sftp";
             subLocation = location;
+            subSchedulerLocation = location;
             subSchedulerProperties = properties.filter(SshSchedulerAdaptor.PREFIX).toMap();
 
             //since we expect commands to be done almost instantaneously, we poll quite frequently (local operation anyway)
             subSchedulerProperties.put(SshSchedulerAdaptor.POLLING_DELAY, "100");
         }
 
-        LOGGER.debug("creating sub scheduler for {} adaptor at {}://{}", adaptor, subSchedulerAdaptor, subLocation);
+        LOGGER.debug("creating sub scheduler for {} adaptor at {}://{}", adaptor, subSchedulerAdaptor, subSchedulerLocation);
         
-        subScheduler = Scheduler.create(subSchedulerAdaptor, subLocation, credential, subSchedulerProperties);
+        subScheduler = Scheduler.create(subSchedulerAdaptor, subSchedulerLocation, credential, subSchedulerProperties);
 
         LOGGER.debug("creating file system for {} adaptor at {}://{}", adaptor, subFileSystemAdaptor, subLocation);
         subFileSystem = FileSystem.create(subFileSystemAdaptor, subLocation, credential, null);
+
+        statusCoalescer = new QueryCoalescer<String, JobStatus>(adaptor, COALESCE_WINDOW) {
+            @Override
+            protected Map<String, JobStatus> query(Set<String> jobIdentifiers) throws XenonException {
+                JobStatus[] tmp = queryJobStatuses(jobIdentifiers.toArray(new String[jobIdentifiers.size()]));
+
+                Map<String, JobStatus> result = new HashMap<>();
+
+                for (JobStatus status : tmp) {
+                    if (status != null) {
+                        result.put(status.getJobIdentifier(), status);
+                    }
+                }
+
+                return result;
+            }
+        };
+
+        long monitorDelay = properties.getLongProperty(monitorDelayProperty);
+
+        if (monitorDelay > 0) {
+            LOGGER.debug("creating job status monitor for {} adaptor with delay {}", adaptor, monitorDelay);
+            monitor = new JobStatusMonitor(this, monitorDelay, properties.getLongProperty(monitorStalenessProperty));
+        } else {
+            monitor = null;
+        }
     }
       
 	protected Path getFsEntryPath() {
@@ -185,6 +252,299 @@ public abstract class ScriptingScheduler extends Scheduler {
         }
     }
     
+    /**
+     * Tell the job status monitor (if any) to track a newly submitted job.
+     * 
+     * @param jobIdentifier
+     *          the job to track.
+     */
+    protected void jobSubmitted(String jobIdentifier) {
+        if (monitor != null) {
+            monitor.addJob(jobIdentifier);
+        }
+    }
+
+    /**
+     * Tell the job status monitor (if any) to track a newly submitted job, and remember its submission time and maximum runtime 
+     * to tune the polling of waitUntilDone and waitUntilRunning.
+     * 
+     * @param jobIdentifier
+     *          the job to track.
+     * @param description
+     *          the description of the job.
+     */
+    protected void jobSubmitted(String jobIdentifier, JobDescription description) {
+
+        long maxRuntime = Math.max(0L, description.getMaxTime() * 60L * 1000L);
+
+        synchronized (runtimeHints) {
+            runtimeHints.put(jobIdentifier, new long[] { System.currentTimeMillis(), maxRuntime });
+        }
+
+        jobSubmitted(jobIdentifier);
+    }
+
+    private PollingPolicy.Backoff startBackoff(String jobIdentifier) {
+
+        long[] hint;
+
+        synchronized (runtimeHints) {
+            hint = runtimeHints.get(jobIdentifier);
+        }
+
+        if (hint == null) {
+            return pollingPolicy.start();
+        }
+
+        return pollingPolicy.start(hint[0], hint[1]);
+    }
+
+    /**
+     * Get the time at which the given job was submitted through this scheduler, if known.
+     * 
+     * @param jobIdentifier
+     *          the job identifier
+     * @return the submission time in milliseconds since the epoch, or -1 if it is not known.
+     */
+    protected long getSubmissionTime(String jobIdentifier) {
+        synchronized (runtimeHints) {
+            long[] hint = runtimeHints.get(jobIdentifier);
+            return hint == null ? -1 : hint[0];
+        }
+    }
+
+    private void forgetRuntimeHint(String jobIdentifier) {
+        synchronized (runtimeHints) {
+            runtimeHints.remove(jobIdentifier);
+        }
+    }
+
+    /**
+     * Submit a job array using the native job arrays of the scheduler. The tasks are submitted in arrays of at most 
+     * <code>maxArraySize</code> tasks each. If one of these submissions fails, the arrays submitted before are cancelled.
+     * 
+     * @param template
+     *          the description shared by all tasks.
+     * @param parameters
+     *          the additional arguments of each task.
+     * @param maxArraySize
+     *          the maximum number of tasks in a single array.
+     * @return
+     *          the job identifiers of the tasks.
+     * @throws XenonException
+     *          if the submission failed.
+     */
+    protected String[] submitJobArrays(JobDescription template, List<String[]> parameters, int maxArraySize) throws XenonException {
+
+        if (maxArraySize < 1) {
+            throw new IllegalArgumentException("Maximum array size must be positive: " + maxArraySize);
+        }
+
+        String[] result = new String[parameters.size()];
+
+        int submitted = 0;
+
+        try {
+            while (submitted < result.length) {
+                int end = Math.min(result.length, submitted + maxArraySize);
+
+                String[] tmp = submitJobArray(template, parameters.subList(submitted, end));
+                System.arraycopy(tmp, 0, result, submitted, tmp.length);
+
+                submitted = end;
+            }
+        } catch (XenonException e) {
+            cancelSubmitted(result);
+            throw e;
+        }
+
+        for (String identifier : result) {
+            jobSubmitted(identifier, template);
+        }
+
+        return result;
+    }
+
+    /**
+     * Submit a single native job array. 
+     * 
+     * @param template
+     *          the description shared by all tasks.
+     * @param parameters
+     *          the additional arguments of each task.
+     * @return
+     *          the job identifiers of the tasks.
+     * @throws XenonException
+     *          if the submission failed.
+     */
+    protected String[] submitJobArray(JobDescription template, List<String[]> parameters) throws XenonException {
+        throw new UnsupportedOperationException(getAdaptorName(), "Job arrays not supported");
+    }
+
+    /**
+     * Query the scheduler for the status of a single job. 
+     * 
+     * @param jobIdentifier
+     *          the job to get the status for. 
+     * @return
+     *          the status of the job.
+     * @throws NoSuchJobException
+     *          if the job is not known.
+     * @throws XenonException
+     *          if the status of the job could not be retrieved.
+     */
+    protected abstract JobStatus queryJobStatus(String jobIdentifier) throws XenonException;
+
+    /**
+     * Query the scheduler for the status of many jobs. The default implementation queries each job separately. Subclasses 
+     * should override this method if the scheduler allows the status of many jobs to be retrieved at once.  
+     * 
+     * @param jobIdentifiers
+     *          the jobs to get the status for.
+     * @return
+     *          the status of the jobs, in the same order as the job identifiers. Jobs whose status could not be retrieved 
+     *          will contain the exception. 
+     * @throws XenonException
+     *          if an I/O error occurred
+     */
+    protected JobStatus[] queryJobStatuses(String... jobIdentifiers) throws XenonException {
+        JobStatus[] result = new JobStatus[jobIdentifiers.length];
+
+        for (int i = 0; i < jobIdentifiers.length; i++) {
+            if (jobIdentifiers[i] != null) {
+                try {
+                    result[i] = queryJobStatus(jobIdentifiers[i]);
+                } catch (XenonException e) {
+                    result[i] = new JobStatusImplementation(jobIdentifiers[i], null, null, e, false, true, null);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the status of many jobs. Concurrent callers arriving within a small window share a single bulk query (see 
+     * {@link #queryJobStatuses(String...)}) for all their jobs.
+     * 
+     * @param jobIdentifiers
+     *          the jobs to get the status for.
+     * @return
+     *          the status of the jobs, in the same order as the job identifiers.
+     * @throws XenonException
+     *          if the bulk query failed.
+     */
+    protected JobStatus[] coalescedJobStatuses(String... jobIdentifiers) throws XenonException {
+
+        ArrayList<String> jobs = new ArrayList<>(jobIdentifiers.length);
+
+        for (String jobIdentifier : jobIdentifiers) {
+            if (jobIdentifier != null) {
+                jobs.add(jobIdentifier);
+            }
+        }
+
+        JobStatus[] result = new JobStatus[jobIdentifiers.length];
+
+        if (jobs.isEmpty()) {
+            return result;
+        }
+
+        Map<String, JobStatus> statuses = statusCoalescer.get(jobs);
+
+        for (int i = 0; i < jobIdentifiers.length; i++) {
+            if (jobIdentifiers[i] != null) {
+                result[i] = statuses.get(jobIdentifiers[i]);
+
+                if (result[i] == null) {
+                    NoSuchJobException exception = new NoSuchJobException(getAdaptorName(), "Unknown Job: " + jobIdentifiers[i]);
+                    result[i] = new JobStatusImplementation(jobIdentifiers[i], null, null, exception, false, true, null);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Throw the exception contained in a job status, if that status only contains the exception produced while retrieving 
+     * it (and no actual state). 
+     * 
+     * @param status
+     *          the status to check.
+     * @return
+     *          the status.
+     * @throws XenonException
+     *          the exception contained in the status.
+     */
+    static JobStatus checkRetrievalException(JobStatus status) throws XenonException {
+        if (status.getState() == null && status.getException() instanceof XenonException) {
+            throw (XenonException) status.getException();
+        }
+
+        return status;
+    }
+
+    @Override
+    public JobStatus getJobStatus(String jobIdentifier) throws XenonException {
+
+        assertNonNullOrEmpty(jobIdentifier, "Job identifier cannot be null or empty");
+
+        if (monitor != null) {
+            return monitor.getJobStatus(jobIdentifier);
+        }
+
+        return checkRetrievalException(coalescedJobStatuses(jobIdentifier)[0]);
+    }
+
+    @Override
+    public JobStatus[] getJobStatuses(String... jobIdentifiers) throws XenonException {
+
+        if (monitor != null) {
+            return monitor.getJobStatuses(jobIdentifiers);
+        }
+
+        return coalescedJobStatuses(jobIdentifiers);
+    }
+
+    /**
+     * Wait for a new job status to become available. The time to wait is determined by the backoff. If a job status monitor 
+     * is running, the wait ends as soon as the monitor sees the state of the job change. 
+     * 
+     * @param status
+     *          the last known status of the job.
+     * @param backoff
+     *          the backoff of the current wait.
+     * @param deadline
+     *          the time at which the wait should end at the latest.
+     * @return 
+     *          <code>false</code> if the waiting thread was interrupted, <code>true</code> otherwise. 
+     */
+    private boolean awaitStatusUpdate(JobStatus status, PollingPolicy.Backoff backoff, long deadline) {
+
+        long left = deadline - System.currentTimeMillis();
+
+        if (left <= 0) {
+            return true;
+        }
+
+        long delay = Math.min(left, backoff.nextDelay());
+
+        if (monitor != null) {
+            monitor.awaitChange(status.getJobIdentifier(), status.getState(), delay);
+            return !Thread.currentThread().isInterrupted();
+        }
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        return true;
+    }
+
     /**
      * Wait until a Job is done, or until the give timeout expires (whichever comes first). 
      * 
@@ -209,16 +569,25 @@ public abstract class ScriptingScheduler extends Scheduler {
               
         JobStatus status = getJobStatus(jobIdentifier);
 
+        PollingPolicy.Backoff backoff = startBackoff(jobIdentifier);
+
         // wait until we are done, or the timeout expires
         while (!status.isDone() && System.currentTimeMillis() < deadline) {
-            try {
-                Thread.sleep(pollDelay);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+            if (!awaitStatusUpdate(status, backoff, deadline)) {
                 return status;
             }
             
+            JobStatus previous = status;
+
             status = getJobStatus(jobIdentifier);
+
+            if (!sameState(previous, status)) {
+                backoff.reset();
+            }
+        }
+
+        if (status.isDone()) {
+            forgetRuntimeHint(jobIdentifier);
         }
 
         return status;
@@ -248,21 +617,34 @@ public abstract class ScriptingScheduler extends Scheduler {
         
         JobStatus status = getJobStatus(jobIdentifier);
 
+        PollingPolicy.Backoff backoff = startBackoff(jobIdentifier);
+
         // wait until we are done, or the timeout expires
         while (!(status.isRunning() || status.isDone()) && System.currentTimeMillis() < deadline) {
-            try {
-                Thread.sleep(pollDelay);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+            if (!awaitStatusUpdate(status, backoff, deadline)) {
                 return status;
             }
-            
+
+            JobStatus previous = status;
+
             status = getJobStatus(jobIdentifier);
+
+            if (!sameState(previous, status)) {
+                backoff.reset();
+            }
+        }
+
+        if (status.isDone()) {
+            forgetRuntimeHint(jobIdentifier);
         }
 
         return status;
     }
 
+    private static boolean sameState(JobStatus a, JobStatus b) {
+        return a.getState() == null ? b.getState() == null : a.getState().equals(b.getState());
+    }
+
     /**
      * Check if the given working directory exists. Useful for schedulers that do not check this (like Slurm)
      * 
@@ -289,7 +671,30 @@ public abstract class ScriptingScheduler extends Scheduler {
         }
     }
 
+    @Override
+    protected long getAsyncPollDelay() {
+        if (monitor != null) {
+            return monitor.getPollDelay();
+        }
+
+        return pollDelay;
+    }
+
+    /**
+     * A scripting scheduler is open as long as both the scheduler and file system used to reach the cluster are open. These 
+     * re-establish lost connections themselves, so a scheduler that is still open remains usable after a connection loss.
+     */
+    @Override
+    public boolean isOpen() throws XenonException {
+        return subScheduler.isOpen() && subFileSystem.isOpen();
+    }
+
     public void close() throws XenonException {
+        stopWaitingAsync();
+
+        if (monitor != null) {
+            monitor.stop();
+        }
     	subScheduler.close();
     	subFileSystem.close();
     }
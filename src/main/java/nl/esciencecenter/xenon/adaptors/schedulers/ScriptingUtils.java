@@ -106,6 +106,26 @@ public class ScriptingUtils {
 		}
 	}
 
+	/**
+	 * Get the description of a single task of a job array.
+	 * 
+	 * @param template
+	 *            the description shared by all tasks.
+	 * @param parameters
+	 *            the additional arguments of the task.
+	 * @return a copy of the template, with the parameters appended to its arguments. 
+	 */
+	public static JobDescription getTaskDescription(JobDescription template, String[] parameters) {
+
+		JobDescription result = new JobDescription(template);
+
+		for (String parameter : parameters) {
+			result.addArgument(parameter);
+		}
+
+		return result;
+	}
+
 	public static void verifyJobOptions(Map<String, String> options, String[] validOptions, String adaptorName)
 			throws InvalidJobDescriptionException {
 
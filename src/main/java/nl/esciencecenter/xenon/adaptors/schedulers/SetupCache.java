@@ -0,0 +1,140 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.credentials.Credential;
+
+/**
+ * Caches the setup of a scheduler (such as its configuration and queues) per location and credential, so schedulers created
+ * for the same cluster do not have to query it again. 
+ * 
+ * Entries expire after a time to live, after which the next caller loads them again. Concurrent callers asking for the same
+ * key share a single load, while different keys are loaded independently. Failed loads are not cached.
+ *
+ * @param <T> the type of the cached setup
+ */
+public class SetupCache<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SetupCache.class);
+
+    /**
+     * Loads the setup of a scheduler.
+     *
+     * @param <T> the type of the setup
+     */
+    public interface Loader<T> {
+        /**
+         * Load the setup.
+         * 
+         * @return
+         *          the setup.
+         * @throws XenonException
+         *          if the setup could not be loaded.
+         */
+        T load() throws XenonException;
+    }
+
+    private static class Entry<T> {
+        private T value;
+        private long expires;
+    }
+
+    /** Guarded by this. */
+    private final Map<String, Entry<T>> entries = new HashMap<>();
+
+    /**
+     * Create the key under which the setup of a scheduler is cached. The key contains the location and the type and user name 
+     * of the credential, but never any secrets.
+     * 
+     * @param location
+     *          the location of the scheduler.
+     * @param credential
+     *          the credential used to access the scheduler (may be <code>null</code>).
+     * @return
+     *          the key.
+     */
+    public static String getKey(String location, Credential credential) {
+        if (credential == null) {
+            return location;
+        }
+
+        return location + "|" + credential.getClass().getName() + "|" + credential.getUsername();
+    }
+
+    private synchronized Entry<T> getEntry(String key) {
+        Entry<T> entry = entries.get(key);
+
+        if (entry == null) {
+            entry = new Entry<>();
+            entries.put(key, entry);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Get the setup for a key, loading it if it is not cached or has expired.
+     * 
+     * @param key
+     *          the key of the setup, see {@link #getKey(String, Credential)}.
+     * @param timeToLive
+     *          the time in ms. a loaded setup may be used. If 0 or less the setup is always loaded. 
+     * @param loader
+     *          used to load the setup.
+     * @return
+     *          the setup.
+     * @throws XenonException
+     *          if the setup had to be loaded and loading failed.
+     */
+    public T get(String key, long timeToLive, Loader<T> loader) throws XenonException {
+
+        if (timeToLive <= 0) {
+            return loader.load();
+        }
+
+        Entry<T> entry = getEntry(key);
+
+        synchronized (entry) {
+            long now = System.currentTimeMillis();
+
+            if (entry.value == null || now >= entry.expires) {
+                LOGGER.debug("Loading scheduler setup for {}", key);
+                entry.value = null;
+                entry.value = loader.load();
+                entry.expires = timeToLive > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeToLive;
+            }
+
+            return entry.value;
+        }
+    }
+
+    /**
+     * Remove the setup for a key, so it is loaded again on the next request.
+     * 
+     * @param key
+     *          the key of the setup.
+     */
+    public synchronized void invalidate(String key) {
+        entries.remove(key);
+    }
+}
@@ -18,20 +18,32 @@ package nl.esciencecenter.xenon.adaptors.schedulers.gridengine;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.ACCOUNTING_GRACE_TIME_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.ADAPTOR_NAME;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.IGNORE_VERSION_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.LAZY_SETUP_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.MAX_ARRAY_SIZE_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.MONITOR_DELAY_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.MONITOR_STALENESS_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.POLL_DELAY_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.SETUP_CACHE_TTL_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.VALID_PROPERTIES;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineUtils.JOB_OPTION_JOB_SCRIPT;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineUtils.QACCT_HEADER;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineUtils.generate;
+import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineUtils.getJobArguments;
+import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineUtils.getJobNumber;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineUtils.getJobStatusFromQacctInfo;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineUtils.getJobStatusFromQstatInfo;
+import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineUtils.getQacctBeginTime;
+import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineUtils.parseQacctRecords;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineUtils.verifyJobDescription;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -44,10 +56,12 @@ import nl.esciencecenter.xenon.UnsupportedOperationException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.schedulers.JobCanceledException;
 import nl.esciencecenter.xenon.adaptors.schedulers.JobStatusImplementation;
+import nl.esciencecenter.xenon.adaptors.schedulers.QueryCoalescer;
 import nl.esciencecenter.xenon.adaptors.schedulers.QueueStatusImplementation;
 import nl.esciencecenter.xenon.adaptors.schedulers.RemoteCommandRunner;
 import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingParser;
 import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingScheduler;
+import nl.esciencecenter.xenon.adaptors.schedulers.SetupCache;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
@@ -64,6 +78,9 @@ import nl.esciencecenter.xenon.schedulers.Streams;
 public class GridEngineScheduler extends ScriptingScheduler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GridEngineScheduler.class);
+
+    /** Maximum number of finished job statuses kept by the scheduler. */
+    private static final int MAX_FINISHED_JOBS = 10000;
    
     private final long accountingGraceTime;
 
@@ -75,32 +92,89 @@ public class GridEngineScheduler extends ScriptingScheduler {
     private final Map<String, Long> lastSeenMap;
 
     //list of jobs we have killed before they even started. These will not end up in qacct, so we keep them here.
-    private final Set<Long> deletedJobs;
+    private final Set<String> deletedJobs;
 
     private final GridEngineXmlParser parser;
 
-    private final GridEngineSetup setupInfo;
+    /** Setup of the clusters, shared by all schedulers for the same location and credential. */
+    private static final SetupCache<GridEngineSetup> SETUP_CACHE = new SetupCache<>();
+
+    /** Key of this scheduler in the setup cache. */
+    private final String setupKey;
+
+    private final long setupTimeToLive;
+
+    /** Guarded by this. Null until the setup has been retrieved. */
+    private GridEngineSetup setupInfo;
+
+    /** Maximum number of tasks in a single job array. */
+    private final int maxArraySize;
+
+    /** Merges concurrent queue status requests into a single qstat call. */
+    private final QueryCoalescer<String, Map<String, String>> queueCoalescer;
+
+    /** Statuses of jobs found in the accounting. These jobs have finished, so their status will not change anymore. */
+    private final Map<String, JobStatus> finishedJobs = new LinkedHashMap<String, JobStatus>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JobStatus> eldest) {
+            return size() > MAX_FINISHED_JOBS;
+        }
+    };
 
     protected GridEngineScheduler(String uniqueID, String location, Credential credential, Map<String,String> prop) 
             throws XenonException {
 
-        super(uniqueID, ADAPTOR_NAME, location, credential, prop, VALID_PROPERTIES, POLL_DELAY_PROPERTY);
+        super(uniqueID, ADAPTOR_NAME, location, credential, prop, VALID_PROPERTIES, POLL_DELAY_PROPERTY,
+                MONITOR_DELAY_PROPERTY, MONITOR_STALENESS_PROPERTY);
 
         boolean ignoreVersion = properties.getBooleanProperty(IGNORE_VERSION_PROPERTY);
         accountingGraceTime = properties.getLongProperty(ACCOUNTING_GRACE_TIME_PROPERTY);
+        maxArraySize = Math.max(1, properties.getIntegerProperty(MAX_ARRAY_SIZE_PROPERTY));
 
         parser = new GridEngineXmlParser(ignoreVersion);
 
         lastSeenMap = new HashMap<>();
         deletedJobs = new HashSet<>();
         
-        // Run a few commands to fetch info about the queue
-        this.setupInfo = new GridEngineSetup(this);
+        setupKey = SetupCache.getKey(location, credential);
+        setupTimeToLive = properties.getLongProperty(SETUP_CACHE_TTL_PROPERTY);
+
+        // qstat always reports all queues, so the requested queue names are only used to filter the result.
+        queueCoalescer = new QueryCoalescer<String, Map<String, String>>(ADAPTOR_NAME, COALESCE_WINDOW) {
+            @Override
+            protected Map<String, Map<String, String>> query(Set<String> queueNames) throws XenonException {
+                String qstatOutput = runCheckedCommand(null, "qstat", "-xml", "-g", "c");
+                return parser.parseQueueInfos(qstatOutput);
+            }
+        };
+
+        if (!properties.getBooleanProperty(LAZY_SETUP_PROPERTY)) {
+            getSetupInfo();
+        }
+    }
+
+    /**
+     * Get the setup of the cluster, retrieving it (or taking it from the setup cache) on first use.
+     */
+    private synchronized GridEngineSetup getSetupInfo() throws XenonException {
+        if (setupInfo == null) {
+            setupInfo = SETUP_CACHE.get(setupKey, setupTimeToLive, new SetupCache.Loader<GridEngineSetup>() {
+                @Override
+                public GridEngineSetup load() throws XenonException {
+                    // Run a few commands to fetch info about the queue
+                    return new GridEngineSetup(GridEngineScheduler.this);
+                }
+            });
+        }
+
+        return setupInfo;
     }
         	    
     @Override
-    public String[] getQueueNames() {
-        return setupInfo.getQueueNames();
+    public String[] getQueueNames() throws XenonException {
+        return getSetupInfo().getQueueNames();
     }
 
     @Override
@@ -138,7 +212,7 @@ public class GridEngineScheduler extends ScriptingScheduler {
     }
 
     private synchronized void addDeletedJob(String jobIdentifier) {
-        deletedJobs.add(Long.parseLong(jobIdentifier));
+        deletedJobs.add(jobIdentifier);
     }
 
     /*
@@ -149,7 +223,7 @@ public class GridEngineScheduler extends ScriptingScheduler {
         if (deletedJobs.isEmpty()) {
             return false;
         }
-        return deletedJobs.remove(Long.parseLong(jobIdentifier));
+        return deletedJobs.remove(jobIdentifier);
     }
 
     private void jobsFromStatus(String statusOutput, List<String> result) throws XenonException {
@@ -197,9 +271,7 @@ public class GridEngineScheduler extends ScriptingScheduler {
     	
     	assertNonNullOrEmpty(queueName, "Queue name cannot be null or empty!");
     	
-        String qstatOutput = runCheckedCommand(null, "qstat", "-xml", "-g", "c");
-
-        Map<String, Map<String, String>> allMap = parser.parseQueueInfos(qstatOutput);
+        Map<String, Map<String, String>> allMap = queueCoalescer.get(Collections.singletonList(queueName));
 
         Map<String, String> map = allMap.get(queueName);
 
@@ -223,9 +295,19 @@ public class GridEngineScheduler extends ScriptingScheduler {
 
         QueueStatus[] result = new QueueStatus[queueNames.length];
 
-        String qstatOutput = runCheckedCommand(null, "qstat", "-xml", "-g", "c");
+        ArrayList<String> requested = new ArrayList<>(queueNames.length);
+
+        for (String queueName : queueNames) {
+            if (queueName != null) {
+                requested.add(queueName);
+            }
+        }
 
-        Map<String, Map<String, String>> allMap = parser.parseQueueInfos(qstatOutput);
+        Map<String, Map<String, String>> allMap = new HashMap<>();
+
+        if (!requested.isEmpty()) {
+            allMap = queueCoalescer.get(requested);
+        }
 
         for (int i = 0; i < queueNames.length; i++) {
             if (queueNames[i] == null) {
@@ -264,7 +346,7 @@ public class GridEngineScheduler extends ScriptingScheduler {
         String customScriptFile = description.getJobOptions().get(JOB_OPTION_JOB_SCRIPT);
 
         if (customScriptFile == null) {
-            String jobScript = generate(description, fsEntryPath, setupInfo);
+            String jobScript = generate(description, fsEntryPath, getSetupInfo());
 
             output = runCheckedCommand(jobScript, "qsub");
         } else {
@@ -283,18 +365,60 @@ public class GridEngineScheduler extends ScriptingScheduler {
 
         updateJobsSeenMap(Collections.singleton(identifier));
 
+        jobSubmitted(identifier, description);
+
         return identifier;
     }
 
+    @Override
+    public String[] submitBatchJobArray(JobDescription template, List<String[]> parameters) throws XenonException {
+
+        if (parameters.isEmpty() || template.getJobOptions().containsKey(JOB_OPTION_JOB_SCRIPT)) {
+            // A custom job script cannot be turned into an array.
+            return super.submitBatchJobArray(template, parameters);
+        }
+
+        verifyJobDescription(template);
+
+        return submitJobArrays(template, parameters, maxArraySize);
+    }
+
+    @Override
+    protected String[] submitJobArray(JobDescription template, List<String[]> parameters) throws XenonException {
+
+        String output = runCheckedCommand(generate(template, getFsEntryPath(), getSetupInfo(), parameters), "qsub");
+
+        // Output looks like: Your job-array 1234.1-10:1 ("xenon") has been submitted
+        String jobNumber = getJobNumber(ScriptingParser.parseJobIDFromLine(output, ADAPTOR_NAME, "Your job-array"));
+
+        String[] result = new String[parameters.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = jobNumber + "." + (i + 1);
+        }
+
+        updateJobsSeenMap(new HashSet<>(Arrays.asList(result)));
+
+        return result;
+    }
+
     @Override
     public JobStatus cancelJob(String jobIdentifier) throws XenonException {
     	
     	assertNonNullOrEmpty(jobIdentifier, "Job identifier cannot be null or empty");
     	
-        String qdelOutput = runCheckedCommand(null, "qdel", jobIdentifier);
+        String qdelOutput = runCheckedCommand(null, "qdel", getJobArguments(jobIdentifier));
 
-        String killedOutput = "has registered the job " + jobIdentifier + " for deletion";
-        String deletedOutput = "has deleted job " + jobIdentifier;
+        String killedOutput;
+        String deletedOutput;
+
+        if (jobIdentifier.equals(getJobNumber(jobIdentifier))) {
+            killedOutput = "has registered the job " + jobIdentifier + " for deletion";
+            deletedOutput = "has deleted job " + jobIdentifier;
+        } else {
+            killedOutput = "has registered the job-array task " + jobIdentifier + " for deletion";
+            deletedOutput = "has deleted job-array task " + jobIdentifier;
+        }
 
         int matched = ScriptingParser.checkIfContains(qdelOutput, ADAPTOR_NAME, killedOutput, deletedOutput);
 
@@ -306,10 +430,10 @@ public class GridEngineScheduler extends ScriptingScheduler {
             updateJobsSeenMap(Collections.singleton(jobIdentifier));
         }
 
-        return getJobStatus(jobIdentifier);
+        return queryJobStatus(jobIdentifier);
     }
 
-    private Map<String, Map<String, String>> getQstatInfo() throws XenonException {
+    private Map<String, Map<String, String>> getQstatInfo(String... jobs) throws XenonException {
         RemoteCommandRunner runner = runCommand(null, "qstat", "-xml");
 
         if (!runner.success()) {
@@ -317,7 +441,16 @@ public class GridEngineScheduler extends ScriptingScheduler {
             return new HashMap<>(0);
         }
 
-        Map<String, Map<String, String>> result = parser.parseJobInfos(runner.getStdout());
+        //only keep the jobs we are looking for, so parsing can stop once they are found
+        Set<String> wanted = new HashSet<>();
+
+        for (String job : jobs) {
+            if (job != null) {
+                wanted.add(job);
+            }
+        }
+
+        Map<String, Map<String, String>> result = parser.parseJobInfos(runner.getStdout(), wanted);
 
         //mark jobs we found as seen, in case they disappear from the queue
         updateJobsSeenMap(result.keySet());
@@ -326,7 +459,12 @@ public class GridEngineScheduler extends ScriptingScheduler {
     }
 
     private Map<String, String> getQacctInfo(String jobIdentifier) throws XenonException {
-        RemoteCommandRunner runner = runCommand(null, "qacct", "-j", jobIdentifier);
+        String[] jobArguments = getJobArguments(jobIdentifier);
+        String[] arguments = new String[jobArguments.length + 1];
+        arguments[0] = "-j";
+        System.arraycopy(jobArguments, 0, arguments, 1, jobArguments.length);
+
+        RemoteCommandRunner runner = runCommand(null, "qacct", arguments);
 
         if (!runner.success()) {
             LOGGER.debug("failed to get job status {}", runner);
@@ -338,24 +476,74 @@ public class GridEngineScheduler extends ScriptingScheduler {
     }
 
     /**
-     * Get job status. First checks given qstat info map, but also runs additional qacct and qdel commands if needed.
+     * Get the qacct information of the given jobs. Jobs with a known submission time are found with a single scan of the 
+     * accounting, starting at the submission time of the oldest of these jobs. Jobs with an unknown submission time (such as 
+     * jobs submitted by another scheduler instance) are looked up one by one, so the accounting is never scanned from its start.
+     * 
+     * @param jobIdentifiers
+     *            the jobs to get the information for.
+     * @return the qacct information of the jobs that were found, indexed by job identifier.
+     * @throws XenonException
+     *             if the qacct output could not be parsed.
+     */
+    private Map<String, Map<String, String>> getQacctInfos(List<String> jobIdentifiers) throws XenonException {
+        Map<String, Map<String, String>> result = new HashMap<>();
+
+        Set<String> scanned = new HashSet<>();
+        long oldest = Long.MAX_VALUE;
+
+        for (String jobIdentifier : jobIdentifiers) {
+            long submitted = getSubmissionTime(jobIdentifier);
+
+            if (submitted < 0) {
+                addQacctInfo(result, jobIdentifier);
+            } else {
+                scanned.add(jobIdentifier);
+                oldest = Math.min(oldest, submitted);
+            }
+        }
+
+        if (scanned.size() == 1) {
+            addQacctInfo(result, scanned.iterator().next());
+        } else if (scanned.size() > 1) {
+            RemoteCommandRunner runner = runCommand(null, "qacct", "-b", getQacctBeginTime(oldest), "-j");
+
+            if (runner.success()) {
+                result.putAll(parseQacctRecords(runner.getStdout(), scanned));
+            } else {
+                LOGGER.debug("failed to get job status {}", runner);
+            }
+        }
+
+        return result;
+    }
+
+    private void addQacctInfo(Map<String, Map<String, String>> result, String jobIdentifier) throws XenonException {
+        Map<String, String> info = getQacctInfo(jobIdentifier);
+
+        if (info != null) {
+            result.put(jobIdentifier, info);
+        }
+    }
+
+    private JobStatus getFinishedJob(String jobIdentifier) {
+        synchronized (finishedJobs) {
+            return finishedJobs.get(jobIdentifier);
+        }
+    }
+
+    /**
+     * Get job status from the given qstat info map. Jobs in an error state are cancelled.
      * 
      * @param qstatInfo
      *            the info to get the job status from.
      * @param jobIdentifier
      *            the job to get the status for.
-     * @return the JobStatus of the job.
+     * @return the JobStatus of the job, or <code>null</code> if the job is not (or no longer) in the queue.
      * @throws XenonException
      *             in case the info is not valid.
-     * @throws XenonException
-     *             in case an additional command fails to run.
      */
-    private JobStatus getJobStatus(Map<String, Map<String, String>> qstatInfo, String jobIdentifier) throws XenonException {
-
-        if (jobIdentifier == null) {
-            return null;
-        }
-
+    private JobStatus getJobStatusFromQueue(Map<String, Map<String, String>> qstatInfo, String jobIdentifier) throws XenonException {
         JobStatus status = getJobStatusFromQstatInfo(qstatInfo, jobIdentifier);
 
         if (status != null && status.hasException()) {
@@ -363,35 +551,108 @@ public class GridEngineScheduler extends ScriptingScheduler {
             status = null;
         }
 
-        if (status == null) {
-            Map<String, String> qacctInfo = getQacctInfo(jobIdentifier);
-            status = getJobStatusFromQacctInfo(qacctInfo, jobIdentifier);
+        return status;
+    }
+
+    /**
+     * Get the status of a job that is no longer in the queue. First checks given qacct info map, and caches the status found
+     * there, as it is final.
+     * 
+     * @param qacctInfo
+     *            the info to get the job status from.
+     * @param jobIdentifier
+     *            the job to get the status for.
+     * @return the JobStatus of the job, or <code>null</code> if the job is unknown.
+     * @throws XenonException
+     *             in case the info is not valid.
+     */
+    private JobStatus getJobStatusFromAccounting(Map<String, Map<String, String>> qacctInfo, String jobIdentifier) 
+            throws XenonException {
+
+        JobStatus status = getJobStatusFromQacctInfo(qacctInfo.get(jobIdentifier), jobIdentifier);
+
+        if (status != null) {
+            synchronized (finishedJobs) {
+                finishedJobs.put(jobIdentifier, status);
+            }
+            return status;
         }
 
         //perhaps the job was killed while it was not running yet ("deleted", in sge speak). This will make it disappear from
         //qstat/qacct output completely
-        if (status == null && jobWasDeleted(jobIdentifier)) {
+        if (jobWasDeleted(jobIdentifier)) {
             Exception exception = new JobCanceledException(ADAPTOR_NAME, "Job " + jobIdentifier
                     + " deleted by user while still pending");
-            status = new JobStatusImplementation(jobIdentifier, "killed", null, exception, false, true, null);
+            return new JobStatusImplementation(jobIdentifier, "killed", null, exception, false, true, null);
         }
 
         //this job is neither in qstat nor qacct output. we assume it is "in between" for a certain grace time.
-        if (status == null && haveRecentlySeen(jobIdentifier)) {
-            status = new JobStatusImplementation(jobIdentifier, "unknown", null, null, false, false, new HashMap<String, String>());
+        if (haveRecentlySeen(jobIdentifier)) {
+            return new JobStatusImplementation(jobIdentifier, "unknown", null, null, false, false, new HashMap<String, String>());
         }
 
-        return status;
+        return null;
+    }
+
+    /**
+     * Get the status of the given jobs. Finished jobs are served from the cache. The others are looked up with a single qstat
+     * call, and those no longer in the queue with a single qacct lookup.
+     * 
+     * @param jobs
+     *            the jobs to get the status for. <code>null</code> values are ignored.
+     * @return the JobStatus of each job, or <code>null</code> for unknown jobs.
+     * @throws XenonException
+     *             in case the info is not valid, or an additional command fails to run.
+     */
+    private JobStatus[] lookupJobStatuses(String... jobs) throws XenonException {
+        JobStatus[] result = new JobStatus[jobs.length];
+        ArrayList<String> queried = new ArrayList<>();
+
+        for (int i = 0; i < jobs.length; i++) {
+            if (jobs[i] != null) {
+                result[i] = getFinishedJob(jobs[i]);
+
+                if (result[i] == null) {
+                    queried.add(jobs[i]);
+                }
+            }
+        }
+
+        if (queried.isEmpty()) {
+            return result;
+        }
+
+        Map<String, Map<String, String>> qstatInfo = getQstatInfo(queried.toArray(new String[queried.size()]));
+
+        LinkedHashSet<String> missing = new LinkedHashSet<>();
+
+        for (int i = 0; i < jobs.length; i++) {
+            if (jobs[i] != null && result[i] == null) {
+                result[i] = getJobStatusFromQueue(qstatInfo, jobs[i]);
+
+                if (result[i] == null) {
+                    missing.add(jobs[i]);
+                }
+            }
+        }
+
+        Map<String, Map<String, String>> qacctInfo = getQacctInfos(new ArrayList<>(missing));
+
+        for (int i = 0; i < jobs.length; i++) {
+            if (jobs[i] != null && result[i] == null) {
+                result[i] = getJobStatusFromAccounting(qacctInfo, jobs[i]);
+            }
+        }
+
+        return result;
     }
 
     @Override
-    public JobStatus getJobStatus(String jobIdentifier) throws XenonException {
+    protected JobStatus queryJobStatus(String jobIdentifier) throws XenonException {
         
     	assertNonNullOrEmpty(jobIdentifier, "Job identifier cannot be null or empty");
         
-        Map<String, Map<String, String>> info = getQstatInfo();
-
-        JobStatus result = getJobStatus(info, jobIdentifier);
+        JobStatus result = lookupJobStatuses(jobIdentifier)[0];
 
         //this job really does not exist. throw an exception
         if (result == null) {
@@ -402,22 +663,14 @@ public class GridEngineScheduler extends ScriptingScheduler {
     }
 
     @Override
-    public JobStatus[] getJobStatuses(String... jobs) throws XenonException {
-        Map<String, Map<String, String>> info = getQstatInfo();
-
-        JobStatus[] result = new JobStatus[jobs.length];
+    protected JobStatus[] queryJobStatuses(String... jobs) throws XenonException {
+        JobStatus[] result = lookupJobStatuses(jobs);
 
         for (int i = 0; i < result.length; i++) {
-            if (jobs[i] == null) {
-                result[i] = null;
-            } else {
-                result[i] = getJobStatus(info, jobs[i]);
-
-                //this job really does not exist. set it to an error state.
-                if (result[i] == null) {
-                    Exception exception = new NoSuchJobException(ADAPTOR_NAME, "Job " + jobs[i] + " not found on server");
-                    result[i] = new JobStatusImplementation(jobs[i], null, null, exception, false, false, null);
-                }
+            //this job really does not exist. set it to an error state.
+            if (jobs[i] != null && result[i] == null) {
+                Exception exception = new NoSuchJobException(ADAPTOR_NAME, "Job " + jobs[i] + " not found on server");
+                result[i] = new JobStatusImplementation(jobs[i], null, null, exception, false, false, null);
             }
         }
         return result;
@@ -428,10 +681,4 @@ public class GridEngineScheduler extends ScriptingScheduler {
 //        throw new XenonException(ADAPTOR_NAME, "does not support interactive jobs");
 //    }
 
-	@Override
-	public boolean isOpen() throws XenonException {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
 }
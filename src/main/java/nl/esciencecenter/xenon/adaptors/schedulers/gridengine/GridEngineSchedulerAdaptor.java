@@ -46,6 +46,21 @@ public class GridEngineSchedulerAdaptor extends ScriptingSchedulerAdaptor {
     /** Polling delay for jobs started by this adaptor. */
     public static final String POLL_DELAY_PROPERTY = PREFIX + "poll.delay";
 
+    /** Delay between two bulk status queries of the job status monitor. */
+    public static final String MONITOR_DELAY_PROPERTY = PREFIX + "monitor.delay";
+
+    /** Maximum age of a job status returned by the job status monitor. */
+    public static final String MONITOR_STALENESS_PROPERTY = PREFIX + "monitor.max.staleness";
+
+    /** Maximum number of tasks in a single job array. */
+    public static final String MAX_ARRAY_SIZE_PROPERTY = PREFIX + "array.max.size";
+
+    /** Time the setup of a scheduler is cached for other schedulers at the same location. */
+    public static final String SETUP_CACHE_TTL_PROPERTY = PREFIX + "setup.cache.ttl";
+
+    /** Should the setup of a scheduler be retrieved when it is first needed, instead of when the scheduler is created? */
+    public static final String LAZY_SETUP_PROPERTY = PREFIX + "setup.lazy";
+
     /** Human readable description of this adaptor */
     public static final String ADAPTOR_DESCRIPTION = "The SGE Adaptor submits jobs to a (Sun/Ocacle/Univa) Grid Engine scheduler."
             + " This adaptor uses either the local or the ssh adaptor to gain access to the scheduler machine.";
@@ -58,7 +73,22 @@ public class GridEngineSchedulerAdaptor extends ScriptingSchedulerAdaptor {
         new XenonPropertyDescription(ACCOUNTING_GRACE_TIME_PROPERTY, Type.LONG, 
                 "60000", "Number of milliseconds a job is allowed to take going from the queue to the qacct output."),
         new XenonPropertyDescription(POLL_DELAY_PROPERTY, Type.LONG, 
-        		"1000", "Number of milliseconds between polling the status of a job.")
+        		"1000", "Number of milliseconds between polling the status of a job."),
+        new XenonPropertyDescription(MONITOR_DELAY_PROPERTY, Type.LONG, 
+                "0", "Number of milliseconds between two bulk status queries for all jobs tracked by the job status monitor. "
+                        + "Job statuses are then served from the latest snapshot. Use 0 to disable the monitor."),
+        new XenonPropertyDescription(MONITOR_STALENESS_PROPERTY, Type.LONG, 
+                "5000", "Maximum age in milliseconds of a job status served by the job status monitor. Older snapshots are "
+                        + "refreshed before being returned."),
+        new XenonPropertyDescription(MAX_ARRAY_SIZE_PROPERTY, Type.INTEGER, 
+                "75000", "Maximum number of tasks in a single job array (max_aj_tasks in the grid engine configuration). "
+                        + "Larger job arrays are submitted in parts."),
+        new XenonPropertyDescription(SETUP_CACHE_TTL_PROPERTY, Type.LONG, 
+                "600000", "Number of milliseconds the setup of the scheduler (the queues and parallel environments) is shared with other schedulers "
+                        + "created for the same location and credential. Use 0 to always query the setup."),
+        new XenonPropertyDescription(LAZY_SETUP_PROPERTY, Type.BOOLEAN, 
+                "false", "Retrieve the setup of the scheduler when it is first needed, instead of when the scheduler is "
+                        + "created. Errors in the setup are then reported by the first operation that needs it.")
     };
 	
 	public GridEngineSchedulerAdaptor() {
@@ -17,9 +17,14 @@ package nl.esciencecenter.xenon.adaptors.schedulers.gridengine;
 
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.ADAPTOR_NAME;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +33,7 @@ import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.schedulers.CommandLineUtils;
 import nl.esciencecenter.xenon.adaptors.schedulers.JobCanceledException;
 import nl.esciencecenter.xenon.adaptors.schedulers.JobStatusImplementation;
+import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingParser;
 import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingUtils;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.schedulers.InvalidJobDescriptionException;
@@ -53,6 +59,9 @@ final class GridEngineUtils {
             JOB_OPTION_PARALLEL_SLOTS, JOB_OPTION_RESOURCES };
 
     public static final String QACCT_HEADER = "==============================================================";
+
+    /** Margin applied to the begin time of a qacct scan, to cover differences in clock or time zone. */
+    private static final long QACCT_BEGIN_MARGIN = 24L * 60L * 60L * 1000L;
     
     private static final int MINUTES_PER_HOUR = 60;
     
@@ -107,9 +116,117 @@ final class GridEngineUtils {
         script.format("\n");
     }
 
-    @SuppressWarnings("PMD.NPathComplexity")
+    private static void generateScriptContent(JobDescription description, Formatter script) {
+        if (description.getNodeCount() == 1 && description.getProcessesPerNode() == 1) {
+            generateSerialScriptContent(description, script);
+        } else {
+            generateParallelScriptContent(description, script);
+        }
+    }
+
+    /**
+     * Get the job number of a job identifier. The identifier of a task of a job array consists of the job number of the 
+     * array and the task number, separated by a dot.
+     * 
+     * @param jobIdentifier
+     *          the job identifier
+     * @return
+     *          the job number
+     */
+    protected static String getJobNumber(String jobIdentifier) {
+        int dot = jobIdentifier.indexOf('.');
+        return dot < 0 ? jobIdentifier : jobIdentifier.substring(0, dot);
+    }
+
+    /**
+     * Get the arguments that select a job or a single task of a job array in qdel and qacct.
+     * 
+     * @param jobIdentifier
+     *          the job identifier
+     * @return
+     *          the job number, followed by <code>-t</code> and the task number if the identifier refers to a task.
+     */
+    protected static String[] getJobArguments(String jobIdentifier) {
+        int dot = jobIdentifier.indexOf('.');
+
+        if (dot < 0) {
+            return new String[] { jobIdentifier };
+        }
+
+        return new String[] { jobIdentifier.substring(0, dot), "-t", jobIdentifier.substring(dot + 1) };
+    }
+
+    /**
+     * Get the begin time to pass to <code>qacct -b</code> to find jobs submitted at or after the given time.
+     * 
+     * @param submitTime
+     *          the submission time of the oldest job to find, in milliseconds since the epoch.
+     * @return
+     *          the begin time, formatted as <code>CCYYMMDDhhmm</code>.
+     */
+    protected static String getQacctBeginTime(long submitTime) {
+        return new SimpleDateFormat("yyyyMMddHHmm", Locale.US).format(new Date(submitTime - QACCT_BEGIN_MARGIN));
+    }
+
+    /**
+     * Parse the records printed by <code>qacct -j</code> when listing several jobs, keeping only the given jobs. A record
+     * of a task of a job array is returned for both the job and the task identifier.
+     * 
+     * @param output
+     *          the qacct output.
+     * @param jobIdentifiers
+     *          the jobs to return.
+     * @return
+     *          the qacct information of the jobs found, indexed by job identifier.
+     * @throws XenonException
+     *          if a record could not be parsed.
+     */
+    protected static Map<String, Map<String, String>> parseQacctRecords(String output, Set<String> jobIdentifiers)
+            throws XenonException {
+        Map<String, Map<String, String>> result = new HashMap<>();
+
+        for (String record : output.split(QACCT_HEADER)) {
+            if (record.trim().isEmpty()) {
+                continue;
+            }
+
+            Map<String, String> info = ScriptingParser.parseKeyValueLines(record, ScriptingParser.WHITESPACE_REGEX, ADAPTOR_NAME);
+
+            String jobNumber = info.get("jobnumber");
+
+            if (jobNumber == null) {
+                continue;
+            }
+
+            if (jobIdentifiers.contains(jobNumber)) {
+                result.put(jobNumber, info);
+            }
+
+            String task = jobNumber + "." + info.get("taskid");
+
+            if (jobIdentifiers.contains(task)) {
+                result.put(task, info);
+            }
+        }
+
+        return result;
+    }
+
     protected static String generate(JobDescription description, Path fsEntryPath, GridEngineSetup setup)
             throws XenonException {
+        return generate(description, fsEntryPath, setup, null);
+    }
+
+    /**
+     * Generate a job script. If <code>taskParameters</code> is not <code>null</code>, the script describes a job array 
+     * with one task per entry, where task <code>i + 1</code> runs the description with entry <code>i</code> appended to 
+     * its arguments (grid engine task numbers start at 1). Each task writes its standard output and error to the given file, 
+     * followed by a dot and the job identifier of the task (<code>arrayjob.i + 1</code>), which is unique even if the tasks 
+     * are submitted in several arrays.
+     */
+    @SuppressWarnings("PMD.NPathComplexity")
+    protected static String generate(JobDescription description, Path fsEntryPath, GridEngineSetup setup, 
+            List<String[]> taskParameters) throws XenonException {
         
         StringBuilder stringBuilder = new StringBuilder();
         Formatter script = new Formatter(stringBuilder, Locale.US);
@@ -145,6 +262,10 @@ final class GridEngineUtils {
         //add maximum runtime in hour:minute:second format (converted from minutes in description)
         script.format("#$ -l h_rt=%02d:%02d:00\n", description.getMaxTime() / MINUTES_PER_HOUR, description.getMaxTime()
                 % MINUTES_PER_HOUR);
+
+        if (taskParameters != null) {
+            script.format("#$ -t 1-%d\n", taskParameters.size());
+        }
         
         String resources = description.getJobOptions().get(JOB_OPTION_RESOURCES);
         
@@ -156,16 +277,19 @@ final class GridEngineUtils {
             script.format("#$ -i '%s'\n", description.getStdin());
         }
 
+        //tasks of an array each get their own output files, with the array job id ($JOB_ID) and task number ($TASK_ID) appended
+        String taskSuffix = taskParameters == null ? "" : ".$JOB_ID.$TASK_ID";
+
         if (description.getStdout() == null) {
             script.format("#$ -o /dev/null\n");
         } else {
-            script.format("#$ -o '%s'\n", description.getStdout());
+            script.format("#$ -o '%s%s'\n", description.getStdout(), taskSuffix);
         }
 
         if (description.getStderr() == null) {
             script.format("#$ -e /dev/null\n");
         } else {
-            script.format("#$ -e '%s'\n", description.getStderr());
+            script.format("#$ -e '%s%s'\n", description.getStderr(), taskSuffix);
         }
 
         for (Map.Entry<String, String> entry : description.getEnvironment().entrySet()) {
@@ -174,10 +298,19 @@ final class GridEngineUtils {
 
         script.format("\n");
 
-        if (description.getNodeCount() == 1 && description.getProcessesPerNode() == 1) {
-            generateSerialScriptContent(description, script);
+        if (taskParameters == null) {
+            generateScriptContent(description, script);
         } else {
-            generateParallelScriptContent(description, script);
+            //select the arguments of this task
+            script.format("case \"$SGE_TASK_ID\" in\n");
+
+            for (int i = 0; i < taskParameters.size(); i++) {
+                script.format("%d)\n", i + 1);
+                generateScriptContent(ScriptingUtils.getTaskDescription(description, taskParameters.get(i)), script);
+                script.format(";;\n");
+            }
+
+            script.format("esac\n");
         }
 
         script.close();
@@ -226,7 +359,7 @@ final class GridEngineUtils {
             return null;
         }
 
-        ScriptingUtils.verifyJobInfo(info, jobIdentifier, ADAPTOR_NAME, "jobnumber", "exit_status", "failed");
+        ScriptingUtils.verifyJobInfo(info, getJobNumber(jobIdentifier), ADAPTOR_NAME, "jobnumber", "exit_status", "failed");
 
         String exitcodeString = info.get("exit_status");
         String failedString = info.get("failed");
@@ -258,7 +391,7 @@ final class GridEngineUtils {
             return null;
         }
 
-        ScriptingUtils.verifyJobInfo(jobInfo, jobIdentifier, ADAPTOR_NAME, "JB_job_number", "state", "long_state");
+        ScriptingUtils.verifyJobInfo(jobInfo, getJobNumber(jobIdentifier), ADAPTOR_NAME, "JB_job_number", "state", "long_state");
 
         String longState = jobInfo.get("long_state");
         String stateCode = jobInfo.get("state");
@@ -18,42 +18,60 @@ package nl.esciencecenter.xenon.adaptors.schedulers.gridengine;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.ADAPTOR_NAME;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.IGNORE_VERSION_PROPERTY;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.schedulers.IncompatibleVersionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 /**
  * Parses xml output from various grid engine command line tools. For more info on the output, see the
  * "N1 Grid Engine 6 User's Guide". Retrieved from: http://docs.oracle.com/cd/E19080-01/n1.grid.eng6/817-6117/chp11-1/index.html
  * 
+ * The output is parsed as a stream, so only the records that are returned are kept in memory.
  */
 public class GridEngineXmlParser {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GridEngineXmlParser.class);
 
-    //Tag containing version of xml schema used in qstat -xml output
-    private static final String SGE62_SCHEMA_ATTRIBUTE = "xmlns:xsd";
+    //Prefix of the namespace containing version of xml schema used in qstat -xml output
+    private static final String SGE62_SCHEMA_PREFIX = "xsd";
 
     private static final String SGE62_SCHEMA_VALUE = "http://gridengine.sunsource.net/source/browse/*checkout*/gridengine/source/dist/util/resources/schemas/qstat/qstat.xsd?revision=1.11";
 
-    private final DocumentBuilder documentBuilder;
+    /**
+     * Receives the records found in the xml output.
+     */
+    private interface RecordHandler {
+        /**
+         * Handle a record.
+         * 
+         * @param fields
+         *            the fields of the record, indexed by element name.
+         * @param state
+         *            the value of the state attribute of the record, or <code>null</code> if not present.
+         * @return if parsing should continue.
+         * @throws XenonException
+         *             if the record is not valid.
+         */
+        boolean record(Map<String, String> fields, String state) throws XenonException;
+    }
+
+    private final XMLInputFactory inputFactory;
 
     private final boolean ignoreVersion;
 
@@ -61,67 +79,133 @@ public class GridEngineXmlParser {
         this.ignoreVersion = ignoreVersion;
 
         try {
-            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            documentBuilder = documentBuilderFactory.newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
+            inputFactory = XMLInputFactory.newInstance();
+            inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+            inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        } catch (IllegalArgumentException e) {
             throw new XenonException(ADAPTOR_NAME, "could not create parser for xml files", e);
         }
     }
 
-    private void checkVersion(Document document) throws IncompatibleVersionException {
-        Element documentElement = document.getDocumentElement();
+    private void checkVersion(XMLStreamReader reader) throws IncompatibleVersionException {
+        String schema = "";
+
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            if (SGE62_SCHEMA_PREFIX.equals(reader.getNamespacePrefix(i))) {
+                schema = reader.getNamespaceURI(i);
+            }
+        }
 
-        if (!documentElement.getAttribute(SGE62_SCHEMA_ATTRIBUTE).equals(SGE62_SCHEMA_VALUE)) {
+        if (!SGE62_SCHEMA_VALUE.equals(schema)) {
             if (ignoreVersion) {
-                LOGGER.warn("cannot determine version, version attribute found: \""
-                        + documentElement.getAttribute(SGE62_SCHEMA_ATTRIBUTE) + "\". Ignoring as requested by "
+                LOGGER.warn("cannot determine version, version attribute found: \"" + schema + "\". Ignoring as requested by "
                         + IGNORE_VERSION_PROPERTY);
             } else {
-                throw new IncompatibleVersionException(ADAPTOR_NAME,
-                        "cannot determine version, version attribute found: \""
-                                + documentElement.getAttribute(SGE62_SCHEMA_ATTRIBUTE) + "\". Use the "
-                                + IGNORE_VERSION_PROPERTY + " property to ignore this error");
+                throw new IncompatibleVersionException(ADAPTOR_NAME, "cannot determine version, version attribute found: \""
+                        + schema + "\". Use the " + IGNORE_VERSION_PROPERTY + " property to ignore this error");
             }
-
         }
     }
 
-    protected Document parseDocument(String data) throws XenonException {
-        try {
-            ByteArrayInputStream in = new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
-            Document result = documentBuilder.parse(in);
-            result.normalize();
+    /**
+     * Read the element the reader is positioned on into a map, containing the text of each child element. Empty child
+     * elements are ignored, as are elements nested deeper. On return the reader is positioned on the end of the element.
+     */
+    private Map<String, String> readRecord(XMLStreamReader reader) throws XMLStreamException {
+        Map<String, String> result = new HashMap<>();
 
-            checkVersion(result);
+        String key = null;
+        StringBuilder value = new StringBuilder();
+        int depth = 1;
 
-            return result;
-        } catch (SAXException e) {
-            throw new XenonException(ADAPTOR_NAME, "could not parse qstat xml file", e);
-        } catch (IOException e) {
-            throw new XenonException(ADAPTOR_NAME, "could not read xml file", e);
+        while (depth > 0) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+
+                if (depth == 2) {
+                    key = reader.getLocalName();
+                    value.setLength(0);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == 2 && value.length() > 0) {
+                    result.put(key, value.toString());
+                }
+
+                depth--;
+            } else if (depth == 2 && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+                value.append(reader.getText());
+            }
         }
+
+        return result;
     }
 
-    private Map<String, String> mapFromElement(Element root) {
-        Map<String, String> result = new HashMap<>();
+    /**
+     * Stream through the given xml data, checking its version and passing every element with the given name to the handler.
+     */
+    private void parseRecords(String data, String recordElement, RecordHandler handler) throws XenonException {
+        XMLStreamReader reader = null;
 
-        NodeList tagNodes = root.getChildNodes();
-
-        //fetch tags from the list of tag nodes. Ignores empty values
-        for (int j = 0; j < tagNodes.getLength(); j++) {
-            Node tagNode = tagNodes.item(j);
-            if (tagNode.getNodeType() == Node.ELEMENT_NODE) {
-                String key = tagNode.getNodeName();
-                if (key != null && key.length() > 0) {
-                    NodeList children = tagNode.getChildNodes();
-                    if (children.getLength() > 0) {
-                        String value = tagNode.getChildNodes().item(0).getNodeValue();
-                        result.put(key, value);
+        try {
+            reader = inputFactory.createXMLStreamReader(new StringReader(data));
+
+            boolean root = true;
+
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+
+                if (root) {
+                    LOGGER.debug("root node of xml file: " + reader.getLocalName());
+                    checkVersion(reader);
+                    root = false;
+                }
+
+                if (recordElement != null && recordElement.equals(reader.getLocalName())) {
+                    String state = reader.getAttributeValue(null, "state");
+
+                    if (!handler.record(readRecord(reader), state)) {
+                        return;
                     }
                 }
             }
+
+            if (root) {
+                throw new XenonException(ADAPTOR_NAME, "could not parse qstat xml file: no document element found");
+            }
+        } catch (XMLStreamException e) {
+            throw new XenonException(ADAPTOR_NAME, "could not parse qstat xml file", e);
+        } finally {
+            close(reader);
         }
-        return result;
+    }
+
+    private void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                LOGGER.debug("failed to close xml reader", e);
+            }
+        }
+    }
+
+    /**
+     * Parse the given xml data completely, checking that it is well formed and has a supported version.
+     * 
+     * @param data
+     *            the xml data
+     * @throws XenonException
+     *             if the data could not be parsed
+     * @throws XenonException
+     *             if the server version is not compatible with this adaptor
+     */
+    protected void parseDocument(String data) throws XenonException {
+        parseRecords(data, null, null);
     }
 
     /**
@@ -136,19 +220,11 @@ public class GridEngineXmlParser {
      *             if the server version is not compatible with this adaptor
      */
     protected Map<String, Map<String, String>> parseQueueInfos(String input) throws XenonException {
-        Document document = parseDocument(input);
-
-        Map<String, Map<String, String>> result = new HashMap<>();
-
-        LOGGER.debug("root node of xml file: " + document.getDocumentElement().getNodeName());
-        NodeList clusterNodes = document.getElementsByTagName("cluster_queue_summary");
-
-        for (int i = 0; i < clusterNodes.getLength(); i++) {
-            Node clusterNode = clusterNodes.item(i);
-
-            if (clusterNode.getNodeType() == Node.ELEMENT_NODE) {
-                Map<String, String> queueInfo = mapFromElement((Element) clusterNode);
+        final Map<String, Map<String, String>> result = new HashMap<>();
 
+        parseRecords(input, "cluster_queue_summary", new RecordHandler() {
+            @Override
+            public boolean record(Map<String, String> queueInfo, String state) throws XenonException {
                 String queueName = queueInfo.get("name");
 
                 if (queueName == null || queueName.length() == 0) {
@@ -156,8 +232,9 @@ public class GridEngineXmlParser {
                 }
 
                 result.put(queueName, queueInfo);
+                return true;
             }
-        }
+        });
 
         if (result.size() == 0) {
             throw new XenonException(ADAPTOR_NAME, "server seems to have no queues");
@@ -178,23 +255,31 @@ public class GridEngineXmlParser {
      *             if the server version is not compatible with this adaptor
      */
     protected Map<String, Map<String, String>> parseJobInfos(String data) throws XenonException {
-        Map<String, Map<String, String>> result = new HashMap<>();
-
-        Document document = parseDocument(data);
-
-        LOGGER.debug("root node of xml file: " + document.getDocumentElement().getNodeName());
-        NodeList nodes = document.getElementsByTagName("job_list");
-
-        for (int i = 0; i < nodes.getLength(); i++) {
-            Node node = nodes.item(i);
-
-            if (node.getNodeType() == Node.ELEMENT_NODE) {
-                Element element = (Element) node;
+        return parseJobInfos(data, null);
+    }
 
-                Map<String, String> jobInfo = mapFromElement(element);
+    /**
+     * Parses job info from "qstat -xml", only keeping the given jobs. Parsing stops as soon as all jobs have been found.
+     * 
+     * @param data
+     *            the stream to get the xml data from
+     * @param jobIDs
+     *            the jobs (or tasks of job arrays) to return, or <code>null</code> to return all jobs
+     * @return the info of the requested jobs that were found, indexed by job identifier
+     * @throws XenonException
+     *             if the file could not be parsed
+     * @throws XenonException
+     *             if the server version is not compatible with this adaptor
+     */
+    protected Map<String, Map<String, String>> parseJobInfos(String data, Set<String> jobIDs) throws XenonException {
+        final Map<String, Map<String, String>> result = new HashMap<>();
 
-                String state = element.getAttribute("state");
+        final Set<String> remaining = jobIDs == null ? null : new HashSet<>(jobIDs);
+        final Set<String> wanted = jobIDs == null ? null : Collections.unmodifiableSet(new HashSet<>(jobIDs));
 
+        parseRecords(data, "job_list", new RecordHandler() {
+            @Override
+            public boolean record(Map<String, String> jobInfo, String state) throws XenonException {
                 if (state != null && state.length() > 0) {
                     jobInfo.put("long_state", state);
                 }
@@ -205,7 +290,75 @@ public class GridEngineXmlParser {
                     throw new XenonException(ADAPTOR_NAME, "found job in queue with no job number");
                 }
 
-                result.put(jobID, jobInfo);
+                add(jobID, jobInfo);
+
+                //tasks of a job array are also listed by their own identifier 
+                String tasks = jobInfo.get("tasks");
+
+                if (tasks != null) {
+                    for (String task : getTaskNumbers(tasks)) {
+                        add(jobID + "." + task, jobInfo);
+                    }
+                }
+
+                return remaining == null || !remaining.isEmpty();
+            }
+
+            private void add(String jobID, Map<String, String> jobInfo) {
+                if (wanted == null || wanted.contains(jobID)) {
+                    result.put(jobID, jobInfo);
+
+                    if (remaining != null) {
+                        remaining.remove(jobID);
+                    }
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Expand the task numbers of a job array as listed by qstat, for example "7" or "1-9:2,12".
+     * 
+     * @param tasks
+     *            the task numbers as listed by qstat
+     * @return the individual task numbers
+     * @throws XenonException
+     *             if the task numbers could not be parsed
+     */
+    protected static List<String> getTaskNumbers(String tasks) throws XenonException {
+        List<String> result = new ArrayList<>();
+
+        for (String range : tasks.split(",")) {
+            range = range.trim();
+
+            if (range.isEmpty()) {
+                continue;
+            }
+
+            try {
+                int dash = range.indexOf('-');
+
+                if (dash < 0) {
+                    result.add(Integer.toString(Integer.parseInt(range)));
+                    continue;
+                }
+
+                int colon = range.indexOf(':', dash);
+                int first = Integer.parseInt(range.substring(0, dash));
+                int last = Integer.parseInt(colon < 0 ? range.substring(dash + 1) : range.substring(dash + 1, colon));
+                int step = colon < 0 ? 1 : Integer.parseInt(range.substring(colon + 1));
+
+                if (step < 1) {
+                    throw new XenonException(ADAPTOR_NAME, "invalid task step in \"" + tasks + "\"");
+                }
+
+                for (int task = first; task <= last; task += step) {
+                    result.add(Integer.toString(task));
+                }
+            } catch (NumberFormatException e) {
+                throw new XenonException(ADAPTOR_NAME, "could not parse task numbers \"" + tasks + "\"", e);
             }
         }
 
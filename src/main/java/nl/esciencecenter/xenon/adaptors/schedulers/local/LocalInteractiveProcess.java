@@ -19,6 +19,7 @@ import static nl.esciencecenter.xenon.adaptors.schedulers.local.LocalSchedulerAd
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
 import java.lang.reflect.Field;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
@@ -32,7 +33,8 @@ import nl.esciencecenter.xenon.schedulers.Streams;
 
 
 /**
- * LocalInteractiveProcess implements a {@link InteractiveProcess} for local interactive processes.
+ * LocalInteractiveProcess implements a {@link InteractiveProcess} for local interactive processes. It is also used for local 
+ * batch processes, in which case the streams of the process are redirected to files by the operating system.
  * 
  * @version 1.0
  * @since 1.0
@@ -46,19 +48,41 @@ class LocalInteractiveProcess implements InteractiveProcess {
     private final Streams streams;
 
     LocalInteractiveProcess(JobDescription description, String jobIdentifier) throws XenonException {
+        this(description, jobIdentifier, null, Redirect.PIPE, Redirect.PIPE, Redirect.PIPE);
+    }
+
+    /**
+     * Start a process with the given redirects. If <code>stderr</code> is <code>null</code>, stderr is merged into stdout.
+     */
+    LocalInteractiveProcess(JobDescription description, String jobIdentifier, File directory, Redirect stdin, Redirect stdout, 
+            Redirect stderr) throws XenonException {
+
         ProcessBuilder builder = new ProcessBuilder();
 
         builder.command().add(description.getExecutable());
         builder.command().addAll(description.getArguments());
         builder.environment().putAll(description.getEnvironment());
 
-        String workingDirectory = description.getWorkingDirectory();
-        
-        if (workingDirectory == null) {
-            workingDirectory = System.getProperty("user.dir");
+        if (directory == null) { 
+            String workingDirectory = description.getWorkingDirectory();
+
+            if (workingDirectory == null) {
+                workingDirectory = System.getProperty("user.dir");
+            }
+
+            builder.directory(new File(workingDirectory));
+        } else {
+            builder.directory(directory);
         }
 
-        builder.directory(new File(workingDirectory));
+        builder.redirectInput(stdin);
+        builder.redirectOutput(stdout);
+
+        if (stderr == null) {
+            builder.redirectErrorStream(true);
+        } else {
+            builder.redirectError(stderr);
+        }
 
         try { 
             process = builder.start();
@@ -91,6 +115,11 @@ class LocalInteractiveProcess implements InteractiveProcess {
         return exitCode;
     }
 
+    public void addTerminationListener(Runnable listener) {
+        // Java 8 offers no way to be notified of process exit without a waiting thread, so termination is detected by
+        // polling exitValue() in isDone().
+    }
+
     /**
      * Destroy (stop) process.
      * Does nothing if the process has already finished. Does not
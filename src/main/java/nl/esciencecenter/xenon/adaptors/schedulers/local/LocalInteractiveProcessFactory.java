@@ -17,13 +17,31 @@ package nl.esciencecenter.xenon.adaptors.schedulers.local;
 
 import static nl.esciencecenter.xenon.adaptors.schedulers.local.LocalSchedulerAdaptor.ADAPTOR_NAME;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.filesystems.local.LocalFileSystem;
+import nl.esciencecenter.xenon.adaptors.schedulers.BatchProcessFactory;
 import nl.esciencecenter.xenon.adaptors.schedulers.InteractiveProcess;
 import nl.esciencecenter.xenon.adaptors.schedulers.InteractiveProcessFactory;
+import nl.esciencecenter.xenon.adaptors.schedulers.Process;
 import nl.esciencecenter.xenon.adaptors.schedulers.SchedulerClosedException;
+import nl.esciencecenter.xenon.adaptors.shared.local.LocalUtil;
+import nl.esciencecenter.xenon.filesystems.FileSystem;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.PathAlreadyExistsException;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
 
-public class LocalInteractiveProcessFactory implements InteractiveProcessFactory {
+/**
+ * Creates local processes. Batch processes have their stdin, stdout and stderr redirected to files directly by the operating 
+ * system, so no threads are needed to copy the data.
+ */
+public class LocalInteractiveProcessFactory implements InteractiveProcessFactory, BatchProcessFactory {
+
+	/** File to which output is written that should be discarded. */
+	private static final File NULL_FILE = new File(LocalUtil.isWindows() ? "NUL" : "/dev/null");
 
 	private boolean open = true;
 
@@ -35,6 +53,77 @@ public class LocalInteractiveProcessFactory implements InteractiveProcessFactory
 		return new LocalInteractiveProcess(description, jobIdentifier);
 	}
 
+	private static Path resolve(Path root, String path) {
+		if (path == null) {
+			return root;
+		} else if (LocalUtil.startWithRoot(path)) { 
+			return new Path(path);
+		} else {
+			return root.resolve(path);
+		}
+	}
+
+	private static Redirect createOutputRedirect(FileSystem filesystem, Path workdir, String filename) throws XenonException {
+
+		if (filename == null) {
+			return Redirect.to(NULL_FILE);
+		}
+
+		Path file = resolve(workdir, filename);
+
+		// Will fail if the file already exists!
+		if (filesystem.exists(file)) { 
+			throw new PathAlreadyExistsException(filesystem.getAdaptorName(), "File already exists: " + file);	
+		}
+
+		return Redirect.to(LocalUtil.javaPath(filesystem, file).toFile());
+	}
+
+	@Override
+	public Process createBatchProcess(FileSystem filesystem, Path workingDirectory, JobDescription description, 
+			String jobIdentifier) throws XenonException, IOException {
+
+		synchronized (this) {
+			if (!open) { 
+				throw new SchedulerClosedException(ADAPTOR_NAME, "Scheduler is closed");
+			}
+		}
+
+		if (!(filesystem instanceof LocalFileSystem)) { 
+			throw new XenonException(ADAPTOR_NAME, "Batch jobs require a local filesystem!");
+		}
+
+		Path workdir = resolve(workingDirectory, description.getWorkingDirectory());
+
+		if (!filesystem.exists(workdir)) {
+			throw new IOException("Working directory " + workdir + " does not exist!");
+		}
+
+		Redirect stdin = Redirect.from(NULL_FILE);
+
+		if (description.getStdin() != null) {
+			Path file = resolve(workdir, description.getStdin());
+
+			if (!filesystem.exists(file)) {
+				throw new IOException("Stdin cannot be redirected from " + file + " (file does not exist!)");
+			}
+
+			stdin = Redirect.from(LocalUtil.javaPath(filesystem, file).toFile());
+		}
+
+		Redirect stdout = createOutputRedirect(filesystem, workdir, description.getStdout());
+		Redirect stderr = createOutputRedirect(filesystem, workdir, description.getStderr());
+
+		// Two redirects to the same file would each truncate it and overwrite each other's output, so merge stderr into stdout.
+		if (description.getStderr() != null && description.getStdout() != null 
+				&& stdout.file().toPath().normalize().equals(stderr.file().toPath().normalize())) {
+			stderr = null;
+		}
+
+		return new LocalInteractiveProcess(description, jobIdentifier, LocalUtil.javaPath(filesystem, workdir).toFile(), stdin, 
+				stdout, stderr);
+	}
+
 	@Override
 	public synchronized void close() throws XenonException {
 		if (!open) { 
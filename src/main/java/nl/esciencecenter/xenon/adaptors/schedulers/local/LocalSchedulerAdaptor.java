@@ -15,8 +15,14 @@
  */
 package nl.esciencecenter.xenon.adaptors.schedulers.local;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Map;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import nl.esciencecenter.xenon.InvalidCredentialException;
 import nl.esciencecenter.xenon.InvalidLocationException;
 import nl.esciencecenter.xenon.XenonException;
@@ -41,6 +47,11 @@ import nl.esciencecenter.xenon.UnknownPropertyException;
  * @since 1.0
  */
 public class LocalSchedulerAdaptor extends SchedulerAdaptor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalSchedulerAdaptor.class);
+
+    /** Executable used to pin jobs to their CPUs. */
+    private static final String TASKSET = "taskset";
     
 	 /** Name of the local adaptor is defined in the engine. */
     public static final String ADAPTOR_NAME = "local";
@@ -58,6 +69,9 @@ public class LocalSchedulerAdaptor extends SchedulerAdaptor {
     /** Property for maximum history length for finished jobs */
     public static final String MAX_HISTORY = QUEUE + "historySize";
 
+    /** Property for maximum time to remember finished jobs */
+    public static final String MAX_HISTORY_AGE = QUEUE + "historyAge";
+
     /** Property for maximum history length for finished jobs */
     public static final String POLLING_DELAY = QUEUE + "pollingDelay";
 
@@ -67,6 +81,18 @@ public class LocalSchedulerAdaptor extends SchedulerAdaptor {
     /** Property for the maximum number of concurrent jobs in the multi queue. */
     public static final String MULTIQ_MAX_CONCURRENT = MULTIQ + "maxConcurrentJobs";
 
+    /** Local resources queue properties start with this prefix. */
+    public static final String RESOURCES = QUEUE + "resources.";
+
+    /** Property for the number of cores available to the resources queue. */
+    public static final String RESOURCES_CORES = RESOURCES + "cores";
+
+    /** Property for the amount of memory (in MB) available to the resources queue. */
+    public static final String RESOURCES_MEMORY = RESOURCES + "memory";
+
+    /** Property to pin jobs of the resources queue to their assigned CPUs. */
+    public static final String RESOURCES_PINNING = RESOURCES + "pinning";
+
     /** Local queue information start with this prefix. */
     public static final String INFO = PREFIX + "info.";
 
@@ -84,9 +110,38 @@ public class LocalSchedulerAdaptor extends SchedulerAdaptor {
                     new XenonPropertyDescription(POLLING_DELAY, Type.INTEGER, 
                             "1000", "The polling delay for monitoring running jobs (in milliseconds)."),
                     new XenonPropertyDescription(MULTIQ_MAX_CONCURRENT, Type.INTEGER,  
-                            "4", "The maximum number of concurrent jobs in the multiq.")
+                            "4", "The maximum number of concurrent jobs in the multiq."),
+                    new XenonPropertyDescription(MAX_HISTORY, Type.INTEGER,  
+                            "1000", "The maximum number of finished jobs to remember until their status is retrieved."),
+                    new XenonPropertyDescription(MAX_HISTORY_AGE, Type.LONG,  
+                            "86400000", "The maximum time to remember finished jobs until their status is retrieved (in milliseconds)."),
+                    new XenonPropertyDescription(RESOURCES_CORES, Type.INTEGER,  
+                            "0", "The number of cores available to the resources queue (0 disables the queue)."),
+                    new XenonPropertyDescription(RESOURCES_MEMORY, Type.LONG,  
+                            "0", "The amount of memory available to the resources queue in MB (0 means memory is not taken into account)."),
+                    new XenonPropertyDescription(RESOURCES_PINNING, Type.BOOLEAN,  
+                            "false", "Pin jobs of the resources queue to their assigned CPUs using taskset (ignored if taskset is not available).")
     };
 	
+    /**
+     * Check if an executable can be found in one of the directories on the PATH.
+     */
+    private static boolean isExecutableOnPath(String executable) {
+        String path = System.getenv("PATH");
+        
+        if (path == null) {
+            return false;
+        }
+        
+        for (String dir : path.split(File.pathSeparator)) {
+            if (!dir.isEmpty() && Files.isExecutable(Paths.get(dir, executable))) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+	
     public LocalSchedulerAdaptor() {
     	super(ADAPTOR_NAME, ADAPTOR_DESCRIPTION, ADAPTOR_LOCATIONS, VALID_PROPERTIES);
     }
@@ -145,8 +200,19 @@ public class LocalSchedulerAdaptor extends SchedulerAdaptor {
         int processors = Runtime.getRuntime().availableProcessors();
         int multiQThreads = xp.getIntegerProperty(MULTIQ_MAX_CONCURRENT, processors);
         int pollingDelay = xp.getIntegerProperty(POLLING_DELAY);
+        int maxHistory = xp.getIntegerProperty(MAX_HISTORY);
+        long maxHistoryAge = xp.getLongProperty(MAX_HISTORY_AGE);
+        int cores = xp.getIntegerProperty(RESOURCES_CORES);
+        long memory = xp.getLongProperty(RESOURCES_MEMORY);
+        boolean pinning = cores > 0 && xp.getBooleanProperty(RESOURCES_PINNING);
+        
+        if (pinning && !isExecutableOnPath(TASKSET)) {
+            LOGGER.warn("Pinning of jobs in the resources queue disabled, as {} is not available", TASKSET);
+            pinning = false;
+        }
         
         return new JobQueueScheduler(getNewUniqueID(), ADAPTOR_NAME, "local://", new LocalInteractiveProcessFactory(), 
-        		filesystem, filesystem.getEntryPath(), multiQThreads, pollingDelay, xp);
+        		filesystem, filesystem.getEntryPath(), multiQThreads, pollingDelay, maxHistory, maxHistoryAge, cores, memory, 
+        		pinning, xp);
     }
 }
\ No newline at end of file
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers.slurm;
+
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.isDoneOrFailedState;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Keeps the accounting information of finished jobs, and the time from which sacct must be polled to find jobs that finished 
+ * since the last poll. 
+ * 
+ * Finished jobs do not change anymore, so their information is cached (up to a maximum number of jobs). Each poll window 
+ * starts at the time of the previous successful window poll, minus a margin for records written late. The first window starts 
+ * when the cache is created, so consecutive windows cover all jobs that finished since then. 
+ * 
+ * Poll times are taken from the client clock, but sacct interprets the window in the clock and time zone of the cluster. The 
+ * windows are therefore only used once the offset between both clocks is known, see {@link #setClusterTime(String, long)}.
+ */
+final class AccountingCache {
+
+    /** Format of the time stamps printed and accepted by sacct. */
+    private static final String TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss";
+
+    /** How far a poll window reaches back before the previous poll, to catch records that were written late. */
+    static final long WINDOW_MARGIN = 60L * 1000L;
+
+    private final Map<String, Map<String, String>> finished;
+
+    /** Time from which the poll windows cover all finished jobs. */
+    private final long coveredSince;
+
+    /** Time at which the previous successful window poll was started. */
+    private long lastPoll;
+
+    /** 
+     * Difference in ms. between the wall-clock time of the cluster (read as UTC) and the client clock, or <code>null</code> 
+     * if not known yet. 
+     */
+    private Long clockOffset;
+
+    AccountingCache(int maxJobs) {
+        this(maxJobs, System.currentTimeMillis());
+    }
+
+    AccountingCache(final int maxJobs, long created) {
+        coveredSince = created;
+        lastPoll = created;
+
+        finished = new LinkedHashMap<String, Map<String, String>>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, String>> eldest) {
+                return size() > maxJobs;
+            }
+        };
+    }
+
+    /**
+     * Add the sacct information of jobs. Only jobs in a final state are kept.
+     * 
+     * @param sacctInfo
+     *          the sacct information, indexed by job identifier.
+     */
+    synchronized void update(Map<String, Map<String, String>> sacctInfo) {
+        for (Map.Entry<String, Map<String, String>> entry : sacctInfo.entrySet()) {
+            Map<String, String> info = entry.getValue();
+            String state = info.get("State");
+
+            if (state == null || !isDoneOrFailedState(state)) {
+                continue;
+            }
+
+            finished.put(entry.getKey(), info);
+        }
+    }
+
+    /**
+     * Copy the cached information of the given jobs into <code>result</code>. 
+     * 
+     * @param jobs
+     *          the jobs to look up.
+     * @param result
+     *          the map to add the information of the jobs found to.
+     * @return the jobs that were not found.
+     */
+    synchronized List<String> lookup(Collection<String> jobs, Map<String, Map<String, String>> result) {
+        List<String> missing = new ArrayList<>();
+
+        for (String job : jobs) {
+            Map<String, String> info = finished.get(job);
+
+            if (info == null) {
+                missing.add(job);
+            } else {
+                result.put(job, info);
+            }
+        }
+
+        return missing;
+    }
+
+    /**
+     * Set the offset between the clocks of the cluster and the client.
+     * 
+     * @param clusterTime
+     *          the wall-clock time of the cluster, in the format used by sacct.
+     * @param clientTime
+     *          the client time at the same moment, in milliseconds since the epoch.
+     * @return if the cluster time could be parsed.
+     */
+    synchronized boolean setClusterTime(String clusterTime, long clientTime) {
+        try {
+            clockOffset = utcFormat().parse(clusterTime).getTime() - clientTime;
+            return true;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check if the offset between the clocks of the cluster and the client is known.
+     * 
+     * @return if the cluster time was set.
+     */
+    synchronized boolean hasClusterTime() {
+        return clockOffset != null;
+    }
+
+    /**
+     * Get the time from which sacct must be polled to find the jobs that finished since the last poll. 
+     * 
+     * @return the start time in the clock of the cluster and the format used by sacct, or <code>null</code> if the cluster 
+     *          time is not known.
+     */
+    synchronized String getWindowStart() {
+        if (clockOffset == null) {
+            return null;
+        }
+
+        return utcFormat().format(new Date(lastPoll + clockOffset - WINDOW_MARGIN));
+    }
+
+    /**
+     * Record that the window returned by {@link #getWindowStart()} was polled successfully. 
+     * 
+     * @param pollTime
+     *          the (client) time at which the poll was started, in milliseconds since the epoch.
+     */
+    synchronized void windowPolled(long pollTime) {
+        lastPoll = Math.max(lastPoll, pollTime);
+    }
+
+    /**
+     * Check if a job finishing after the given submission time is always found by polling the window. This requires the 
+     * cluster time to be known.
+     * 
+     * @param submitTime
+     *          the (client) time at which the job was submitted in milliseconds since the epoch, or a negative value if 
+     *          unknown.
+     * @return if the poll windows cover the job.
+     */
+    synchronized boolean isCovered(long submitTime) {
+        return clockOffset != null && submitTime >= coveredSince;
+    }
+
+    private static SimpleDateFormat utcFormat() {
+        // The cluster time is only used for arithmetic, so it is never converted to the local time zone.
+        SimpleDateFormat format = new SimpleDateFormat(TIME_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+}
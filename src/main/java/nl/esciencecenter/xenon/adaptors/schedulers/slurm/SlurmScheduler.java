@@ -17,34 +17,58 @@ package nl.esciencecenter.xenon.adaptors.schedulers.slurm;
 
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.ADAPTOR_NAME;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.DISABLE_ACCOUNTING_USAGE;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.LAZY_SETUP_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.MAX_ARRAY_SIZE_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.MONITOR_DELAY_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.MONITOR_STALENESS_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.POLL_DELAY_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.SETUP_CACHE_TTL_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.SLURM_MAX_JOB_LIST_LENGTH;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.SLURM_UPDATE_SLEEP;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.SLURM_UPDATE_TIMEOUT;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.VALID_PROPERTIES;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.FIELD_DELIMITER;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.JOB_OPTION_JOB_SCRIPT;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.SACCT_FIELDS;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.SINFO_FIELDS;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.SINFO_FORMAT;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.SQUEUE_FIELDS;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.SQUEUE_FORMAT;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.generate;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.findJobWithComment;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.generateInteractiveArguments;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.getAccountingStartDate;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.getInteractiveJobName;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.getJobStatusFromSacctInfo;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.getJobStatusFromScontrolInfo;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.getJobStatusFromSqueueInfo;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.getQueueStatusFromSInfo;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.identifiersAsCSList;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.identifiersAsCSLists;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.verifyJobDescription;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.schedulers.CommandLineUtils;
+import nl.esciencecenter.xenon.adaptors.schedulers.JobStatusImplementation;
+import nl.esciencecenter.xenon.adaptors.schedulers.QueryCoalescer;
 import nl.esciencecenter.xenon.adaptors.schedulers.QueueStatusImplementation;
 import nl.esciencecenter.xenon.adaptors.schedulers.RemoteCommandRunner;
 import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingParser;
 import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingScheduler;
+import nl.esciencecenter.xenon.adaptors.schedulers.SetupCache;
 import nl.esciencecenter.xenon.adaptors.schedulers.StreamsImplementation;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.filesystems.Path;
@@ -64,18 +88,84 @@ import nl.esciencecenter.xenon.schedulers.Streams;
 public class SlurmScheduler extends ScriptingScheduler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SlurmScheduler.class);
+
+    /** Maximum number of finished jobs for which the accounting information is kept. */
+    private static final int MAX_FINISHED_JOBS = 10000;
+
+    /** Job states, as sacct state codes, in which a job has finished. */
+    private static final String FINISHED_STATE_CODES = "BF,CA,CD,F,NF,PR,TO";
     
-    private final String[] queueNames;
+    /** Setup of the clusters, shared by all schedulers for the same location and credential. */
+    private static final SetupCache<ClusterInfo> SETUP_CACHE = new SetupCache<>();
+
+    /**
+     * The configuration and partitions of a slurm cluster.
+     */
+    private static final class ClusterInfo {
+
+        private final Map<String, String> config;
+
+        private final String[] queueNames;
+
+        private final String defaultQueueName;
+
+        private ClusterInfo(Map<String, String> config, String[] queueNames, String defaultQueueName) {
+            this.config = config;
+            this.queueNames = queueNames;
+            this.defaultQueueName = defaultQueueName;
+        }
+    }
+
+    /** Key of this scheduler in the setup cache. */
+    private final String setupKey;
+
+    private final long setupTimeToLive;
+
+    private final boolean disableAccounting;
 
-    private final String defaultQueueName;
+    /** Guarded by this. Null until the setup has been retrieved. */
+    private ClusterInfo cluster;
 
-    private final SlurmSetup setup;
+    /** Guarded by this. */
+    private SlurmSetup setup;
+
+    /** Maximum number of tasks in a single job array. Guarded by this. */
+    private int maxArraySize;
+
+    /** Merges concurrent queue status requests into a single sinfo call. */
+    private final QueryCoalescer<String, Map<String, String>> sinfoCoalescer;
+
+    /** Accounting information of finished jobs, and the window for polling sacct for newly finished jobs. */
+    private final AccountingCache accounting = new AccountingCache(MAX_FINISHED_JOBS);
+
+    /** Has the cluster time been queried for the accounting cache ? */
+    private final AtomicBoolean clusterTimeQueried = new AtomicBoolean(false);
+
+    /** Name of the user on the cluster, used to filter interactive job lookups. Empty if unknown, null if not retrieved yet. */
+    private String userName;
     
     protected SlurmScheduler(String uniqueID, String location, Credential credential, Map<String,String> prop) throws XenonException {
 
-        super(uniqueID, ADAPTOR_NAME, location, credential, prop, VALID_PROPERTIES, POLL_DELAY_PROPERTY);
+        super(uniqueID, ADAPTOR_NAME, location, credential, prop, VALID_PROPERTIES, POLL_DELAY_PROPERTY,
+                MONITOR_DELAY_PROPERTY, MONITOR_STALENESS_PROPERTY);
+
+        disableAccounting = properties.getBooleanProperty(DISABLE_ACCOUNTING_USAGE);
+        setupKey = SetupCache.getKey(location, credential);
+        setupTimeToLive = properties.getLongProperty(SETUP_CACHE_TTL_PROPERTY);
 
-        boolean disableAccounting = properties.getBooleanProperty(DISABLE_ACCOUNTING_USAGE);
+        sinfoCoalescer = new QueryCoalescer<String, Map<String, String>>(ADAPTOR_NAME, COALESCE_WINDOW) {
+            @Override
+            protected Map<String, Map<String, String>> query(Set<String> partitions) throws XenonException {
+                return getSinfoInfo(partitions.toArray(new String[partitions.size()]));
+            }
+        };
+
+        if (!properties.getBooleanProperty(LAZY_SETUP_PROPERTY)) {
+            getSetup();
+        }
+    }
+
+    private ClusterInfo queryClusterInfo() throws XenonException {
 
         // Get some version information from slurm
         String output = runCheckedCommand(null, "scontrol", "show", "config");
@@ -84,8 +174,6 @@ public class SlurmScheduler extends ScriptingScheduler {
         Map<String, String> info = ScriptingParser.parseKeyValueLines(output, ScriptingParser.EQUALS_REGEX,
                 ADAPTOR_NAME, "Configuration data as of", "Slurmctld(primary/backup) at", "Account Gather");
 
-        setup = new SlurmSetup(info, disableAccounting);
-        
         // Very wide partition format to compensate for bug in slurm 2.3.
         // If the size of the column is not specified the default partition does not get listed with a "*"
         output = runCheckedCommand(null, "sinfo", "--noheader", "--format=%120P");
@@ -101,21 +189,52 @@ public class SlurmScheduler extends ScriptingScheduler {
                 foundDefaultQueueName = foundQueueNames[i];
             }
         }
-        this.queueNames = foundQueueNames;
-        this.defaultQueueName = foundDefaultQueueName;
-        
-        LOGGER.debug("Created new SlurmConfig. version = \"{}\", accounting available: {}", 
-        		setup.version(), setup.accountingAvailable());
+
+        return new ClusterInfo(info, foundQueueNames, foundDefaultQueueName);
     }
-    
+
+    /**
+     * Get the setup of the cluster, retrieving it (or taking it from the setup cache) on first use.
+     */
+    private synchronized SlurmSetup getSetup() throws XenonException {
+
+        if (setup == null) {
+            ClusterInfo info = SETUP_CACHE.get(setupKey, setupTimeToLive, new SetupCache.Loader<ClusterInfo>() {
+                @Override
+                public ClusterInfo load() throws XenonException {
+                    return queryClusterInfo();
+                }
+            });
+
+            setup = new SlurmSetup(info.config, disableAccounting);
+            maxArraySize = getMaxArraySize(properties.getIntegerProperty(MAX_ARRAY_SIZE_PROPERTY), info.config.get("MaxArraySize"));
+            cluster = info;
+
+            LOGGER.debug("Created new SlurmConfig. version = \"{}\", accounting available: {}", 
+                    setup.version(), setup.accountingAvailable());
+        }
+
+        return setup;
+    }
+
+    private synchronized ClusterInfo getClusterInfo() throws XenonException {
+        getSetup();
+        return cluster;
+    }
+
+    private synchronized int getMaxArraySize() throws XenonException {
+        getSetup();
+        return maxArraySize;
+    }
+
     @Override
-    public String[] getQueueNames() {
-        return queueNames.clone();
+    public String[] getQueueNames() throws XenonException {
+        return getClusterInfo().queueNames.clone();
     }
 
     @Override
-    public String getDefaultQueueName() {
-        return defaultQueueName;
+    public String getDefaultQueueName() throws XenonException {
+        return getClusterInfo().defaultQueueName;
     }
 
     @Override
@@ -160,46 +279,135 @@ public class SlurmScheduler extends ScriptingScheduler {
             output = runCheckedCommand(null, "sbatch", customScriptFile);
         }
 
-        return ScriptingParser.parseJobIDFromLine(output, ADAPTOR_NAME, "Submitted batch job", "Granted job allocation");
+        String identifier = ScriptingParser.parseJobIDFromLine(output, ADAPTOR_NAME, "Submitted batch job", "Granted job allocation");
+
+        jobSubmitted(identifier, description);
+
+        return identifier;
     }
 
-    private String findInteractiveJobInMap(Map<String, Map<String, String>> queueInfo, String tag,  String interactiveJobID) {
+    /**
+     * Slurm only accepts array indices below its MaxArraySize, so an array can contain at most MaxArraySize tasks.
+     */
+    private static int getMaxArraySize(int configured, String slurmMaxArraySize) {
 
-        //find job with "tag" as a comment in the job info
-        for (Map.Entry<String, Map<String, String>> entry : queueInfo.entrySet()) {
-            if (entry.getValue().containsKey("COMMENT") && entry.getValue().get("COMMENT").equals(tag) ||
-                entry.getValue().containsKey("Comment") && entry.getValue().get("Comment").equals(tag)) {
-                
-                String jobID = entry.getKey();
-                
-                LOGGER.debug("Found interactive job ID: %s", jobID);
+        int result = Math.max(1, configured);
 
-//                synchronized (this) {
-//                    //add to set of interactive jobs so we can find it
-//                    interactiveJobs.put(jobID, interactiveJobID);
-//                }
-                
-                return jobID;
+        if (slurmMaxArraySize != null) {
+            try {
+                int max = Integer.parseInt(slurmMaxArraySize.trim());
+
+                if (max > 0) {
+                    result = Math.min(result, max);
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.debug("Ignoring unparsable MaxArraySize {}", slurmMaxArraySize);
             }
         }
 
-        return null;        
+        return result;
     }
 
-    
-    private String findInteractiveJob(String tag, String interactiveJob) throws XenonException {
+    @Override
+    public String[] submitBatchJobArray(JobDescription template, List<String[]> parameters) throws XenonException {
 
-        // See if the job can be found in the queue.
-        String result = findInteractiveJobInMap(getSqueueInfo(), tag, interactiveJob);
+        if (parameters.isEmpty() || !getSetup().arraysAvailable() || template.getJobOptions().containsKey(JOB_OPTION_JOB_SCRIPT)) {
+            // A custom job script cannot be turned into an array.
+            return super.submitBatchJobArray(template, parameters);
+        }
+
+        verifyJobDescription(template, false);
+        checkWorkingDirectory(template.getWorkingDirectory());
+
+        return submitJobArrays(template, parameters, getMaxArraySize());
+    }
+
+    @Override
+    protected String[] submitJobArray(JobDescription template, List<String[]> parameters) throws XenonException {
+
+        String output = runCheckedCommand(generate(template, getFsEntryPath(), parameters), "sbatch");
+
+        String identifier = ScriptingParser.parseJobIDFromLine(output, ADAPTOR_NAME, "Submitted batch job");
+
+        String[] result = new String[parameters.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = identifier + "_" + i;
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the name of the user running the jobs on the cluster. The name is retrieved once using <code>id -un</code>.
+     *
+     * @return the name of the user, or <code>null</code> if it could not be determined.
+     */
+    private synchronized String getUserName() {
+        if (userName == null) {
+            try {
+                RemoteCommandRunner runner = runCommand(null, "id", "-un");
+                userName = runner.success() ? runner.getStdout().trim() : "";
+            } catch (XenonException e) {
+                LOGGER.debug("Failed to determine user name", e);
+                userName = "";
+            }
+        }
+
+        return userName.isEmpty() ? null : userName;
+    }
+
+    private String findInteractiveJob(UUID tag, long submitTime) throws XenonException {
+
+        String name = getInteractiveJobName(tag);
+        String user = getUserName();
+
+        // See if the job can be found in the queue. Only the job carrying the name of the interactive job is listed.
+        ArrayList<String> arguments = new ArrayList<>();
+        arguments.add("--noheader");
+        arguments.add("--format=%i|%k");
+        arguments.add("--name=" + name);
+
+        if (user != null) {
+            arguments.add("--user=" + user);
+        }
 
-        if (result != null) { 
+        String output = runCheckedCommand(null, "squeue", arguments.toArray(new String[arguments.size()]));
+
+        String result = findJobWithComment(output, ScriptingParser.BAR_REGEX, tag.toString());
+
+        if (result != null || !getSetup().accountingAvailable()) {
             return result;
         }
-        
-        // See if the job can be found in the accounting.                
-        return findInteractiveJobInMap(getSacctInfo(), tag, interactiveJob);
+
+        // See if the job can be found in the accounting, limited to jobs started since the submission.
+        arguments.clear();
+        arguments.add("-X");
+        arguments.add("--parsable2");
+        arguments.add("--noheader");
+        arguments.add("--format=JobID,Comment");
+        arguments.add("--name=" + name);
+        arguments.add("--starttime=" + getAccountingStartDate(submitTime));
+
+        if (user != null) {
+            arguments.add("--user=" + user);
+        }
+
+        RemoteCommandRunner runner = runCommand(null, "sacct", arguments.toArray(new String[arguments.size()]));
+
+        if (runner.getExitCode() != 0) {
+            throw new XenonException(ADAPTOR_NAME, "Error in getting sacct job status: " + runner);
+        }
+
+        result = findJobWithComment(runner.getStdout(), ScriptingParser.BAR_REGEX, tag.toString());
+
+        if (result != null) {
+            LOGGER.debug("Found interactive job ID: {}", result);
+        }
+
+        return result;
     }
-    
+
     @Override
     public Streams submitInteractiveJob(JobDescription description) throws XenonException {
     	
@@ -211,6 +419,8 @@ public class SlurmScheduler extends ScriptingScheduler {
 
         UUID tag = UUID.randomUUID();
 
+        long submitTime = System.currentTimeMillis();
+
         String[] arguments = generateInteractiveArguments(description, fsEntryPath, tag);
 
         // There is a two step job submission here, since we submit a job to via a subscheduler (typically SSH). 
@@ -219,7 +429,7 @@ public class SlurmScheduler extends ScriptingScheduler {
         
         // Next we try to find information on the remote slurm job. Note that this job may not be visible in the queue yet, or
         // if may already have finished. 
-        String result = findInteractiveJob(tag.toString(), interactiveJob.getJobIdentifier());
+        String result = findInteractiveJob(tag, submitTime);
 
         long end = System.currentTimeMillis() + SLURM_UPDATE_TIMEOUT; 
         
@@ -232,7 +442,7 @@ public class SlurmScheduler extends ScriptingScheduler {
                 Thread.currentThread().interrupt();
             }
             
-            result = findInteractiveJob(tag.toString(), interactiveJob.getJobIdentifier());
+            result = findInteractiveJob(tag, submitTime);
         }
         
         if (result != null) {
@@ -271,7 +481,7 @@ public class SlurmScheduler extends ScriptingScheduler {
             throw new XenonException(ADAPTOR_NAME, "Got unexpected output on cancelling job: " + output);
         }
 
-        return getJobStatus(jobIdentifier);
+        return queryJobStatus(jobIdentifier);
     }
 
     @Override
@@ -306,46 +516,78 @@ public class SlurmScheduler extends ScriptingScheduler {
 
     private Map<String, Map<String, String>> getSqueueInfo(String... jobs) throws XenonException {
         
-        String squeueOutput = "";
-        
-        if (jobs == null || jobs.length == 0)  {
-        	squeueOutput = runCheckedCommand(null, "squeue", "--format=%i %P %j %u %T %M %l %D %R %k");
-        } else { 
-        	squeueOutput = runCheckedCommand(null, "squeue", "--format=%i %P %j %u %T %M %l %D %R %k", "--jobs="
-        			+ identifiersAsCSList(jobs));
+        ArrayList<String> arguments = new ArrayList<>();
+
+        if (getSetup().arraysAvailable()) {
+            // list every task of a job array separately, so pending tasks are found by their own identifier
+            arguments.add("--array");
+        }
+
+        arguments.add("--noheader");
+        arguments.add("--format=" + SQUEUE_FORMAT);
+
+        if (jobs != null && jobs.length > 0) {
+            arguments.add("--jobs=" + identifiersAsCSList(jobs));
         }
 
-        return ScriptingParser.parseTable(squeueOutput, "JOBID", ScriptingParser.WHITESPACE_REGEX, ADAPTOR_NAME,
+        String squeueOutput = runCheckedCommand(null, "squeue", arguments.toArray(new String[arguments.size()]));
+
+        return ScriptingParser.parseDelimitedTable(squeueOutput, SQUEUE_FIELDS, "JOBID", FIELD_DELIMITER, ADAPTOR_NAME,
                 "*", "~");
     }
 
     private Map<String, Map<String, String>> getSinfoInfo(String... partitions) throws XenonException {
-        String output = runCheckedCommand(null, "sinfo", "--format=%P %a %l %F %N %C %D",
+        String output = runCheckedCommand(null, "sinfo", "--noheader", "--format=" + SINFO_FORMAT,
                 "--partition=" + CommandLineUtils.asCSList(partitions));
 
-        return ScriptingParser.parseTable(output, "PARTITION", ScriptingParser.WHITESPACE_REGEX, ADAPTOR_NAME, "*",
+        return ScriptingParser.parseDelimitedTable(output, SINFO_FIELDS, "PARTITION", FIELD_DELIMITER, false, ADAPTOR_NAME, "*",
                 "~");
     }
 
+    /**
+     * Get the sinfo information of the given partitions. Concurrent requests are merged into a single sinfo call.
+     * 
+     * @param partitions
+     *          the partitions to get the information for. <code>null</code> values are ignored.
+     * @return
+     *          the sinfo information of the partitions that were found, indexed by partition name.
+     * @throws XenonException
+     *          if sinfo failed.
+     */
+    private Map<String, Map<String, String>> getCoalescedSinfoInfo(String... partitions) throws XenonException {
+        ArrayList<String> tmp = new ArrayList<>(partitions.length);
+
+        for (String partition : partitions) {
+            if (partition != null) {
+                tmp.add(partition);
+            }
+        }
+
+        if (tmp.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        return sinfoCoalescer.get(tmp);
+    }
+
     private Map<String, Map<String, String>> getSacctInfo(String... jobs) throws XenonException {
-        if (!setup.accountingAvailable()) {
+        if (!getSetup().accountingAvailable()) {
             return new HashMap<>();
         }
 
-        RemoteCommandRunner runner;
-        
+        ArrayList<String> arguments = new ArrayList<>();
+        arguments.add("-X");
+        arguments.add("--parsable2");
+        arguments.add("--noheader");
+        arguments.add("--format=" + CommandLineUtils.asCSList(SACCT_FIELDS));
+
+        if (jobs != null && jobs.length > 0) {
+            arguments.add("--jobs=" + identifiersAsCSList(jobs));
+        }
+
         // This command will not complain if the job given does not exist
         // but it may produce output on stderr when it finds non-standard lines in the accounting log        
-        if (jobs == null || jobs.length == 0) { 
-            runner = runCommand(null, "sacct", "-X", "-p", "--format=JobID,JobName,Partition,NTasks,"
-                    + "Elapsed,State,ExitCode,AllocCPUS,DerivedExitCode,Submit,"
-                    + "Suspended,Start,User,End,NNodes,Timelimit,Comment,Priority");
-        } else { 
-            runner = runCommand(null, "sacct", "-X", "-p", "--format=JobID,JobName,Partition,NTasks,"
-                    + "Elapsed,State,ExitCode,AllocCPUS,DerivedExitCode,Submit,"
-                    + "Suspended,Start,User,End,NNodes,Timelimit,Comment,Priority",
-                    "--jobs=" + identifiersAsCSList(jobs));
-        }
+        RemoteCommandRunner runner = runCommand(null, "sacct", arguments.toArray(new String[arguments.size()]));
 
         if (runner.getExitCode() != 0) {
             throw new XenonException(ADAPTOR_NAME, "Error in getting sacct job status: " + runner);
@@ -355,12 +597,12 @@ public class SlurmScheduler extends ScriptingScheduler {
             LOGGER.warn("Sacct produced error output: " + runner.getStderr());
         }
  
-        return ScriptingParser.parseTable(runner.getStdout(), "JobID", ScriptingParser.BAR_REGEX, ADAPTOR_NAME, "*",
-                "~");
+        return ScriptingParser.parseDelimitedTable(runner.getStdout(), SACCT_FIELDS, "JobID", FIELD_DELIMITER, ADAPTOR_NAME,
+                "*", "~");
     }
 
     @Override
-    public JobStatus getJobStatus(String jobIdentifier) throws XenonException {
+    protected JobStatus queryJobStatus(String jobIdentifier) throws XenonException {
 
     	assertNonNullOrEmpty(jobIdentifier, "Job identifier cannot be null or empty");
     	
@@ -370,7 +612,7 @@ public class SlurmScheduler extends ScriptingScheduler {
 
         //try the accounting (if available)
         if (result == null) {
-            Map<String, Map<String, String>> sacctInfo = getSacctInfo(jobIdentifier);
+            Map<String, Map<String, String>> sacctInfo = getAccountingInfo(Collections.singletonList(jobIdentifier));
             result = getJobStatusFromSacctInfo(sacctInfo, jobIdentifier);
         }
 
@@ -388,52 +630,218 @@ public class SlurmScheduler extends ScriptingScheduler {
         return result;
     }
 
-//    @Override
-//    public JobStatus[] getJobStatuses(String... jobs) throws XenonException {
-//        JobStatus[] result = new JobStatus[jobs.length];
-//        
-//        //fetch queue info for all jobs in one go
-//        Map<String, Map<String, String>> squeueInfo = getSqueueInfo(jobs);
-//
-//        //fetch accounting info for all jobs in one go
-//        Map<String, Map<String, String>> sacctInfo = getSacctInfo(jobs);
-//
-//        //loop over all jobs looking for status in info maps
-//        for (int i = 0; i < jobs.length; i++) {
-//            //job not requested at all
-//            if (jobs[i] == null) {
-//                result[i] = null;
-//            } else {
-//                //Check the squeue info.
-//                result[i] = getJobStatusFromSqueueInfo(squeueInfo, jobs[i]);
-//
-//                //Check sacct info. (if available)
-//                if (result[i] == null) {
-//                    result[i] = getJobStatusFromSacctInfo(sacctInfo, jobs[i]);
-//                }
-//
-//                //Check scontrol. Will run an additional command.
-//                if (result[i] == null) {
-//                    Map<String, String> scontrolInfo = getSControlInfo(jobs[i]);
-//                    result[i] = getJobStatusFromScontrolInfo(scontrolInfo, jobs[i]);
-//                }
-//
-//                //job really does not seem to exist (anymore)
-//                if (result[i] == null) {
-//                    NoSuchJobException exception = new NoSuchJobException(ADAPTOR_NAME, "Unknown Job: " + jobs[i]);
-//                    result[i] = new JobStatusImplementation(jobs[i], null, null, exception, false, false, null);
-//                }
-//            }
-//        }
-//        return result;
-//    }
+    /**
+     * Get the squeue info of many jobs at once. The job list is split into chunks to stay within command line limits. 
+     * Chunks for which squeue reports an invalid job id (which it does when all jobs requested have left the queue) 
+     * are treated as empty.
+     */
+    private Map<String, Map<String, String>> getSqueueInfo(List<String> jobLists) throws XenonException {
+        Map<String, Map<String, String>> result = new HashMap<>();
+
+        for (String jobList : jobLists) {
+            try {
+                result.putAll(getSqueueInfo(jobList));
+            } catch (NoSuchJobException e) {
+                LOGGER.debug("squeue does not know any of the jobs {}", jobList);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the sacct information of jobs that finished since the given time.
+     * 
+     * @param startTime
+     *          the start of the time window, in the format used by sacct.
+     * @return
+     *          the sacct information of the jobs found, indexed by job identifier.
+     * @throws XenonException
+     *          if sacct failed.
+     */
+    private Map<String, Map<String, String>> getRecentSacctInfo(String startTime) throws XenonException {
+        ArrayList<String> arguments = new ArrayList<>();
+        arguments.add("-X");
+        arguments.add("--parsable2");
+        arguments.add("--noheader");
+        arguments.add("--format=" + CommandLineUtils.asCSList(SACCT_FIELDS));
+        arguments.add("--state=" + FINISHED_STATE_CODES);
+        arguments.add("--starttime=" + startTime);
+
+        String user = getUserName();
+
+        if (user != null) {
+            arguments.add("--user=" + user);
+        }
+
+        RemoteCommandRunner runner = runCommand(null, "sacct", arguments.toArray(new String[arguments.size()]));
+
+        if (runner.getExitCode() != 0) {
+            throw new XenonException(ADAPTOR_NAME, "Error in getting sacct job status: " + runner);
+        }
+
+        return ScriptingParser.parseDelimitedTable(runner.getStdout(), SACCT_FIELDS, "JobID", FIELD_DELIMITER, ADAPTOR_NAME,
+                "*", "~");
+    }
+
+    /**
+     * Get the accounting information of jobs that are no longer in the queue. Jobs known to have finished are served from the
+     * cache. For jobs submitted since the poll windows started, sacct is asked for the jobs that finished since the last poll. A
+     * job not found there has not finished yet, so only jobs submitted earlier (or elsewhere) are queried by identifier. The 
+     * windows are only used once the clock of the cluster is known.
+     * 
+     * @param jobs
+     *          the jobs to get the information for.
+     * @return
+     *          the sacct information of the jobs found, indexed by job identifier.
+     * @throws XenonException
+     *          if sacct failed.
+     */
+    private Map<String, Map<String, String>> getAccountingInfo(List<String> jobs) throws XenonException {
+        Map<String, Map<String, String>> result = new HashMap<>();
+
+        if (jobs.isEmpty() || !getSetup().accountingAvailable()) {
+            return result;
+        }
+
+        if (!accounting.hasClusterTime() && clusterTimeQueried.compareAndSet(false, true)) {
+            queryClusterTime();
+        }
+
+        List<String> uncovered = new ArrayList<>();
+        boolean poll = false;
+
+        for (String job : accounting.lookup(jobs, result)) {
+            if (accounting.isCovered(getSubmissionTime(job))) {
+                poll = true;
+            } else {
+                uncovered.add(job);
+            }
+        }
+
+        List<String> remaining = uncovered;
+
+        if (poll) {
+            long pollTime = System.currentTimeMillis();
+            accounting.update(getRecentSacctInfo(accounting.getWindowStart()));
+            accounting.windowPolled(pollTime);
+            remaining = accounting.lookup(uncovered, result);
+        }
+
+        if (!remaining.isEmpty()) {
+            Map<String, Map<String, String>> info = getSacctInfo(identifiersAsCSLists(remaining.toArray(new String[remaining.size()]),
+                    SLURM_MAX_JOB_LIST_LENGTH));
+
+            accounting.update(info);
+
+            for (String job : remaining) {
+                if (info.containsKey(job)) {
+                    result.put(job, info.get(job));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Determine the offset between the clocks of the cluster and the client, so the sacct poll window can be given in the clock 
+     * and time zone of the cluster. If this fails, all jobs are looked up by identifier.
+     */
+    private void queryClusterTime() {
+        try {
+            long before = System.currentTimeMillis();
+            RemoteCommandRunner runner = runCommand(null, "date", "+%Y-%m-%dT%H:%M:%S");
+            long after = System.currentTimeMillis();
+
+            if (runner.success() && accounting.setClusterTime(runner.getStdout().trim(), before + (after - before) / 2)) {
+                return;
+            }
+
+            LOGGER.warn("Cannot determine cluster time, sacct will be queried per job: {}", runner);
+        } catch (XenonException e) {
+            LOGGER.warn("Cannot determine cluster time, sacct will be queried per job", e);
+        }
+    }
+
+    /**
+     * Get the sacct info of many jobs at once. The job list is split into chunks to stay within command line limits.
+     */
+    private Map<String, Map<String, String>> getSacctInfo(List<String> jobLists) throws XenonException {
+        Map<String, Map<String, String>> result = new HashMap<>();
+
+        for (String jobList : jobLists) {
+            result.putAll(getSacctInfo(jobList));
+        }
+
+        return result;
+    }
+
+    @Override
+    protected JobStatus[] queryJobStatuses(String... jobs) throws XenonException {
+        JobStatus[] result = new JobStatus[jobs.length];
+
+        List<String> jobLists = identifiersAsCSLists(jobs, SLURM_MAX_JOB_LIST_LENGTH);
+
+        if (jobLists.isEmpty()) {
+            // no jobs requested at all
+            return result;
+        }
+
+        //fetch queue info for all jobs in one go
+        Map<String, Map<String, String>> squeueInfo = getSqueueInfo(jobLists);
+
+        //fetch accounting info in one go, but only for the jobs that are no longer in the queue
+        ArrayList<String> missing = new ArrayList<>();
+
+        for (String job : jobs) {
+            if (job != null && !squeueInfo.containsKey(job)) {
+                missing.add(job);
+            }
+        }
+
+        Map<String, Map<String, String>> sacctInfo = getAccountingInfo(missing);
+
+        //loop over all jobs looking for status in info maps
+        for (int i = 0; i < jobs.length; i++) {
+            //job not requested at all
+            if (jobs[i] == null) {
+                result[i] = null;
+            } else {
+                try {
+                    //Check the squeue info.
+                    result[i] = getJobStatusFromSqueueInfo(squeueInfo, jobs[i]);
+
+                    //Check sacct info. (if available)
+                    if (result[i] == null) {
+                        result[i] = getJobStatusFromSacctInfo(sacctInfo, jobs[i]);
+                    }
+
+                    //Check scontrol. Will run an additional command, but only for the jobs not found so far.
+                    if (result[i] == null) {
+                        Map<String, String> scontrolInfo = getSControlInfo(jobs[i]);
+                        result[i] = getJobStatusFromScontrolInfo(scontrolInfo, jobs[i]);
+                    }
+
+                    //job really does not seem to exist (anymore)
+                    if (result[i] == null) {
+                        throw new NoSuchJobException(ADAPTOR_NAME, "Unknown Job: " + jobs[i]);
+                    }
+                } catch (XenonException e) {
+                    result[i] = new JobStatusImplementation(jobs[i], null, null, e, false, true, null);
+                }
+            }
+        }
+
+        return result;
+    }
 
     @Override
     public QueueStatus getQueueStatus(String queueName) throws XenonException {
 
     	assertNonNullOrEmpty(queueName, "Queue name cannot be null or empty");
     	
-        Map<String, Map<String, String>> info = getSinfoInfo(queueName);
+        Map<String, Map<String, String>> info = getCoalescedSinfoInfo(queueName);
 
         QueueStatus result = getQueueStatusFromSInfo(info, queueName, this);
 
@@ -457,7 +865,7 @@ public class SlurmScheduler extends ScriptingScheduler {
             targetQueueNames = requestedQueueNames;
         }
 
-        Map<String, Map<String, String>> info = getSinfoInfo(targetQueueNames);
+        Map<String, Map<String, String>> info = getCoalescedSinfoInfo(targetQueueNames);
 
         QueueStatus[] result = new QueueStatus[targetQueueNames.length];
 
@@ -493,10 +901,4 @@ public class SlurmScheduler extends ScriptingScheduler {
 //        return subScheduler.getStreams(interactiveJob);
 //    }
 
-	@Override
-	public boolean isOpen() throws XenonException {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
 }
@@ -35,6 +35,7 @@ public class SlurmSetup {
     private static final Logger LOGGER = LoggerFactory.getLogger(SlurmSetup.class);
 
     private final boolean accountingAvailable;
+    private final boolean arraysAvailable;
     private final String version;
 
     SlurmSetup(Map<String, String> info, boolean disableAccounting) throws XenonException {
@@ -57,6 +58,9 @@ public class SlurmSetup {
 
         accountingAvailable = !(accountingType.equals("accounting_storage/none") || disableAccounting);
 
+        // Job arrays were introduced in slurm 2.6, together with the MaxArraySize setting.
+        arraysAvailable = info.containsKey("MaxArraySize");
+
         LOGGER.debug("Created new SlurmConfig. version = \"{}\", accounting available: {}", version, accountingAvailable);
     }
 
@@ -74,6 +78,10 @@ public class SlurmSetup {
         return accountingAvailable;
     }
     
+    public boolean arraysAvailable() {
+        return arraysAvailable;
+    }
+
     public String version() {
         return version;
     }
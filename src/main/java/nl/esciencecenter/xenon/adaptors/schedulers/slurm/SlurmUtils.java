@@ -17,11 +17,16 @@ package nl.esciencecenter.xenon.adaptors.schedulers.slurm;
 
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.ADAPTOR_NAME;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.Formatter;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +52,40 @@ public final class SlurmUtils {
 
     private static final String[] VALID_JOB_OPTIONS = new String[] { JOB_OPTION_JOB_SCRIPT };
 
+    /** 
+     * Fields requested from squeue, named as in the squeue header. The job name is left out, as it may contain the delimiter.
+     * The comment is last, as it is the only free-form text.
+     */
+    protected static final String[] SQUEUE_FIELDS = new String[] { "JOBID", "PARTITION", "USER", "STATE", "TIME",
+            "TIME_LIMIT", "NODES", "NODELIST(REASON)", "COMMENT" };
+
+    /** Output format of squeue, with one '|' separated column per entry in {@link #SQUEUE_FIELDS}. */
+    protected static final String SQUEUE_FORMAT = "%i|%P|%u|%T|%M|%l|%D|%R|%k";
+
+    /** Fields requested from sinfo, named as in the sinfo header. */
+    protected static final String[] SINFO_FIELDS = new String[] { "PARTITION", "AVAIL", "TIMELIMIT", "NODES(A/I/O/T)", 
+            "NODELIST", "CPUS(A/I/O/T)", "NODES" };
+
+    /** Output format of sinfo, with one '|' separated column per entry in {@link #SINFO_FIELDS}. */
+    protected static final String SINFO_FORMAT = "%P|%a|%l|%F|%N|%C|%D";
+
+    /** 
+     * Fields requested from sacct. The job name is left out, as it may contain the delimiter. The comment is last, as it is 
+     * the only free-form text.
+     */
+    protected static final String[] SACCT_FIELDS = new String[] { "JobID", "Partition", "NTasks", "Elapsed", "State",
+            "ExitCode", "AllocCPUS", "DerivedExitCode", "Submit", "Suspended", "Start", "User", "End", "NNodes", "Timelimit", 
+            "Priority", "Comment" };
+
+    /** Delimiter between the columns of the squeue, sinfo and sacct output. */
+    protected static final char FIELD_DELIMITER = '|';
+
+    /** Prefix of the job name given to interactive jobs, followed by the tag of the job. */
+    public static final String INTERACTIVE_JOB_NAME_PREFIX = "xenon-";
+
+    /** Margin used when searching the accounting for recently submitted jobs, to cover clock skew and time zones. */
+    private static final long ACCOUNTING_START_MARGIN = 24L * 60L * 60L * 1000L;
+
     /**
      * These are the states a job can be in when it has failed:
      * FAILED:    the job terminated with non-zero exit code or other failure condition. 
@@ -94,6 +133,51 @@ public final class SlurmUtils {
  		return result;
  	}
 
+    /**
+     * Split a list of job identifiers into one or more comma separated lists, none of which is longer than
+     * <code>maxLength</code> characters (unless a single identifier is longer than this). Duplicate and <code>null</code>
+     * identifiers are ignored. This is used to keep the <code>--jobs=</code> argument of squeue and sacct within command line
+     * limits when querying many jobs at once.
+     * 
+     * @param jobs
+     *          the job identifiers to split.
+     * @param maxLength
+     *          the maximum length of each comma separated list.
+     * @return
+     *          the comma separated lists, or an empty list if no identifiers were given.
+     */
+    protected static List<String> identifiersAsCSLists(String[] jobs, int maxLength) {
+        ArrayList<String> result = new ArrayList<>();
+        LinkedHashSet<String> unique = new LinkedHashSet<>();
+
+        for (String job : jobs) {
+            if (job != null) {
+                unique.add(job);
+            }
+        }
+
+        StringBuilder current = new StringBuilder();
+
+        for (String job : unique) {
+            if (current.length() > 0 && current.length() + 1 + job.length() > maxLength) {
+                result.add(current.toString());
+                current.setLength(0);
+            }
+
+            if (current.length() > 0) {
+                current.append(',');
+            }
+
+            current.append(job);
+        }
+
+        if (current.length() > 0) {
+            result.add(current.toString());
+        }
+
+        return result;
+    }
+
  	// Retrieve an exit code from the "ExitCode" output field of scontrol
     protected static Integer exitcodeFromString(String value) throws XenonException {
         if (value == null) {
@@ -327,6 +411,66 @@ public final class SlurmUtils {
         return path;
     }
     
+    /**
+     * Get the job name of an interactive job. The name contains the tag, so the job can be looked up by name in squeue and sacct.
+     *
+     * @param tag
+     *          the tag of the interactive job.
+     * @return
+     *          the job name of the interactive job.
+     */
+    public static String getInteractiveJobName(UUID tag) {
+        return INTERACTIVE_JOB_NAME_PREFIX + tag.toString();
+    }
+
+    /**
+     * Get the date from which sacct must search to find a job submitted at the given time. Only a date is returned, as this is
+     * understood by all sacct versions and is not affected by differences in clock or time zone between client and cluster.
+     *
+     * @param submitTime
+     *          the time at which the job was submitted, in milliseconds since the epoch.
+     * @return
+     *          the start date to pass to sacct, formatted as <code>yyyy-MM-dd</code>.
+     */
+    public static String getAccountingStartDate(long submitTime) {
+        return new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date(submitTime - ACCOUNTING_START_MARGIN));
+    }
+
+    /**
+     * Find the job with the given comment in the output of squeue or sacct, formatted as one job per line containing the job
+     * identifier followed by the comment. Lines are scanned one at a time, and scanning stops at the first match.
+     *
+     * @param output
+     *          the output to search, without a header.
+     * @param separator
+     *          the separator between the job identifier and comment.
+     * @param comment
+     *          the comment to search for.
+     * @return
+     *          the identifier of the first job with the given comment, or <code>null</code> if no such job was found.
+     */
+    public static String findJobWithComment(String output, Pattern separator, String comment) {
+        int start = 0;
+
+        while (start < output.length()) {
+            int end = output.indexOf('\n', start);
+
+            if (end < 0) {
+                end = output.length();
+            }
+
+            String[] fields = separator.split(output.substring(start, end).trim(), 3);
+
+            if (fields.length >= 2 && fields[1].equals(comment)) {
+                return fields[0];
+            }
+
+            start = end + 1;
+        }
+
+        return null;
+    }
+
     public static String[] generateInteractiveArguments(JobDescription description, Path fsEntryPath, UUID tag) {
         ArrayList<String> arguments = new ArrayList<>();
 
@@ -335,6 +479,9 @@ public final class SlurmUtils {
 
         //add a tag so we can find the job back in the queue later
         arguments.add("--comment=" + tag.toString());
+
+        //and a matching name, so we can filter on it in squeue and sacct
+        arguments.add("--job-name=" + getInteractiveJobName(tag));
         
         //set working directory
         if (description.getWorkingDirectory() != null) {
@@ -361,8 +508,42 @@ public final class SlurmUtils {
         return arguments.toArray(new String[arguments.size()]);
     }
 
-    @SuppressWarnings("PMD.NPathComplexity")
     public static String generate(JobDescription description, Path fsEntryPath) {
+        return generate(description, fsEntryPath, null);
+    }
+
+    private static void generateScriptContent(JobDescription description, Formatter script) {
+
+        if (!description.isStartSingleProcess()) {
+            //run commands through srun
+            script.format("srun ");
+        }
+
+        script.format("%s", description.getExecutable());
+
+        for (String argument : description.getArguments()) {
+            script.format(" %s", CommandLineUtils.protectAgainstShellMetas(argument));
+        }
+        script.format("\n");
+    }
+
+    /**
+     * Generate a job script. If <code>taskParameters</code> is not <code>null</code>, the script describes a job array 
+     * with one task per entry, where task <code>i</code> runs the description with entry <code>i</code> appended to its 
+     * arguments. Each task writes its standard output and error to the given file, followed by a dot and the job identifier 
+     * of the task (<code>arrayjob_i</code>), which is unique even if the tasks are submitted in several arrays.
+     * 
+     * @param description
+     *          the description of the job, or the template of the tasks. 
+     * @param fsEntryPath
+     *          the entry path of the file system, used to resolve relative working directories.
+     * @param taskParameters
+     *          the additional arguments of each task, or <code>null</code> for a single job.
+     * @return
+     *          the job script.
+     */
+    @SuppressWarnings("PMD.NPathComplexity")
+    public static String generate(JobDescription description, Path fsEntryPath, List<String[]> taskParameters) {
         StringBuilder stringBuilder = new StringBuilder();
         Formatter script = new Formatter(stringBuilder, Locale.US);
 
@@ -390,20 +571,27 @@ public final class SlurmUtils {
         //add maximum runtime
         script.format("#SBATCH --time=%d\n", description.getMaxTime());
 
+        if (taskParameters != null) {
+            script.format("#SBATCH --array=0-%d\n", taskParameters.size() - 1);
+        }
+
         if (description.getStdin() != null) {
             script.format("#SBATCH --input='%s'\n", description.getStdin());
         }
 
+        //tasks of an array each get their own output files, with the array job id (%A) and task number (%a) appended
+        String taskSuffix = taskParameters == null ? "" : ".%A_%a";
+
         if (description.getStdout() == null) {
             script.format("#SBATCH --output=/dev/null\n");
         } else {
-            script.format("#SBATCH --output='%s'\n", description.getStdout());
+            script.format("#SBATCH --output='%s%s'\n", description.getStdout(), taskSuffix);
         }
 
         if (description.getStderr() == null) {
             script.format("#SBATCH --error=/dev/null\n");
         } else {
-            script.format("#SBATCH --error='%s'\n", description.getStderr());
+            script.format("#SBATCH --error='%s%s'\n", description.getStderr(), taskSuffix);
         }
 
         for (Map.Entry<String, String> entry : description.getEnvironment().entrySet()) {
@@ -412,17 +600,20 @@ public final class SlurmUtils {
 
         script.format("\n");
 
-        if (!description.isStartSingleProcess()) {
-            //run commands through srun
-            script.format("srun ");
-        }
+        if (taskParameters == null) {
+            generateScriptContent(description, script);
+        } else {
+            //select the arguments of this task
+            script.format("case \"$SLURM_ARRAY_TASK_ID\" in\n");
 
-        script.format("%s", description.getExecutable());
+            for (int i = 0; i < taskParameters.size(); i++) {
+                script.format("%d)\n", i);
+                generateScriptContent(ScriptingUtils.getTaskDescription(description, taskParameters.get(i)), script);
+                script.format(";;\n");
+            }
 
-        for (String argument : description.getArguments()) {
-            script.format(" %s", CommandLineUtils.protectAgainstShellMetas(argument));
+            script.format("esac\n");
         }
-        script.format("\n");
 
         script.close();
 
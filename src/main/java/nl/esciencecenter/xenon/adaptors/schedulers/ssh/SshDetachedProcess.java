@@ -0,0 +1,119 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers.ssh;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.esciencecenter.xenon.adaptors.schedulers.Process;
+import nl.esciencecenter.xenon.filesystems.Path;
+
+/**
+ * SshDetachedProcess represents a batch job that runs on the remote machine independent of the SSH connection. Its status is 
+ * retrieved in bulk by the {@link SshDetachedProcessFactory} that created it, so {@link #isDone()} never contacts the remote 
+ * machine.
+ */
+class SshDetachedProcess implements Process {
+
+    private final SshDetachedProcessFactory factory;
+
+    private final Path workingDirectory;
+
+    private final String jobIdentifier;
+
+    private final int pid;
+
+    private boolean done = false;
+
+    private int exitStatus = -1;
+
+    /** Run once the job is done. Guarded by this. */
+    private final List<Runnable> listeners = new ArrayList<>();
+
+    SshDetachedProcess(SshDetachedProcessFactory factory, Path workingDirectory, String jobIdentifier, int pid) {
+        this.factory = factory;
+        this.workingDirectory = workingDirectory;
+        this.jobIdentifier = jobIdentifier;
+        this.pid = pid;
+    }
+
+    String getJobIdentifier() {
+        return jobIdentifier;
+    }
+
+    Path getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    int getPid() {
+        return pid;
+    }
+
+    void setDone(int exitStatus) {
+
+        List<Runnable> tmp;
+
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+
+            this.exitStatus = exitStatus;
+            this.done = true;
+
+            tmp = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+
+        for (Runnable r : tmp) {
+            r.run();
+        }
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized int getExitStatus() {
+        return exitStatus;
+    }
+
+    @Override
+    public void destroy() {
+
+        if (isDone()) {
+            return;
+        }
+
+        factory.kill(this);
+        setDone(-1);
+    }
+
+    @Override
+    public void addTerminationListener(Runnable listener) {
+
+        synchronized (this) {
+            if (!done) {
+                listeners.add(listener);
+                return;
+            }
+        }
+
+        listener.run();
+    }
+}
@@ -0,0 +1,498 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers.ssh;
+
+import static nl.esciencecenter.xenon.adaptors.schedulers.ssh.SshSchedulerAdaptor.ADAPTOR_NAME;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.session.ClientSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.schedulers.BatchProcessFactory;
+import nl.esciencecenter.xenon.adaptors.schedulers.CommandLineUtils;
+import nl.esciencecenter.xenon.adaptors.schedulers.Process;
+import nl.esciencecenter.xenon.adaptors.shared.local.LocalUtil;
+import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnector;
+import nl.esciencecenter.xenon.filesystems.FileSystem;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.PathAlreadyExistsException;
+import nl.esciencecenter.xenon.schedulers.JobDescription;
+import nl.esciencecenter.xenon.utils.AsyncExecutor;
+
+/**
+ * An {@link SshInteractiveProcessFactory} that runs batch jobs detached from the SSH connection.
+ * 
+ * Each batch job is started with <code>setsid nohup</code> by a short-lived exec channel, with its streams redirected to 
+ * files. A small wrapper script writes the exit code of the job to a file in a state directory on the remote machine. 
+ * The status of all running jobs is then retrieved with a single batched remote command per polling interval, which checks 
+ * the exit code files and the liveness of the process ids (<code>kill -0</code>). This command is triggered by the shared timer 
+ * and runs on the shared executor, so checking the state of a process never blocks. Jobs keep running if the connection is 
+ * lost. Exit code files are removed once they are read, and the state directories are removed when the factory is closed.
+ */
+public class SshDetachedProcessFactory extends SshInteractiveProcessFactory implements BatchProcessFactory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SshDetachedProcessFactory.class);
+
+    /** Maximum number of jobs checked by a single remote command. */
+    private static final int MAX_JOBS_PER_QUERY = 1000;
+
+    /** Remote exit status of the launch script if an output file already exists. */
+    private static final int EXIT_PATH_EXISTS = 17;
+
+    /** Remote exit status of the launch script if the stdin file does not exist. */
+    private static final int EXIT_NO_STDIN = 18;
+
+    /** Shell function <code>s id pid</code>, which prints "id exitcode" if the job has finished, and removes its exit file. */
+    private static final String STATUS_FUNCTION = "s() { if [ ! -f \"$1.exit\" ] && kill -0 \"$2\" 2>/dev/null; then return; fi; "
+            + "if [ -f \"$1.exit\" ]; then echo \"$1 $(cat \"$1.exit\")\"; else echo \"$1 -1\"; fi; rm -f \"$1.exit\"; }";
+
+    private final long pollingDelay;
+
+    /** Directory (relative to the remote working directory) in which the exit codes of the jobs are stored. */
+    private final String stateDirectory;
+
+    private final long timeout;
+
+    /** The running detached processes. Only added to while holding pollerLock. */
+    private final Map<String, SshDetachedProcess> processes = new ConcurrentHashMap<>();
+
+    /** The working directories containing a state directory. */
+    private final Set<Path> workingDirectories = ConcurrentHashMap.newKeySet();
+
+    private final Object refreshLock = new Object();
+
+    private final Object pollerLock = new Object();
+
+    /** Triggers the status refresh while jobs are running, or null. Guarded by pollerLock. */
+    private ScheduledFuture<?> poller;
+
+    /** If a status refresh has been handed to the shared executor and has not finished yet. */
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    protected SshDetachedProcessFactory(ClientSession session, long pollingDelay, long timeout) {
+        this(session, null, pollingDelay, timeout);
+    }
+
+    protected SshDetachedProcessFactory(ClientSession session, SSHConnector connector, long pollingDelay, long timeout) {
+        super(session, connector);
+        this.pollingDelay = pollingDelay;
+        this.timeout = timeout;
+        this.stateDirectory = ".xenon/jobs-" + UUID.randomUUID().toString();
+    }
+
+    private static Path resolve(Path root, String path) {
+        if (path == null) {
+            return root;
+        } else if (LocalUtil.startWithRoot(path)) {
+            return new Path(path);
+        } else {
+            return root.resolve(path);
+        }
+    }
+
+    private static String quote(Path path) {
+        return CommandLineUtils.protectAgainstShellMetas(path.toString());
+    }
+
+    private static void appendRedirect(StringBuilder b, String redirect, Path file) {
+        b.append(' ').append(redirect).append(' ').append(file == null ? "/dev/null" : quote(file));
+    }
+
+    private static void appendCheckNotExists(StringBuilder b, Path file) {
+        if (file != null) {
+            b.append("if [ -e ").append(quote(file)).append(" ]; then echo ");
+            b.append(CommandLineUtils.protectAgainstShellMetas("File already exists: " + file)).append(" >&2; exit ");
+            b.append(EXIT_PATH_EXISTS).append("; fi\n");
+        }
+    }
+
+    /**
+     * Build the script that launches the job detached from the connection, and prints its process id.
+     */
+    String buildLaunchCommand(Path workingDirectory, JobDescription description, String jobIdentifier) {
+
+        Path workdir = resolve(workingDirectory, description.getWorkingDirectory());
+        Path stdin = description.getStdin() == null ? null : resolve(workdir, description.getStdin());
+        Path stdout = description.getStdout() == null ? null : resolve(workdir, description.getStdout());
+        Path stderr = description.getStderr() == null ? null : resolve(workdir, description.getStderr());
+        Path exit = resolve(workingDirectory, stateDirectory + "/" + jobIdentifier + ".exit");
+
+        // The job itself, followed by writing its exit code.
+        StringBuilder job = new StringBuilder(200);
+
+        for (Map.Entry<String, String> e : description.getEnvironment().entrySet()) {
+            job.append("export ").append(e.getKey()).append('=');
+            job.append(CommandLineUtils.protectAgainstShellMetas(e.getValue())).append("; ");
+        }
+
+        job.append(description.getExecutable());
+
+        for (String s : description.getArguments()) {
+            job.append(' ').append(CommandLineUtils.protectAgainstShellMetas(s));
+        }
+
+        appendRedirect(job, ">", stdout);
+
+        if (stderr != null && stderr.equals(stdout)) {
+            // Separate redirects to the same file would overwrite each other's output.
+            job.append(" 2>&1");
+        } else {
+            appendRedirect(job, "2>", stderr);
+        }
+
+        job.append("; echo $? > ").append(quote(exit)).append(".tmp; mv ").append(quote(exit)).append(".tmp ").append(quote(exit));
+
+        // The launch script
+        StringBuilder b = new StringBuilder(400);
+        b.append("mkdir -p ").append(quote(resolve(workingDirectory, stateDirectory))).append(" || exit 1\n");
+        b.append("cd ").append(quote(workdir)).append(" || exit 1\n");
+
+        if (stdin != null) {
+            b.append("if [ ! -f ").append(quote(stdin)).append(" ]; then echo ");
+            b.append(CommandLineUtils.protectAgainstShellMetas("Stdin cannot be redirected from " + stdin)).append(" >&2; exit ");
+            b.append(EXIT_NO_STDIN).append("; fi\n");
+        }
+
+        appendCheckNotExists(b, stdout);
+        appendCheckNotExists(b, stderr);
+
+        b.append("setsid nohup sh -c ").append(CommandLineUtils.protectAgainstShellMetas(job.toString()));
+        appendRedirect(b, "<", stdin);
+        b.append(" > /dev/null 2>&1 &\n");
+        b.append("echo $!\n");
+
+        return b.toString();
+    }
+
+    /**
+     * Build the script that reports the exit code of each of the given jobs that has finished. 
+     */
+    String buildStatusCommand(Path workingDirectory, List<SshDetachedProcess> jobs) {
+
+        StringBuilder b = new StringBuilder(100 + jobs.size() * 24);
+        b.append("cd ").append(quote(resolve(workingDirectory, stateDirectory))).append(" || exit 0\n");
+        b.append(STATUS_FUNCTION).append('\n');
+
+        for (SshDetachedProcess p : jobs) {
+            b.append("s ").append(CommandLineUtils.protectAgainstShellMetas(p.getJobIdentifier())).append(' ');
+            b.append(p.getPid()).append('\n');
+        }
+
+        return b.toString();
+    }
+
+    /**
+     * Build the script that kills the process group of a job, and removes its exit code file if it was already written. 
+     */
+    String buildKillCommand(SshDetachedProcess process) {
+        Path exit = resolve(process.getWorkingDirectory(), stateDirectory + "/" + process.getJobIdentifier() + ".exit");
+        return "kill -9 -- -" + process.getPid() + " 2>/dev/null || kill -9 " + process.getPid() + " 2>/dev/null; rm -f " 
+                + quote(exit) + "; exit 0";
+    }
+
+    /**
+     * Build the script that removes the state directories, including the exit code files of jobs that are still running. 
+     */
+    String buildCleanupCommand(Set<Path> workingDirectories) {
+
+        StringBuilder b = new StringBuilder();
+
+        for (Path p : workingDirectories) {
+            Path state = resolve(p, stateDirectory);
+            b.append("rm -rf ").append(quote(state)).append("; rmdir ").append(quote(state.getParent()));
+            b.append(" 2>/dev/null\n");
+        }
+
+        b.append("exit 0\n");
+        return b.toString();
+    }
+
+    /**
+     * Run a command on the remote machine, and return its output.
+     * 
+     * @param command 
+     *          the command to run.
+     * @return 
+     *          the output of the command.
+     * @throws XenonException
+     *          if the command failed, or a {@link RemoteCommandException} if it exited with a non-zero exit code.
+     */
+    protected String execute(String command) throws XenonException {
+
+        // Jobs are detached from the session, so a lost session can simply be re-established before running the command. 
+        ClientSession session = getSession();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        ChannelExec channel = null;
+
+        try {
+            channel = session.createExecChannel(command);
+            channel.setOut(out);
+            channel.setErr(err);
+            channel.open().verify(timeout);
+            channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), timeout);
+
+            Integer exit = channel.getExitStatus();
+
+            if (exit == null || exit.intValue() != 0) {
+                throw new RemoteCommandException(exit == null ? -1 : exit.intValue(), 
+                        new String(err.toByteArray(), StandardCharsets.UTF_8).trim());
+            }
+
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to run remote command", e);
+        } finally {
+            if (channel != null) {
+                channel.close(false);
+            }
+        }
+    }
+
+    /**
+     * Thrown by {@link SshDetachedProcessFactory#execute(String)} if a remote command exits with a non-zero exit code.
+     */
+    protected static class RemoteCommandException extends XenonException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int exitCode;
+
+        public RemoteCommandException(int exitCode, String error) {
+            super(ADAPTOR_NAME, "Remote command failed with exit code " + exitCode + ": " + error);
+            this.exitCode = exitCode;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+    }
+
+    @Override
+    public Process createBatchProcess(FileSystem filesystem, Path workingDirectory, JobDescription description, 
+            String jobIdentifier) throws XenonException {
+
+        String output;
+
+        try {
+            output = execute(buildLaunchCommand(workingDirectory, description, jobIdentifier));
+        } catch (RemoteCommandException e) {
+            if (e.getExitCode() == EXIT_PATH_EXISTS) {
+                throw new PathAlreadyExistsException(ADAPTOR_NAME, e.getMessage(), e);
+            }
+            throw e;
+        }
+
+        int pid;
+
+        try {
+            pid = Integer.parseInt(output.trim());
+        } catch (NumberFormatException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to retrieve process id of detached job: " + output, e);
+        }
+
+        SshDetachedProcess p = new SshDetachedProcess(this, workingDirectory, jobIdentifier, pid);
+        workingDirectories.add(workingDirectory);
+
+        synchronized (pollerLock) {
+            processes.put(jobIdentifier, p);
+
+            if (poller == null) {
+                poller = AsyncExecutor.getSharedTimer().scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        triggerRefresh();
+                    }
+                }, pollingDelay, pollingDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        return p;
+    }
+
+    /**
+     * Stop polling if no jobs are running, or if <code>force</code> is set. 
+     */
+    private void stopPolling(boolean force) {
+        synchronized (pollerLock) {
+            if (poller != null && (force || processes.isEmpty())) {
+                poller.cancel(false);
+                poller = null;
+            }
+        }
+    }
+
+    /**
+     * Hand a status refresh to the shared executor, unless the previous one is still running. Called by the shared timer, 
+     * which must not be held up by remote commands.
+     */
+    private void triggerRefresh() {
+
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            AsyncExecutor.getSharedExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refresh();
+                    } finally {
+                        refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+            LOGGER.debug("Failed to schedule status refresh of detached jobs", e);
+        }
+    }
+
+    /**
+     * Returns the number of detached jobs whose completion has not been detected yet.
+     * 
+     * @return the number of running detached jobs.
+     */
+    public int getRunningJobCount() {
+        return processes.size();
+    }
+
+    /**
+     * Refresh the status of all running detached jobs. Uses a single remote command for up to {@link #MAX_JOBS_PER_QUERY} 
+     * jobs. Called once per polling delay while jobs are running.
+     */
+    void refresh() {
+
+        synchronized (refreshLock) {
+            // Group per working directory, as the state directory is relative to it.
+            Map<Path, List<SshDetachedProcess>> groups = new HashMap<>();
+
+            for (SshDetachedProcess p : processes.values()) {
+                List<SshDetachedProcess> group = groups.get(p.getWorkingDirectory());
+
+                if (group == null) {
+                    group = new ArrayList<>();
+                    groups.put(p.getWorkingDirectory(), group);
+                }
+
+                group.add(p);
+            }
+
+            for (Map.Entry<Path, List<SshDetachedProcess>> e : groups.entrySet()) {
+                List<SshDetachedProcess> group = e.getValue();
+
+                for (int i = 0; i < group.size(); i += MAX_JOBS_PER_QUERY) {
+                    refresh(e.getKey(), group.subList(i, Math.min(group.size(), i + MAX_JOBS_PER_QUERY)));
+                }
+            }
+        }
+
+        stopPolling(false);
+    }
+
+    private void refresh(Path workingDirectory, List<SshDetachedProcess> jobs) {
+
+        String output;
+
+        try {
+            output = execute(buildStatusCommand(workingDirectory, jobs));
+        } catch (XenonException e) {
+            // The jobs keep running remotely, so we simply try again later.
+            LOGGER.warn("Failed to retrieve status of detached jobs", e);
+            return;
+        }
+
+        for (String line : output.split("\n")) {
+            String[] fields = line.trim().split(" ");
+
+            if (fields.length != 2) {
+                continue;
+            }
+
+            SshDetachedProcess p = processes.remove(fields[0]);
+
+            if (p != null) {
+                int exit;
+
+                try {
+                    exit = Integer.parseInt(fields[1]);
+                } catch (NumberFormatException ex) {
+                    exit = -1;
+                }
+
+                p.setDone(exit);
+            }
+        }
+    }
+
+    /**
+     * Kill a detached job.
+     */
+    void kill(SshDetachedProcess process) {
+
+        processes.remove(process.getJobIdentifier());
+        stopPolling(false);
+
+        try {
+            execute(buildKillCommand(process));
+        } catch (XenonException e) {
+            LOGGER.warn("Failed to kill detached job " + process.getJobIdentifier(), e);
+        }
+    }
+
+    /**
+     * Close the factory. Polling stops and the state directories are removed. Detached jobs that are still running are not 
+     * killed, but their status can no longer be retrieved.
+     */
+    @Override
+    public void close() throws XenonException {
+
+        stopPolling(true);
+
+        if (!workingDirectories.isEmpty() && isOpen()) {
+            try {
+                execute(buildCleanupCommand(workingDirectories));
+                workingDirectories.clear();
+            } catch (XenonException e) {
+                LOGGER.warn("Failed to remove state directory of detached jobs", e);
+            }
+        }
+
+        super.close();
+    }
+}
@@ -30,6 +30,8 @@ import nl.esciencecenter.xenon.schedulers.Streams;
 
 import org.apache.sshd.client.channel.ChannelExec;
 import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.future.CloseFuture;
+import org.apache.sshd.common.future.SshFutureListener;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -149,6 +151,16 @@ class SshInteractiveProcess implements InteractiveProcess {
         return status.intValue();
     }
 
+    @Override
+    public void addTerminationListener(final Runnable listener) {
+        channel.addCloseFutureListener(new SshFutureListener<CloseFuture>() {
+            @Override
+            public void operationComplete(CloseFuture future) {
+                listener.run();
+            }
+        });
+    }
+
     @Override
     public void destroy() {
         if (isDone()) {
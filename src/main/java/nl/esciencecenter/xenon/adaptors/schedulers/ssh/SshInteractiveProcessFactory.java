@@ -18,43 +18,94 @@ package nl.esciencecenter.xenon.adaptors.schedulers.ssh;
 import static nl.esciencecenter.xenon.adaptors.schedulers.ssh.SshSchedulerAdaptor.ADAPTOR_NAME;
 
 import org.apache.sshd.client.session.ClientSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.schedulers.InteractiveProcess;
 import nl.esciencecenter.xenon.adaptors.schedulers.InteractiveProcessFactory;
 import nl.esciencecenter.xenon.adaptors.schedulers.SchedulerClosedException;
+import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnector;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
 
+/**
+ * Creates processes using an SSH session. 
+ * 
+ * If a {@link SSHConnector} is provided, a session that was lost (for example because it stopped answering keepalive 
+ * requests) is re-established before the next process is started. Processes that were running when the session was lost 
+ * are not restarted. Such a factory remains open until it is closed explicitly. 
+ */
 public class SshInteractiveProcessFactory implements InteractiveProcessFactory {
 	
-	private final ClientSession session;
+	private static final Logger LOGGER = LoggerFactory.getLogger(SshInteractiveProcessFactory.class);
+
+	/** Used to re-establish the session, or <code>null</code> if the session is not re-established. */
+	private final SSHConnector connector;
+
+	/** The current session. Only changed while holding the lock on this. */
+	private volatile ClientSession session;
 	
+	/** If this factory was closed explicitly. Only changed while holding the lock on this. */
+	private volatile boolean closed = false;
+
 	protected SshInteractiveProcessFactory(ClientSession session) { 
+		this(session, null);
+	}
+
+	protected SshInteractiveProcessFactory(ClientSession session, SSHConnector connector) { 
 		
 		if (session == null) { 
 			throw new IllegalArgumentException("Session may not be null");
 		}
 		
 		this.session = session;
+		this.connector = connector;
 	}
 	
-	@Override
-    public InteractiveProcess createInteractiveProcess(JobDescription description, String jobIdentifier) throws XenonException {
+	/**
+	 * Get an open session, re-establishing the session if it was lost and a connector is available.
+	 * 
+	 * @return
+	 * 		an open session. 
+	 * @throws SchedulerClosedException
+	 * 		if this factory is closed, or the session was lost and cannot be re-established. 
+	 * @throws XenonException
+	 * 		if re-establishing the session failed.
+	 */
+	protected synchronized ClientSession getSession() throws XenonException {
+		
+		if (closed) { 
+			throw new SchedulerClosedException(ADAPTOR_NAME, "Scheduler is closed");
+		}
 		
-		if (session.isClosed()) { 
+		if (session.isOpen()) { 
+			return session;
+		}
+		
+		if (connector == null) { 
 			throw new SchedulerClosedException(ADAPTOR_NAME, "Scheduler is closed");
 		}
 		
-     	return new SshInteractiveProcess(session, description, jobIdentifier);
+		LOGGER.info("SSH session to {} was lost, reconnecting", connector.getLocation());
+		
+		session = connector.connect();
+		return session;
+	}
+
+	@Override
+    public InteractiveProcess createInteractiveProcess(JobDescription description, String jobIdentifier) throws XenonException {
+     	return new SshInteractiveProcess(getSession(), description, jobIdentifier);
     }
 
 	@Override
-	public void close() throws XenonException {
+	public synchronized void close() throws XenonException {
 		
-		if (session.isClosed()) { 
+		if (closed || (connector == null && session.isClosed())) { 
 			throw new SchedulerClosedException(ADAPTOR_NAME, "Scheduler already closed");
 		}
 		
+		closed = true;
+		
 		try { 
 			session.close();
 		} catch (Exception e) {
@@ -62,8 +113,12 @@ public class SshInteractiveProcessFactory implements InteractiveProcessFactory {
 		}
 	}
 
+	/**
+	 * Check if this factory is open. This does not block: a lost session is only re-established when the next process is 
+	 * created.
+	 */
 	@Override
 	public boolean isOpen() throws XenonException {
-		return session.isOpen();
+		return !closed && (session.isOpen() || connector != null);
 	}
 }
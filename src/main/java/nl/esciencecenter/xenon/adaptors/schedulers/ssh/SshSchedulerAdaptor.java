@@ -28,6 +28,7 @@ import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.schedulers.JobQueueScheduler;
 import nl.esciencecenter.xenon.adaptors.schedulers.SchedulerAdaptor;
+import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnector;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHUtil;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
@@ -78,6 +79,9 @@ public class SshSchedulerAdaptor extends SchedulerAdaptor {
 
     /** Add gateway to access machine. */
     public static final String TIMEOUT = PREFIX + "timeout";
+
+    /** Property for the time between keepalive checks of the connection. */
+    public static final String KEEPALIVE_INTERVAL = PREFIX + "keepalive.interval";
     
     /** All our own queue properties start with this prefix. */
     public static final String QUEUE = PREFIX + "queue.";
@@ -85,9 +89,15 @@ public class SshSchedulerAdaptor extends SchedulerAdaptor {
     /** Maximum history length for finished jobs */
     public static final String MAX_HISTORY = QUEUE + "historySize";
 
+    /** Property for maximum time to remember finished jobs */
+    public static final String MAX_HISTORY_AGE = QUEUE + "historyAge";
+
     /** Property for maximum history length for finished jobs */
     public static final String POLLING_DELAY = QUEUE + "pollingDelay";
 
+    /** Property to run batch jobs detached from the SSH connection. */
+    public static final String DETACHED = QUEUE + "detached";
+
     /** Local multi queue properties start with this prefix. */
     public static final String MULTIQ = QUEUE + "multi.";
 
@@ -121,10 +131,18 @@ public class SshSchedulerAdaptor extends SchedulerAdaptor {
             		"false", "Use ssh-agent forwarding"),
             new XenonPropertyDescription(TIMEOUT, Type.LONG,  
             		"10000", "The timeout for the connection setup and authetication (in milliseconds)."),
+            new XenonPropertyDescription(KEEPALIVE_INTERVAL, Type.LONG,  
+            		"60000", "The time between keepalive checks of the connection, which is re-established for new jobs if it was lost (in milliseconds, 0 disables the checks)."),
             new XenonPropertyDescription(POLLING_DELAY, Type.LONG,  
             		"1000", "The polling delay for monitoring running jobs (in milliseconds)."),
             new XenonPropertyDescription(MULTIQ_MAX_CONCURRENT, Type.INTEGER,  
             		"4", "The maximum number of concurrent jobs in the multiq.."),
+            new XenonPropertyDescription(DETACHED, Type.BOOLEAN,  
+            		"false", "Run batch jobs detached from the SSH connection, so they survive disconnects."),
+            new XenonPropertyDescription(MAX_HISTORY, Type.INTEGER,  
+            		"1000", "The maximum number of finished jobs to remember until their status is retrieved."),
+            new XenonPropertyDescription(MAX_HISTORY_AGE, Type.LONG,  
+            		"86400000", "The maximum time to remember finished jobs until their status is retrieved (in milliseconds)."),
             new XenonPropertyDescription(GATEWAY, Type.STRING, 
             		null, "The gateway machine used to create an SSH tunnel to the target.")
     };
@@ -161,8 +179,11 @@ public class SshSchedulerAdaptor extends SchedulerAdaptor {
 		  SshClient client = SSHUtil.createSSHClient(loadKnownHosts, loadSSHConfig, useSSHAgent, useAgentForwarding);
 	     
 		  long timeout = xp.getLongProperty(TIMEOUT);
+		  long keepAliveInterval = xp.getLongProperty(KEEPALIVE_INTERVAL);
 	        
-		  ClientSession session = SSHUtil.connect(ADAPTOR_NAME, client, location, credential, timeout);
+		  SSHConnector connector = new SSHConnector(ADAPTOR_NAME, client, location, credential, timeout, keepAliveInterval);
+		  
+		  ClientSession session = connector.connect();
 	      
 		  // We must convert the relevant SSH properties to SFTP here.
 		  Map<String, String> sftpProperties = SSHUtil.sshToSftpProperties(properties);
@@ -172,8 +193,18 @@ public class SshSchedulerAdaptor extends SchedulerAdaptor {
 
 		  long pollingDelay = xp.getLongProperty(POLLING_DELAY);
 		  int multiQThreads = xp.getIntegerProperty(MULTIQ_MAX_CONCURRENT);
+		  int maxHistory = xp.getIntegerProperty(MAX_HISTORY);
+		  long maxHistoryAge = xp.getLongProperty(MAX_HISTORY_AGE);
+
+		  SshInteractiveProcessFactory factory;
+
+		  if (xp.getBooleanProperty(DETACHED)) {
+			  factory = new SshDetachedProcessFactory(session, connector, pollingDelay, timeout);
+		  } else {
+			  factory = new SshInteractiveProcessFactory(session, connector);
+		  }
 
-		  return new JobQueueScheduler(getNewUniqueID(), ADAPTOR_NAME, location, new SshInteractiveProcessFactory(session), 
-				  fs, fs.getEntryPath(), multiQThreads, pollingDelay, xp);
+		  return new JobQueueScheduler(getNewUniqueID(), ADAPTOR_NAME, location, factory, 
+				  fs, fs.getEntryPath(), multiQThreads, pollingDelay, maxHistory, maxHistoryAge, xp);
 	}
 }
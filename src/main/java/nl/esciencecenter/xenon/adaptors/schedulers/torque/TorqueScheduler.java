@@ -17,14 +17,23 @@ package nl.esciencecenter.xenon.adaptors.schedulers.torque;
 
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.ACCOUNTING_GRACE_TIME_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.ADAPTOR_NAME;
+import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.LAZY_SETUP_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.MAX_ARRAY_SIZE_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.MONITOR_DELAY_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.MONITOR_STALENESS_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.POLL_DELAY_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.SETUP_CACHE_TTL_PROPERTY;
+import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.TORQUE_MAX_JOB_LIST_SIZE;
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.VALID_PROPERTIES;
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueUtils.JOB_OPTION_JOB_SCRIPT;
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueUtils.QUEUE_INFO_NAME;
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueUtils.getJobStatusFromQstatInfo;
+import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueUtils.identifierLists;
+import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueUtils.onlyUnknownJobErrors;
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueUtils.verifyJobDescription;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -46,6 +55,7 @@ import nl.esciencecenter.xenon.adaptors.schedulers.QueueStatusImplementation;
 import nl.esciencecenter.xenon.adaptors.schedulers.RemoteCommandRunner;
 import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingParser;
 import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingScheduler;
+import nl.esciencecenter.xenon.adaptors.schedulers.SetupCache;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
@@ -77,20 +87,39 @@ public class TorqueScheduler extends ScriptingScheduler {
 
     private final TorqueXmlParser parser;
 
-    private final String[] queueNames;
+    /** Maximum number of tasks in a single job array. */
+    private final int maxArraySize;
+
+    /** Queue names of the clusters, shared by all schedulers for the same location and credential. */
+    private static final SetupCache<String[]> SETUP_CACHE = new SetupCache<>();
+
+    /** Key of this scheduler in the setup cache. */
+    private final String setupKey;
+
+    private final long setupTimeToLive;
+
+    /** Guarded by this. Null until the queue names have been retrieved. */
+    private String[] queueNames;
 
     TorqueScheduler(String uniqueID, String location, Credential credential, Map<String,String> prop) throws XenonException {
 
-        super(uniqueID, ADAPTOR_NAME, location, credential, prop, VALID_PROPERTIES, POLL_DELAY_PROPERTY);
+        super(uniqueID, ADAPTOR_NAME, location, credential, prop, VALID_PROPERTIES, POLL_DELAY_PROPERTY,
+                MONITOR_DELAY_PROPERTY, MONITOR_STALENESS_PROPERTY);
 
         accountingGraceTime = properties.getLongProperty(ACCOUNTING_GRACE_TIME_PROPERTY);
+        maxArraySize = Math.max(1, properties.getIntegerProperty(MAX_ARRAY_SIZE_PROPERTY));
 
         parser = new TorqueXmlParser();
 
         lastSeenMap = new HashMap<>(30);
         deletedJobs = new HashSet<>(10);
 
-        queueNames = queryQueueNames();
+        setupKey = SetupCache.getKey(location, credential);
+        setupTimeToLive = properties.getLongProperty(SETUP_CACHE_TTL_PROPERTY);
+
+        if (!properties.getBooleanProperty(LAZY_SETUP_PROPERTY)) {
+            getQueueNames();
+        }
     }
 
     /* Query the queue names of the TORQUE batch system. */
@@ -100,7 +129,16 @@ public class TorqueScheduler extends ScriptingScheduler {
     }
 
     @Override
-    public String[] getQueueNames() {
+    public synchronized String[] getQueueNames() throws XenonException {
+        if (queueNames == null) {
+            queueNames = SETUP_CACHE.get(setupKey, setupTimeToLive, new SetupCache.Loader<String[]>() {
+                @Override
+                public String[] load() throws XenonException {
+                    return queryQueueNames();
+                }
+            });
+        }
+
         return queueNames.clone();
     }
 
@@ -345,9 +383,50 @@ public class TorqueScheduler extends ScriptingScheduler {
             }
         }
 
+        jobSubmitted(identifier, description);
+
         return identifier;
     }
 
+    @Override
+    public String[] submitBatchJobArray(JobDescription template, List<String[]> parameters) throws XenonException {
+
+        if (parameters.isEmpty() || template.getJobOptions().containsKey(JOB_OPTION_JOB_SCRIPT)) {
+            // A custom job script cannot be turned into an array.
+            return super.submitBatchJobArray(template, parameters);
+        }
+
+        verifyJobDescription(template);
+        checkWorkingDirectory(template.getWorkingDirectory());
+
+        return submitJobArrays(template, parameters, maxArraySize);
+    }
+
+    @Override
+    protected String[] submitJobArray(JobDescription template, List<String[]> parameters) throws XenonException {
+
+        String output = runCheckedCommand(TorqueUtils.generate(template, getFsEntryPath(), parameters), "qsub");
+
+        // Output looks like: 1234[].server
+        String identifier = ScriptingParser.parseJobIDFromLine(output, ADAPTOR_NAME, "");
+
+        int brackets = identifier.indexOf("[]");
+
+        if (brackets < 0) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to get job array ID from line: \"" + output + "\"");
+        }
+
+        String[] result = new String[parameters.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = identifier.substring(0, brackets + 1) + i + identifier.substring(brackets + 1);
+        }
+
+        updateJobsSeenMap(new HashSet<>(Arrays.asList(result)));
+
+        return result;
+    }
+
     @Override
     public Streams submitInteractiveJob(JobDescription description) throws XenonException {
     	throw new UnsupportedOperationException(ADAPTOR_NAME, "Interactive jobs not supported");
@@ -369,18 +448,39 @@ public class TorqueScheduler extends ScriptingScheduler {
                     + runner.getExitCode() + " Output: " + runner.getStdout() + " Error output: " + runner.getStderr());
         }
 
-        return getJobStatus(jobIdentifier);
+        return queryJobStatus(jobIdentifier);
     }
 
-    private Map<String, Map<String, String>> getQstatInfo() throws XenonException {
-        RemoteCommandRunner runner = runCommand(null, "qstat", "-x");
+    /**
+     * Get the qstat information of the given jobs. The jobs are queried by identifier, at most
+     * {@link TorqueSchedulerAdaptor#TORQUE_MAX_JOB_LIST_SIZE} at a time, so the cost does not depend on the number of jobs on
+     * the server. Jobs unknown to qstat, for example because they have finished, are left out of the result.
+     * 
+     * @param jobs
+     *            the jobs to get the information for. <code>null</code> values are ignored.
+     * @return the qstat information of the jobs that were found, indexed by job identifier.
+     * @throws XenonException
+     *             if the qstat output could not be parsed.
+     */
+    private Map<String, Map<String, String>> getQstatInfo(String... jobs) throws XenonException {
+        Map<String, Map<String, String>> result = new HashMap<>();
 
-        if (!runner.success()) {
-            LOGGER.debug("failed to get job status {}", runner);
-            return new HashMap<>(0);
-        }
+        for (String[] jobList : identifierLists(jobs, TORQUE_MAX_JOB_LIST_SIZE)) {
+            // -t lists the tasks of job arrays separately
+            String[] arguments = new String[jobList.length + 2];
+            arguments[0] = "-x";
+            arguments[1] = "-t";
+            System.arraycopy(jobList, 0, arguments, 2, jobList.length);
 
-        Map<String, Map<String, String>> result = parser.parseJobInfos(runner.getStdout());
+            RemoteCommandRunner runner = runCommand(null, "qstat", arguments);
+
+            if (!runner.success() && !onlyUnknownJobErrors(runner.getStderr())) {
+                LOGGER.debug("failed to get job status {}", runner);
+                continue;
+            }
+
+            result.putAll(parser.parseJobInfos(runner.getStdout()));
+        }
 
         //mark jobs we found as seen, in case they disappear from the queue
         updateJobsSeenMap(result.keySet());
@@ -428,11 +528,11 @@ public class TorqueScheduler extends ScriptingScheduler {
     }
 
     @Override
-    public JobStatus getJobStatus(String jobIdentifier) throws XenonException {
+    protected JobStatus queryJobStatus(String jobIdentifier) throws XenonException {
         
     	assertNonNullOrEmpty(jobIdentifier, "Job identifier cannot be null or empty");
     	
-        Map<String, Map<String, String>> info = getQstatInfo();
+        Map<String, Map<String, String>> info = getQstatInfo(jobIdentifier);
 
         JobStatus result = getJobStatus(info, jobIdentifier);
 
@@ -445,8 +545,8 @@ public class TorqueScheduler extends ScriptingScheduler {
     }
 
     @Override
-    public JobStatus[] getJobStatuses(String... jobs) throws XenonException {
-        Map<String, Map<String, String>> info = getQstatInfo();
+    protected JobStatus[] queryJobStatuses(String... jobs) throws XenonException {
+        Map<String, Map<String, String>> info = getQstatInfo(jobs);
 
         JobStatus[] result = new JobStatus[jobs.length];
 
@@ -470,10 +570,4 @@ public class TorqueScheduler extends ScriptingScheduler {
 //    public Streams getStreams(JobHandle job) throws XenonException {
 //        throw new XenonException(ADAPTOR_NAME, "does not support interactive jobs");
 //    }
-
-	@Override
-	public boolean isOpen() throws XenonException {
-		// TODO Auto-generated method stub
-		return false;
-	}
 }
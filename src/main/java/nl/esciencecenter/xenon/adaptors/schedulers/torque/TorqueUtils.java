@@ -17,7 +17,10 @@ package nl.esciencecenter.xenon.adaptors.schedulers.torque;
 
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.ADAPTOR_NAME;
 
+import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -52,6 +55,73 @@ final class TorqueUtils {
 
     private static final String[] VALID_JOB_OPTIONS = new String[] { JOB_OPTION_JOB_SCRIPT, JOB_OPTION_RESOURCES };
 
+    /** Error printed by qstat for each requested job it does not know (anymore), for example because the job has finished. */
+    private static final String UNKNOWN_JOB_ERROR = "Unknown Job Id";
+
+    /**
+     * Split the given job identifiers into lists of at most <code>maxSize</code> identifiers, one list per qstat invocation.
+     * <code>null</code> values and duplicates are removed.
+     * 
+     * @param jobs
+     *          the job identifiers
+     * @param maxSize
+     *          the maximum number of identifiers per list
+     * @return the lists of job identifiers
+     */
+    protected static List<String[]> identifierLists(String[] jobs, int maxSize) {
+        LinkedHashSet<String> unique = new LinkedHashSet<>();
+
+        for (String job : jobs) {
+            if (job != null) {
+                unique.add(job);
+            }
+        }
+
+        List<String[]> result = new ArrayList<>();
+        List<String> current = new ArrayList<>(Math.min(maxSize, unique.size()));
+
+        for (String job : unique) {
+            current.add(job);
+
+            if (current.size() == maxSize) {
+                result.add(current.toArray(new String[current.size()]));
+                current.clear();
+            }
+        }
+
+        if (!current.isEmpty()) {
+            result.add(current.toArray(new String[current.size()]));
+        }
+
+        return result;
+    }
+
+    /**
+     * Check if the error output of qstat only reports jobs it does not know. qstat exits with an error in this case, but still
+     * prints the information of the other jobs requested.
+     * 
+     * @param stderr
+     *          the error output of qstat
+     * @return if all error lines report an unknown job.
+     */
+    protected static boolean onlyUnknownJobErrors(String stderr) {
+        boolean found = false;
+
+        for (String line : stderr.split("\\r?\\n")) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            if (!line.contains(UNKNOWN_JOB_ERROR)) {
+                return false;
+            }
+
+            found = true;
+        }
+
+        return found;
+    }
+
     public static void verifyJobDescription(JobDescription description) throws XenonException {
         ScriptingUtils.verifyJobOptions(description.getJobOptions(), VALID_JOB_OPTIONS, ADAPTOR_NAME);
 
@@ -118,6 +188,15 @@ final class TorqueUtils {
     }
 
     public static String generate(JobDescription description, Path fsEntryPath) {
+        return generate(description, fsEntryPath, null);
+    }
+
+    /**
+     * Generate a job script. If <code>taskParameters</code> is not <code>null</code>, the script describes a job array 
+     * with one task per entry, where task <code>i</code> runs the description with entry <code>i</code> appended to its 
+     * arguments. With custom job contents, the parameters of a task are available as positional parameters instead.
+     */
+    public static String generate(JobDescription description, Path fsEntryPath, List<String[]> taskParameters) {
         StringBuilder stringBuilder = new StringBuilder(500);
         Formatter script = new Formatter(stringBuilder, Locale.US);
 
@@ -156,6 +235,10 @@ final class TorqueUtils {
                 description.getMaxTime() / MINUTES_PER_HOUR,
                 description.getMaxTime() % MINUTES_PER_HOUR);
 
+        if (taskParameters != null) {
+            script.format("#PBS -t 0-%d\n", taskParameters.size() - 1);
+        }
+
         for (Map.Entry<String, String> entry : description.getEnvironment().entrySet()) {
             script.format("export %s=\"%s\"\n", entry.getKey(), entry.getValue());
         }
@@ -163,7 +246,34 @@ final class TorqueUtils {
         script.format("\n");
 
         String customContents = description.getJobOptions().get(JOB_OPTION_JOB_CONTENTS);
-        if (customContents == null) {
+
+        if (taskParameters != null) {
+            //select the arguments of this task
+            script.format("case \"$PBS_ARRAYID\" in\n");
+
+            for (int i = 0; i < taskParameters.size(); i++) {
+                script.format("%d)\n", i);
+
+                if (customContents == null) {
+                    generateScriptContent(ScriptingUtils.getTaskDescription(description, taskParameters.get(i)), script);
+                } else {
+                    script.format("set --");
+
+                    for (String parameter : taskParameters.get(i)) {
+                        script.format(" %s", CommandLineUtils.protectAgainstShellMetas(parameter));
+                    }
+                    script.format("\n");
+                }
+
+                script.format(";;\n");
+            }
+
+            script.format("esac\n");
+
+            if (customContents != null) {
+                script.format("%s\n", customContents);
+            }
+        } else if (customContents == null) {
             generateScriptContent(description, script);
         } else {
             script.format("%s\n", customContents);
@@ -17,85 +17,172 @@ package nl.esciencecenter.xenon.adaptors.schedulers.torque;
 
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.ADAPTOR_NAME;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import nl.esciencecenter.xenon.XenonException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 /**
- * Parses xml output from TORQUE batch system.
- * 
+ * Parses xml output from TORQUE batch system. The output is parsed as a stream, so only the jobs that are returned are kept
+ * in memory.
  * 
  */
 final class TorqueXmlParser {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TorqueXmlParser.class);
 
-    private final DocumentBuilder documentBuilder;
+    private final XMLInputFactory inputFactory;
 
     TorqueXmlParser() throws XenonException {
         try {
-            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            documentBuilder = documentBuilderFactory.newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
+            inputFactory = XMLInputFactory.newInstance();
+            inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        } catch (IllegalArgumentException e) {
             throw new XenonException(ADAPTOR_NAME, "could not create parser for xml files", e);
         }
     }
 
-    protected Document parseDocument(String data) throws XenonException {
+    private XMLStreamReader createReader(String data) throws XMLStreamException {
+        return inputFactory.createXMLStreamReader(new StringReader(data));
+    }
+
+    private void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                LOGGER.debug("failed to close xml reader", e);
+            }
+        }
+    }
+
+    /**
+     * Move the reader to the next start or end element.
+     * 
+     * @return the event the reader is positioned on, or <code>END_DOCUMENT</code> if no more elements were found.
+     */
+    private int nextElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_ELEMENT) {
+                return event;
+            }
+        }
+
+        return XMLStreamConstants.END_DOCUMENT;
+    }
+
+    /**
+     * Move the reader to the document element.
+     */
+    private void startDocument(XMLStreamReader reader) throws XMLStreamException, XenonException {
+        if (nextElement(reader) != XMLStreamConstants.START_ELEMENT) {
+            throw new XenonException(ADAPTOR_NAME, "could not parse qstat xml file: no document element found");
+        }
+
+        LOGGER.debug("root node of xml file: " + reader.getLocalName());
+    }
+
+    /**
+     * Parse the given xml data completely, checking that it is well formed.
+     * 
+     * @param data
+     *            the xml data
+     * @throws XenonException
+     *             if the data could not be parsed
+     */
+    protected void parseDocument(String data) throws XenonException {
+        XMLStreamReader reader = null;
+
         try {
-            ByteArrayInputStream in = new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
-            Document result = documentBuilder.parse(in);
-            result.normalize();
-            return result;
-        } catch (SAXException e) {
+            reader = createReader(data);
+            startDocument(reader);
+
+            while (reader.hasNext()) {
+                reader.next();
+            }
+        } catch (XMLStreamException e) {
             throw new XenonException(ADAPTOR_NAME, "could not parse qstat xml file", e);
-        } catch (IOException e) {
-            throw new XenonException(ADAPTOR_NAME, "could not read xml file", e);
+        } finally {
+            close(reader);
         }
     }
 
     /**
-     * Create a Map from the tag names and text values of child nodes.
-     * If a child node also has tags, those tags and their text values will also
-     * be added. If multiple of the same tag names occur, the value of the last
-     * occurrence will be stored.
+     * Create a Map from the tag names and text values of the document element of the given xml data, as done by
+     * {@link #recursiveMapFromElement(XMLStreamReader, Map)}.
      * 
-     * @param root XML element of which the children will be added to the map
-     * @param result a mutable map that will have added to it tag names as keys and text values as values
-     * @throws IllegalArgumentException if root is not an XML element
+     * @param data
+     *            the xml data
+     * @return a map of tag names and text values
+     * @throws XenonException
+     *             if the data could not be parsed
      */
     // not private for testing purposes
-    protected void recursiveMapFromElement(Node root, Map<String, String> result) {
-        if (root.getNodeType() != Node.ELEMENT_NODE) {
-            throw new IllegalArgumentException("Node " + root + " is not an XML element.");
+    protected Map<String, String> parseRecord(String data) throws XenonException {
+        XMLStreamReader reader = null;
+
+        try {
+            reader = createReader(data);
+            startDocument(reader);
+
+            Map<String, String> result = new HashMap<>();
+            recursiveMapFromElement(reader, result);
+            return result;
+        } catch (XMLStreamException e) {
+            throw new XenonException(ADAPTOR_NAME, "could not parse qstat xml file", e);
+        } finally {
+            close(reader);
         }
-        NodeList tagNodes = root.getChildNodes();
-
-        //fetch tags from the list of tag nodes. Ignores empty values
-        for (int i = 0; i < tagNodes.getLength(); i++) {
-            Node tagNode = tagNodes.item(i);
-            if (tagNode.getNodeType() == Node.ELEMENT_NODE) {
-                recursiveMapFromElement(tagNode, result);
-            } else if (tagNode.getNodeType() == Node.TEXT_NODE) {
-                String value = tagNode.getNodeValue().trim();
+    }
+
+    /**
+     * Create a Map from the tag names and text values of the child elements of the element the reader is positioned on.
+     * If a child element also has tags, those tags and their text values will also be added. If multiple of the same tag
+     * names occur, the value of the last occurrence will be stored. On return, the reader is positioned on the end of the
+     * element.
+     * 
+     * @param reader the reader, positioned on the start of an XML element
+     * @param result a mutable map that will have added to it tag names as keys and text values as values
+     * @throws XMLStreamException if the xml could not be parsed
+     */
+    private void recursiveMapFromElement(XMLStreamReader reader, Map<String, String> result) throws XMLStreamException {
+        String name = reader.getLocalName();
+        StringBuilder text = new StringBuilder();
+
+        while (true) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                text.append(reader.getText());
+            } else if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_ELEMENT) {
+                //text between two elements is a value of its own. Ignores empty values
+                String value = text.toString().trim();
+
                 if (!value.isEmpty()) {
-                    result.put(root.getNodeName(), value);
+                    result.put(name, value);
+                }
+
+                text.setLength(0);
+
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    return;
                 }
+
+                recursiveMapFromElement(reader, result);
+            } else if (event == XMLStreamConstants.END_DOCUMENT) {
+                throw new XMLStreamException("unexpected end of document in element " + name);
             }
         }
     }
@@ -112,22 +199,21 @@ final class TorqueXmlParser {
      *             if the server version is not compatible with this adaptor
      */
     protected Map<String, Map<String, String>> parseJobInfos(String data) throws XenonException {
+        Map<String, Map<String, String>> result = new HashMap<>();
+
         if (data.trim().isEmpty()) {
-            return new HashMap<>();
+            return result;
         }
-        Document document = parseDocument(data);
 
-        LOGGER.debug("root node of xml file: " + document.getDocumentElement().getNodeName());
-        NodeList nodes = document.getDocumentElement().getChildNodes();
-        int numNodes = nodes.getLength();
-        Map<String, Map<String, String>> result = new HashMap<>();
+        XMLStreamReader reader = null;
 
-        for (int i = 0; i < numNodes; i++) {
-            Node node = nodes.item(i);
+        try {
+            reader = createReader(data);
+            startDocument(reader);
 
-            if (node.getNodeType() == Node.ELEMENT_NODE) {
+            while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
                 Map<String, String> jobInfo = new HashMap<>();
-                recursiveMapFromElement(node, jobInfo);
+                recursiveMapFromElement(reader, jobInfo);
 
                 String jobId = jobInfo.get("Job_Id");
                 if (jobId == null || jobId.isEmpty()) {
@@ -136,6 +222,10 @@ final class TorqueXmlParser {
 
                 result.put(jobId, jobInfo);
             }
+        } catch (XMLStreamException e) {
+            throw new XenonException(ADAPTOR_NAME, "could not parse qstat xml file", e);
+        } finally {
+            close(reader);
         }
 
         return result;
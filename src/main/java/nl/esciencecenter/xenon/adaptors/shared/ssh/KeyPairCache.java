@@ -0,0 +1,268 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.shared.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.sshd.common.config.keys.FilePasswordProvider;
+import org.apache.sshd.common.util.io.IoUtils;
+import org.apache.sshd.common.util.security.SecurityUtils;
+
+/**
+ * Keeps the key pairs decoded from private key files, so a key file (which may be protected by a deliberately slow key 
+ * derivation) is only decoded once for many connections. 
+ * 
+ * Key pairs are cached by the path, modification time and size of the key file, and by a salted hash of the passphrase. The 
+ * passphrase itself is not kept. Changing the key file therefore results in a new key pair, and a wrong passphrase never 
+ * returns the key pair decoded with the right one. Failures are not cached. The cache only lives in memory and holds at most a 
+ * fixed number of key pairs, evicting the least recently used one.  
+ * 
+ * Concurrent requests for the same key pair share a single decode, while different key files are decoded independently.
+ */
+class KeyPairCache {
+
+    private static final class Key {
+
+        private final Path path;
+        private final long modified;
+        private final long size;
+        private final byte[] passphraseHash;
+
+        private Key(Path path, long modified, long size, byte[] passphraseHash) {
+            this.path = path;
+            this.modified = modified;
+            this.size = size;
+            this.passphraseHash = passphraseHash;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * path.hashCode() + Arrays.hashCode(passphraseHash) + (int) (modified ^ (modified >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+
+            return path.equals(other.path) && modified == other.modified && size == other.size
+                    && MessageDigest.isEqual(passphraseHash, other.passphraseHash);
+        }
+    }
+
+    private static final class Holder {
+        private KeyPair pair;
+    }
+
+    private static class PasswordProvider implements FilePasswordProvider {
+
+        private final char [] password;
+
+        PasswordProvider(char [] password) {
+            this.password = password;
+        }
+
+        @Override
+        public String getPassword(String resourceKey) throws IOException {
+            return password == null ? null : new String(password);
+        }
+    }
+
+    /** Random salt for the passphrase hashes, so they cannot be compared to hashes computed elsewhere. */
+    private final byte[] salt = new byte[16];
+
+    /** Guarded by this. */
+    private final Map<Key, Holder> entries;
+
+    /**
+     * Create a KeyPairCache. 
+     * 
+     * @param maxEntries
+     *          the maximum number of key pairs to keep.
+     */
+    KeyPairCache(final int maxEntries) {
+        new SecureRandom().nextBytes(salt);
+
+        entries = new LinkedHashMap<Key, Holder>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Holder> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    private byte[] hash(char[] passphrase) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(salt);
+
+        if (passphrase != null) {
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(passphrase));
+            byte[] tmp = new byte[bytes.remaining()];
+            bytes.get(tmp);
+            digest.update(tmp);
+
+            // do not leave copies of the passphrase around
+            Arrays.fill(tmp, (byte) 0);
+
+            if (bytes.hasArray()) {
+                Arrays.fill(bytes.array(), (byte) 0);
+            }
+        }
+
+        return digest.digest();
+    }
+
+    private synchronized Holder getEntry(Key key) {
+        Holder entry = entries.get(key);
+
+        if (entry == null) {
+            entry = new Holder();
+            entries.put(key, entry);
+        }
+
+        return entry;
+    }
+
+    private synchronized void loaded(Key key) {
+        // Key pairs of older versions of the same file are no longer useful.
+        Iterator<Map.Entry<Key, Holder>> it = entries.entrySet().iterator();
+
+        while (it.hasNext()) {
+            Key other = it.next().getKey();
+
+            if (other.path.equals(key.path) && (other.modified != key.modified || other.size != key.size)) {
+                it.remove();
+            }
+        }
+    }
+
+    private synchronized void failed(Key key, Holder entry) {
+        if (entries.get(key) == entry) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Decode a key pair from a private key file. 
+     * 
+     * @param path
+     *          the key file.
+     * @param passphrase
+     *          the passphrase of the key file, or <code>null</code> if it has none.
+     * @return
+     *          the key pair.
+     * @throws IOException
+     *          if the file could not be read.
+     * @throws GeneralSecurityException
+     *          if the key could not be decoded.
+     */
+    protected KeyPair decode(Path path, char[] passphrase) throws IOException, GeneralSecurityException {
+        try (InputStream in = Files.newInputStream(path, IoUtils.EMPTY_OPEN_OPTIONS)) {
+            return SecurityUtils.loadKeyPairIdentity(path.toString(), in, new PasswordProvider(passphrase));
+        }
+    }
+
+    /**
+     * Get the key pair stored in a private key file, decoding it if it is not cached.
+     * 
+     * @param path
+     *          the key file.
+     * @param passphrase
+     *          the passphrase of the key file, or <code>null</code> if it has none.
+     * @return
+     *          the key pair.
+     * @throws IOException
+     *          if the file could not be read.
+     * @throws GeneralSecurityException
+     *          if the key could not be decoded.
+     */
+    KeyPair get(Path path, char[] passphrase) throws IOException, GeneralSecurityException {
+
+        Path file = path.toAbsolutePath().normalize();
+
+        Key key = new Key(file, Files.getLastModifiedTime(file).toMillis(), Files.size(file), hash(passphrase));
+
+        Holder entry = getEntry(key);
+
+        synchronized (entry) {
+            if (entry.pair == null) {
+                try {
+                    entry.pair = decode(file, passphrase);
+                } catch (IOException | GeneralSecurityException | RuntimeException e) {
+                    failed(key, entry);
+                    throw e;
+                }
+
+                loaded(key);
+            }
+
+            return entry.pair;
+        }
+    }
+
+    /**
+     * Remove all key pairs decoded from a key file. 
+     * 
+     * @param path
+     *          the key file.
+     */
+    synchronized void invalidate(Path path) {
+        Path file = path.toAbsolutePath().normalize();
+
+        Iterator<Key> it = entries.keySet().iterator();
+
+        while (it.hasNext()) {
+            if (it.next().path.equals(file)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all key pairs.
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.shared.ssh;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.session.ClientSession;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.credentials.Credential;
+
+/**
+ * Creates SSH sessions to a single location, so that a session that was lost can be re-established with the same client, 
+ * credential and settings. Every session created is kept alive using {@link SSHUtil#startKeepAlive(ClientSession, long, long)}.
+ */
+public class SSHConnector {
+
+    private final String adaptorName;
+
+    private final SshClient client;
+
+    private final String location;
+
+    private final Credential credential;
+
+    private final long timeout;
+
+    private final long keepAliveInterval;
+
+    /**
+     * Create a new SSHConnector.
+     * 
+     * @param adaptorName
+     *          the name of the adaptor using the sessions, used in exceptions.
+     * @param client
+     *          the client used to create the sessions.
+     * @param location
+     *          the location to connect to.
+     * @param credential
+     *          the credential used to authenticate.
+     * @param timeout
+     *          the timeout for connection setup, authentication and keepalive checks (in milliseconds).
+     * @param keepAliveInterval
+     *          the time between keepalive checks (in milliseconds), or 0 to disable them.
+     */
+    public SSHConnector(String adaptorName, SshClient client, String location, Credential credential, long timeout, 
+            long keepAliveInterval) {
+
+        if (keepAliveInterval < 0) {
+            throw new IllegalArgumentException("Invalid keepalive interval: " + keepAliveInterval);
+        }
+
+        this.adaptorName = adaptorName;
+        this.client = client;
+        this.location = location;
+        this.credential = credential;
+        this.timeout = timeout;
+        this.keepAliveInterval = keepAliveInterval;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * Create a new authenticated session.
+     * 
+     * @return the session.
+     * @throws XenonException
+     *          if the connection could not be set up or authenticated.
+     */
+    public ClientSession connect() throws XenonException {
+        ClientSession session = SSHUtil.connect(adaptorName, client, location, credential, timeout);
+        SSHUtil.startKeepAlive(session, keepAliveInterval, timeout);
+        return session;
+    }
+}
@@ -16,7 +16,6 @@
 package nl.esciencecenter.xenon.adaptors.shared.ssh;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -25,6 +24,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.sshd.agent.local.ProxyAgentFactory;
 import org.apache.sshd.client.SshClient;
@@ -33,9 +33,9 @@ import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
 import org.apache.sshd.client.keyverifier.DefaultKnownHostsServerKeyVerifier;
 import org.apache.sshd.client.keyverifier.RejectAllServerKeyVerifier;
 import org.apache.sshd.client.session.ClientSession;
-import org.apache.sshd.common.config.keys.FilePasswordProvider;
+import org.apache.sshd.common.SshConstants;
+import org.apache.sshd.common.util.buffer.Buffer;
 import org.apache.sshd.common.util.io.IoUtils;
-import org.apache.sshd.common.util.security.SecurityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,18 +56,32 @@ public class SSHUtil {
 
 	private static final int DEFAULT_SSH_PORT = 22;
 	
-	private static class PasswordProvider implements FilePasswordProvider {
+	/** Maximum number of decoded key pairs kept in memory. */
+	private static final int MAX_CACHED_KEY_PAIRS = 64;
 
-		private final char [] password;
-		
-		public PasswordProvider(char [] password) {
-			this.password = password;
-		}
-		
-		@Override
-		public String getPassword(String resourceKey) throws IOException {
-			return new String(password);
-		} 
+	/** Key pairs decoded from certificate files, shared by all connections. */
+	private static final KeyPairCache KEY_PAIRS = new KeyPairCache(MAX_CACHED_KEY_PAIRS);
+
+	/** Global request used to check if the server is still alive. Servers answer it even if they do not recognize it. */
+	static final String KEEPALIVE_REQUEST = "keepalive@openssh.com";
+
+	/**
+	 * Forget the key pairs decoded from a certificate file, so the file is read again by the next connection that uses it.
+	 * This is only needed if the file is replaced without changing its modification time or size, as such changes are 
+	 * detected automatically.
+	 *  
+	 * @param certfile
+	 *          the certificate file.
+	 */
+	public static void invalidateCertificate(String certfile) {
+		KEY_PAIRS.invalidate(Paths.get(certfile));
+	}
+
+	/**
+	 * Forget all key pairs decoded from certificate files. 
+	 */
+	public static void clearCertificateCache() {
+		KEY_PAIRS.clear();
 	}
 	
 	public static SshClient createSSHClient(boolean loadKnownHosts, boolean loadSSHConfig, boolean useSSHAgent, boolean useAgentForwarding) { 
@@ -194,8 +208,7 @@ public class SSHUtil {
 			KeyPair pair = null;
 			
 			try { 
-				InputStream inputStream = Files.newInputStream(path, IoUtils.EMPTY_OPEN_OPTIONS);
-				pair = SecurityUtils.loadKeyPairIdentity(path.toString(), inputStream, new PasswordProvider(c.getPassword()));
+				pair = KEY_PAIRS.get(path, c.getPassword());
 			} catch (Exception e) {
 				throw new XenonException(adaptorName, "Failed to load certificate: " + path, e);
 			}
@@ -218,6 +231,63 @@ public class SSHUtil {
 		return session;
 	}
 	
+	/**
+	 * Check if an SSH session is still alive, by sending a global request to the server and waiting for its answer. Any 
+	 * answer (including a failure) shows the server is alive. If no answer arrives within the timeout, or the connection 
+	 * fails, the session is closed immediately, so that operations waiting on it fail instead of stalling.
+	 * 
+	 * @param session
+	 *          the session to check.
+	 * @param timeout
+	 *          the maximum time to wait for an answer (in milliseconds).
+	 * @return
+	 *          if the session is alive.
+	 */
+	public static boolean isAlive(ClientSession session, long timeout) {
+
+		if (!session.isOpen()) {
+			return false;
+		}
+
+		try {
+			Buffer buffer = session.createBuffer(SshConstants.SSH_MSG_GLOBAL_REQUEST);
+			buffer.putString(KEEPALIVE_REQUEST);
+			buffer.putBoolean(true);
+
+			// Returns null if the server answers with a failure, which is fine.
+			session.request(KEEPALIVE_REQUEST, buffer, timeout, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (IOException e) {
+			LOGGER.debug("SSH session did not answer keepalive request", e);
+		}
+
+		session.close(true);
+		return false;
+	}
+
+	/**
+	 * Periodically check if an SSH session is still alive, closing it as soon as the server stops answering. This detects 
+	 * connections that were silently dropped (for example by a firewall), and keeps idle connections from being dropped 
+	 * in the first place. The checks stop when the session is closed.
+	 * 
+	 * @param session
+	 *          the session to check.
+	 * @param interval
+	 *          the time between checks (in milliseconds), or 0 to disable the checks.
+	 * @param timeout
+	 *          the maximum time to wait for an answer to a check (in milliseconds).
+	 */
+	public static void startKeepAlive(ClientSession session, long interval, long timeout) {
+
+		if (interval < 0) {
+			throw new IllegalArgumentException("Invalid keepalive interval: " + interval);
+		}
+
+		if (interval > 0) {
+			new SessionKeepAlive(session, timeout).start(interval);
+		}
+	}
+
 	public static Map<String,String> translateProperties(Map<String,String> properties, Set<String> valid, 
 			String orginalPrefix, String newPrefix) { 
 		
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.shared.ssh;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.esciencecenter.xenon.utils.AsyncExecutor;
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
+
+/**
+ * Periodically checks if an SSH session is still alive, and closes it if the server no longer answers. 
+ * 
+ * The check is triggered by the shared timer, but the probe itself (which may block until the timeout expires) runs on a 
+ * separate pool, so unresponsive servers cannot hold up other asynchronous work. At most one probe per session is in flight. 
+ * The keepalive stops by itself once the session is closed.
+ */
+final class SessionKeepAlive implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionKeepAlive.class);
+
+    /** Time in seconds after which an idle probe thread is stopped. */
+    private static final long KEEP_ALIVE = 60L;
+
+    /** Runs the probes of all sessions. Threads are only created while probes are waiting for an answer. */
+    private static final ExecutorService PROBES = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE, TimeUnit.SECONDS, 
+            new SynchronousQueue<Runnable>(), new DaemonThreadFactory("xenon-ssh-keepalive"));
+
+    private final ClientSession session;
+
+    private final long timeout;
+
+    private final AtomicBoolean probing = new AtomicBoolean(false);
+
+    private volatile ScheduledFuture<?> future;
+
+    SessionKeepAlive(ClientSession session, long timeout) {
+        this.session = session;
+        this.timeout = timeout;
+    }
+
+    void start(long interval) {
+        future = AsyncExecutor.getSharedTimer().scheduleWithFixedDelay(this, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        ScheduledFuture<?> f = future;
+
+        if (f != null) {
+            f.cancel(false);
+        }
+    }
+
+    @Override
+    public void run() {
+
+        if (!session.isOpen()) {
+            stop();
+            return;
+        }
+
+        // The previous probe is still waiting for an answer.
+        if (!probing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            PROBES.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        probe();
+                    } finally {
+                        probing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            probing.set(false);
+            LOGGER.debug("Failed to schedule keepalive probe", e);
+        }
+    }
+
+    void probe() {
+        if (!SSHUtil.isAlive(session, timeout)) {
+            LOGGER.debug("SSH session {} did not answer keepalive and was closed", session);
+            stop();
+        }
+    }
+}
@@ -15,37 +15,39 @@
  */
 package nl.esciencecenter.xenon.filesystems;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 import nl.esciencecenter.xenon.UnknownAdaptorException;
 import nl.esciencecenter.xenon.UnsupportedOperationException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.NotConnectedException;
+import nl.esciencecenter.xenon.adaptors.AdaptorLoader;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.FileAdaptor;
-import nl.esciencecenter.xenon.adaptors.filesystems.ftp.FtpFileAdaptor;
-import nl.esciencecenter.xenon.adaptors.filesystems.local.LocalFileAdaptor;
-import nl.esciencecenter.xenon.adaptors.filesystems.sftp.SftpFileAdaptor;
-import nl.esciencecenter.xenon.adaptors.filesystems.webdav.WebdavFileAdaptor;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.utils.AsyncExecutor;
+import nl.esciencecenter.xenon.utils.LimitedExecutor;
 import nl.esciencecenter.xenon.InvalidCredentialException;
 import nl.esciencecenter.xenon.InvalidLocationException;
 import nl.esciencecenter.xenon.InvalidPropertyException;
@@ -65,20 +67,19 @@ public abstract class FileSystem {
 	/** The default buffer size */
 	private static final int BUFFER_SIZE = 4 * 1024;
 
-	private static final HashMap<String, FileAdaptor> adaptors = new LinkedHashMap<>();
+	/** The default maximum number of asynchronous operations running concurrently on a single FileSystem */
+	public static final int DEFAULT_MAX_ASYNC_OPERATIONS = 4;
 
-	static {
-		/** Load all supported file adaptors */
-		addAdaptor(new LocalFileAdaptor());
-		addAdaptor(new FtpFileAdaptor());
-		addAdaptor(new SftpFileAdaptor());
-		addAdaptor(new WebdavFileAdaptor());
-	//	addAdaptor(new S3FileAdaptor());
-	}
+	/** Forwards to the shared executor, so a replaced shared executor is picked up by existing FileSystems. */
+	private static final Executor SHARED_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable task) {
+			AsyncExecutor.getSharedExecutor().execute(task);
+		}
+	};
 
-	private static void addAdaptor(FileAdaptor adaptor) {
-		adaptors.put(adaptor.getName(), adaptor);
-	}
+	/** Finds the adaptors registered in META-INF/services. Adaptors are only instantiated when needed. */
+	private static final AdaptorLoader<FileAdaptor> adaptors = new AdaptorLoader<>(COMPONENT_NAME, FileAdaptor.class);
 
 	private static FileAdaptor getAdaptorByName(String adaptorName) throws UnknownAdaptorException {
 
@@ -96,7 +97,15 @@ public abstract class FileSystem {
 	}
 
 	public static String [] getAdaptorNames() {
-		return adaptors.keySet().toArray(new String[adaptors.size()]);
+		List<FileAdaptor> tmp = adaptors.getAll();
+
+		String [] result = new String[tmp.size()];
+
+		for (int i=0;i<result.length;i++) {
+			result[i] = tmp.get(i).getName();
+		}
+
+		return result;
 	}
 
 	public static FileSystemAdaptorDescription getAdaptorDescription(String adaptorName) throws UnknownAdaptorException {
@@ -104,7 +113,8 @@ public abstract class FileSystem {
 	}
 
 	public static FileSystemAdaptorDescription [] getAdaptorDescriptions() {
-		return adaptors.values().toArray(new FileSystemAdaptorDescription[adaptors.size()]);
+		List<FileAdaptor> tmp = adaptors.getAll();
+		return tmp.toArray(new FileSystemAdaptorDescription[tmp.size()]);
 	}
 	
 	/**
@@ -366,6 +376,7 @@ public abstract class FileSystem {
 	private final Path entryPath;
 	private final XenonProperties properties;
 	private final ExecutorService pool;
+	private final LimitedExecutor asyncExecutor;
 
 	private long nextCopyID = 0;
 
@@ -395,6 +406,7 @@ public abstract class FileSystem {
 		this.entryPath = entryPath;
 		this.properties = properties;
 		this.pool = Executors.newFixedThreadPool(1);
+		this.asyncExecutor = new LimitedExecutor(SHARED_EXECUTOR, DEFAULT_MAX_ASYNC_OPERATIONS);
 	}
 
 	private synchronized String getNextCopyID() {
@@ -1309,6 +1321,238 @@ public abstract class FileSystem {
 		return new CopyStatusImplementation(copyIdentifier, state, copy.callback.bytesToCopy, copy.callback.bytesCopied, ex);
 	}
 
+	/**
+	 * Set the maximum number of asynchronous operations of this FileSystem that may run concurrently.
+	 * <p>
+	 * Asynchronous operations run on a shared executor (see {@link AsyncExecutor}). Operations exceeding this limit are queued 
+	 * until a running operation of this FileSystem finishes, so they do not occupy a shared thread in the meantime. The default 
+	 * is {@link #DEFAULT_MAX_ASYNC_OPERATIONS}.
+	 * </p>
+	 * @param maxOperations
+	 *            the maximum number of concurrent asynchronous operations.
+	 *
+	 * @throws IllegalArgumentException
+	 *             If <code>maxOperations</code> is not positive.
+	 */
+	public void setMaxAsyncOperations(int maxOperations) {
+		asyncExecutor.setLimit(maxOperations);
+	}
+
+	/**
+	 * Get the maximum number of asynchronous operations of this FileSystem that may run concurrently.
+	 *
+	 * @return the maximum number of concurrent asynchronous operations.
+	 */
+	public int getMaxAsyncOperations() {
+		return asyncExecutor.getLimit();
+	}
+
+	/**
+	 * Asynchronously get the {@link PathAttributes} of an existing path.
+	 * <p>
+	 * If the operation fails, the returned future is completed exceptionally with the exception that 
+	 * {@link #getAttributes(Path)} would have thrown.
+	 * </p>
+	 * @param path
+	 *            the existing path.
+	 *
+	 * @return a future for the attributes of the path.
+	 */
+	public CompletableFuture<PathAttributes> getAttributesAsync(final Path path) {
+		return AsyncExecutor.submit(asyncExecutor, new Callable<PathAttributes>() {
+			@Override
+			public PathAttributes call() throws Exception {
+				return getAttributes(path);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronously list all entries in the directory <code>dir</code>.
+	 * <p>
+	 * If the operation fails, the returned future is completed exceptionally with the exception that 
+	 * {@link #list(Path, boolean)} would have thrown.
+	 * </p>
+	 * @param dir
+	 *            the target directory.
+	 * @param recursive
+	 *            should the list recursively traverse the subdirectories ?
+	 *
+	 * @return a future for the list of entries in the directory.
+	 */
+	public CompletableFuture<List<PathAttributes>> listAsync(final Path dir, final boolean recursive) {
+		return AsyncExecutor.submit(asyncExecutor, new Callable<List<PathAttributes>>() {
+			@Override
+			public List<PathAttributes> call() throws Exception {
+				ArrayList<PathAttributes> result = new ArrayList<>();
+				list(dir, result, recursive);
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * Asynchronously create a new directory.
+	 * <p>
+	 * If the operation fails, the returned future is completed exceptionally with the exception that 
+	 * {@link #createDirectory(Path)} would have thrown.
+	 * </p>
+	 * @param dir
+	 *            the directory to create.
+	 *
+	 * @return a future that completes when the directory has been created.
+	 */
+	public CompletableFuture<Void> createDirectoryAsync(final Path dir) {
+		return AsyncExecutor.submit(asyncExecutor, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				createDirectory(dir);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Asynchronously delete an existing path.
+	 * <p>
+	 * If the operation fails, the returned future is completed exceptionally with the exception that 
+	 * {@link #delete(Path, boolean)} would have thrown.
+	 * </p>
+	 * @param path
+	 *            the path to delete.
+	 * @param recursive
+	 *            if the delete must be done recursively
+	 *
+	 * @return a future that completes when the path has been deleted.
+	 */
+	public CompletableFuture<Void> deleteAsync(final Path path, final boolean recursive) {
+		return AsyncExecutor.submit(asyncExecutor, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				delete(path, recursive);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Asynchronously read the entire content of an existing file.
+	 * <p>
+	 * If the operation fails, the returned future is completed exceptionally with the exception that caused the failure.
+	 * </p>
+	 * @param file
+	 *            the file to read.
+	 *
+	 * @return a future for the content of the file.
+	 */
+	public CompletableFuture<byte[]> readToBytesAsync(final Path file) {
+		return AsyncExecutor.submit(asyncExecutor, new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[BUFFER_SIZE];
+
+				try (InputStream in = readFromFile(file)) {
+					int read = in.read(buffer);
+
+					while (read != -1) {
+						out.write(buffer, 0, read);
+						read = in.read(buffer);
+					}
+				}
+
+				return out.toByteArray();
+			}
+		});
+	}
+
+	/**
+	 * Asynchronously write data to a new file.
+	 * <p>
+	 * If the operation fails, the returned future is completed exceptionally with the exception that caused the failure.
+	 * </p>
+	 * @param file
+	 *            the file to create.
+	 * @param data
+	 *            the data to write to the file.
+	 *
+	 * @return a future that completes when the data has been written.
+	 */
+	public CompletableFuture<Void> writeFromBytesAsync(final Path file, final byte[] data) {
+
+		if (data == null) {
+			throw new IllegalArgumentException("Data may not be null");
+		}
+
+		return AsyncExecutor.submit(asyncExecutor, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				try (OutputStream out = writeToFile(file, data.length)) {
+					out.write(data);
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Asynchronously copy an existing source path to a target path on a different file system.
+	 * <p>
+	 * Unlike {@link #copy(Path, FileSystem, Path, CopyMode, boolean)}, the copy is not registered under a copy identifier. 
+	 * Instead, the returned future is completed with the final {@link CopyStatus} once the copy is done, or completed 
+	 * exceptionally if the copy failed. Cancelling the future cancels the copy. 
+	 * </p>
+	 * @param source
+	 *            the source path (on this filesystem) to copy from.
+	 * @param destinationFS
+	 *            the destination filesystem to copy to.
+	 * @param destination
+	 *            the destination path (on the destination filesystem) to copy to.
+	 * @param mode
+	 *            how to react if the destination already exists.
+	 * @param recursive
+	 *            if the copy should be recursive.
+	 *
+	 * @return a future for the status of the finished copy.
+	 */
+	public CompletableFuture<CopyStatus> copyAsync(final Path source, final FileSystem destinationFS, final Path destination, 
+			final CopyMode mode, final boolean recursive) {
+
+		if (source == null) {
+			throw new IllegalArgumentException("Source path is null");
+		}
+
+		if (destinationFS == null) {
+			throw new IllegalArgumentException("Destination filesystem is null");
+		}
+
+		if (destination == null) {
+			throw new IllegalArgumentException("Destination path is null");
+		}
+
+		final String ID = getNextCopyID();
+		final CopyCallback callback = new CopyCallback();
+
+		CompletableFuture<CopyStatus> result = AsyncExecutor.submit(asyncExecutor, new Callable<CopyStatus>() {
+			@Override
+			public CopyStatus call() throws Exception {
+				performCopy(source, destinationFS, destination, mode, recursive, callback);
+				return new CopyStatusImplementation(ID, "DONE", callback.bytesToCopy, callback.bytesCopied, null);
+			}
+		});
+
+		result.whenComplete(new BiConsumer<CopyStatus, Throwable>() {
+			@Override
+			public void accept(CopyStatus status, Throwable ex) {
+				if (ex instanceof CancellationException) {
+					callback.cancel();
+				}
+			}
+		});
+
+		return result;
+	}
+
 	protected void assertNotNull(Path path) {
 		if (path == null) {
 			throw new IllegalArgumentException("Path is null");
@@ -15,9 +15,13 @@
  */
 package nl.esciencecenter.xenon.schedulers;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import nl.esciencecenter.xenon.UnknownAdaptorException;
 import nl.esciencecenter.xenon.InvalidCredentialException;
@@ -25,16 +29,16 @@ import nl.esciencecenter.xenon.InvalidLocationException;
 import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.UnknownPropertyException;
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.AdaptorLoader;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
+import nl.esciencecenter.xenon.adaptors.schedulers.JobCompletionTracker;
 import nl.esciencecenter.xenon.adaptors.schedulers.JobStatusImplementation;
 import nl.esciencecenter.xenon.adaptors.schedulers.SchedulerAdaptor;
-import nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor;
-import nl.esciencecenter.xenon.adaptors.schedulers.local.LocalSchedulerAdaptor;
-import nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor;
-import nl.esciencecenter.xenon.adaptors.schedulers.ssh.SshSchedulerAdaptor;
-import nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor;
+import nl.esciencecenter.xenon.adaptors.schedulers.SchedulerClosedException;
+import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingUtils;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.utils.AsyncExecutor;
 
 /**
  * Scheduler represents a (possibly remote) scheduler that can be used to submit jobs and retrieve queue information.
@@ -47,20 +51,11 @@ public abstract class Scheduler {
 	/** The name of this component, for use in exceptions */
 	private static final String COMPONENT_NAME = "Scheduler";
 
-	private static final HashMap<String, SchedulerAdaptor> adaptors = new LinkedHashMap<>();
+	/** The default delay in ms. between status checks of jobs waited for asynchronously */
+	private static final long DEFAULT_ASYNC_POLL_DELAY = 1000L;
 
-	static { 
-		/** Load all supported file adaptors */
-		addAdaptor(new LocalSchedulerAdaptor());
-		addAdaptor(new SshSchedulerAdaptor());
-		addAdaptor(new GridEngineSchedulerAdaptor());
-		addAdaptor(new SlurmSchedulerAdaptor());
-		addAdaptor(new TorqueSchedulerAdaptor());
-	}
-
-	private static void addAdaptor(SchedulerAdaptor adaptor) { 
-		adaptors.put(adaptor.getName(), adaptor);
-	}
+	/** Finds the adaptors registered in META-INF/services. Adaptors are only instantiated when needed. */
+	private static final AdaptorLoader<SchedulerAdaptor> adaptors = new AdaptorLoader<>(COMPONENT_NAME, SchedulerAdaptor.class);
 
 	private static SchedulerAdaptor getAdaptorByName(String adaptorName) throws UnknownAdaptorException {
 
@@ -78,7 +73,15 @@ public abstract class Scheduler {
 	}
 
 	public static String [] getAdaptorNames() {
-		return adaptors.keySet().toArray(new String[adaptors.size()]);
+		List<SchedulerAdaptor> tmp = adaptors.getAll();
+
+		String [] result = new String[tmp.size()];
+
+		for (int i=0;i<result.length;i++) {
+			result[i] = tmp.get(i).getName();
+		}
+
+		return result;
 	}
 
 	public static SchedulerAdaptorDescription getAdaptorDescription(String adaptorName) throws UnknownAdaptorException {
@@ -86,7 +89,8 @@ public abstract class Scheduler {
 	}
 
 	public static SchedulerAdaptorDescription [] getAdaptorDescriptions() {
-		return adaptors.values().toArray(new SchedulerAdaptorDescription[adaptors.size()]);
+		List<SchedulerAdaptor> tmp = adaptors.getAll();
+		return tmp.toArray(new SchedulerAdaptorDescription[tmp.size()]);
 	}
 	
 	/**
@@ -227,6 +231,12 @@ public abstract class Scheduler {
 	private final String location;
 	protected final XenonProperties properties;
 
+	/** Tracks the jobs waited for by waitUntilDoneAsync. Created on first use, guarded by this. */
+	private JobCompletionTracker tracker;
+
+	/** Set once {@link #stopWaitingAsync()} was called. Guarded by this. */
+	private boolean waitingStopped = false;
+
 	protected Scheduler(String uniqueID, String adaptor, String location, XenonProperties properties) {
 
 		if (uniqueID == null) {
@@ -384,6 +394,116 @@ public abstract class Scheduler {
      */
     public abstract String submitBatchJob(JobDescription description) throws XenonException;
 
+    /**
+     * Submit many batch jobs at once.
+     * <p>
+     * The submissions are pipelined on a shared, bounded executor (see {@link AsyncExecutor}). The job identifiers are 
+     * returned in the same order as the descriptions. If any of the submissions fails, the jobs that were submitted 
+     * successfully are cancelled and the exception of the first failed submission is thrown.
+     * </p>
+     * @param descriptions
+     *            the descriptions of the batch jobs to submit.
+     * 
+     * @return the job identifiers of the submitted jobs.
+     * 
+     * @throws XenonException
+     *             If the Scheduler failed to submit one of the jobs.
+     */
+    public String[] submitBatchJobs(JobDescription... descriptions) throws XenonException {
+
+        ArrayList<CompletableFuture<String>> futures = new ArrayList<>(descriptions.length);
+
+        for (JobDescription description : descriptions) {
+            futures.add(submitBatchJobAsync(description));
+        }
+
+        String[] result = new String[descriptions.length];
+
+        XenonException error = null;
+
+        for (int i = 0; i < result.length; i++) {
+            try {
+                result[i] = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = error == null ? new XenonException(adaptor, "Interrupted while submitting jobs", e) : error;
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof XenonException ? (XenonException) e.getCause() 
+                            : new XenonException(adaptor, "Failed to submit job", e.getCause());
+                }
+            }
+        }
+
+        if (error != null) {
+            cancelSubmitted(result);
+            throw error;
+        }
+
+        return result;
+    }
+
+    /**
+     * Submit a job array: many batch jobs that only differ in their arguments.
+     * <p>
+     * Each task runs the <code>template</code>, with the corresponding entry of <code>parameters</code> appended to its 
+     * arguments. Schedulers that support job arrays submit all tasks in a single (or a few) submissions. Other schedulers 
+     * fall back to {@link #submitBatchJobs(JobDescription...)}. Either way, a job identifier is returned for every task, 
+     * in the same order as the parameters. If the submission fails, no tasks remain submitted.
+     * </p>
+     * <p>
+     * If the template redirects standard output or standard error to a file, each task writes to its own file: the given 
+     * path followed by a dot and a suffix identifying the task. On schedulers with native job arrays, the suffix is the job 
+     * identifier returned for the task, as large arrays may be submitted in several parts. On other schedulers, it is the 
+     * position of the parameters of the task, starting at 0.
+     * </p>
+     * @param template
+     *            the description shared by all tasks.
+     * @param parameters
+     *            the additional arguments of each task.
+     * 
+     * @return the job identifiers of the tasks.
+     * 
+     * @throws XenonException
+     *             If the Scheduler failed to submit the tasks.
+     */
+    public String[] submitBatchJobArray(JobDescription template, List<String[]> parameters) throws XenonException {
+
+        JobDescription[] descriptions = new JobDescription[parameters.size()];
+
+        for (int i = 0; i < descriptions.length; i++) {
+            descriptions[i] = ScriptingUtils.getTaskDescription(template, parameters.get(i));
+
+            if (template.getStdout() != null) {
+                descriptions[i].setStdout(template.getStdout() + "." + i);
+            }
+
+            if (template.getStderr() != null) {
+                descriptions[i].setStderr(template.getStderr() + "." + i);
+            }
+        }
+
+        return submitBatchJobs(descriptions);
+    }
+
+    /**
+     * Cancel jobs that were submitted as part of a bulk submission that failed. Errors are ignored.
+     * 
+     * @param jobIdentifiers
+     *            the jobs to cancel. <code>null</code> entries are skipped. 
+     */
+    protected void cancelSubmitted(String[] jobIdentifiers) {
+        for (String jobIdentifier : jobIdentifiers) {
+            if (jobIdentifier != null) {
+                try {
+                    cancelJob(jobIdentifier);
+                } catch (Exception e) {
+                    // best effort
+                }
+            }
+        }
+    }
+
     /**
      * Submit an interactive job (optional operation).
      * 
@@ -532,6 +652,132 @@ public abstract class Scheduler {
      *             If the status of the job could not be retrieved.
      */
     public abstract JobStatus waitUntilRunning(String jobIdentifier, long timeout) throws XenonException;
+
+    /**
+     * Asynchronously submit a batch job.
+     * <p>
+     * The submission is run on a shared, bounded executor (see {@link AsyncExecutor}). If the submission fails, the returned 
+     * future is completed exceptionally with the exception that {@link #submitBatchJob(JobDescription)} would have thrown.
+     * </p>
+     * @param description
+     *            the description of the batch job to submit.
+     * 
+     * @return a future for the job identifier representing the running job.
+     */
+    public CompletableFuture<String> submitBatchJobAsync(final JobDescription description) {
+        return AsyncExecutor.submit(AsyncExecutor.getSharedExecutor(), new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return submitBatchJob(description);
+            }
+        });
+    }
+
+    /**
+     * Asynchronously get the status of a Job.
+     * <p>
+     * The status is retrieved on a shared, bounded executor (see {@link AsyncExecutor}). If the retrieval fails, the returned 
+     * future is completed exceptionally with the exception that {@link #getJobStatus(String)} would have thrown.
+     * </p>
+     * @param jobIdentifier
+     *            the job identifier of the job to get the status for.
+     * 
+     * @return a future for the status of the Job.
+     */
+    public CompletableFuture<JobStatus> getJobStatusAsync(final String jobIdentifier) {
+        return AsyncExecutor.submit(AsyncExecutor.getSharedExecutor(), new Callable<JobStatus>() {
+            @Override
+            public JobStatus call() throws Exception {
+                return getJobStatus(jobIdentifier);
+            }
+        });
+    }
+
+    /**
+     * Asynchronously cancel a job.
+     * <p>
+     * The cancel is run on a shared, bounded executor (see {@link AsyncExecutor}). If the cancel fails, the returned future 
+     * is completed exceptionally with the exception that {@link #cancelJob(String)} would have thrown.
+     * </p>
+     * @param jobIdentifier
+     *            the identifier of job to kill.
+     * 
+     * @return a future for the status of the Job after the cancel.
+     */
+    public CompletableFuture<JobStatus> cancelJobAsync(final String jobIdentifier) {
+        return AsyncExecutor.submit(AsyncExecutor.getSharedExecutor(), new Callable<JobStatus>() {
+            @Override
+            public JobStatus call() throws Exception {
+                return cancelJob(jobIdentifier);
+            }
+        });
+    }
+
+    /**
+     * Get a future that completes when a job is done.
+     * <p>
+     * Unlike {@link #waitUntilDone(String, long)}, no thread is blocked while waiting. Instead, the status of all jobs being 
+     * waited for is periodically retrieved using a single {@link #getJobStatuses(String...)} call. The returned future is 
+     * completed with the final status of the job, or completed exceptionally if the status of the job could not be retrieved 
+     * (for example, because the job is not known). Cancelling the future stops tracking the job, but does not cancel the job 
+     * itself.
+     * </p>
+     * @param jobIdentifier
+     *            the identifier of the job to wait for.
+     * 
+     * @return a future that completes when the job is done.
+     */
+    public CompletableFuture<JobStatus> waitUntilDoneAsync(String jobIdentifier) {
+
+        assertNonNullOrEmpty(jobIdentifier, "Job identifier cannot be null or empty");
+
+        JobCompletionTracker t;
+
+        synchronized (this) {
+            if (waitingStopped && tracker == null) {
+                CompletableFuture<JobStatus> future = new CompletableFuture<>();
+                future.completeExceptionally(new SchedulerClosedException(adaptor, "Scheduler is closed"));
+                return future;
+            }
+
+            t = getTracker();
+        }
+
+        return t.track(jobIdentifier);
+    }
+
+    private synchronized JobCompletionTracker getTracker() {
+        if (tracker == null) {
+            tracker = new JobCompletionTracker(this, AsyncExecutor.getSharedExecutor(), AsyncExecutor.getSharedTimer(), 
+                    Math.max(1L, getAsyncPollDelay()));
+        }
+
+        return tracker;
+    }
+
+    /**
+     * Stop waiting for the jobs waited for by {@link #waitUntilDoneAsync(String)}. Their futures, and those returned by 
+     * later calls, are completed exceptionally. Implementations must call this method when the scheduler is closed.
+     */
+    protected synchronized void stopWaitingAsync() {
+
+        waitingStopped = true;
+
+        // Only close a tracker that is in use, as creating one starts the shared executor and timer.
+        if (tracker != null) {
+            tracker.close(new SchedulerClosedException(adaptor, "Scheduler is closed"));
+        }
+    }
+
+    /**
+     * Get the delay in milliseconds between two status checks of the jobs waited for by 
+     * {@link #waitUntilDoneAsync(String)}.
+     * 
+     * @return the delay in milliseconds.
+     */
+    protected long getAsyncPollDelay() {
+        return DEFAULT_ASYNC_POLL_DELAY;
+    }
     
 	protected void assertNonNullOrEmpty(String s, String message) {
 		if (s == null || s.isEmpty()) { 
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared executors used to run the asynchronous variants of the Xenon operations.
+ * 
+ * All asynchronous operations share a single bounded pool of daemon threads, so the number of threads used does not grow 
+ * with the number of operations or jobs in flight. Periodic tasks (such as polling for job completion) are triggered by a 
+ * single timer thread, which only hands the actual work over to the shared pool.
+ */
+public final class AsyncExecutor {
+
+    /** Number of threads in the shared pool. */
+    public static final int DEFAULT_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private static ThreadPoolExecutor sharedExecutor;
+
+    private static Executor configuredExecutor;
+
+    private static ScheduledExecutorService sharedTimer;
+
+    private AsyncExecutor() {
+        // utility class
+    }
+
+    /**
+     * Replace the shared executor used for asynchronous operations, for example to share a thread pool with the 
+     * application. Operations already submitted will continue to run on the previous executor. 
+     * 
+     * @param executor
+     *          the executor to use, or <code>null</code> to revert to the default bounded pool.
+     */
+    public static synchronized void setSharedExecutor(Executor executor) {
+        configuredExecutor = executor;
+    }
+
+    /**
+     * Get the shared, bounded executor for asynchronous operations. Unless replaced using {@link #setSharedExecutor(Executor)}, 
+     * this is a pool of {@link #DEFAULT_THREADS} daemon threads, which is created on first use.
+     * 
+     * @return the shared executor.
+     */
+    public static synchronized Executor getSharedExecutor() {
+        if (configuredExecutor != null) {
+            return configuredExecutor;
+        }
+
+        if (sharedExecutor == null) {
+            sharedExecutor = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("xenon-async"));
+            sharedExecutor.allowCoreThreadTimeOut(true);
+        }
+
+        return sharedExecutor;
+    }
+
+    /**
+     * Get the shared timer used to trigger periodic tasks. Tasks run on this timer must be short, and should hand any 
+     * blocking work over to an executor. The timer is created on first use.
+     * 
+     * @return the shared timer.
+     */
+    public static synchronized ScheduledExecutorService getSharedTimer() {
+        if (sharedTimer == null) {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("xenon-timer"));
+            timer.setRemoveOnCancelPolicy(true);
+            sharedTimer = timer;
+        }
+
+        return sharedTimer;
+    }
+
+    /**
+     * Run a task on an executor, returning a future for its result. If the task throws an exception, the future is 
+     * completed exceptionally with that exception.
+     * 
+     * @param executor
+     *          the executor to run the task on.
+     * @param task
+     *          the task to run.
+     * @param <T>
+     *          the type of the result.
+     * @return
+     *          a future for the result of the task.
+     */
+    public static <T> CompletableFuture<T> submit(Executor executor, final Callable<T> task) {
+
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        try {
+            executor.execute(new LimitedExecutor.Rejectable() {
+                @Override
+                public void run() {
+                    if (result.isDone()) {
+                        // cancelled before we got started
+                        return;
+                    }
+
+                    try {
+                        result.complete(task.call());
+                    } catch (Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+
+                @Override
+                public void rejected(RejectedExecutionException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+
+        return result;
+    }
+}
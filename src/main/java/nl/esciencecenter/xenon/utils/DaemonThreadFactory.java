@@ -0,0 +1,59 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simple thread factory which returns (optionally named) daemon threads instead of normal threads.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+    private final String name;
+
+    private final AtomicInteger count = new AtomicInteger(0);
+
+    /**
+     * Create a DaemonThreadFactory that uses the default thread names.
+     */
+    public DaemonThreadFactory() {
+        this(null);
+    }
+
+    /**
+     * Create a DaemonThreadFactory that names its threads <code>name-N</code>.
+     * 
+     * @param name
+     *          the prefix of the thread names, or <code>null</code> to use the default thread names.
+     */
+    public DaemonThreadFactory(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+        thread.setDaemon(true);
+
+        if (name != null) {
+            thread.setName(name + "-" + count.incrementAndGet());
+        }
+
+        return thread;
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executor that limits the number of tasks running concurrently on an underlying (shared) executor.
+ * 
+ * Tasks exceeding the limit are queued here, instead of occupying a thread of the underlying executor, and are handed over 
+ * as soon as a running task finishes. If the underlying executor rejects a task that was already queued, the task is told so 
+ * if it is {@link Rejectable}, or is run in the thread that tried to hand it over otherwise. Queued tasks are never dropped.
+ */
+public class LimitedExecutor implements Executor {
+
+    /**
+     * A task that can be told it will not be run, because the underlying executor rejected it after it was queued.
+     */
+    public interface Rejectable extends Runnable {
+
+        /**
+         * Called instead of {@link #run()} when the task was rejected.
+         * 
+         * @param e
+         *          the reason the task was rejected.
+         */
+        void rejected(RejectedExecutionException e);
+    }
+
+    private final Executor executor;
+
+    /** Tasks waiting for a free slot. Guarded by this. */
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+
+    /** Maximum number of tasks running concurrently. Guarded by this. */
+    private int limit;
+
+    /** Number of tasks currently handed over to the underlying executor. Guarded by this. */
+    private int running = 0;
+
+    /**
+     * Create a LimitedExecutor.
+     * 
+     * @param executor
+     *          the executor to run the tasks on.
+     * @param limit
+     *          the maximum number of tasks to run concurrently.
+     */
+    public LimitedExecutor(Executor executor, int limit) {
+
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor may not be null");
+        }
+
+        this.executor = executor;
+        setLimit(limit);
+    }
+
+    /**
+     * Change the maximum number of tasks to run concurrently. Tasks already running are not affected.
+     * 
+     * @param limit
+     *          the maximum number of tasks to run concurrently.
+     */
+    public void setLimit(int limit) {
+
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+
+        synchronized (this) {
+            this.limit = limit;
+        }
+
+        // Start any queued tasks that now fit.
+        Runnable next;
+
+        while ((next = nextTask(false)) != null) {
+            dispatchQueued(next);
+        }
+    }
+
+    /**
+     * Get the maximum number of tasks to run concurrently.
+     * 
+     * @return the maximum number of tasks to run concurrently.
+     */
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Get the number of tasks waiting for a free slot.
+     * 
+     * @return the number of tasks queued.
+     */
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+
+        if (task == null) {
+            throw new IllegalArgumentException("Task may not be null");
+        }
+
+        synchronized (this) {
+            if (running >= limit) {
+                queue.add(task);
+                return;
+            }
+
+            running++;
+        }
+
+        dispatch(task);
+    }
+
+    /**
+     * Take the next queued task that can be started, claiming a slot for it. 
+     * 
+     * @param finished
+     *          if the slot of a finished task is released first.
+     * @return 
+     *          the next task to start, or <code>null</code> if no task can be started.
+     */
+    private synchronized Runnable nextTask(boolean finished) {
+
+        if (finished) {
+            running--;
+        }
+
+        if (running >= limit || queue.isEmpty()) {
+            return null;
+        }
+
+        running++;
+        return queue.poll();
+    }
+
+    private Runnable wrap(final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    dispatchQueued(nextTask(true));
+                }
+            }
+        };
+    }
+
+    /**
+     * Hand over a task passed to {@link #execute(Runnable)}. If it is rejected, the caller gets the exception.
+     */
+    private void dispatch(Runnable task) {
+        try {
+            executor.execute(wrap(task));
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                running--;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Hand over a queued task, and the tasks queued after it if it is rejected. Nobody waits for an exception here, so 
+     * rejected tasks are failed or run in this thread instead. 
+     */
+    private void dispatchQueued(Runnable task) {
+
+        Runnable next = task;
+
+        while (next != null) {
+            try {
+                executor.execute(wrap(next));
+                return;
+            } catch (RejectedExecutionException e) {
+                try {
+                    if (next instanceof Rejectable) {
+                        ((Rejectable) next).rejected(e);
+                    } else {
+                        next.run();
+                    }
+                } finally {
+                    next = nextTask(true);
+                }
+            }
+        }
+    }
+}
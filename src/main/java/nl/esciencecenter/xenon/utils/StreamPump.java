@@ -0,0 +1,288 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A StreamPump moves data from {@link InputStream}s to {@link OutputStream}s. 
+ * 
+ * Reads and writes on process and channel streams block, so every active {@link Transfer} runs on a thread of its own, and 
+ * forwards data as soon as it arrives. Threads are reused once their transfer has ended, so a steady stream of short-lived 
+ * processes does not create a thread per stream. The threads are not shared with any other executor, so stalled transfers 
+ * (an idle interactive stream, or a full stdin pipe) never hold back other transfers or asynchronous operations. 
+ * 
+ * Writes are blocking, which provides backpressure: a transfer does not read more data than its destination accepts. 
+ * 
+ * The buffers of ended transfers are kept for reuse, up to one per kept thread, so short-lived transfers do not allocate a new 
+ * buffer each. 
+ */
+public final class StreamPump {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamPump.class);
+
+    /** Number of idle threads the shared pump keeps for reuse. */
+    public static final int DEFAULT_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    /** Size of the (per transfer) buffers. */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Time (in seconds) an idle thread above the number of kept threads waits for a new transfer before it ends. */
+    private static final long KEEP_ALIVE = 60L;
+
+    private static StreamPump shared;
+
+    private final ThreadPoolExecutor executor;
+
+    /** Buffers of ended transfers, available for reuse. */
+    private final BlockingQueue<byte[]> buffers;
+
+    /**
+     * A single transfer from an {@link InputStream} to an {@link OutputStream}. Both streams are closed when the transfer 
+     * ends, either by reaching end-of-stream, an exception, or being terminated.
+     */
+    public final class Transfer implements Runnable {
+
+        private final InputStream in;
+        private final OutputStream out;
+        private final Runnable listener;
+
+        /** Guarded by this. */
+        private boolean done = false;
+
+        private Transfer(InputStream in, OutputStream out, Runnable listener) {
+            this.in = in;
+            this.out = out;
+            this.listener = listener;
+        }
+
+        /**
+         * Returns if the transfer has ended.
+         * 
+         * @return if the transfer has ended.
+         */
+        public synchronized boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Wait until the transfer has ended, or the timeout expires.
+         * 
+         * @param timeout 
+         *          the maximum time to wait in ms., or 0 to wait indefinitely.
+         * @return if the transfer has ended.
+         */
+        public synchronized boolean waitUntilDone(long timeout) {
+
+            long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+            long left = timeout > 0 ? timeout : 0;
+
+            while (!done) {
+                try {
+                    wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                if (timeout > 0) {
+                    left = deadline - System.currentTimeMillis();
+
+                    if (left <= 0) {
+                        break;
+                    }
+                }
+            }
+
+            return done;
+        }
+
+        /**
+         * Wait for a given timeout for the transfer to reach end-of-stream. When the timeout expires both input and output 
+         * streams will be closed, regardless of whether the input has reached end-of-stream.
+         * 
+         * @param timeout
+         *          The number of milliseconds to wait for termination. 
+         */
+        public void terminate(long timeout) {
+
+            if (timeout > 0 && waitUntilDone(timeout)) {
+                return;
+            }
+
+            if (!isDone()) {
+                LOGGER.debug("Transfer did not end within {} ms. Forcing close!", timeout);
+                finish();
+            }
+        }
+
+        @Override
+        public void run() {
+
+            byte[] buffer = buffers.poll();
+
+            if (buffer == null) {
+                buffer = new byte[BUFFER_SIZE];
+            }
+
+            try {
+                while (!isDone()) {
+                    int read = in.read(buffer);
+
+                    if (read < 0) {
+                        break;
+                    }
+
+                    if (out != null && read > 0) {
+                        out.write(buffer, 0, read);
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Transfer failed", e);
+            } finally {
+                // Dropped if enough buffers are kept already.
+                buffers.offer(buffer);
+            }
+
+            finish();
+        }
+
+        private void finish() {
+
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+
+                done = true;
+            }
+
+            // NOTE: Streams must be closed before done is signalled, or we'll have a race condition!
+            close(in);
+
+            if (out != null) {
+                close(out);
+            }
+
+            synchronized (this) {
+                notifyAll();
+            }
+
+            if (listener != null) {
+                listener.run();
+            }
+        }
+    }
+
+    /**
+     * Create a new StreamPump.
+     * 
+     * @param threads
+     *          the number of idle threads kept for reuse.
+     * @param name
+     *          the prefix of the thread names.
+     */
+    public StreamPump(int threads, String name) {
+
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+
+        executor = new ThreadPoolExecutor(threads, Integer.MAX_VALUE, KEEP_ALIVE, TimeUnit.SECONDS, 
+                new SynchronousQueue<Runnable>(), new DaemonThreadFactory(name));
+        buffers = new ArrayBlockingQueue<>(threads);
+    }
+
+    /**
+     * Get the number of buffers available for reuse.
+     * 
+     * @return the number of buffers available for reuse.
+     */
+    int getPooledBuffers() {
+        return buffers.size();
+    }
+
+    /**
+     * Get the StreamPump shared by all adaptors. It is created on first use.
+     * 
+     * @return the shared StreamPump.
+     */
+    public static synchronized StreamPump getShared() {
+        if (shared == null) {
+            shared = new StreamPump(DEFAULT_THREADS, "xenon-pump");
+        }
+
+        return shared;
+    }
+
+    /**
+     * Start a transfer from <code>in</code> to <code>out</code>.
+     * 
+     * @param in
+     *          the stream to read from.
+     * @param out
+     *          the stream to write to, or <code>null</code> to discard the data.
+     * @param listener
+     *          invoked (on the thread of the transfer) when the transfer ends, or <code>null</code>.
+     * @return
+     *          the transfer.
+     */
+    public Transfer transfer(InputStream in, OutputStream out, Runnable listener) {
+
+        if (in == null) {
+            throw new IllegalArgumentException("Input stream may not be null");
+        }
+
+        Transfer transfer = new Transfer(in, out, listener);
+
+        try {
+            executor.execute(transfer);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("StreamPump shut down, closing transfer");
+            transfer.finish();
+        }
+
+        return transfer;
+    }
+
+    /**
+     * Stop accepting new transfers. Transfers in progress continue until they end.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static void close(Closeable c) {
+        try {
+            c.close();
+        } catch (Exception e) {
+            LOGGER.debug("Failed to close stream", e);
+        }
+    }
+}
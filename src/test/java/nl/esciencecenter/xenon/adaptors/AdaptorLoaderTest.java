@@ -0,0 +1,161 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonPropertyDescription;
+
+public class AdaptorLoaderTest {
+
+    public abstract static class TestAdaptor extends Adaptor {
+        protected TestAdaptor(String name) {
+            super(name, "test adaptor " + name, new String[0], new XenonPropertyDescription[0]);
+        }
+    }
+
+    public static class AdaptorA extends TestAdaptor {
+        static int created = 0;
+
+        public AdaptorA() {
+            super("a");
+            created++;
+        }
+    }
+
+    public static class AdaptorB extends TestAdaptor {
+        static int created = 0;
+
+        public AdaptorB() {
+            super("b");
+            created++;
+        }
+    }
+
+    public static class AdaptorC extends TestAdaptor {
+        static int created = 0;
+
+        public AdaptorC() {
+            super("c");
+            created++;
+        }
+    }
+
+    public static class OtherAdaptorA extends TestAdaptor {
+        public OtherAdaptorA() {
+            super("a");
+        }
+    }
+
+    private File dir;
+
+    private URLClassLoader loader;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("xenon-adaptors").toFile();
+
+        File services = new File(dir, "META-INF/services");
+        assertTrue(services.mkdirs());
+
+        String prefix = AdaptorLoaderTest.class.getName() + "$";
+
+        List<String> lines = Arrays.asList(prefix + "AdaptorA", prefix + "OtherAdaptorA", "nl.esciencecenter.xenon.NoSuchAdaptor", 
+                prefix + "AdaptorB", prefix + "AdaptorC");
+
+        Files.write(new File(services, TestAdaptor.class.getName()).toPath(), lines, StandardCharsets.UTF_8);
+
+        loader = new URLClassLoader(new URL[] { dir.toURI().toURL() }, AdaptorLoaderTest.class.getClassLoader());
+
+        AdaptorA.created = 0;
+        AdaptorB.created = 0;
+        AdaptorC.created = 0;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        loader.close();
+        new ProcessBuilder("rm", "-rf", dir.getAbsolutePath()).start().waitFor();
+    }
+
+    @Test
+    public void test_get_onlyLoadsUpToAdaptor() {
+        AdaptorLoader<TestAdaptor> adaptors = new AdaptorLoader<>("test", TestAdaptor.class, loader);
+
+        assertEquals("b", adaptors.get("b").getName());
+        assertEquals(1, AdaptorA.created);
+        assertEquals(1, AdaptorB.created);
+        assertEquals(0, AdaptorC.created);
+    }
+
+    @Test
+    public void test_get_twice_loadsOnce() {
+        AdaptorLoader<TestAdaptor> adaptors = new AdaptorLoader<>("test", TestAdaptor.class, loader);
+
+        TestAdaptor a = adaptors.get("a");
+
+        assertTrue(a == adaptors.get("a"));
+        assertEquals(1, AdaptorA.created);
+        assertEquals(0, AdaptorB.created);
+    }
+
+    @Test
+    public void test_get_unknown() {
+        AdaptorLoader<TestAdaptor> adaptors = new AdaptorLoader<>("test", TestAdaptor.class, loader);
+
+        assertNull(adaptors.get("aap"));
+        assertEquals(1, AdaptorC.created);
+    }
+
+    @Test
+    public void test_getAll_skipsDuplicatesAndBrokenEntries() {
+        AdaptorLoader<TestAdaptor> adaptors = new AdaptorLoader<>("test", TestAdaptor.class, loader);
+
+        List<TestAdaptor> all = adaptors.getAll();
+
+        assertEquals(3, all.size());
+        assertTrue(all.get(0) instanceof AdaptorA);
+        assertTrue(all.get(1) instanceof AdaptorB);
+        assertTrue(all.get(2) instanceof AdaptorC);
+    }
+
+    @Test
+    public void test_getAll_afterGet() {
+        AdaptorLoader<TestAdaptor> adaptors = new AdaptorLoader<>("test", TestAdaptor.class, loader);
+
+        TestAdaptor b = adaptors.get("b");
+        List<TestAdaptor> all = adaptors.getAll();
+
+        assertEquals(3, all.size());
+        assertTrue(b == all.get(1));
+        assertEquals(1, AdaptorB.created);
+    }
+}
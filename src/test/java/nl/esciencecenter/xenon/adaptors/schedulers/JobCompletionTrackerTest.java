@@ -0,0 +1,238 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.schedulers.JobDescription;
+import nl.esciencecenter.xenon.schedulers.JobStatus;
+import nl.esciencecenter.xenon.schedulers.NoSuchJobException;
+import nl.esciencecenter.xenon.utils.AsyncExecutor;
+
+public class JobCompletionTrackerTest {
+
+	private MockScriptingScheduler scheduler;
+
+	@Before
+	public void setup() throws Exception {
+		Map<String, String> properties = new HashMap<>();
+		properties.put(MockScriptingScheduler.POLL_DELAY_PROPERTY, "20");
+		scheduler = new MockScriptingScheduler(properties);
+	}
+
+	@After
+	public void cleanup() throws Exception {
+		if (scheduler.isOpen()) {
+			scheduler.close();
+		}
+	}
+
+	@Test
+	public void test_submitBatchJobAsync() throws Exception {
+		String job = scheduler.submitBatchJobAsync(new JobDescription()).get(5, TimeUnit.SECONDS);
+		assertEquals("PENDING", scheduler.getJobStatus(job).getState());
+	}
+
+	@Test
+	public void test_getJobStatusAsync() throws Exception {
+		String job = scheduler.submitBatchJob(new JobDescription());
+		scheduler.setState(job, "RUNNING");
+
+		JobStatus status = scheduler.getJobStatusAsync(job).get(5, TimeUnit.SECONDS);
+
+		assertTrue(status.isRunning());
+	}
+
+	@Test
+	public void test_getJobStatusAsync_unknownJob() throws Exception {
+		try {
+			scheduler.getJobStatusAsync("unknown").get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NoSuchJobException);
+			return;
+		}
+
+		throw new AssertionError("Expected an exception");
+	}
+
+	@Test
+	public void test_cancelJobAsync() throws Exception {
+		String job = scheduler.submitBatchJob(new JobDescription());
+		assertTrue(scheduler.cancelJobAsync(job).get(5, TimeUnit.SECONDS).isDone());
+	}
+
+	@Test
+	public void test_waitUntilDoneAsync() throws Exception {
+		String job = scheduler.submitBatchJob(new JobDescription());
+
+		CompletableFuture<JobStatus> future = scheduler.waitUntilDoneAsync(job);
+
+		Thread.sleep(100);
+		assertFalse(future.isDone());
+
+		scheduler.setState(job, "DONE");
+
+		JobStatus status = future.get(5, TimeUnit.SECONDS);
+
+		assertTrue(status.isDone());
+		assertEquals(job, status.getJobIdentifier());
+	}
+
+	@Test
+	public void test_close_withoutWaitUntilDoneAsync_createsNoTracker() throws Exception {
+		final AtomicInteger trackers = new AtomicInteger(0);
+
+		MockScriptingScheduler s = new MockScriptingScheduler(new HashMap<String, String>()) {
+			@Override
+			protected long getAsyncPollDelay() {
+				// only called when the tracker is created
+				trackers.incrementAndGet();
+				return super.getAsyncPollDelay();
+			}
+		};
+
+		s.close();
+
+		assertEquals(0, trackers.get());
+
+		try {
+			s.waitUntilDoneAsync("job").get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof SchedulerClosedException);
+			assertEquals(0, trackers.get());
+			return;
+		}
+
+		throw new AssertionError("Expected an exception");
+	}
+
+	@Test
+	public void test_waitUntilDoneAsync_sameFutureForSameJob() throws Exception {
+		String job = scheduler.submitBatchJob(new JobDescription());
+		assertSame(scheduler.waitUntilDoneAsync(job), scheduler.waitUntilDoneAsync(job));
+	}
+
+	@Test
+	public void test_waitUntilDoneAsync_unknownJob() throws Exception {
+		try {
+			scheduler.waitUntilDoneAsync("unknown").get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NoSuchJobException);
+			return;
+		}
+
+		throw new AssertionError("Expected an exception");
+	}
+
+	@Test
+	public void test_waitUntilDoneAsync_manyJobsSingleQuery() throws Exception {
+
+		JobCompletionTracker tracker = new JobCompletionTracker(scheduler, AsyncExecutor.getSharedExecutor(), 
+				AsyncExecutor.getSharedTimer(), 100000);
+
+		String [] jobs = new String[100];
+
+		for (int i = 0; i < jobs.length; i++) {
+			jobs[i] = scheduler.submitBatchJob(new JobDescription());
+			scheduler.setState(jobs[i], "DONE");
+		}
+
+		List<CompletableFuture<JobStatus>> futures = new ArrayList<>();
+
+		synchronized (tracker) {
+			// Keep the first poll waiting until all jobs are tracked.
+			for (String job : jobs) {
+				futures.add(tracker.track(job));
+			}
+		}
+
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get(5, TimeUnit.SECONDS);
+
+		assertEquals(0, tracker.size());
+		assertEquals(1, scheduler.getBulkQueries());
+	}
+
+	@Test
+	public void test_waitUntilDoneAsync_retriesFailedQuery() throws Exception {
+		String job = scheduler.submitBatchJob(new JobDescription());
+		scheduler.setState(job, "DONE");
+		scheduler.failBulkQueries(JobCompletionTracker.MAX_CONSECUTIVE_FAILURES - 1);
+
+		JobCompletionTracker tracker = new JobCompletionTracker(scheduler, AsyncExecutor.getSharedExecutor(), 
+				AsyncExecutor.getSharedTimer(), 1);
+
+		assertTrue(tracker.track(job).get(5, TimeUnit.SECONDS).isDone());
+		assertEquals(JobCompletionTracker.MAX_CONSECUTIVE_FAILURES, scheduler.getBulkQueries());
+	}
+
+	@Test
+	public void test_waitUntilDoneAsync_failsAfterRepeatedFailures() throws Exception {
+		String job = scheduler.submitBatchJob(new JobDescription());
+		scheduler.failBulkQueries(JobCompletionTracker.MAX_CONSECUTIVE_FAILURES);
+
+		JobCompletionTracker tracker = new JobCompletionTracker(scheduler, AsyncExecutor.getSharedExecutor(), 
+				AsyncExecutor.getSharedTimer(), 1);
+
+		try {
+			tracker.track(job).get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertEquals(0, tracker.size());
+			return;
+		}
+
+		throw new AssertionError("Expected an exception");
+	}
+
+	@Test
+	public void test_waitUntilDoneAsync_failsOnClose() throws Exception {
+		String job = scheduler.submitBatchJob(new JobDescription());
+
+		CompletableFuture<JobStatus> future = scheduler.waitUntilDoneAsync(job);
+
+		scheduler.close();
+
+		try {
+			future.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof SchedulerClosedException);
+			assertTrue(scheduler.waitUntilDoneAsync(job).isCompletedExceptionally());
+			return;
+		}
+
+		throw new AssertionError("Expected an exception");
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_create_invalidPollDelay() throws Exception {
+		new JobCompletionTracker(scheduler, AsyncExecutor.getSharedExecutor(), AsyncExecutor.getSharedTimer(), 0);
+	}
+}
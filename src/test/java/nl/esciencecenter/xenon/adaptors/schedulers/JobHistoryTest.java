@@ -0,0 +1,90 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.schedulers.JobStatus;
+
+public class JobHistoryTest {
+
+    private static JobStatus done(String id) {
+        return new JobStatusImplementation(id, "DONE", 0, null, false, true, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_create_negativeSize() {
+        new JobHistory(-1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_create_negativeAge() {
+        new JobHistory(1, -1);
+    }
+
+    @Test
+    public void test_add_get_remove() {
+        JobHistory h = new JobHistory(10, 0);
+
+        JobStatus s = done("job-1");
+        h.add(s);
+
+        assertEquals(s, h.get("job-1"));
+        assertEquals(1, h.size());
+        assertEquals(s, h.remove("job-1"));
+        assertNull(h.get("job-1"));
+        assertEquals(0, h.size());
+    }
+
+    @Test
+    public void test_add_evictsOldestBySize() {
+        JobHistory h = new JobHistory(3, 0);
+
+        for (int i = 0; i < 5; i++) {
+            h.add(done("job-" + i));
+        }
+
+        assertEquals(3, h.size());
+        assertNull(h.get("job-0"));
+        assertNull(h.get("job-1"));
+        assertEquals("job-2", h.get("job-2").getJobIdentifier());
+        assertEquals("job-4", h.get("job-4").getJobIdentifier());
+    }
+
+    @Test
+    public void test_get_evictsByAge() throws Exception {
+        JobHistory h = new JobHistory(10, 50);
+
+        h.add(done("job-1"));
+        Thread.sleep(100);
+        h.add(done("job-2"));
+
+        assertNull(h.get("job-1"));
+        assertEquals("job-2", h.get("job-2").getJobIdentifier());
+    }
+
+    @Test
+    public void test_zeroSize_keepsNothing() {
+        JobHistory h = new JobHistory(0, 0);
+        h.add(done("job-1"));
+
+        assertNull(h.get("job-1"));
+        assertEquals(0, h.size());
+    }
+}
@@ -22,6 +22,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
 import nl.esciencecenter.xenon.filesystems.MockFileSystem;
@@ -873,4 +876,365 @@ public class JobQueueSchedulerTest {
 		s.end();
 	}
 
+
+	/**
+	 * Count the live threads, except those of the stream pump, which runs each active stream transfer on its own thread.
+	 */
+	private static int countJobThreads() {
+		int count = 0;
+
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (!t.getName().startsWith("xenon-pump")) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	@Test
+	public void test_unlimited_manyJobsFewThreads() throws Exception { 
+		
+		MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+		
+		MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory(500, 0);
+	
+		JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", factory, fs, new Path("/home/xenon"), 2, 100, null);
+
+		JobDescription job = new JobDescription();
+		job.setExecutable("/bin/aap");
+		job.setQueueName("unlimited");
+
+		int threads = countJobThreads();
+
+		String [] jobIDs = new String[200];
+
+		for (int i = 0; i < jobIDs.length; i++) {
+			jobIDs[i] = s.submitBatchJob(job);
+		}
+
+		// All jobs run concurrently, but no thread is used per job (only per active stream transfer).
+		JobStatus status = s.waitUntilRunning(jobIDs[jobIDs.length - 1], 1000);
+		assertTrue(status.isRunning());
+		assertTrue(countJobThreads() - threads < 20);
+
+		for (String jobID : jobIDs) { 
+			assertTrue(s.waitUntilDone(jobID, 5000).isDone());
+		}
+
+		s.end();
+	}
+
+	@Test
+	public void test_multi_limitsConcurrentJobs() throws Exception { 
+		
+		MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+		
+		MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory(500, 0);
+	
+		JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", factory, fs, new Path("/home/xenon"), 2, 100, null);
+
+		JobDescription job = new JobDescription();
+		job.setExecutable("/bin/aap");
+		job.setQueueName("multi");
+
+		String jobID1 = s.submitBatchJob(job);
+		String jobID2 = s.submitBatchJob(job);
+		String jobID3 = s.submitBatchJob(job);
+
+		assertTrue(s.waitUntilRunning(jobID1, 1000).isRunning());
+		assertTrue(s.waitUntilRunning(jobID2, 1000).isRunning());
+		assertEquals("PENDING", s.getJobStatus(jobID3).getState());
+
+		assertTrue(s.waitUntilDone(jobID3, 5000).isDone());
+
+		s.end();
+	}
+
+	@Test
+	public void test_cancel_pendingJobFreesNoSlot() throws Exception { 
+		
+		MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+		
+		MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory(200, 0);
+	
+		JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", factory, fs, new Path("/home/xenon"), 2, 100, null);
+
+		JobDescription job = new JobDescription();
+		job.setExecutable("/bin/aap");
+		job.setQueueName("single");
+
+		String jobID1 = s.submitBatchJob(job);
+		String jobID2 = s.submitBatchJob(job);
+		String jobID3 = s.submitBatchJob(job);
+
+		JobStatus status = s.cancelJob(jobID2);
+		assertTrue(status.isDone());
+		assertEquals("KILLED", status.getState());
+
+		assertTrue(s.waitUntilDone(jobID1, 5000).isDone());
+		assertTrue(s.waitUntilDone(jobID3, 5000).isDone());
+
+		s.end();
+	}
+
+	@Test
+	public void test_getQueueStatus_counts() throws Exception { 
+		
+		MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+		
+		MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory(500, 0);
+	
+		JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", factory, fs, new Path("/home/xenon"), 2, 100, null);
+
+		JobDescription job = new JobDescription();
+		job.setExecutable("/bin/aap");
+		job.setQueueName("multi");
+
+		String jobID1 = s.submitBatchJob(job);
+		String jobID2 = s.submitBatchJob(job);
+		String jobID3 = s.submitBatchJob(job);
+
+		assertTrue(s.waitUntilRunning(jobID1, 1000).isRunning());
+		assertTrue(s.waitUntilRunning(jobID2, 1000).isRunning());
+
+		Map<String, String> info = s.getQueueStatus("multi").getSchedulerSpecficInformation();
+
+		assertEquals("3", info.get("jobs"));
+		assertEquals("1", info.get("waiting"));
+		assertEquals("2", info.get("running"));
+		assertEquals("2", info.get("slots"));
+
+		assertEquals("0", s.getQueueStatus("single").getSchedulerSpecficInformation().get("jobs"));
+
+		assertTrue(s.waitUntilDone(jobID3, 5000).isDone());
+		assertTrue(s.waitUntilDone(jobID1, 5000).isDone());
+		assertTrue(s.waitUntilDone(jobID2, 5000).isDone());
+
+		assertEquals("0", s.getQueueStatus("multi").getSchedulerSpecficInformation().get("jobs"));
+
+		s.end();
+	}
+
+	@Test
+	public void test_concurrentSubmitAndCleanup() throws Exception { 
+		
+		MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+		
+		MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory(10, 0);
+	
+		final JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", factory, fs, new Path("/home/xenon"), 4, 100, null);
+
+		final AtomicInteger errors = new AtomicInteger(0);
+
+		Thread[] threads = new Thread[8];
+
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						JobDescription job = new JobDescription();
+						job.setExecutable("/bin/aap");
+						job.setQueueName("unlimited");
+
+						for (int i = 0; i < 25; i++) {
+							String id = s.submitBatchJob(job);
+
+							JobStatus status = s.waitUntilDone(id, 5000);
+
+							if (!status.isDone()) {
+								errors.incrementAndGet();
+							}
+						}
+					} catch (Exception e) {
+						errors.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		assertEquals(0, errors.get());
+		assertEquals(0, s.getJobs().length);
+		assertEquals("0", s.getQueueStatus("unlimited").getSchedulerSpecficInformation().get("jobs"));
+
+		s.end();
+	}
+
+	@Test
+	public void test_history_boundsFinishedJobs() throws Exception { 
+		
+		MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+		
+		MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory(10, 0);
+	
+		JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", factory, fs, new Path("/home/xenon"), 2, 100, 2, 0, null);
+
+		JobDescription job = new JobDescription();
+		job.setExecutable("/bin/aap");
+		job.setQueueName("unlimited");
+
+		String [] ids = new String[5];
+
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = s.submitBatchJob(job);
+		}
+
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while (s.getJobs().length > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		// Finished jobs are no longer queued, and only the last two are remembered.
+		assertEquals(0, s.getJobs().length);
+
+		int remembered = 0;
+
+		for (String id : ids) {
+			try {
+				JobStatus status = s.getJobStatus(id);
+				assertTrue(status.isDone());
+				remembered++;
+			} catch (NoSuchJobException e) {
+				// evicted
+			}
+		}
+
+		assertEquals(2, remembered);
+
+		s.end();
+	}
+
+	@Test(expected=NoSuchJobException.class)
+	public void test_history_forgetsRetrievedJob() throws Exception { 
+		
+		MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+		
+		MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory(10, 0);
+	
+		JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", factory, fs, new Path("/home/xenon"), 2, 100, null);
+
+		JobDescription job = new JobDescription();
+		job.setExecutable("/bin/aap");
+
+		String id = s.submitBatchJob(job);
+
+		try {
+			assertTrue(s.waitUntilDone(id, 5000).isDone());
+			s.getJobStatus(id);
+		} finally {
+			s.end();
+		}
+	}
+
+	@Test(expected=BadParameterException.class)
+	public void test_create_negativeHistory() throws Exception { 
+		MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+		new JobQueueScheduler("SID", "MockS", "location", new MockInteractiveProcessFactory(), fs, new Path("/home/xenon"), 2, 100, -1, 0, null);
+	}
+
+	private JobQueueScheduler createResourceScheduler(MockInteractiveProcessFactory factory, int cores, long memory) throws Exception { 
+		MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+		return new JobQueueScheduler("SID", "MockS", "location", factory, fs, new Path("/home/xenon"), 2, 100, 
+				JobQueueScheduler.DEFAULT_MAX_HISTORY, JobQueueScheduler.DEFAULT_MAX_HISTORY_AGE, cores, memory, false, null);
+	}
+
+	private static JobDescription resourceJob(int cores, int memory) { 
+		JobDescription job = new JobDescription();
+		job.setExecutable("/bin/aap");
+		job.setQueueName("resources");
+		job.addJobOption(JobQueueScheduler.JOB_OPTION_CORES, Integer.toString(cores));
+		job.addJobOption(JobQueueScheduler.JOB_OPTION_MEMORY, Integer.toString(memory));
+		return job;
+	}
+
+	@Test
+	public void test_resources_queueOnlyWhenEnabled() throws Exception { 
+		MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+		JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", new MockInteractiveProcessFactory(), fs, 
+				new Path("/home/xenon"), 2, 100, null);
+
+		assertEquals(3, s.getQueueNames().length);
+		s.end();
+
+		s = createResourceScheduler(new MockInteractiveProcessFactory(), 4, 0);
+		assertEquals(4, s.getQueueNames().length);
+		assertEquals("resources", s.getQueueNames()[3]);
+		s.end();
+	}
+
+	@Test(expected=InvalidJobDescriptionException.class)
+	public void test_resources_tooManyCores() throws Exception { 
+		JobQueueScheduler s = createResourceScheduler(new MockInteractiveProcessFactory(), 4, 0);
+
+		try { 
+			s.submitBatchJob(resourceJob(8, 0));
+		} finally { 
+			s.end();
+		}
+	}
+
+	@Test(expected=InvalidJobDescriptionException.class)
+	public void test_resources_tooMuchMemory() throws Exception { 
+		JobQueueScheduler s = createResourceScheduler(new MockInteractiveProcessFactory(), 4, 1000);
+
+		try { 
+			s.submitBatchJob(resourceJob(1, 2000));
+		} finally { 
+			s.end();
+		}
+	}
+
+	@Test(expected=InvalidJobDescriptionException.class)
+	public void test_resources_illegalOption() throws Exception { 
+		JobQueueScheduler s = createResourceScheduler(new MockInteractiveProcessFactory(), 4, 0);
+
+		JobDescription job = resourceJob(1, 0);
+		job.addJobOption(JobQueueScheduler.JOB_OPTION_CORES, "many");
+
+		try { 
+			s.submitBatchJob(job);
+		} finally { 
+			s.end();
+		}
+	}
+
+	@Test
+	public void test_resources_packsByCores() throws Exception { 
+		JobQueueScheduler s = createResourceScheduler(new MockInteractiveProcessFactory(500, 0), 4, 0);
+
+		String big = s.submitBatchJob(resourceJob(3, 0));
+		String small = s.submitBatchJob(resourceJob(1, 0));
+		String other = s.submitBatchJob(resourceJob(2, 0));
+
+		assertTrue(s.waitUntilRunning(big, 1000).isRunning());
+		assertTrue(s.waitUntilRunning(small, 1000).isRunning());
+		assertEquals("PENDING", s.getJobStatus(other).getState());
+
+		Map<String, String> info = s.getQueueStatus("resources").getSchedulerSpecficInformation();
+		assertEquals("4", info.get("cores"));
+		assertEquals("0", info.get("freeCores"));
+
+		assertTrue(s.waitUntilDone(other, 5000).isDone());
+		assertTrue(s.waitUntilDone(big, 5000).isDone());
+		assertTrue(s.waitUntilDone(small, 5000).isDone());
+
+		// resources are released by the completion listener, which may run just after the waiter wakes up
+		long deadline = System.currentTimeMillis() + 1000;
+
+		while (!"4".equals(s.getQueueStatus("resources").getSchedulerSpecficInformation().get("freeCores")) 
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertEquals("4", s.getQueueStatus("resources").getSchedulerSpecficInformation().get("freeCores"));
+
+		s.end();
+	}
 }
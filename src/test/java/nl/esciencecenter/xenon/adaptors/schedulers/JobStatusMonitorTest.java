@@ -0,0 +1,232 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.schedulers.JobDescription;
+import nl.esciencecenter.xenon.schedulers.JobStatus;
+import nl.esciencecenter.xenon.schedulers.NoSuchJobException;
+
+public class JobStatusMonitorTest {
+
+	private MockScriptingScheduler scheduler;
+
+	private MockScriptingScheduler createScheduler(String monitorDelay, String staleness) throws Exception {
+		Map<String, String> properties = new HashMap<>();
+		properties.put(MockScriptingScheduler.MONITOR_DELAY_PROPERTY, monitorDelay);
+		properties.put(MockScriptingScheduler.MONITOR_STALENESS_PROPERTY, staleness);
+		scheduler = new MockScriptingScheduler(properties);
+		return scheduler;
+	}
+
+	@After
+	public void cleanup() throws Exception {
+		if (scheduler != null) {
+			scheduler.close();
+		}
+	}
+
+	@Test
+	public void test_noMonitor_queriesDirectly() throws Exception {
+		MockScriptingScheduler s = createScheduler("0", "5000");
+		String job = s.submitBatchJob(new JobDescription());
+
+		s.getJobStatus(job);
+		s.getJobStatus(job);
+
+		assertEquals(0, s.getSingleQueries());
+		assertEquals(2, s.getBulkQueries());
+	}
+
+	@Test
+	public void test_monitor_servesFromSnapshot() throws Exception {
+		MockScriptingScheduler s = createScheduler("100000", "100000");
+		String job = s.submitBatchJob(new JobDescription());
+
+		JobStatus first = s.getJobStatus(job);
+		JobStatus second = s.getJobStatus(job);
+
+		assertEquals("PENDING", first.getState());
+		assertEquals("PENDING", second.getState());
+		assertEquals(0, s.getSingleQueries());
+		assertEquals(1, s.getBulkQueries());
+	}
+
+	@Test
+	public void test_monitor_bulkQueryForAllJobs() throws Exception {
+		MockScriptingScheduler s = createScheduler("100000", "100000");
+
+		String [] jobs = new String[10];
+
+		for (int i = 0; i < jobs.length; i++) {
+			jobs[i] = s.submitBatchJob(new JobDescription());
+		}
+
+		for (String job : jobs) {
+			s.getJobStatus(job);
+		}
+
+		JobStatus [] result = s.getJobStatuses(jobs);
+
+		assertEquals(jobs.length, result.length);
+		assertEquals(jobs[3], result[3].getJobIdentifier());
+		assertEquals(1, s.getBulkQueries());
+		assertEquals(0, s.getSingleQueries());
+	}
+
+	@Test
+	public void test_monitor_refreshesStaleSnapshot() throws Exception {
+		MockScriptingScheduler s = createScheduler("100000", "0");
+		String job = s.submitBatchJob(new JobDescription());
+
+		assertEquals("PENDING", s.getJobStatus(job).getState());
+
+		Thread.sleep(10);
+		s.setState(job, "RUNNING");
+
+		assertEquals("RUNNING", s.getJobStatus(job).getState());
+		assertEquals(2, s.getBulkQueries());
+	}
+
+	@Test
+	public void test_monitor_backgroundRefresh() throws Exception {
+		MockScriptingScheduler s = createScheduler("50", "100000");
+		String job = s.submitBatchJob(new JobDescription());
+
+		s.getJobStatus(job);
+		s.setState(job, "DONE");
+
+		JobStatus status = s.waitUntilDone(job, 5000);
+
+		assertTrue(status.isDone());
+		assertTrue(s.getBulkQueries() >= 2);
+	}
+
+	@Test
+	public void test_monitor_untrackedJobQueriedDirectly() throws Exception {
+		MockScriptingScheduler s = createScheduler("100000", "100000");
+		s.setState("other", "RUNNING");
+
+		JobStatus status = s.getJobStatus("other");
+
+		assertTrue(status.isRunning());
+		assertEquals(1, s.getBulkQueries());
+
+		// now tracked
+		s.getJobStatus("other");
+		assertEquals(1, s.getBulkQueries());
+		assertEquals(0, s.getSingleQueries());
+	}
+
+	@Test
+	public void test_monitor_doneJobForgottenAfterServed() throws Exception {
+		MockScriptingScheduler s = createScheduler("100000", "100000");
+		s.setState("other", "DONE");
+
+		assertTrue(s.getJobStatus("other").isDone());
+		assertTrue(s.getJobStatus("other").isDone());
+		assertEquals(2, s.getBulkQueries());
+	}
+
+	@Test(expected=NoSuchJobException.class)
+	public void test_monitor_unknownJob() throws Exception {
+		MockScriptingScheduler s = createScheduler("100000", "100000");
+		s.getJobStatus("unknown");
+	}
+
+	@Test
+	public void test_monitor_unknownJobInBulk() throws Exception {
+		MockScriptingScheduler s = createScheduler("100000", "100000");
+		s.setState("known", "RUNNING");
+
+		JobStatus [] result = s.getJobStatuses("known", null, "unknown");
+
+		assertTrue(result[0].isRunning());
+		assertEquals(null, result[1]);
+		assertNotNull(result[2].getException());
+		assertFalse(result[2].isRunning());
+		assertEquals(1, s.getBulkQueries());
+	}
+
+	@Test
+	public void test_noMonitor_waitUntilDoneBacksOff() throws Exception {
+		MockScriptingScheduler s = createScheduler("0", "5000");
+		String job = s.submitBatchJob(new JobDescription());
+
+		JobStatus status = s.waitUntilDone(job, 1000);
+
+		assertFalse(status.isDone());
+		// a fixed poll delay of 100 ms would need 11 queries
+		assertTrue(s.getBulkQueries() <= 6);
+	}
+
+	@Test
+	public void test_monitor_awaitChangeWakesOnStateChange() throws Exception {
+		final MockScriptingScheduler s = createScheduler("20", "100000");
+		final String job = s.submitBatchJob(new JobDescription());
+
+		assertEquals("PENDING", s.getJobStatus(job).getState());
+
+		Thread t = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					return;
+				}
+				s.setState(job, "RUNNING");
+			}
+		};
+
+		t.start();
+
+		long start = System.currentTimeMillis();
+		s.monitor.awaitChange(job, "PENDING", 10000);
+		t.join();
+
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertEquals("RUNNING", s.getJobStatus(job).getState());
+	}
+
+	@Test
+	public void test_monitor_awaitChangeTimeout() throws Exception {
+		MockScriptingScheduler s = createScheduler("20", "100000");
+		String job = s.submitBatchJob(new JobDescription());
+
+		s.getJobStatus(job);
+
+		long start = System.currentTimeMillis();
+		s.monitor.awaitChange(job, "PENDING", 100);
+
+		assertTrue(System.currentTimeMillis() - start >= 100);
+		assertEquals("PENDING", s.getJobStatus(job).getState());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_monitor_invalidPollDelay() throws Exception {
+		new JobStatusMonitor(createScheduler("0", "0"), 0, 0);
+	}
+}
@@ -86,6 +86,11 @@ public class MockInteractiveProcess implements InteractiveProcess {
 		killDeadline = System.currentTimeMillis() + killDelay;
 	}
 
+	@Override
+	public void addTerminationListener(Runnable listener) {
+		// termination is only detected by polling
+	}
+
 	@Override
 	public Streams getStreams() {
 		return streams;
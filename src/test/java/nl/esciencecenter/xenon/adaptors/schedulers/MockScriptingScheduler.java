@@ -0,0 +1,159 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import nl.esciencecenter.xenon.UnsupportedOperationException;
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonPropertyDescription;
+import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
+import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.schedulers.JobDescription;
+import nl.esciencecenter.xenon.schedulers.JobStatus;
+import nl.esciencecenter.xenon.schedulers.NoSuchJobException;
+import nl.esciencecenter.xenon.schedulers.QueueStatus;
+import nl.esciencecenter.xenon.schedulers.Streams;
+
+/**
+ * ScriptingScheduler that runs on the local machine, but keeps its job states in memory and counts the number of queries. 
+ */
+public class MockScriptingScheduler extends ScriptingScheduler {
+
+	public static final String POLL_DELAY_PROPERTY = "xenon.adaptors.schedulers.mock.poll.delay";
+	public static final String MONITOR_DELAY_PROPERTY = "xenon.adaptors.schedulers.mock.monitor.delay";
+	public static final String MONITOR_STALENESS_PROPERTY = "xenon.adaptors.schedulers.mock.monitor.max.staleness";
+
+	public static final XenonPropertyDescription [] VALID_PROPERTIES = new XenonPropertyDescription [] {
+		new XenonPropertyDescription(POLL_DELAY_PROPERTY, Type.LONG, "100", "poll delay"),
+		new XenonPropertyDescription(MONITOR_DELAY_PROPERTY, Type.LONG, "0", "monitor delay"),
+		new XenonPropertyDescription(MONITOR_STALENESS_PROPERTY, Type.LONG, "5000", "monitor staleness"),
+	};
+
+	private final Map<String, String> states = new HashMap<>();
+
+	private int singleQueries = 0;
+	private int bulkQueries = 0;
+	private int jobCount = 0;
+	private int failingQueries = 0;
+
+	public MockScriptingScheduler(Map<String, String> properties) throws XenonException {
+		super("MOCK-1", "mock", "/", new DefaultCredential(), properties, VALID_PROPERTIES, POLL_DELAY_PROPERTY, 
+				MONITOR_DELAY_PROPERTY, MONITOR_STALENESS_PROPERTY);
+	}
+
+	public synchronized void setState(String jobIdentifier, String state) {
+		states.put(jobIdentifier, state);
+	}
+
+	public synchronized void failBulkQueries(int count) {
+		failingQueries = count;
+	}
+
+	public synchronized int getSingleQueries() {
+		return singleQueries;
+	}
+
+	public synchronized int getBulkQueries() {
+		return bulkQueries;
+	}
+
+	private synchronized JobStatus status(String jobIdentifier) throws XenonException {
+		String state = states.get(jobIdentifier);
+
+		if (state == null) {
+			throw new NoSuchJobException("mock", "Unknown job " + jobIdentifier);
+		}
+
+		return new JobStatusImplementation(jobIdentifier, state, "DONE".equals(state) ? 0 : null, null, "RUNNING".equals(state), 
+				"DONE".equals(state), null);
+	}
+
+	@Override
+	protected synchronized JobStatus queryJobStatus(String jobIdentifier) throws XenonException {
+		singleQueries++;
+		return status(jobIdentifier);
+	}
+
+	@Override
+	protected synchronized JobStatus[] queryJobStatuses(String... jobIdentifiers) throws XenonException {
+		bulkQueries++;
+
+		if (failingQueries > 0) {
+			failingQueries--;
+			throw new XenonException("mock", "Query failed");
+		}
+
+		JobStatus[] result = new JobStatus[jobIdentifiers.length];
+
+		for (int i = 0; i < jobIdentifiers.length; i++) {
+			if (jobIdentifiers[i] != null) {
+				try {
+					result[i] = status(jobIdentifiers[i]);
+				} catch (XenonException e) {
+					result[i] = new JobStatusImplementation(jobIdentifiers[i], null, null, e, false, true, null);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	@Override
+	public synchronized String submitBatchJob(JobDescription description) throws XenonException {
+		String identifier = "job-" + jobCount++;
+		states.put(identifier, "PENDING");
+		jobSubmitted(identifier, description);
+		return identifier;
+	}
+
+	@Override
+	public String[] getQueueNames() throws XenonException {
+		return new String[] { "default" };
+	}
+
+	@Override
+	public String getDefaultQueueName() throws XenonException {
+		return "default";
+	}
+
+	@Override
+	public String[] getJobs(String... queueNames) throws XenonException {
+		throw new UnsupportedOperationException("mock", "getJobs");
+	}
+
+	@Override
+	public QueueStatus getQueueStatus(String queueName) throws XenonException {
+		throw new UnsupportedOperationException("mock", "getQueueStatus");
+	}
+
+	@Override
+	public QueueStatus[] getQueueStatuses(String... queueNames) throws XenonException {
+		throw new UnsupportedOperationException("mock", "getQueueStatuses");
+	}
+
+	@Override
+	public Streams submitInteractiveJob(JobDescription description) throws XenonException {
+		throw new UnsupportedOperationException("mock", "submitInteractiveJob");
+	}
+
+	@Override
+	public JobStatus cancelJob(String jobIdentifier) throws XenonException {
+		setState(jobIdentifier, "DONE");
+		return queryJobStatus(jobIdentifier);
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PollingPolicyTest {
+
+	@Test
+	public void test_backoff_doublesToCeiling() {
+		PollingPolicy.Backoff b = new PollingPolicy(100, 500).start();
+
+		assertEquals(100, b.nextDelay(0));
+		assertEquals(200, b.nextDelay(0));
+		assertEquals(400, b.nextDelay(0));
+		assertEquals(500, b.nextDelay(0));
+		assertEquals(500, b.nextDelay(0));
+	}
+
+	@Test
+	public void test_backoff_reset() {
+		PollingPolicy.Backoff b = new PollingPolicy(100, 500).start();
+
+		b.nextDelay(0);
+		b.nextDelay(0);
+		b.reset();
+
+		assertEquals(100, b.nextDelay(0));
+	}
+
+	@Test
+	public void test_backoff_ceilingFromRuntime() {
+		PollingPolicy.Backoff b = new PollingPolicy(100, 100000).start(0, 3000);
+
+		assertEquals(100, b.nextDelay(0));
+		assertEquals(200, b.nextDelay(0));
+		assertEquals(300, b.nextDelay(0));
+		assertEquals(300, b.nextDelay(0));
+	}
+
+	@Test
+	public void test_backoff_runtimeNeverBelowInitial() {
+		PollingPolicy.Backoff b = new PollingPolicy(100, 100000).start(0, 60000000L);
+		PollingPolicy.Backoff s = new PollingPolicy(100, 100000).start(0, 10);
+
+		assertEquals(100, b.nextDelay(0));
+		assertEquals(10, s.nextDelay(0));
+	}
+
+	@Test
+	public void test_backoff_wakesAtExpectedEnd() {
+		PollingPolicy.Backoff b = new PollingPolicy(100, 1000).start(0, 100000);
+
+		for (int i = 0; i < 10; i++) {
+			b.nextDelay(0);
+		}
+
+		assertEquals(1000, b.nextDelay(0));
+		assertEquals(50, b.nextDelay(99950));
+		// past the expected end, polling starts fast again
+		assertEquals(100, b.nextDelay(100000));
+		assertEquals(200, b.nextDelay(100100));
+	}
+
+	@Test
+	public void test_forPollDelay() {
+		PollingPolicy p = PollingPolicy.forPollDelay(1000);
+
+		assertEquals(PollingPolicy.DEFAULT_INITIAL_DELAY, p.getInitialDelay());
+		assertEquals(1000 * PollingPolicy.DEFAULT_CEILING_FACTOR, p.getMaxDelay());
+	}
+
+	@Test
+	public void test_forPollDelay_small() {
+		PollingPolicy p = PollingPolicy.forPollDelay(20);
+
+		assertEquals(20, p.getInitialDelay());
+		assertEquals(200, p.getMaxDelay());
+	}
+
+	@Test
+	public void test_forPollDelay_overflow() {
+		assertEquals(Long.MAX_VALUE, PollingPolicy.forPollDelay(Long.MAX_VALUE / 2).getMaxDelay());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_invalidPollDelay() {
+		PollingPolicy.forPollDelay(0);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_invalidInitialDelay() {
+		new PollingPolicy(0, 100);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_invalidMaxDelay() {
+		new PollingPolicy(100, 50);
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+
+public class QueryCoalescerTest {
+
+	private static class CountingCoalescer extends QueryCoalescer<String, String> {
+
+		private int queries = 0;
+		private int maxKeys = 0;
+		private boolean fail = false;
+		private boolean error = false;
+		private long delay = 0;
+
+		CountingCoalescer(long window) {
+			super("test", window);
+		}
+
+		@Override
+		protected Map<String, String> query(Set<String> keys) throws XenonException {
+
+			synchronized (this) {
+				queries++;
+				maxKeys = Math.max(maxKeys, keys.size());
+
+				if (fail) {
+					throw new XenonException("test", "failed");
+				}
+
+				if (error) {
+					throw new AssertionError("error");
+				}
+			}
+
+			if (delay > 0) {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			Map<String, String> result = new HashMap<>();
+
+			for (String key : keys) {
+				if (!key.startsWith("missing")) {
+					result.put(key, "value-" + key);
+				}
+			}
+
+			return result;
+		}
+	}
+
+	private static class Caller extends Thread {
+
+		private final CountingCoalescer coalescer;
+		private final CountDownLatch start;
+		private final String key;
+
+		private Map<String, String> result;
+		private XenonException exception;
+
+		Caller(CountingCoalescer coalescer, CountDownLatch start, String key) {
+			this.coalescer = coalescer;
+			this.start = start;
+			this.key = key;
+		}
+
+		@Override
+		public void run() {
+			try {
+				start.await();
+				result = coalescer.get(Collections.singletonList(key));
+			} catch (XenonException e) {
+				exception = e;
+			} catch (InterruptedException e) {
+				// ignored
+			} catch (AssertionError e) {
+				// thrown by the query of the leader 
+			}
+		}
+	}
+
+	private Caller [] runConcurrently(CountingCoalescer coalescer, int count) throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+
+		Caller [] callers = new Caller[count];
+
+		for (int i = 0; i < count; i++) {
+			callers[i] = new Caller(coalescer, start, "key" + i);
+			callers[i].start();
+		}
+
+		start.countDown();
+
+		for (Caller caller : callers) {
+			caller.join(10000);
+		}
+
+		return callers;
+	}
+
+	@Test
+	public void test_get_singleCaller() throws Exception {
+		CountingCoalescer c = new CountingCoalescer(0);
+
+		Map<String, String> result = c.get(Arrays.asList("a", "b", "missing"));
+
+		assertEquals(2, result.size());
+		assertEquals("value-a", result.get("a"));
+		assertFalse(result.containsKey("missing"));
+		assertEquals(1, c.queries);
+	}
+
+	@Test
+	public void test_get_concurrentCallersShareQuery() throws Exception {
+		CountingCoalescer c = new CountingCoalescer(500);
+		c.delay = 200;
+
+		Caller [] callers = runConcurrently(c, 10);
+
+		for (Caller caller : callers) {
+			assertEquals(1, caller.result.size());
+			assertEquals("value-" + caller.key, caller.result.get(caller.key));
+		}
+
+		assertTrue(c.queries < callers.length);
+		assertTrue(c.maxKeys > 1);
+	}
+
+	@Test
+	public void test_get_exceptionPassedToAllCallers() throws Exception {
+		CountingCoalescer c = new CountingCoalescer(500);
+		c.fail = true;
+
+		Caller [] callers = runConcurrently(c, 5);
+
+		for (Caller caller : callers) {
+			assertEquals("test adaptor: failed", caller.exception.getMessage());
+		}
+	}
+
+	@Test
+	public void test_get_sequentialCallersQueryAgain() throws Exception {
+		CountingCoalescer c = new CountingCoalescer(0);
+
+		c.get(Collections.singletonList("a"));
+		c.get(Collections.singletonList("a"));
+
+		assertEquals(2, c.queries);
+	}
+
+	@Test
+	public void test_get_singleCallerDoesNotWaitForWindow() throws Exception {
+		CountingCoalescer c = new CountingCoalescer(10000);
+
+		long start = System.currentTimeMillis();
+		c.get(Collections.singletonList("a"));
+
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	@Test
+	public void test_get_errorReleasesCallers() throws Exception {
+		CountingCoalescer c = new CountingCoalescer(500);
+		c.error = true;
+
+		Caller [] callers = runConcurrently(c, 5);
+
+		for (Caller caller : callers) {
+			assertFalse(caller.isAlive());
+			assertTrue(caller.result == null);
+		}
+
+		c.error = false;
+
+		assertEquals("value-a", c.get(Collections.singletonList("a")).get("a"));
+	}
+}
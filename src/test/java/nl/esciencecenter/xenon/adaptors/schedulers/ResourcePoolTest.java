@@ -0,0 +1,138 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.adaptors.schedulers.ResourcePool.Request;
+
+public class ResourcePoolTest {
+
+    private static final long MINUTE = 60L * 1000L;
+
+    private static List<Map.Entry<String, Request>> waiting(Object... jobs) {
+        List<Map.Entry<String, Request>> result = new ArrayList<>();
+
+        for (int i = 0; i < jobs.length; i += 2) {
+            result.add(new AbstractMap.SimpleImmutableEntry<>((String) jobs[i], (Request) jobs[i + 1]));
+        }
+
+        return result;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_create_noCores() {
+        new ResourcePool<String>(0, 0, false);
+    }
+
+    @Test
+    public void test_schedule_packsUntilFull() {
+        ResourcePool<String> pool = new ResourcePool<>(16, 0, false);
+
+        List<String> started = pool.schedule(waiting("a", new Request(8, 0, 0), "b", new Request(4, 0, 0), "c", new Request(4, 0, 0),
+                "d", new Request(1, 0, 0)), 0);
+
+        assertEquals(Arrays.asList("a", "b", "c"), started);
+        assertEquals(0, pool.getFreeCores());
+
+        assertTrue(pool.release("b"));
+        assertFalse(pool.release("b"));
+        assertEquals(4, pool.getFreeCores());
+    }
+
+    @Test
+    public void test_schedule_memory() {
+        ResourcePool<String> pool = new ResourcePool<>(16, 1000, false);
+
+        List<String> started = pool.schedule(waiting("a", new Request(1, 600, 0), "b", new Request(1, 600, 0)), 0);
+
+        assertEquals(Arrays.asList("a"), started);
+        assertEquals(400, pool.getFreeMemory());
+        assertFalse(pool.canFit(new Request(1, 2000, 0)));
+    }
+
+    @Test
+    public void test_schedule_backfillsShortJobs() {
+        ResourcePool<String> pool = new ResourcePool<>(16, 0, false);
+
+        // 12 cores busy for 10 minutes.
+        pool.schedule(waiting("running", new Request(12, 0, 10 * MINUTE)), 0);
+
+        // A 16 core job must wait for 10 minutes. A short 4 core job may run before that, a long one may not.
+        List<String> started = pool.schedule(waiting("big", new Request(16, 0, 60 * MINUTE), "long", new Request(4, 0, 20 * MINUTE),
+                "short", new Request(4, 0, 5 * MINUTE)), 0);
+
+        assertEquals(Arrays.asList("short"), started);
+    }
+
+    @Test
+    public void test_schedule_backfillsIntoExtraResources() {
+        ResourcePool<String> pool = new ResourcePool<>(16, 0, false);
+
+        pool.schedule(waiting("running", new Request(12, 0, 10 * MINUTE)), 0);
+
+        // The 8 core job leaves 8 cores free once it can start, so a long 2 core job does not delay it.
+        List<String> started = pool.schedule(waiting("big", new Request(8, 0, 60 * MINUTE), "long1", new Request(2, 0, 0),
+                "long2", new Request(2, 0, 0)), 0);
+
+        assertEquals(Arrays.asList("long1", "long2"), started);
+    }
+
+    @Test
+    public void test_schedule_noBackfillIntoReservation() {
+        ResourcePool<String> pool = new ResourcePool<>(16, 0, false);
+
+        pool.schedule(waiting("running", new Request(12, 0, 10 * MINUTE)), 0);
+
+        // The 16 core job needs everything, so a job of unknown length cannot be backfilled.
+        List<String> started = pool.schedule(waiting("big", new Request(16, 0, 60 * MINUTE), "unknown", new Request(1, 0, 0)), 0);
+
+        assertTrue(started.isEmpty());
+    }
+
+    @Test
+    public void test_pinning_assignsDistinctCpus() {
+        ResourcePool<String> pool = new ResourcePool<>(8, 0, true);
+
+        pool.schedule(waiting("a", new Request(2, 0, 0), "b", new Request(3, 0, 0)), 0);
+
+        assertEquals("0,1", pool.getAllocation("a").getCpuList());
+        assertEquals("2,3,4", pool.getAllocation("b").getCpuList());
+
+        pool.release("a");
+        pool.schedule(waiting("c", new Request(4, 0, 0)), 0);
+
+        assertEquals("0,1,5,6", pool.getAllocation("c").getCpuList());
+    }
+
+    @Test
+    public void test_noPinning_noCpuList() {
+        ResourcePool<String> pool = new ResourcePool<>(8, 0, false);
+        pool.schedule(waiting("a", new Request(2, 0, 0)), 0);
+        assertNull(pool.getAllocation("a").getCpuList());
+    }
+}
@@ -24,6 +24,8 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
 
 import nl.esciencecenter.xenon.XenonException;
 
@@ -740,9 +742,123 @@ public class ScriptingParserTest {
         String[] out = ScriptingParser.parseList("");
         assertArrayEquals(new String[0], out);
     }
-    
-    
-    
-    
-    
+
+    private static Object parseTableOrError(String input, Pattern separator) {
+        try {
+            return new HashMap<>(ScriptingParser.parseTable(input, "k", separator, "fake", "*"));
+        } catch (XenonException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static String randomTable(Random random, String alphabet) {
+        StringBuilder result = new StringBuilder(random.nextBoolean() ? "k a b" : "k|a|b");
+
+        int lines = random.nextInt(5);
+
+        for (int i = 0; i < lines; i++) {
+            result.append(random.nextBoolean() ? "\n" : "\r\n");
+
+            int length = random.nextInt(12);
+
+            for (int j = 0; j < length; j++) {
+                result.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+        }
+
+        if (random.nextBoolean()) {
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void test06n_parseTable_ScannedSameAsRegex() throws Exception {
+        Random random = new Random(42);
+
+        Pattern whitespace = Pattern.compile(ScriptingParser.WHITESPACE_REGEX.pattern());
+        Pattern bar = Pattern.compile(ScriptingParser.BAR_REGEX.pattern());
+
+        for (int i = 0; i < 20000; i++) {
+            String input = randomTable(random, "ab  \t|()=-_*\r");
+
+            assertEquals(input, parseTableOrError(input, whitespace), parseTableOrError(input, ScriptingParser.WHITESPACE_REGEX));
+            assertEquals(input, parseTableOrError(input, bar), parseTableOrError(input, ScriptingParser.BAR_REGEX));
+        }
+    }
+
+    @Test
+    public void test06o_parseTable_RowModifiable() throws Exception {
+        Map<String, Map<String, String>> result = ScriptingParser.parseTable("k a\n1 2\n", "k", ScriptingParser.WHITESPACE_REGEX,
+                "fake");
+
+        Map<String, String> row = result.get("1");
+        row.put("extra", "3");
+
+        assertEquals("2", row.get("a"));
+        assertEquals("3", row.get("extra"));
+        assertEquals(3, row.size());
+    }
+
+    @Test
+    public void test07a_parseDelimitedTable_Rows() throws Exception {
+        String input = "1|defq*|a b|(Resources)\r\n2|long|c|\n\n";
+
+        Map<String, Map<String, String>> result = ScriptingParser.parseDelimitedTable(input, 
+                new String[] { "ID", "PARTITION", "NAME", "REASON" }, "ID", '|', "fake", "*");
+
+        Map<String, String> expected1 = new HashMap<>();
+        expected1.put("ID", "1");
+        expected1.put("PARTITION", "defq");
+        expected1.put("NAME", "a b");
+        expected1.put("REASON", "(Resources)");
+
+        Map<String, String> expected2 = new HashMap<>();
+        expected2.put("ID", "2");
+        expected2.put("PARTITION", "long");
+        expected2.put("NAME", "c");
+        expected2.put("REASON", "");
+
+        Map<String, Map<String, String>> expected = new HashMap<>();
+        expected.put("1", expected1);
+        expected.put("2", expected2);
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void test07b_parseDelimitedTable_DelimiterInLastField() throws Exception {
+        Map<String, Map<String, String>> result = ScriptingParser.parseDelimitedTable("1|a|b", new String[] { "ID", "COMMENT" },
+                "ID", '|', "fake");
+
+        assertEquals("a|b", result.get("1").get("COMMENT"));
+    }
+
+    @Test
+    public void test07c_parseDelimitedTable_EmptyInput_EmptyResult() throws Exception {
+        assertTrue(ScriptingParser.parseDelimitedTable("", new String[] { "ID", "COMMENT" }, "ID", '|', "fake").isEmpty());
+    }
+
+    @Test(expected = XenonException.class)
+    public void test07d_parseDelimitedTable_MissingFields_ThrowsException() throws Exception {
+        ScriptingParser.parseDelimitedTable("1|a\n", new String[] { "ID", "NAME", "COMMENT" }, "ID", '|', "fake");
+    }
+
+    @Test(expected = XenonException.class)
+    public void test07e_parseDelimitedTable_UnknownKeyField_ThrowsException() throws Exception {
+        ScriptingParser.parseDelimitedTable("1|a\n", new String[] { "ID", "NAME" }, "JOBID", '|', "fake");
+    }
+
+    @Test(expected = XenonException.class)
+    public void test07f_parseDelimitedTable_ExtraFields_ThrowsException() throws Exception {
+        ScriptingParser.parseDelimitedTable("1|a|b\n", new String[] { "ID", "NODES" }, "ID", '|', false, "fake");
+    }
+
+    @Test
+    public void test07g_parseDelimitedTable_ExactFields_NotFreeForm() throws Exception {
+        Map<String, Map<String, String>> result = ScriptingParser.parseDelimitedTable("1|a\n", new String[] { "ID", "NODES" }, 
+                "ID", '|', false, "fake");
+
+        assertEquals("a", result.get("1").get("NODES"));
+    }
 }
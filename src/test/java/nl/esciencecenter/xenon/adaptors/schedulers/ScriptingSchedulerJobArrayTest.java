@@ -0,0 +1,236 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.schedulers.JobDescription;
+
+public class ScriptingSchedulerJobArrayTest {
+
+	private MockScriptingScheduler scheduler;
+
+	@After
+	public void cleanup() throws Exception {
+		if (scheduler != null) {
+			scheduler.close();
+		}
+	}
+
+	private static JobDescription description(String executable) {
+		JobDescription result = new JobDescription();
+		result.setExecutable(executable);
+		return result;
+	}
+
+	/**
+	 * Scheduler that fails to submit jobs with executable "fail", and remembers the descriptions it submitted.
+	 */
+	private static class FailingScheduler extends MockScriptingScheduler {
+
+		private final List<JobDescription> submitted = new ArrayList<>();
+
+		FailingScheduler() throws XenonException {
+			super(new HashMap<String, String>());
+		}
+
+		@Override
+		public synchronized String submitBatchJob(JobDescription description) throws XenonException {
+			if ("fail".equals(description.getExecutable())) {
+				throw new XenonException("mock", "submission failed");
+			}
+			submitted.add(description);
+			return super.submitBatchJob(description);
+		}
+	}
+
+	/**
+	 * Scheduler that submits native job arrays, remembering the size of each array. 
+	 */
+	private static class ArrayScheduler extends MockScriptingScheduler {
+
+		private final List<Integer> arrays = new ArrayList<>();
+		private final int failAt;
+		private int arrayCount = 0;
+
+		ArrayScheduler(int failAt) throws XenonException {
+			super(new HashMap<String, String>());
+			this.failAt = failAt;
+		}
+
+		@Override
+		protected synchronized String[] submitJobArray(JobDescription template, List<String[]> parameters) throws XenonException {
+			if (arrays.size() == failAt) {
+				throw new XenonException("mock", "submission failed");
+			}
+
+			arrays.add(parameters.size());
+
+			String[] result = new String[parameters.size()];
+
+			for (int i = 0; i < result.length; i++) {
+				result[i] = "array-" + arrayCount + "_" + i;
+				setState(result[i], "PENDING");
+			}
+
+			arrayCount++;
+			return result;
+		}
+	}
+
+	@Test
+	public void test_submitBatchJobs() throws Exception {
+		scheduler = new MockScriptingScheduler(new HashMap<String, String>());
+
+		JobDescription[] descriptions = new JobDescription[50];
+
+		for (int i = 0; i < descriptions.length; i++) {
+			descriptions[i] = description("exec");
+		}
+
+		String[] result = scheduler.submitBatchJobs(descriptions);
+
+		assertEquals(descriptions.length, result.length);
+
+		for (String job : result) {
+			assertEquals("PENDING", scheduler.getJobStatus(job).getState());
+		}
+	}
+
+	@Test
+	public void test_submitBatchJobs_failureCancelsSubmitted() throws Exception {
+		FailingScheduler s = new FailingScheduler();
+		scheduler = s;
+
+		try {
+			s.submitBatchJobs(description("exec"), description("fail"), description("exec"));
+			fail("Expected submission to fail");
+		} catch (XenonException e) {
+			assertEquals("mock adaptor: submission failed", e.getMessage());
+		}
+
+		assertEquals(2, s.submitted.size());
+		assertTrue(s.getJobStatus("job-0").isDone());
+		assertTrue(s.getJobStatus("job-1").isDone());
+	}
+
+	@Test
+	public void test_submitBatchJobArray_fallback() throws Exception {
+		FailingScheduler s = new FailingScheduler();
+		scheduler = s;
+
+		JobDescription template = description("exec");
+		template.setArguments("fixed");
+
+		List<String[]> parameters = Arrays.asList(new String[] { "a" }, new String[] { "b", "c" });
+
+		String[] result = s.submitBatchJobArray(template, parameters);
+
+		assertEquals(2, result.length);
+		assertEquals(2, s.submitted.size());
+
+		List<List<String>> arguments = new ArrayList<>();
+
+		for (JobDescription d : s.submitted) {
+			arguments.add(d.getArguments());
+		}
+
+		assertTrue(arguments.contains(Arrays.asList("fixed", "a")));
+		assertTrue(arguments.contains(Arrays.asList("fixed", "b", "c")));
+		// the template itself is not modified
+		assertEquals(Arrays.asList("fixed"), template.getArguments());
+	}
+
+	@Test
+	public void test_submitBatchJobArray_fallback_outputPerTask() throws Exception {
+		FailingScheduler s = new FailingScheduler();
+		scheduler = s;
+
+		JobDescription template = description("exec");
+		template.setStdout("out.txt");
+		template.setStderr("err.txt");
+
+		s.submitBatchJobArray(template, Arrays.asList(new String[] { "a" }, new String[] { "b" }));
+
+		List<String> outputs = new ArrayList<>();
+
+		for (JobDescription d : s.submitted) {
+			outputs.add(d.getStdout() + " " + d.getStderr());
+		}
+
+		assertTrue(outputs.contains("out.txt.0 err.txt.0"));
+		assertTrue(outputs.contains("out.txt.1 err.txt.1"));
+		assertEquals("out.txt", template.getStdout());
+	}
+
+	@Test
+	public void test_submitJobArrays_chunked() throws Exception {
+		ArrayScheduler s = new ArrayScheduler(-1);
+		scheduler = s;
+
+		List<String[]> parameters = new ArrayList<>();
+
+		for (int i = 0; i < 7; i++) {
+			parameters.add(new String[] { "p" + i });
+		}
+
+		String[] result = s.submitJobArrays(description("exec"), parameters, 3);
+
+		assertEquals(Arrays.asList(3, 3, 1), s.arrays);
+		assertArrayEquals(new String[] { "array-0_0", "array-0_1", "array-0_2", "array-1_0", "array-1_1", "array-1_2", "array-2_0" }, 
+				result);
+	}
+
+	@Test
+	public void test_submitJobArrays_failureCancelsSubmitted() throws Exception {
+		ArrayScheduler s = new ArrayScheduler(1);
+		scheduler = s;
+
+		List<String[]> parameters = new ArrayList<>();
+
+		for (int i = 0; i < 4; i++) {
+			parameters.add(new String[] { "p" + i });
+		}
+
+		try {
+			s.submitJobArrays(description("exec"), parameters, 2);
+			fail("Expected submission to fail");
+		} catch (XenonException e) {
+			// expected
+		}
+
+		assertTrue(s.getJobStatus("array-0_0").isDone());
+		assertTrue(s.getJobStatus("array-0_1").isDone());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_submitJobArrays_invalidSize() throws Exception {
+		scheduler = new ArrayScheduler(-1);
+		scheduler.submitJobArrays(description("exec"), new ArrayList<String[]>(), 0);
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+
+public class ScriptingSchedulerTest {
+
+	@Test
+	public void test_isOpen() throws XenonException {
+		MockScriptingScheduler scheduler = new MockScriptingScheduler(new HashMap<String, String>());
+
+		try {
+			assertTrue(scheduler.isOpen());
+		} finally {
+			scheduler.close();
+		}
+	}
+
+	@Test
+	public void test_isOpen_closed() throws XenonException {
+		MockScriptingScheduler scheduler = new MockScriptingScheduler(new HashMap<String, String>());
+		scheduler.close();
+		assertFalse(scheduler.isOpen());
+	}
+}
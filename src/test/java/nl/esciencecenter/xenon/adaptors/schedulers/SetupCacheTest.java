@@ -0,0 +1,140 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.credentials.PasswordCredential;
+
+public class SetupCacheTest {
+
+	private static class CountingLoader implements SetupCache.Loader<String> {
+
+		private int loads = 0;
+		private boolean fail = false;
+
+		@Override
+		public synchronized String load() throws XenonException {
+			loads++;
+
+			if (fail) {
+				throw new XenonException("test", "failed");
+			}
+
+			return "setup" + loads;
+		}
+	}
+
+	@Test
+	public void test_get_loadsOnce() throws XenonException {
+		SetupCache<String> cache = new SetupCache<>();
+		CountingLoader loader = new CountingLoader();
+
+		assertEquals("setup1", cache.get("key", 60000L, loader));
+		assertEquals("setup1", cache.get("key", 60000L, loader));
+		assertEquals(1, loader.loads);
+	}
+
+	@Test
+	public void test_get_keysIndependent() throws XenonException {
+		SetupCache<String> cache = new SetupCache<>();
+		CountingLoader loader = new CountingLoader();
+
+		assertEquals("setup1", cache.get("key1", 60000L, loader));
+		assertEquals("setup2", cache.get("key2", 60000L, loader));
+		assertEquals("setup1", cache.get("key1", 60000L, loader));
+	}
+
+	@Test
+	public void test_get_zeroTimeToLive_alwaysLoads() throws XenonException {
+		SetupCache<String> cache = new SetupCache<>();
+		CountingLoader loader = new CountingLoader();
+
+		assertEquals("setup1", cache.get("key", 0L, loader));
+		assertEquals("setup2", cache.get("key", 0L, loader));
+	}
+
+	@Test
+	public void test_get_expired_reloads() throws Exception {
+		SetupCache<String> cache = new SetupCache<>();
+		CountingLoader loader = new CountingLoader();
+
+		assertEquals("setup1", cache.get("key", 1L, loader));
+		Thread.sleep(10);
+		assertEquals("setup2", cache.get("key", 1L, loader));
+	}
+
+	@Test
+	public void test_get_maxTimeToLive() throws XenonException {
+		SetupCache<String> cache = new SetupCache<>();
+		CountingLoader loader = new CountingLoader();
+
+		assertEquals("setup1", cache.get("key", Long.MAX_VALUE, loader));
+		assertEquals("setup1", cache.get("key", Long.MAX_VALUE, loader));
+	}
+
+	@Test
+	public void test_get_failureNotCached() throws XenonException {
+		SetupCache<String> cache = new SetupCache<>();
+		CountingLoader loader = new CountingLoader();
+		loader.fail = true;
+
+		try {
+			cache.get("key", 60000L, loader);
+			fail("Expected XenonException");
+		} catch (XenonException e) {
+			// expected
+		}
+
+		loader.fail = false;
+		assertEquals("setup2", cache.get("key", 60000L, loader));
+	}
+
+	@Test
+	public void test_invalidate_reloads() throws XenonException {
+		SetupCache<String> cache = new SetupCache<>();
+		CountingLoader loader = new CountingLoader();
+
+		cache.get("key", 60000L, loader);
+		cache.invalidate("key");
+
+		assertEquals("setup2", cache.get("key", 60000L, loader));
+	}
+
+	@Test
+	public void test_getKey_noSecrets() {
+		String key = SetupCache.getKey("host:22", new PasswordCredential("user", "secret".toCharArray()));
+
+		assertFalse(key.contains("secret"));
+		assertEquals(key, SetupCache.getKey("host:22", new PasswordCredential("user", "other".toCharArray())));
+	}
+
+	@Test
+	public void test_getKey_differentUsers() {
+		assertFalse(SetupCache.getKey("host", new DefaultCredential("a")).equals(SetupCache.getKey("host", new DefaultCredential("b"))));
+	}
+
+	@Test
+	public void test_getKey_nullCredential() {
+		assertEquals("host", SetupCache.getKey("host", null));
+	}
+}
@@ -15,14 +15,19 @@
  */
 package nl.esciencecenter.xenon.adaptors.schedulers.gridengine;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Formatter;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.FixMethodOrder;
@@ -549,4 +554,116 @@ public class GridEngineUtilsTest {
         GridEngineUtils.getJobStatusFromQstatInfo(input, jobID);
     }
 
+    @Test
+    public void test01d_generate_JobArray_Result() throws XenonException {
+        JobDescription description = new JobDescription();
+        description.setExecutable("/bin/executable");
+        description.setArguments("fixed");
+
+        List<String[]> parameters = Arrays.asList(new String[] { "a" }, new String[] { "b c", "d" });
+
+        String result = GridEngineUtils.generate(description, null, null, parameters);
+
+        String expected = "#!/bin/sh\n" + "#$ -S /bin/sh\n" + "#$ -N xenon\n" + "#$ -l h_rt=00:15:00\n" + "#$ -t 1-2\n" 
+                + "#$ -o /dev/null\n" + "#$ -e /dev/null\n" + "\n" 
+                + "case \"$SGE_TASK_ID\" in\n" 
+                + "1)\n" + "/bin/executable 'fixed' 'a'\n" + ";;\n" 
+                + "2)\n" + "/bin/executable 'fixed' 'b c' 'd'\n" + ";;\n" 
+                + "esac\n";
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void test01e_generate_JobArray_OutputPerTask() throws XenonException {
+        JobDescription description = new JobDescription();
+        description.setExecutable("/bin/executable");
+        description.setStdout("out.txt");
+        description.setStderr("err.txt");
+
+        String result = GridEngineUtils.generate(description, null, null, Arrays.asList(new String[] { "a" }, new String[] { "b" }));
+
+        assertTrue(result.contains("#$ -o 'out.txt.$JOB_ID.$TASK_ID'\n"));
+        assertTrue(result.contains("#$ -e 'err.txt.$JOB_ID.$TASK_ID'\n"));
+    }
+
+    @Test
+    public void test09a_getJobArguments_Job() {
+        assertArrayEquals(new String[] { "1234" }, GridEngineUtils.getJobArguments("1234"));
+        assertEquals("1234", GridEngineUtils.getJobNumber("1234"));
+    }
+
+    @Test
+    public void test09b_getJobArguments_Task() {
+        assertArrayEquals(new String[] { "1234", "-t", "5" }, GridEngineUtils.getJobArguments("1234.5"));
+        assertEquals("1234", GridEngineUtils.getJobNumber("1234.5"));
+    }
+
+    @Test
+    public void test09c_getJobStatusFromQstatInfo_Task() throws XenonException {
+        Map<String, String> jobInfo = new HashMap<>();
+        jobInfo.put("JB_job_number", "1234");
+        jobInfo.put("state", "r");
+        jobInfo.put("long_state", "running");
+
+        Map<String, Map<String, String>> input = new HashMap<>();
+        input.put("1234.5", jobInfo);
+
+        JobStatus result = GridEngineUtils.getJobStatusFromQstatInfo(input, "1234.5");
+
+        assertEquals("1234.5", result.getJobIdentifier());
+        assertTrue(result.isRunning());
+    }
+
+    private static final String QACCT_RECORDS = GridEngineUtils.QACCT_HEADER + "\n"
+            + "qname        all.q\n"
+            + "jobnumber    1234\n"
+            + "taskid       undefined\n"
+            + "failed       0\n"
+            + "exit_status  0\n"
+            + GridEngineUtils.QACCT_HEADER + "\n"
+            + "qname        all.q\n"
+            + "jobnumber    1235\n"
+            + "taskid       undefined\n"
+            + "failed       0\n"
+            + "exit_status  3\n"
+            + GridEngineUtils.QACCT_HEADER + "\n"
+            + "qname        all.q\n"
+            + "jobnumber    1236\n"
+            + "taskid       2\n"
+            + "failed       0\n"
+            + "exit_status  0\n";
+
+    @Test
+    public void test10a_parseQacctRecords_OnlyRequestedJobs() throws XenonException {
+        Map<String, Map<String, String>> result = GridEngineUtils.parseQacctRecords(QACCT_RECORDS,
+                new HashSet<>(Arrays.asList("1235", "1236.2", "999")));
+
+        assertEquals(2, result.size());
+        assertEquals("3", result.get("1235").get("exit_status"));
+        assertEquals("2", result.get("1236.2").get("taskid"));
+    }
+
+    @Test
+    public void test10b_parseQacctRecords_TaskOfJob() throws XenonException {
+        Map<String, Map<String, String>> result = GridEngineUtils.parseQacctRecords(QACCT_RECORDS,
+                new HashSet<>(Arrays.asList("1236")));
+
+        assertEquals("1236", result.get("1236").get("jobnumber"));
+    }
+
+    @Test
+    public void test10c_parseQacctRecords_Empty() throws XenonException {
+        assertTrue(GridEngineUtils.parseQacctRecords("", new HashSet<>(Arrays.asList("1234"))).isEmpty());
+    }
+
+    @Test
+    public void test10d_getQacctBeginTime_DayBefore() {
+        Calendar c = Calendar.getInstance();
+        c.clear();
+        c.set(2017, Calendar.MARCH, 1, 8, 30);
+
+        assertEquals("201702280830", GridEngineUtils.getQacctBeginTime(c.getTimeInMillis()));
+    }
+
 }
@@ -16,10 +16,13 @@
 package nl.esciencecenter.xenon.adaptors.schedulers.gridengine;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Scanner;
 
@@ -147,6 +150,35 @@ public class GridEngineXmlParserTest {
 
 
 
+    @Test
+    public void test03f_parseJobInfo_JobArray_TasksListed() throws Throwable {
+        String input = readFile("/fixtures/gridengine/jobs-array.xml");
+
+        GridEngineXmlParser parser = new GridEngineXmlParser(false);
+
+        Map<String, Map<String, String>> result = parser.parseJobInfos(input);
+
+        String[] expectedJobIDs = new String[] { "583400", "583400.1", "583400.2", "583400.4", "583400.6" };
+        String[] resultJobIDs = result.keySet().toArray(new String[result.size()]);
+        Arrays.sort(resultJobIDs);
+
+        assertArrayEquals(expectedJobIDs, resultJobIDs);
+        assertEquals("r", result.get("583400.1").get("state"));
+        assertEquals("qw", result.get("583400.4").get("state"));
+    }
+
+    @Test
+    public void test03g_getTaskNumbers() throws Throwable {
+        assertEquals(Arrays.asList("7"), GridEngineXmlParser.getTaskNumbers("7"));
+        assertEquals(Arrays.asList("1", "2", "3"), GridEngineXmlParser.getTaskNumbers("1-3:1"));
+        assertEquals(Arrays.asList("1", "3", "12"), GridEngineXmlParser.getTaskNumbers("1-4:2,12"));
+    }
+
+    @Test(expected = XenonException.class)
+    public void test03h_getTaskNumbers_Invalid() throws Throwable {
+        GridEngineXmlParser.getTaskNumbers("1-x");
+    }
+
     @Test
     public void test03a_parseJobInfo_SomeJobs_Result() throws Throwable {
         String input = readFile("/fixtures/gridengine/jobs.xml");
@@ -191,4 +223,45 @@ public class GridEngineXmlParserTest {
 
         parser.parseJobInfos(input);
     }
+
+    @Test
+    public void test03d_parseJobInfo_SelectedJobs_OnlySelectedReturned() throws Throwable {
+        String input = readFile("/fixtures/gridengine/jobs.xml");
+
+        GridEngineXmlParser parser = new GridEngineXmlParser(false);
+
+        Map<String, Map<String, String>> result = parser.parseJobInfos(input,
+                new HashSet<>(Arrays.asList("583235", "583302", "999999")));
+
+        String[] resultJobIDs = result.keySet().toArray(new String[result.size()]);
+        Arrays.sort(resultJobIDs);
+
+        assertArrayEquals(new String[] { "583235", "583302" }, resultJobIDs);
+        assertEquals("agaba", result.get("583235").get("JB_owner"));
+        assertEquals("running", result.get("583235").get("long_state"));
+    }
+
+    @Test
+    public void test03e_parseJobInfo_SelectedJobFound_StopsEarly() throws Throwable {
+        String input = readFile("/fixtures/gridengine/jobs.xml");
+
+        // cut the document off after the first job, parsing must stop before reaching the broken part
+        String truncated = input.substring(0, input.indexOf("</job_list>") + "</job_list>".length()) + "<job_list><JB_";
+
+        GridEngineXmlParser parser = new GridEngineXmlParser(false);
+
+        Map<String, Map<String, String>> result = parser.parseJobInfos(truncated, Collections.singleton("583111"));
+
+        assertEquals(1, result.size());
+        assertEquals("prun-job", result.get("583111").get("JB_name"));
+    }
+
+    @Test(expected = XenonException.class)
+    public void test03i_parseJobInfo_Truncated_ExceptionThrown() throws Throwable {
+        String input = readFile("/fixtures/gridengine/jobs.xml");
+
+        GridEngineXmlParser parser = new GridEngineXmlParser(false);
+
+        parser.parseJobInfos(input.substring(0, input.length() / 2));
+    }
 }
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.schedulers.Process;
+import nl.esciencecenter.xenon.filesystems.FileSystem;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.PathAlreadyExistsException;
+import nl.esciencecenter.xenon.schedulers.JobDescription;
+
+public class LocalInteractiveProcessFactoryTest {
+
+    private File dir;
+
+    private FileSystem fs;
+
+    private Path workdir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("xenon-local").toFile();
+        fs = FileSystem.create("file");
+        workdir = new Path(dir.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fs.close();
+        new ProcessBuilder("rm", "-rf", dir.getAbsolutePath()).start().waitFor();
+    }
+
+    private static void waitUntilDone(Process p) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (!p.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(p.isDone());
+    }
+
+    private String read(String name) throws IOException {
+        return new String(Files.readAllBytes(new File(dir, name).toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void test_createBatchProcess_redirectsToFiles() throws Exception {
+        Files.write(new File(dir, "in.txt").toPath(), "input".getBytes(StandardCharsets.UTF_8));
+
+        JobDescription d = new JobDescription();
+        d.setExecutable("/bin/sh");
+        d.setArguments("-c", "cat; echo err >&2; exit 5");
+        d.setStdin("in.txt");
+        d.setStdout("out.txt");
+        d.setStderr("err.txt");
+
+        Process p = new LocalInteractiveProcessFactory().createBatchProcess(fs, workdir, d, "local-0");
+
+        waitUntilDone(p);
+
+        assertEquals(5, p.getExitStatus());
+        assertEquals("input", read("out.txt"));
+        assertEquals("err\n", read("err.txt"));
+    }
+
+    @Test
+    public void test_createBatchProcess_stdoutAndStderrSameFile() throws Exception {
+        new File(dir, "sub").mkdir();
+
+        JobDescription d = new JobDescription();
+        d.setExecutable("/bin/sh");
+        d.setArguments("-c", "echo out; echo err >&2; echo out2");
+        d.setStdout("sub/../log.txt");
+        d.setStderr("log.txt");
+
+        Process p = new LocalInteractiveProcessFactory().createBatchProcess(fs, workdir, d, "local-4");
+
+        waitUntilDone(p);
+
+        assertEquals(0, p.getExitStatus());
+        assertEquals("out\nerr\nout2\n", read("log.txt"));
+    }
+
+    @Test
+    public void test_createBatchProcess_runsInWorkingDirectory() throws Exception {
+        new File(dir, "sub").mkdir();
+
+        JobDescription d = new JobDescription();
+        d.setExecutable("/bin/pwd");
+        d.setWorkingDirectory("sub");
+        d.setStdout("out.txt");
+
+        Process p = new LocalInteractiveProcessFactory().createBatchProcess(fs, workdir, d, "local-1");
+
+        waitUntilDone(p);
+
+        assertEquals(new File(dir, "sub").getCanonicalPath() + "\n", read("sub/out.txt"));
+    }
+
+    @Test(expected = PathAlreadyExistsException.class)
+    public void test_createBatchProcess_stdoutExists() throws Exception {
+        Files.write(new File(dir, "out.txt").toPath(), new byte[0]);
+
+        JobDescription d = new JobDescription();
+        d.setExecutable("/bin/true");
+        d.setStdout("out.txt");
+
+        new LocalInteractiveProcessFactory().createBatchProcess(fs, workdir, d, "local-2");
+    }
+
+    @Test(expected = IOException.class)
+    public void test_createBatchProcess_stdinMissing() throws Exception {
+        JobDescription d = new JobDescription();
+        d.setExecutable("/bin/true");
+        d.setStdin("missing.txt");
+
+        new LocalInteractiveProcessFactory().createBatchProcess(fs, workdir, d, "local-3");
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_createBatchProcess_closed() throws Exception {
+        LocalInteractiveProcessFactory f = new LocalInteractiveProcessFactory();
+        f.close();
+        f.createBatchProcess(fs, workdir, new JobDescription(), "local-4");
+    }
+}
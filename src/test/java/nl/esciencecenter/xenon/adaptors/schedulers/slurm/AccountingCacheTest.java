@@ -0,0 +1,185 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers.slurm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class AccountingCacheTest {
+
+    private static Map<String, Map<String, String>> row(String jobID, String state, String end) {
+        Map<String, String> info = new HashMap<>();
+        info.put("JobID", jobID);
+        info.put("State", state);
+        info.put("End", end);
+
+        Map<String, Map<String, String>> result = new HashMap<>();
+        result.put(jobID, info);
+        return result;
+    }
+
+    private static long time(String time) throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.parse(time).getTime();
+    }
+
+    /** Create a cache at the given time, on a client with the same clock as the cluster. */
+    private static AccountingCache cache(String created) throws Exception {
+        AccountingCache cache = new AccountingCache(10, time(created));
+        cache.setClusterTime(created, time(created));
+        return cache;
+    }
+
+    @Test
+    public void test_emptyCache_windowStartsAtCreation() throws Exception {
+        AccountingCache cache = cache("2017-03-01T08:30:00");
+
+        Map<String, Map<String, String>> result = new HashMap<>();
+        List<String> missing = cache.lookup(Arrays.asList("1", "2"), result);
+
+        assertEquals("2017-03-01T08:29:00", cache.getWindowStart());
+        assertEquals(Arrays.asList("1", "2"), missing);
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void test_noClusterTime_noWindow() throws Exception {
+        AccountingCache cache = new AccountingCache(10, time("2017-03-01T08:30:00"));
+
+        assertFalse(cache.hasClusterTime());
+        assertNull(cache.getWindowStart());
+        assertFalse(cache.isCovered(time("2017-03-01T09:00:00")));
+    }
+
+    @Test
+    public void test_invalidClusterTime_noWindow() throws Exception {
+        AccountingCache cache = new AccountingCache(10, time("2017-03-01T08:30:00"));
+
+        assertFalse(cache.setClusterTime("Wed Mar  1 08:30:00 UTC 2017", time("2017-03-01T08:30:00")));
+        assertNull(cache.getWindowStart());
+    }
+
+    @Test
+    public void test_windowStart_clientClockAhead() throws Exception {
+        // The client clock runs 10 minutes ahead of the cluster.
+        AccountingCache cache = new AccountingCache(10, time("2017-03-01T08:40:00"));
+        cache.setClusterTime("2017-03-01T08:30:00", time("2017-03-01T08:40:00"));
+
+        cache.windowPolled(time("2017-03-01T09:10:00"));
+
+        assertEquals("2017-03-01T08:59:00", cache.getWindowStart());
+    }
+
+    @Test
+    public void test_windowStart_clusterInOtherTimeZone() throws Exception {
+        // The cluster is 3 hours ahead of UTC, in which the client time is given.
+        AccountingCache cache = new AccountingCache(10, time("2017-03-01T23:30:00"));
+        cache.setClusterTime("2017-03-02T02:30:00", time("2017-03-01T23:30:00"));
+
+        assertEquals("2017-03-02T02:29:00", cache.getWindowStart());
+    }
+
+    @Test
+    public void test_update_onlyFinishedJobsCached() {
+        AccountingCache cache = new AccountingCache(10);
+
+        cache.update(row("1", "COMPLETED", "2017-03-01T08:30:00"));
+        cache.update(row("2", "RUNNING", "Unknown"));
+
+        Map<String, Map<String, String>> result = new HashMap<>();
+        List<String> missing = cache.lookup(Arrays.asList("1", "2"), result);
+
+        assertEquals(Collections.singletonList("2"), missing);
+        assertEquals("COMPLETED", result.get("1").get("State"));
+    }
+
+    @Test
+    public void test_windowStart_previousPollMinusMargin() throws Exception {
+        AccountingCache cache = cache("2017-03-01T08:00:00");
+
+        cache.windowPolled(time("2017-03-01T08:30:00"));
+
+        assertEquals("2017-03-01T08:29:00", cache.getWindowStart());
+    }
+
+    @Test
+    public void test_windowStart_notMovedByEndTimes() throws Exception {
+        AccountingCache cache = cache("2017-03-01T08:30:00");
+
+        // Jobs found by identifier may have finished long ago, or report an end time ahead of the client.
+        cache.update(row("1", "COMPLETED", "2016-01-01T00:00:00"));
+        cache.update(row("2", "COMPLETED", "2017-03-02T00:00:00"));
+
+        assertEquals("2017-03-01T08:29:00", cache.getWindowStart());
+    }
+
+    @Test
+    public void test_windowStart_neverMovesBack() throws Exception {
+        AccountingCache cache = cache("2017-03-01T08:30:00");
+
+        cache.windowPolled(time("2017-03-01T08:20:00"));
+
+        assertEquals("2017-03-01T08:29:00", cache.getWindowStart());
+    }
+
+    @Test
+    public void test_windowStart_crossesDay() throws Exception {
+        AccountingCache cache = cache("2017-03-01T00:00:30");
+
+        assertEquals("2017-02-28T23:59:30", cache.getWindowStart());
+    }
+
+    @Test
+    public void test_isCovered() throws Exception {
+        AccountingCache cache = cache("2017-03-01T08:30:00");
+
+        cache.windowPolled(time("2017-03-01T09:00:00"));
+
+        assertTrue(cache.isCovered(time("2017-03-01T08:30:00")));
+        assertTrue(cache.isCovered(time("2017-03-01T10:00:00")));
+        assertFalse(cache.isCovered(time("2017-03-01T08:29:59")));
+        assertFalse(cache.isCovered(-1));
+    }
+
+    @Test
+    public void test_update_evictsOldestJobs() {
+        AccountingCache cache = new AccountingCache(2);
+
+        cache.update(row("1", "COMPLETED", "2017-03-01T08:30:00"));
+        cache.update(row("2", "COMPLETED", "2017-03-01T08:31:00"));
+        cache.update(row("3", "COMPLETED", "2017-03-01T08:32:00"));
+
+        Map<String, Map<String, String>> result = new HashMap<>();
+        List<String> missing = cache.lookup(Arrays.asList("1", "2", "3"), result);
+
+        assertEquals(Collections.singletonList("1"), missing);
+        assertEquals(2, result.size());
+    }
+}
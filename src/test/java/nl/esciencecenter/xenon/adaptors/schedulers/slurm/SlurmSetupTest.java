@@ -135,4 +135,23 @@ public class SlurmSetupTest {
         new SlurmSetup(configInfo, false);
     }
 
+    @Test
+    public void test_arraysAvailable() throws XenonException {
+        Map<String, String> configInfo = new HashMap<>();
+        configInfo.put("SLURM_VERSION", "15.08.6");
+        configInfo.put("AccountingStorageType", "accounting_storage/filetxt");
+        configInfo.put("MaxArraySize", "1001");
+
+        assertTrue(new SlurmSetup(configInfo, false).arraysAvailable());
+    }
+
+    @Test
+    public void test_arraysNotAvailable() throws XenonException {
+        Map<String, String> configInfo = new HashMap<>();
+        configInfo.put("SLURM_VERSION", "2.3.4");
+        configInfo.put("AccountingStorageType", "accounting_storage/filetxt");
+
+        assertFalse(new SlurmSetup(configInfo, false).arraysAvailable());
+    }
+
 }
@@ -22,10 +22,17 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.junit.FixMethodOrder;
 import org.junit.Test;
@@ -33,6 +40,7 @@ import org.junit.runners.MethodSorters;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.schedulers.JobCanceledException;
+import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingParser;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.schedulers.InvalidJobDescriptionException;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
@@ -691,6 +699,7 @@ public class SlurmUtilsTest {
 		String [] expected = new String [] { 
 				"--quiet", 
 				"--comment=" + tag.toString(), 
+				"--job-name=xenon-" + tag.toString(), 
 				"--nodes=1",
 				"--ntasks-per-node=1",
 				"--time=15", 
@@ -719,6 +728,7 @@ public class SlurmUtilsTest {
 		String [] expected = new String [] { 
 				"--quiet", 
 				"--comment=" + tag.toString(), 
+				"--job-name=xenon-" + tag.toString(), 
 				"--chdir=" + entry.resolve("workdir").getAbsolutePath(),
 				"--partition=queue", 
 				"--nodes=1",
@@ -749,6 +759,7 @@ public class SlurmUtilsTest {
 		String [] expected = new String [] { 
 				"--quiet", 
 				"--comment=" + tag.toString(), 
+				"--job-name=xenon-" + tag.toString(), 
 				"--chdir=/workdir",
 				"--partition=queue", 
 				"--nodes=1",
@@ -859,10 +870,145 @@ public class SlurmUtilsTest {
 		assertEquals("AAP,NOOT", result);
 	}
 
+	@Test
+	public void test_identifiersAsCSLists() {
+		String [] array = new String [] { "1", null, "22", "333", "22", "4444" };
+
+		List<String> result = SlurmUtils.identifiersAsCSLists(array, 6);
+
+		assertEquals(Arrays.asList("1,22", "333", "4444"), result);
+	}
+
+	@Test
+	public void test_identifiersAsCSListsSingleList() {
+		String [] array = new String [] { "1", "22", "333" };
+
+		List<String> result = SlurmUtils.identifiersAsCSLists(array, 1024);
+
+		assertEquals(Arrays.asList("1,22,333"), result);
+	}
+
+	@Test
+	public void test_identifiersAsCSListsEmpty() {
+		List<String> result = SlurmUtils.identifiersAsCSLists(new String [] { null }, 1024);
+
+		assertTrue(result.isEmpty());
+	}
+
 	@Test
 	public void test_forCoverage() {
 		new SlurmUtils();
 	}
 	
 
-}
\ No newline at end of file
+	@Test
+	public void test_generateJobArray() { 
+		JobDescription description = new JobDescription();
+		description.setExecutable("exec");
+		description.setArguments("fixed");
+		description.setStartSingleProcess(true);
+
+		List<String[]> parameters = Arrays.asList(new String[] { "a" }, new String[0], new String[] { "b'c" });
+
+		String expected = "#!/bin/sh\n" 
+				+ "#SBATCH --job-name xenon\n"
+				+ "#SBATCH --nodes=1\n"
+				+ "#SBATCH --ntasks-per-node=1\n"
+				+ "#SBATCH --time=15\n"
+				+ "#SBATCH --array=0-2\n"
+				+ "#SBATCH --output=/dev/null\n"
+				+ "#SBATCH --error=/dev/null\n\n"
+				+ "case \"$SLURM_ARRAY_TASK_ID\" in\n"
+				+ "0)\n" + "exec 'fixed' 'a'\n" + ";;\n"
+				+ "1)\n" + "exec 'fixed'\n" + ";;\n"
+				+ "2)\n" + "exec 'fixed' 'b'\\''c'\n" + ";;\n"
+				+ "esac\n";
+
+		assertEquals(expected, SlurmUtils.generate(description, null, parameters));
+	}
+
+	@Test
+	public void test_generateJobArray_outputPerTask() { 
+		JobDescription description = new JobDescription();
+		description.setExecutable("exec");
+		description.setStdout("out.txt");
+		description.setStderr("err.txt");
+
+		String result = SlurmUtils.generate(description, null, Arrays.asList(new String[] { "a" }, new String[] { "b" }));
+
+		assertTrue(result.contains("#SBATCH --output='out.txt.%A_%a'\n"));
+		assertTrue(result.contains("#SBATCH --error='err.txt.%A_%a'\n"));
+	}
+
+	@Test
+	public void test_generateJobArray_outputPerTaskInAllChunks() { 
+		JobDescription description = new JobDescription();
+		description.setExecutable("exec");
+		description.setStdout("out.txt");
+
+		List<String[]> parameters = Arrays.asList(new String[] { "a" }, new String[] { "b" }, new String[] { "c" });
+
+		// submitted as two arrays (jobs 100 and 101), as with a maximum array size of 2
+		List<String> chunks = Arrays.asList(SlurmUtils.generate(description, null, parameters.subList(0, 2)),
+				SlurmUtils.generate(description, null, parameters.subList(2, 3)));
+
+		Set<String> paths = new HashSet<>();
+
+		for (int chunk = 0; chunk < chunks.size(); chunk++) {
+			Matcher m = Pattern.compile("#SBATCH --output='(.*)'\n").matcher(chunks.get(chunk));
+			assertTrue(m.find());
+
+			for (int task = 0; task < (chunk == 0 ? 2 : 1); task++) {
+				// expand the file name pattern like slurm does
+				String path = m.group(1).replace("%A", String.valueOf(100 + chunk)).replace("%a", String.valueOf(task));
+				assertEquals("out.txt." + (100 + chunk) + "_" + task, path);
+				paths.add(path);
+			}
+		}
+
+		assertEquals(parameters.size(), paths.size());
+	}
+
+	@Test
+	public void test_getInteractiveJobName() {
+		assertEquals("xenon-00000000-0000-0000-0000-00000000002a", SlurmUtils.getInteractiveJobName(new UUID(0, 42)));
+	}
+
+	@Test
+	public void test_getAccountingStartDate_dayBefore() {
+		Calendar c = Calendar.getInstance();
+		c.clear();
+		c.set(2017, Calendar.MARCH, 1, 0, 30);
+
+		assertEquals("2017-02-28", SlurmUtils.getAccountingStartDate(c.getTimeInMillis()));
+	}
+
+	@Test
+	public void test_findJobWithComment_squeue() {
+		String output = "12 other\n13\n14 tag\n15 tag\n";
+		assertEquals("14", SlurmUtils.findJobWithComment(output, ScriptingParser.WHITESPACE_REGEX, "tag"));
+	}
+
+	@Test
+	public void test_findJobWithComment_sacct() {
+		String output = "12|other|\n14|tag|";
+		assertEquals("14", SlurmUtils.findJobWithComment(output, ScriptingParser.BAR_REGEX, "tag"));
+	}
+
+	@Test
+	public void test_findJobWithComment_notFound() {
+		assertNull(SlurmUtils.findJobWithComment("12 other\n\n", ScriptingParser.WHITESPACE_REGEX, "tag"));
+	}
+
+	@Test
+	public void test_findJobWithComment_empty() {
+		assertNull(SlurmUtils.findJobWithComment("", ScriptingParser.BAR_REGEX, "tag"));
+	}
+
+	@Test
+	public void test_formatsMatchFields() {
+		assertEquals(SlurmUtils.SQUEUE_FIELDS.length, SlurmUtils.SQUEUE_FORMAT.split("\\|").length);
+		assertEquals(SlurmUtils.SINFO_FIELDS.length, SlurmUtils.SINFO_FORMAT.split("\\|").length);
+	}
+
+}
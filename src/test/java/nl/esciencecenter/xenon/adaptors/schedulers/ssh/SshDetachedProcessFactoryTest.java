@@ -0,0 +1,308 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.schedulers.JobQueueScheduler;
+import nl.esciencecenter.xenon.adaptors.schedulers.Process;
+import nl.esciencecenter.xenon.filesystems.MockFileSystem;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.PathAlreadyExistsException;
+import nl.esciencecenter.xenon.schedulers.JobDescription;
+import nl.esciencecenter.xenon.schedulers.JobStatus;
+
+public class SshDetachedProcessFactoryTest {
+
+    /**
+     * Runs the remote commands in a local shell instead of over SSH.
+     */
+    static class LocalShellFactory extends SshDetachedProcessFactory {
+
+        final AtomicInteger commands = new AtomicInteger(0);
+
+        LocalShellFactory(long pollingDelay) {
+            super(new MockClientSession(false), pollingDelay, 10000);
+        }
+
+        @Override
+        protected String execute(String command) throws XenonException {
+
+            commands.incrementAndGet();
+
+            try {
+                java.lang.Process p = new ProcessBuilder("sh", "-c", command).start();
+                byte[] out = readAll(p.getInputStream());
+                byte[] err = readAll(p.getErrorStream());
+                int exit = p.waitFor();
+
+                if (exit != 0) {
+                    throw new RemoteCommandException(exit, new String(err, StandardCharsets.UTF_8));
+                }
+
+                return new String(out, StandardCharsets.UTF_8);
+            } catch (IOException | InterruptedException e) {
+                throw new XenonException(SshSchedulerAdaptor.ADAPTOR_NAME, "Failed to run command", e);
+            }
+        }
+
+        private static byte[] readAll(InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int n;
+
+            while ((n = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+
+            return out.toByteArray();
+        }
+    }
+
+    private File dir;
+
+    private Path workdir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("xenon-detached").toFile();
+        workdir = new Path(dir.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        new ProcessBuilder("rm", "-rf", dir.getAbsolutePath()).start();
+    }
+
+    private static JobDescription job(String executable, String... arguments) {
+        JobDescription d = new JobDescription();
+        d.setExecutable(executable);
+        d.setArguments(arguments);
+        return d;
+    }
+
+    private static boolean waitUntilDone(Process p, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+
+        while (!p.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        return p.isDone();
+    }
+
+    @Test
+    public void test_createBatchProcess_exitCodeAndOutput() throws Exception {
+        LocalShellFactory f = new LocalShellFactory(10);
+
+        JobDescription d = job("/bin/sh", "-c", "echo hello; echo oops >&2; exit 3");
+        d.setStdout("out.txt");
+        d.setStderr("err.txt");
+
+        Process p = f.createBatchProcess(null, workdir, d, "ssh-1");
+
+        assertTrue(waitUntilDone(p, 5000));
+        assertEquals(3, p.getExitStatus());
+        assertEquals("hello\n", new String(Files.readAllBytes(new File(dir, "out.txt").toPath()), StandardCharsets.UTF_8));
+        assertEquals("oops\n", new String(Files.readAllBytes(new File(dir, "err.txt").toPath()), StandardCharsets.UTF_8));
+        assertEquals(0, f.getRunningJobCount());
+    }
+
+    @Test
+    public void test_createBatchProcess_stdoutAndStderrSameFile() throws Exception {
+        LocalShellFactory f = new LocalShellFactory(10);
+
+        JobDescription d = job("/bin/sh", "-c", "echo out; echo err >&2; echo out2");
+        d.setStdout("log.txt");
+        d.setStderr("log.txt");
+
+        Process p = f.createBatchProcess(null, workdir, d, "ssh-9");
+
+        assertTrue(waitUntilDone(p, 5000));
+        assertEquals("out\nerr\nout2\n", new String(Files.readAllBytes(new File(dir, "log.txt").toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void test_createBatchProcess_stdinAndEnvironment() throws Exception {
+        LocalShellFactory f = new LocalShellFactory(10);
+
+        Files.write(new File(dir, "in.txt").toPath(), "from stdin".getBytes(StandardCharsets.UTF_8));
+
+        JobDescription d = job("/bin/sh", "-c", "cat; echo \" $GREETING\"");
+        d.setStdin("in.txt");
+        d.setStdout("out.txt");
+        d.addEnvironment("GREETING", "it's me");
+
+        Process p = f.createBatchProcess(null, workdir, d, "ssh-2");
+
+        assertTrue(waitUntilDone(p, 5000));
+        assertEquals(0, p.getExitStatus());
+        assertEquals("from stdin it's me\n", new String(Files.readAllBytes(new File(dir, "out.txt").toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = PathAlreadyExistsException.class)
+    public void test_createBatchProcess_stdoutExists() throws Exception {
+        LocalShellFactory f = new LocalShellFactory(10);
+
+        Files.write(new File(dir, "out.txt").toPath(), new byte[0]);
+
+        JobDescription d = job("/bin/true");
+        d.setStdout("out.txt");
+
+        f.createBatchProcess(null, workdir, d, "ssh-3");
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_createBatchProcess_stdinMissing() throws Exception {
+        LocalShellFactory f = new LocalShellFactory(10);
+
+        JobDescription d = job("/bin/true");
+        d.setStdin("missing.txt");
+
+        f.createBatchProcess(null, workdir, d, "ssh-4");
+    }
+
+    @Test
+    public void test_isDone_doesNotRunRemoteCommand() throws Exception {
+        LocalShellFactory f = new LocalShellFactory(60000);
+
+        Process p = f.createBatchProcess(null, workdir, job("/bin/sleep", "60"), "ssh-6");
+
+        int launched = f.commands.get();
+
+        for (int i = 0; i < 100; i++) {
+            assertFalse(p.isDone());
+        }
+
+        assertEquals(launched, f.commands.get());
+
+        p.destroy();
+        f.close();
+    }
+
+    @Test
+    public void test_terminationListener_calledWhenDone() throws Exception {
+        LocalShellFactory f = new LocalShellFactory(10);
+
+        Process p = f.createBatchProcess(null, workdir, job("/bin/true"), "ssh-7");
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        p.addTerminationListener(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(p.isDone());
+        assertEquals(0, p.getExitStatus());
+    }
+
+    @Test
+    public void test_stateRemoved() throws Exception {
+        LocalShellFactory f = new LocalShellFactory(10);
+
+        File state = new File(dir, ".xenon");
+
+        Process p = f.createBatchProcess(null, workdir, job("/bin/true"), "ssh-8");
+
+        assertTrue(waitUntilDone(p, 5000));
+
+        // The exit code file is removed once it has been read.
+        File[] jobs = state.listFiles();
+        assertEquals(1, jobs.length);
+        assertEquals(0, jobs[0].list().length);
+
+        f.close();
+
+        assertFalse(state.exists());
+    }
+
+    @Test
+    public void test_destroy() throws Exception {
+        LocalShellFactory f = new LocalShellFactory(10);
+
+        Process p = f.createBatchProcess(null, workdir, job("/bin/sleep", "60"), "ssh-5");
+
+        assertFalse(p.isDone());
+
+        p.destroy();
+
+        assertTrue(p.isDone());
+        assertEquals(0, f.getRunningJobCount());
+    }
+
+    @Test
+    public void test_status_isBatched() throws Exception {
+        LocalShellFactory f = new LocalShellFactory(200);
+
+        Process[] p = new Process[20];
+
+        for (int i = 0; i < p.length; i++) {
+            p[i] = f.createBatchProcess(null, workdir, job("/bin/sleep", "1"), "ssh-" + (100 + i));
+        }
+
+        int launched = f.commands.get();
+
+        for (Process x : p) {
+            assertTrue(waitUntilDone(x, 10000));
+        }
+
+        // Status of all jobs is retrieved with one command per poll, not one per job.
+        int polls = f.commands.get() - launched;
+        assertTrue("too many status commands: " + polls, polls < 3 * 1000 / 200 + 5);
+    }
+
+    @Test
+    public void test_jobQueueScheduler_usesDetachedProcesses() throws Exception {
+        LocalShellFactory f = new LocalShellFactory(10);
+
+        MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", workdir);
+
+        JobQueueScheduler s = new JobQueueScheduler("SID", "ssh", "location", f, fs, workdir, 2, 100, null);
+
+        JobDescription d = job("/bin/sh", "-c", "exit 7");
+        d.setQueueName("unlimited");
+
+        String id = s.submitBatchJob(d);
+
+        JobStatus status = s.waitUntilDone(id, 5000);
+
+        assertTrue(status.isDone());
+        assertEquals(Integer.valueOf(7), status.getExitCode());
+
+        s.end();
+    }
+}
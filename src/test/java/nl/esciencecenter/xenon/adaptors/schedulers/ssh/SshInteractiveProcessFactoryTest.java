@@ -20,16 +20,54 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
 import java.util.HashMap;
 
+import org.apache.sshd.client.session.ClientSession;
 import org.junit.Test;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.schedulers.SchedulerClosedException;
+import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnector;
+import nl.esciencecenter.xenon.credentials.DefaultCredential;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
 
 public class SshInteractiveProcessFactoryTest {
 
+	/**
+	 * Returns a fixed session instead of connecting, or fails if no session is set.
+	 */
+	static class MockConnector extends SSHConnector {
+		
+		final MockClientSession session;
+		int connects = 0;
+		
+		MockConnector(MockClientSession session) {
+			super("ssh", null, "localhost", new DefaultCredential(), 1000, 0);
+			this.session = session;
+		}
+		
+		@Override
+		public ClientSession connect() throws XenonException {
+			connects++;
+			
+			if (session == null) { 
+				throw new XenonException("ssh", "Connection failed");
+			}
+			
+			return session;
+		}
+	}
+
+	private static JobDescription description() { 
+		JobDescription desc = new JobDescription();
+		desc.setWorkingDirectory("workdir");
+		desc.setExecutable("exec");
+		return desc;
+	}
+
 		
 	@Test(expected=IllegalArgumentException.class)
 	public void test_creatNullFails() throws XenonException { 
@@ -119,4 +157,72 @@ public class SshInteractiveProcessFactoryTest {
 		assertEquals(env, e.env);
 	}
 	
+	@Test
+	public void test_createProcessReconnects() throws XenonException { 
+		MockClientSession lost = new MockClientSession(false);
+		lost.closed = true;
+		MockClientSession session = new MockClientSession(false);
+		MockConnector connector = new MockConnector(session);
+		
+		SshInteractiveProcessFactory p = new SshInteractiveProcessFactory(lost, connector);
+		p.createInteractiveProcess(description(), "JOB-42");
+		
+		assertEquals(1, connector.connects);
+		assertNotNull(session.exec);
+		assertSame(session, p.getSession());
+	}
+
+	@Test
+	public void test_isOpenDoesNotReconnect() throws XenonException { 
+		MockClientSession lost = new MockClientSession(false);
+		lost.closed = true;
+		MockConnector connector = new MockConnector(new MockClientSession(false));
+		
+		SshInteractiveProcessFactory p = new SshInteractiveProcessFactory(lost, connector);
+		
+		assertTrue(p.isOpen());
+		assertEquals(0, connector.connects);
+	}
+
+	@Test
+	public void test_isOpenLostWithoutConnector() throws XenonException { 
+		MockClientSession lost = new MockClientSession(false);
+		lost.closed = true;
+		
+		SshInteractiveProcessFactory p = new SshInteractiveProcessFactory(lost);
+		
+		assertFalse(p.isOpen());
+	}
+
+	@Test
+	public void test_createProcessReconnectFails() throws XenonException { 
+		MockClientSession lost = new MockClientSession(false);
+		lost.closed = true;
+		MockConnector connector = new MockConnector(null);
+		
+		SshInteractiveProcessFactory p = new SshInteractiveProcessFactory(lost, connector);
+		
+		try { 
+			p.createInteractiveProcess(description(), "JOB-42");
+			fail("Expected reconnect to fail");
+		} catch (XenonException e) { 
+			assertEquals(1, connector.connects);
+		}
+		
+		// A later attempt may still succeed.
+		assertTrue(p.isOpen());
+	}
+
+	@Test(expected=SchedulerClosedException.class)
+	public void test_createProcessAfterCloseDoesNotReconnect() throws XenonException { 
+		MockClientSession lost = new MockClientSession(false);
+		lost.closed = true;
+		MockConnector connector = new MockConnector(new MockClientSession(false));
+		
+		SshInteractiveProcessFactory p = new SshInteractiveProcessFactory(lost, connector);
+		p.close();
+		
+		assertFalse(p.isOpen());
+		p.createInteractiveProcess(description(), "JOB-42");
+	}
 }
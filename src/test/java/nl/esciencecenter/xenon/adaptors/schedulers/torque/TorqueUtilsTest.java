@@ -15,13 +15,16 @@
  */
 package nl.esciencecenter.xenon.adaptors.schedulers.torque;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.Formatter;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.FixMethodOrder;
@@ -348,4 +351,85 @@ public class TorqueUtilsTest {
 
         TorqueUtils.getJobStatusFromQstatInfo(input, jobID);
     }
+
+    @Test
+    public void test01e_generate_JobArray() throws XenonException {
+        JobDescription description = new JobDescription();
+        description.setExecutable("/bin/executable");
+
+        List<String[]> parameters = Arrays.asList(new String[] { "a" }, new String[] { "b" });
+
+        String result = TorqueUtils.generate(description, null, parameters);
+
+        String expected =
+                  "#!/bin/sh\n"
+                + "#PBS -S /bin/sh\n"
+                + "#PBS -N xenon\n"
+                + "#PBS -l nodes=1:ppn=1\n"
+                + "#PBS -l walltime=00:15:00\n"
+                + "#PBS -t 0-1\n"
+                + "\n"
+                + "case \"$PBS_ARRAYID\" in\n"
+                + "0)\n/bin/executable 'a'\n;;\n"
+                + "1)\n/bin/executable 'b'\n;;\n"
+                + "esac\n";
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void test01f_generate_JobArrayCustomContents() throws XenonException {
+        JobDescription description = new JobDescription();
+        description.addJobOption(TorqueUtils.JOB_OPTION_JOB_CONTENTS, "echo \"$@\"");
+
+        List<String[]> parameters = Arrays.asList(new String[] { "a", "b" }, new String[] { "c" });
+
+        String result = TorqueUtils.generate(description, null, parameters);
+
+        String expected =
+                  "#!/bin/sh\n"
+                + "#PBS -S /bin/sh\n"
+                + "#PBS -N xenon\n"
+                + "#PBS -l nodes=1:ppn=1\n"
+                + "#PBS -l walltime=00:15:00\n"
+                + "#PBS -t 0-1\n"
+                + "\n"
+                + "case \"$PBS_ARRAYID\" in\n"
+                + "0)\nset -- 'a' 'b'\n;;\n"
+                + "1)\nset -- 'c'\n;;\n"
+                + "esac\n"
+                + "echo \"$@\"\n";
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void test10a_identifierLists_Chunked() {
+        List<String[]> result = TorqueUtils.identifierLists(new String[] { "1.s", null, "2.s", "1.s", "3.s" }, 2);
+
+        assertEquals(2, result.size());
+        assertArrayEquals(new String[] { "1.s", "2.s" }, result.get(0));
+        assertArrayEquals(new String[] { "3.s" }, result.get(1));
+    }
+
+    @Test
+    public void test10b_identifierLists_Empty() {
+        assertTrue(TorqueUtils.identifierLists(new String[] { null }, 2).isEmpty());
+    }
+
+    @Test
+    public void test11a_onlyUnknownJobErrors_True() {
+        assertTrue(TorqueUtils.onlyUnknownJobErrors("qstat: Unknown Job Id 1.s\nqstat: Unknown Job Id Error 2.s\n"));
+    }
+
+    @Test
+    public void test11b_onlyUnknownJobErrors_OtherError() {
+        assertFalse(TorqueUtils.onlyUnknownJobErrors("qstat: Unknown Job Id 1.s\ncannot connect to server\n"));
+    }
+
+    @Test
+    public void test11c_onlyUnknownJobErrors_Empty() {
+        assertFalse(TorqueUtils.onlyUnknownJobErrors(""));
+    }
+
 }
@@ -29,7 +29,6 @@ import nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueXmlParser;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
-import org.w3c.dom.Document;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class TorqueXmlParserTest {
@@ -100,9 +99,7 @@ public class TorqueXmlParserTest {
     public void test04a_recursiveMap() throws Throwable {
         String input = readFile("/fixtures/torque/propertymap.xml");
         TorqueXmlParser parser = new TorqueXmlParser();
-        Document document = parser.parseDocument(input);
-        Map<String, String> result = new HashMap<>();
-        parser.recursiveMapFromElement(document.getDocumentElement(), result);
+        Map<String, String> result = parser.parseRecord(input);
         
         Map<String, String> expectedResult = new HashMap<>();
         expectedResult.put("a", "1");
@@ -114,9 +111,7 @@ public class TorqueXmlParserTest {
     public void test04b_recursiveMapRecurse() throws Throwable {
         String input = readFile("/fixtures/torque/propertymap-recurse.xml");
         TorqueXmlParser parser = new TorqueXmlParser();
-        Document document = parser.parseDocument(input);
-        Map<String, String> result = new HashMap<>();
-        parser.recursiveMapFromElement(document.getDocumentElement(), result);
+        Map<String, String> result = parser.parseRecord(input);
         
         Map<String, String> expectedResult = new HashMap<>();
         expectedResult.put("a", "1");
@@ -129,9 +124,7 @@ public class TorqueXmlParserTest {
     public void test04c_recursiveMapOverwrite() throws Throwable {
         String input = readFile("/fixtures/torque/propertymap-recurse-overwrite.xml");
         TorqueXmlParser parser = new TorqueXmlParser();
-        Document document = parser.parseDocument(input);
-        Map<String, String> result = new HashMap<>();
-        parser.recursiveMapFromElement(document.getDocumentElement(), result);
+        Map<String, String> result = parser.parseRecord(input);
         
         Map<String, String> expectedResult = new HashMap<>();
         expectedResult.put("a", "3");
@@ -143,9 +136,7 @@ public class TorqueXmlParserTest {
     public void test04d_recursiveMapWithValue() throws Throwable {
         String input = readFile("/fixtures/torque/propertymap-recurse-with-value.xml");
         TorqueXmlParser parser = new TorqueXmlParser();
-        Document document = parser.parseDocument(input);
-        Map<String, String> result = new HashMap<>();
-        parser.recursiveMapFromElement(document.getDocumentElement(), result);
+        Map<String, String> result = parser.parseRecord(input);
         
         Map<String, String> expectedResult = new HashMap<>();
         expectedResult.put("a", "3");
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.shared.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyPairCacheTest {
+
+    private static class CountingCache extends KeyPairCache {
+
+        private int decodes = 0;
+        private boolean fail = false;
+
+        CountingCache(int maxEntries) {
+            super(maxEntries);
+        }
+
+        @Override
+        protected synchronized KeyPair decode(Path path, char[] passphrase) throws IOException, GeneralSecurityException {
+            decodes++;
+
+            if (fail) {
+                throw new GeneralSecurityException("wrong passphrase");
+            }
+
+            return new KeyPair(null, null);
+        }
+    }
+
+    private Path dir;
+
+    private Path key1;
+
+    private Path key2;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("xenon-keys");
+        key1 = Files.write(dir.resolve("key1"), Arrays.asList("key1"), StandardCharsets.UTF_8);
+        key2 = Files.write(dir.resolve("key2"), Arrays.asList("key2"), StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(key1);
+        Files.deleteIfExists(key2);
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void test_get_decodesOnce() throws Exception {
+        CountingCache cache = new CountingCache(10);
+
+        KeyPair pair = cache.get(key1, "secret".toCharArray());
+
+        assertSame(pair, cache.get(key1, "secret".toCharArray()));
+        assertSame(pair, cache.get(dir.resolve("../" + dir.getFileName() + "/key1"), "secret".toCharArray()));
+        assertEquals(1, cache.decodes);
+    }
+
+    @Test
+    public void test_get_nullPassphrase() throws Exception {
+        CountingCache cache = new CountingCache(10);
+
+        KeyPair pair = cache.get(key1, null);
+
+        assertSame(pair, cache.get(key1, null));
+        assertEquals(1, cache.decodes);
+    }
+
+    @Test
+    public void test_get_otherPassphrase_decodesAgain() throws Exception {
+        CountingCache cache = new CountingCache(10);
+
+        KeyPair pair = cache.get(key1, "secret".toCharArray());
+
+        assertNotSame(pair, cache.get(key1, "other".toCharArray()));
+        assertEquals(2, cache.decodes);
+    }
+
+    @Test
+    public void test_get_modifiedFile_decodesAgain() throws Exception {
+        CountingCache cache = new CountingCache(10);
+
+        KeyPair pair = cache.get(key1, "secret".toCharArray());
+
+        Files.setLastModifiedTime(key1, FileTime.fromMillis(Files.getLastModifiedTime(key1).toMillis() + 10000));
+
+        assertNotSame(pair, cache.get(key1, "secret".toCharArray()));
+        assertEquals(2, cache.decodes);
+        // the key pair of the old version of the file is dropped
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void test_get_failureNotCached() throws Exception {
+        CountingCache cache = new CountingCache(10);
+        cache.fail = true;
+
+        try {
+            cache.get(key1, "wrong".toCharArray());
+            fail("Expected GeneralSecurityException");
+        } catch (GeneralSecurityException e) {
+            // expected
+        }
+
+        assertEquals(0, cache.size());
+
+        cache.fail = false;
+        cache.get(key1, "wrong".toCharArray());
+        assertEquals(2, cache.decodes);
+    }
+
+    @Test(expected = IOException.class)
+    public void test_get_missingFile() throws Exception {
+        new CountingCache(10).get(dir.resolve("missing"), null);
+    }
+
+    @Test
+    public void test_get_evictsLeastRecentlyUsed() throws Exception {
+        CountingCache cache = new CountingCache(2);
+
+        cache.get(key1, "a".toCharArray());
+        cache.get(key1, "b".toCharArray());
+        cache.get(key1, "a".toCharArray());
+        cache.get(key2, "a".toCharArray());
+
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.decodes);
+
+        // "b" was used least recently, so it was evicted
+        cache.get(key1, "a".toCharArray());
+        assertEquals(3, cache.decodes);
+        cache.get(key1, "b".toCharArray());
+        assertEquals(4, cache.decodes);
+    }
+
+    @Test
+    public void test_invalidate() throws Exception {
+        CountingCache cache = new CountingCache(10);
+
+        cache.get(key1, "a".toCharArray());
+        cache.get(key1, "b".toCharArray());
+        cache.get(key2, "a".toCharArray());
+
+        cache.invalidate(key1);
+
+        assertEquals(1, cache.size());
+
+        cache.get(key2, "a".toCharArray());
+        assertEquals(3, cache.decodes);
+    }
+
+    @Test
+    public void test_clear() throws Exception {
+        CountingCache cache = new CountingCache(10);
+
+        cache.get(key1, "a".toCharArray());
+        cache.clear();
+
+        assertEquals(0, cache.size());
+    }
+}
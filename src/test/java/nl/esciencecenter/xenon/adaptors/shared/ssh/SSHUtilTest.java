@@ -0,0 +1,143 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.shared.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.common.future.CloseFuture;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.adaptors.schedulers.ssh.MockClientSession;
+
+public class SSHUtilTest {
+
+    /**
+     * Session that answers keepalive requests, or fails them with the given exception.
+     */
+    static class ProbedSession extends MockClientSession {
+
+        final IOException failure;
+
+        volatile int requests = 0;
+        volatile boolean closedImmediately = false;
+
+        ProbedSession(IOException failure) {
+            super(false);
+            this.failure = failure;
+        }
+
+        @Override
+        public Buffer createBuffer(byte cmd) {
+            return new ByteArrayBuffer();
+        }
+
+        @Override
+        public Buffer request(String request, Buffer buffer, long timeout, TimeUnit unit) throws IOException {
+            assertEquals(SSHUtil.KEEPALIVE_REQUEST, request);
+            requests++;
+
+            if (failure != null) {
+                throw failure;
+            }
+
+            return new ByteArrayBuffer();
+        }
+
+        @Override
+        public CloseFuture close(boolean immediately) {
+            closedImmediately = immediately;
+            return super.close(immediately);
+        }
+    }
+
+    @Test
+    public void test_isAlive_answered() {
+        ProbedSession session = new ProbedSession(null);
+
+        assertTrue(SSHUtil.isAlive(session, 1000));
+        assertEquals(1, session.requests);
+        assertTrue(session.isOpen());
+    }
+
+    @Test
+    public void test_isAlive_timeoutCloses() {
+        ProbedSession session = new ProbedSession(new SocketTimeoutException());
+
+        assertFalse(SSHUtil.isAlive(session, 1000));
+        assertFalse(session.isOpen());
+        assertTrue(session.closedImmediately);
+    }
+
+    @Test
+    public void test_isAlive_closed() {
+        ProbedSession session = new ProbedSession(null);
+        session.close(true);
+
+        assertFalse(SSHUtil.isAlive(session, 1000));
+        assertEquals(0, session.requests);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_startKeepAlive_invalidInterval() {
+        SSHUtil.startKeepAlive(new ProbedSession(null), -1, 1000);
+    }
+
+    @Test
+    public void test_startKeepAlive_closesUnresponsive() throws InterruptedException {
+        ProbedSession session = new ProbedSession(new SocketTimeoutException());
+
+        SSHUtil.startKeepAlive(session, 10, 100);
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (!session.closedImmediately && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(session.closedImmediately);
+    }
+
+    @Test
+    public void test_keepAlive_stopsWhenClosed() throws InterruptedException {
+        ProbedSession session = new ProbedSession(null);
+
+        SessionKeepAlive keepAlive = new SessionKeepAlive(session, 100);
+        keepAlive.start(10);
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (session.requests == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(session.requests > 0);
+
+        session.close(false);
+        Thread.sleep(50);
+        int requests = session.requests;
+        Thread.sleep(100);
+
+        assertEquals(requests, session.requests);
+    }
+}
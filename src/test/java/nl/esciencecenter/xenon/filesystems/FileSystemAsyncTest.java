@@ -0,0 +1,137 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+
+public class FileSystemAsyncTest {
+
+	private FileSystem fs;
+	private Path root;
+
+	@Before
+	public void setup() throws Exception {
+		fs = FileSystem.create("file");
+		root = new Path(Files.createTempDirectory("xenon-async").toString());
+	}
+
+	@After
+	public void cleanup() throws Exception {
+		if (fs.exists(root)) {
+			fs.delete(root, true);
+		}
+		fs.close();
+	}
+
+	@Test
+	public void test_writeAndRead() throws Exception {
+		Path file = root.resolve("data");
+		byte [] data = "Hello World".getBytes();
+
+		fs.writeFromBytesAsync(file, data).get(5, TimeUnit.SECONDS);
+
+		assertArrayEquals(data, fs.readToBytesAsync(file).get(5, TimeUnit.SECONDS));
+		assertEquals(data.length, fs.getAttributesAsync(file).get(5, TimeUnit.SECONDS).getSize());
+	}
+
+	@Test
+	public void test_createDirectoryAndList() throws Exception {
+		Path dir = root.resolve("dir");
+
+		fs.createDirectoryAsync(dir).get(5, TimeUnit.SECONDS);
+		fs.writeFromBytesAsync(dir.resolve("a"), new byte[1]).get(5, TimeUnit.SECONDS);
+
+		List<PathAttributes> result = fs.listAsync(root, true).get(5, TimeUnit.SECONDS);
+
+		assertEquals(2, result.size());
+		assertTrue(fs.getAttributesAsync(dir).get(5, TimeUnit.SECONDS).isDirectory());
+	}
+
+	@Test
+	public void test_delete() throws Exception {
+		Path dir = root.resolve("dir");
+		fs.createDirectory(dir);
+		fs.createFile(dir.resolve("a"));
+
+		fs.deleteAsync(dir, true).get(5, TimeUnit.SECONDS);
+
+		assertFalse(fs.exists(dir));
+	}
+
+	@Test
+	public void test_copy() throws Exception {
+		Path source = root.resolve("source");
+		Path target = root.resolve("target");
+		byte [] data = new byte[10000];
+
+		fs.writeFromBytesAsync(source, data).get(5, TimeUnit.SECONDS);
+
+		CopyStatus status = fs.copyAsync(source, fs, target, CopyMode.CREATE, false).get(5, TimeUnit.SECONDS);
+
+		assertTrue(status.isDone());
+		assertFalse(status.hasException());
+		assertEquals(data.length, fs.getAttributes(target).getSize());
+	}
+
+	@Test
+	public void test_failurePropagated() throws Exception {
+		try {
+			fs.getAttributesAsync(root.resolve("missing")).get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof XenonException);
+			return;
+		}
+
+		throw new AssertionError("Expected an exception");
+	}
+
+	@Test
+	public void test_manyOperationsWithLimit() throws Exception {
+		fs.setMaxAsyncOperations(2);
+		assertEquals(2, fs.getMaxAsyncOperations());
+
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+		for (int i = 0; i < 50; i++) {
+			futures.add(fs.writeFromBytesAsync(root.resolve("file" + i), new byte[i]));
+		}
+
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get(10, TimeUnit.SECONDS);
+
+		assertEquals(futures.size(), fs.listAsync(root, false).get(5, TimeUnit.SECONDS).size());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_invalidLimit() throws Exception {
+		fs.setMaxAsyncOperations(0);
+	}
+}
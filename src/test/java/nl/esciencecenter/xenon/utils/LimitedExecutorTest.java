@@ -0,0 +1,197 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class LimitedExecutorTest {
+
+	private final ExecutorService pool = Executors.newFixedThreadPool(8);
+
+	@After
+	public void cleanup() {
+		pool.shutdownNow();
+	}
+
+	@Test
+	public void test_limitRespected() throws Exception {
+		final LimitedExecutor executor = new LimitedExecutor(pool, 2);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(20);
+
+		for (int i = 0; i < 20; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					int now = running.incrementAndGet();
+
+					synchronized (maxRunning) {
+						maxRunning.set(Math.max(maxRunning.get(), now));
+					}
+
+					try {
+						Thread.sleep(5);
+					} catch (InterruptedException e) {
+						// ignored
+					}
+
+					running.decrementAndGet();
+					done.countDown();
+				}
+			});
+		}
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(2, maxRunning.get());
+		assertEquals(0, executor.getQueued());
+	}
+
+	@Test
+	public void test_raiseLimitStartsQueued() throws Exception {
+		final LimitedExecutor executor = new LimitedExecutor(pool, 1);
+		final CountDownLatch block = new CountDownLatch(1);
+		final CountDownLatch second = new CountDownLatch(1);
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					block.await();
+				} catch (InterruptedException e) {
+					// ignored
+				}
+			}
+		});
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				second.countDown();
+			}
+		});
+
+		assertEquals(1, executor.getQueued());
+
+		executor.setLimit(2);
+
+		assertTrue(second.await(10, TimeUnit.SECONDS));
+		block.countDown();
+	}
+
+	private Runnable blockOn(final CountDownLatch block) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					block.await();
+				} catch (InterruptedException e) {
+					// ignored
+				}
+			}
+		};
+	}
+
+	@Test
+	public void test_shutdownFailsQueuedFutures() throws Exception {
+		ExecutorService single = Executors.newSingleThreadExecutor();
+		final LimitedExecutor executor = new LimitedExecutor(single, 1);
+		final CountDownLatch block = new CountDownLatch(1);
+
+		executor.execute(blockOn(block));
+
+		List<CompletableFuture<Integer>> queued = new ArrayList<>();
+
+		for (int i = 0; i < 3; i++) {
+			queued.add(AsyncExecutor.submit(executor, new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					return 42;
+				}
+			}));
+		}
+
+		assertEquals(3, executor.getQueued());
+
+		// Lets the running task finish, but rejects everything handed over afterwards.
+		single.shutdown();
+		block.countDown();
+
+		for (CompletableFuture<Integer> f : queued) {
+			try {
+				f.get(10, TimeUnit.SECONDS);
+				fail("Expected the queued task to be rejected");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof RejectedExecutionException);
+			}
+		}
+
+		assertEquals(0, executor.getQueued());
+		assertTrue(single.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void test_shutdownRunsQueuedRunnables() throws Exception {
+		ExecutorService single = Executors.newSingleThreadExecutor();
+		final LimitedExecutor executor = new LimitedExecutor(single, 1);
+		final CountDownLatch block = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(2);
+
+		executor.execute(blockOn(block));
+
+		for (int i = 0; i < 2; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					done.countDown();
+				}
+			});
+		}
+
+		single.shutdown();
+		block.countDown();
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(0, executor.getQueued());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_invalidLimit() {
+		new LimitedExecutor(pool, 0);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_nullExecutor() {
+		new LimitedExecutor(null, 1);
+	}
+}
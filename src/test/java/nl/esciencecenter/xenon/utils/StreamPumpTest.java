@@ -0,0 +1,233 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.utils.StreamPump.Transfer;
+
+public class StreamPumpTest {
+
+    private StreamPump pump;
+
+    @Before
+    public void setUp() {
+        pump = new StreamPump(2, "test-pump");
+    }
+
+    @After
+    public void tearDown() {
+        pump.shutdown();
+    }
+
+    @Test
+    public void test_transfer_untilEndOfStream() {
+        byte[] data = new byte[3 * StreamPump.BUFFER_SIZE + 17];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final AtomicInteger done = new AtomicInteger();
+
+        Transfer t = pump.transfer(new ByteArrayInputStream(data), out, new Runnable() {
+            @Override
+            public void run() {
+                done.incrementAndGet();
+            }
+        });
+
+        assertTrue(t.waitUntilDone(5000));
+        assertArrayEquals(data, out.toByteArray());
+        assertEquals(1, done.get());
+    }
+
+    @Test
+    public void test_transfer_reusesBuffers() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            Transfer t = pump.transfer(new ByteArrayInputStream(new byte[100]), new ByteArrayOutputStream(), null);
+            assertTrue(t.waitUntilDone(5000));
+        }
+
+        // Each transfer took the buffer of the previous one.
+        assertEquals(1, pump.getPooledBuffers());
+
+        List<PipedOutputStream> producers = new ArrayList<>();
+        List<Transfer> transfers = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            PipedOutputStream producer = new PipedOutputStream();
+            producers.add(producer);
+            transfers.add(pump.transfer(new PipedInputStream(producer), new ByteArrayOutputStream(), null));
+        }
+
+        for (PipedOutputStream producer : producers) {
+            producer.close();
+        }
+
+        for (Transfer t : transfers) {
+            assertTrue(t.waitUntilDone(5000));
+        }
+
+        // No more buffers are kept than threads.
+        assertEquals(2, pump.getPooledBuffers());
+    }
+
+    @Test
+    public void test_transfer_nullOutputDiscards() {
+        Transfer t = pump.transfer(new ByteArrayInputStream(new byte[100]), null, null);
+        assertTrue(t.waitUntilDone(5000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_transfer_nullInput() {
+        pump.transfer(null, null, null);
+    }
+
+    @Test
+    public void test_transfer_blockingSource() throws Exception {
+        PipedOutputStream producer = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(producer);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Transfer t = pump.transfer(in, out, null);
+
+        producer.write("hello".getBytes(StandardCharsets.UTF_8));
+        producer.flush();
+
+        // Data is forwarded while the producer is still alive.
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (out.size() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals("hello", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertFalse(t.isDone());
+
+        producer.close();
+
+        assertTrue(t.waitUntilDone(5000));
+    }
+
+    @Test
+    public void test_manyIdleTransfers_doNotStarveOthers() throws Exception {
+        List<PipedOutputStream> producers = new ArrayList<>();
+        List<Transfer> idle = new ArrayList<>();
+
+        for (int i = 0; i < 50; i++) {
+            PipedOutputStream producer = new PipedOutputStream();
+            producers.add(producer);
+            idle.add(pump.transfer(new PipedInputStream(producer), null, null));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Transfer t = pump.transfer(new ByteArrayInputStream(new byte[1000]), out, null);
+
+        assertTrue(t.waitUntilDone(5000));
+        assertEquals(1000, out.size());
+
+        for (int i = 0; i < idle.size(); i++) {
+            producers.get(i).close();
+        }
+
+        for (Transfer i : idle) {
+            assertTrue(i.waitUntilDone(5000));
+        }
+    }
+
+    @Test
+    public void test_terminate_forcesClose() throws Exception {
+        PipedOutputStream producer = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(producer);
+
+        Transfer t = pump.transfer(in, null, null);
+
+        // The producer stays alive, so the transfer cannot reach end-of-stream.
+        t.terminate(100);
+
+        assertTrue(t.isDone());
+        producer.close();
+    }
+
+    @Test
+    public void test_transfer_writeFailureEndsTransfer() {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("broken");
+            }
+        };
+
+        Transfer t = pump.transfer(new ByteArrayInputStream(new byte[10]), broken, null);
+
+        assertTrue(t.waitUntilDone(5000));
+    }
+
+    @Test
+    public void test_blockedWrites_doNotStarveOthers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        List<Transfer> blocked = new ArrayList<>();
+
+        // Destinations that do not accept data, like the full stdin pipe of a process.
+        for (int i = 0; i < 10; i++) {
+            OutputStream full = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+            };
+
+            blocked.add(pump.transfer(new ByteArrayInputStream(new byte[10]), full, null));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Transfer t = pump.transfer(new ByteArrayInputStream(new byte[1000]), out, null);
+
+        assertTrue(t.waitUntilDone(5000));
+        assertEquals(1000, out.size());
+
+        release.countDown();
+
+        for (Transfer b : blocked) {
+            assertTrue(b.waitUntilDone(5000));
+        }
+    }
+}